@@ -22,16 +22,34 @@ import java.io.File;
 
 /**
  * TempDirectory caches the directory used for caching file.  It is set up during application
- * initialization.
+ * initialization. A thread that parses messages alongside others, such as a worker of
+ * {@link com.android.emailcommon.ingest.BulkMessageIngester}, can use a directory of its own.
  */
 public class TempDirectory {
     private static File sTempDirectory = null;
+    private static final ThreadLocal<File> sThreadTempDirectory = new ThreadLocal<File>();
 
     public static void setTempDirectory(Context context) {
         sTempDirectory = context.getCacheDir();
     }
 
+    /**
+     * Sets the directory for temp files made on the calling thread, or null to use the one
+     * that is set for the application.
+     */
+    public static void setThreadTempDirectory(File directory) {
+        if (directory == null) {
+            sThreadTempDirectory.remove();
+        } else {
+            sThreadTempDirectory.set(directory);
+        }
+    }
+
     public static File getTempDirectory() {
+        final File threadTempDirectory = sThreadTempDirectory.get();
+        if (threadTempDirectory != null) {
+            return threadTempDirectory;
+        }
         if (sTempDirectory == null) {
             throw new RuntimeException(
                     "TempDirectory not set.  " +
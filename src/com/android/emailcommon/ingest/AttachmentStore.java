@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emailcommon.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where {@link BulkMessageIngester} puts the contents of attachments, as the eml viewer puts
+ * them through a ContentResolver. It is called from several threads at once.
+ */
+public interface AttachmentStore {
+    /**
+     * Stores the contents of an attachment.
+     *
+     * @param message the index of its message
+     * @param partId the index of the attachment among those of its message
+     * @param name its file name, or null if it has none
+     * @param in its decoded contents, which the caller closes
+     * @return where it was stored
+     */
+    String store(int message, String partId, String name, InputStream in) throws IOException;
+}
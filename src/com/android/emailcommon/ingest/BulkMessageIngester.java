@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.ingest;
+
+import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.internet.MimeMessage;
+import com.android.emailcommon.internet.MimeUtility;
+import com.android.emailcommon.mail.Address;
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.Message.RecipientType;
+import com.android.emailcommon.mail.Part;
+import com.android.emailcommon.utility.ConversionUtilities;
+import com.android.emailcommon.utility.ConversionUtilities.BodyFieldData;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses the messages of a directory of eml files, or of an mbox file, on a pool of worker
+ * threads, and hands out what it finds in them as {@link IngestedMessage}s.
+ * <p>
+ * Each worker makes its temp files in a directory of its own under the temp root, which is
+ * emptied after every message and deleted when the ingestion finishes; nothing else under the
+ * temp root is touched. Results go through a queue of bounded capacity, and no more messages
+ * are handed to the workers than can wait in it, so parsing keeps pace with the caller of
+ * {@link #take()} rather than running ahead of it. Attachments are written to an
+ * {@link AttachmentStore}, so no Context is needed, but parsing goes through
+ * {@link MimeMessage} and {@link ConversionUtilities}, which use Android classes.
+ */
+public class BulkMessageIngester {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static final String EML_SUFFIX = ".eml";
+
+    /** Put in the results after the last message */
+    private static final IngestedMessage END = new IngestedMessage();
+
+    private final File mSource;
+    private final File mTempRoot;
+    private final AttachmentStore mStore;
+    private final int mThreads;
+    private final BlockingQueue<IngestedMessage> mResults;
+    /** One permit for each message that may be parsed or waiting in the results */
+    private final Semaphore mPermits;
+
+    private ExecutorService mWorkers;
+    /** The temp directories made for the workers. Guarded by itself. */
+    private final ArrayList<File> mWorkerDirectories = new ArrayList<File>();
+    private Thread mProducer;
+    private final AtomicInteger mMessageCount = new AtomicInteger();
+    private final AtomicInteger mFailureCount = new AtomicInteger();
+    private volatile long mStartNanos;
+    private volatile long mEndNanos;
+    private volatile boolean mCancelled;
+    private volatile boolean mFinished;
+
+    /**
+     * @param source a directory of eml files, or an mbox file
+     * @param tempRoot where the workers make their temp directories
+     * @param store where attachments are written
+     * @param threads the number of workers
+     * @param queueCapacity the most results that wait to be taken
+     */
+    public BulkMessageIngester(File source, File tempRoot, AttachmentStore store, int threads,
+            int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("threads and queueCapacity must be greater than 0");
+        }
+        mSource = source;
+        mTempRoot = tempRoot;
+        mStore = store;
+        mThreads = threads;
+        mResults = new ArrayBlockingQueue<IngestedMessage>(queueCapacity);
+        mPermits = new Semaphore(queueCapacity);
+    }
+
+    /**
+     * Starts finding and parsing messages, on threads of its own.
+     */
+    public synchronized void start() {
+        if (mProducer != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mStartNanos = System.nanoTime();
+        mWorkers = Executors.newFixedThreadPool(mThreads, new WorkerThreadFactory());
+        mProducer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        }, "BulkMessageIngester");
+        mProducer.start();
+    }
+
+    /**
+     * Waits for the next message that has been parsed. Messages come in about the order they
+     * are in the source, but not exactly; see {@link IngestedMessage#index}.
+     *
+     * @return the message, or null when all of them have been taken
+     */
+    public IngestedMessage take() throws InterruptedException {
+        if (mFinished) {
+            return null;
+        }
+        final IngestedMessage message = mResults.take();
+        if (message == END) {
+            mFinished = true;
+            // For any other thread that is waiting
+            mResults.offer(END);
+            return null;
+        }
+        mPermits.release();
+        return message;
+    }
+
+    /**
+     * Stops handing out and parsing messages. Those that are being parsed may still be.
+     */
+    public void cancel() {
+        mCancelled = true;
+        synchronized (this) {
+            if (mProducer != null) {
+                mProducer.interrupt();
+                mWorkers.shutdownNow();
+            }
+        }
+    }
+
+    /** Returns the number of messages that were parsed, including those that failed. */
+    public int getMessageCount() {
+        return mMessageCount.get();
+    }
+
+    public int getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    /**
+     * Returns the messages parsed per second, until all of them were or until now.
+     */
+    public double getMessagesPerSecond() {
+        if (mStartNanos == 0) {
+            return 0;
+        }
+        final long end = mEndNanos != 0 ? mEndNanos : System.nanoTime();
+        final double seconds = (end - mStartNanos) / 1e9;
+        return seconds > 0 ? mMessageCount.get() / seconds : 0;
+    }
+
+    /**
+     * Hands each message in the source to the workers, then waits for them to finish.
+     */
+    private void produce() {
+        int index = 0;
+        try {
+            if (mSource.isDirectory()) {
+                final File[] files = mSource.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File file) {
+                        return file.isFile()
+                                && file.getName().toLowerCase(Locale.US).endsWith(EML_SUFFIX);
+                    }
+                });
+                if (files == null) {
+                    throw new IOException("Cannot list " + mSource);
+                }
+                Arrays.sort(files);
+                for (final File file : files) {
+                    // There is no delivery date in an eml file; it was saved when it came
+                    submit(new ParseTask(index++, file.getPath(), file.lastModified()) {
+                        @Override
+                        InputStream open() throws IOException {
+                            return new FileInputStream(file);
+                        }
+                    });
+                }
+            } else {
+                final MboxReader reader = new MboxReader(mSource);
+                try {
+                    MboxReader.Region region;
+                    while ((region = reader.next()) != null) {
+                        final MboxReader.Region r = region;
+                        submit(new ParseTask(index++, mSource.getPath() + "@" + r.start,
+                                r.dateMs) {
+                            @Override
+                            InputStream open() throws IOException {
+                                return MboxReader.open(mSource, r);
+                            }
+                        });
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException e) {
+            // Report what could not be read as a message that failed
+            final IngestedMessage failure = new IngestedMessage();
+            failure.source = mSource.getPath();
+            failure.index = index;
+            failure.error = e;
+            mFailureCount.incrementAndGet();
+            putResult(failure);
+        } catch (InterruptedException e) {
+            // Cancelled
+        } finally {
+            finish();
+        }
+    }
+
+    private void submit(ParseTask task) throws InterruptedException {
+        mPermits.acquire();
+        if (mCancelled) {
+            throw new InterruptedException();
+        }
+        try {
+            mWorkers.execute(task);
+        } catch (RejectedExecutionException e) {
+            // cancel() shut the workers down after the check above
+            throw new InterruptedException();
+        }
+    }
+
+    private void putResult(IngestedMessage message) {
+        try {
+            mResults.put(message);
+        } catch (InterruptedException e) {
+            // Cancelled; the message is dropped
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void finish() {
+        mWorkers.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (mWorkers.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                if (mCancelled) {
+                    break;
+                }
+                interrupted = true;
+            }
+        }
+        mEndNanos = System.nanoTime();
+        synchronized (mWorkerDirectories) {
+            for (File directory : mWorkerDirectories) {
+                deleteContents(directory);
+                directory.delete();
+            }
+            mWorkerDirectories.clear();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mCancelled) {
+            // Nobody needs to take what is left. A worker that was already putting its result
+            // may fill the queue again before END gets in.
+            do {
+                mResults.clear();
+            } while (!mResults.offer(END));
+        } else {
+            putResult(END);
+        }
+    }
+
+    /**
+     * Deletes the files and directories in a directory.
+     */
+    private static void deleteContents(File directory) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                deleteContents(file);
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Parses one message, and puts what it finds in the results.
+     */
+    private abstract class ParseTask implements Runnable {
+        private final int mIndex;
+        private final String mSourceName;
+        private final long mDateReceivedMs;
+
+        ParseTask(int index, String sourceName, long dateReceivedMs) {
+            mIndex = index;
+            mSourceName = sourceName;
+            mDateReceivedMs = dateReceivedMs;
+        }
+
+        abstract InputStream open() throws IOException;
+
+        @Override
+        public void run() {
+            IngestedMessage result = new IngestedMessage();
+            result.index = mIndex;
+            result.source = mSourceName;
+            try {
+                parse(result);
+            } catch (Exception e) {
+                result.error = e;
+                mFailureCount.incrementAndGet();
+            } finally {
+                deleteContents(TempDirectory.getTempDirectory());
+            }
+            mMessageCount.incrementAndGet();
+            if (!mCancelled) {
+                putResult(result);
+            }
+        }
+
+        private void parse(IngestedMessage result) throws Exception {
+            final InputStream in = new BufferedInputStream(open());
+            final MimeMessage mimeMessage;
+            try {
+                mimeMessage = new MimeMessage(in);
+            } finally {
+                in.close();
+            }
+            result.messageId = mimeMessage.getMessageId();
+            result.from = Address.pack(mimeMessage.getFrom());
+            result.to = Address.pack(mimeMessage.getRecipients(RecipientType.TO));
+            result.cc = Address.pack(mimeMessage.getRecipients(RecipientType.CC));
+            result.bcc = Address.pack(mimeMessage.getRecipients(RecipientType.BCC));
+            result.replyTo = Address.pack(mimeMessage.getReplyTo());
+            result.subject = mimeMessage.getSubject();
+            final Date sentDate = mimeMessage.getSentDate();
+            result.dateSentMs = sentDate != null ? sentDate.getTime() : 0;
+            result.dateReceivedMs = mDateReceivedMs;
+
+            final ArrayList<Part> viewables = new ArrayList<Part>();
+            final ArrayList<Part> attachments = new ArrayList<Part>();
+            MimeUtility.collectParts(mimeMessage, viewables, attachments);
+            final BodyFieldData data = ConversionUtilities.parseBodyFields(viewables);
+            result.snippet = data.snippet;
+            result.bodyText = data.textContent;
+            result.bodyHtml = data.htmlContent;
+
+            int partId = 0;
+            for (Part part : attachments) {
+                result.attachments.add(ingestAttachment(part, Integer.toString(partId++)));
+            }
+        }
+
+        private IngestedAttachment ingestAttachment(Part part, String partId) throws Exception {
+            final IngestedAttachment attachment = new IngestedAttachment();
+            attachment.partId = partId;
+            // As com.android.mail.providers.Attachment names the attachments of an eml file
+            final String contentType = MimeUtility.unfoldAndDecode(part.getContentType());
+            attachment.name = MimeUtility.getHeaderParameter(contentType, "name");
+            if (attachment.name == null) {
+                final String disposition = MimeUtility.unfoldAndDecode(part.getDisposition());
+                attachment.name = MimeUtility.getHeaderParameter(disposition, "filename");
+            }
+            attachment.contentType = part.getMimeType();
+            final Body body = part.getBody();
+            if (body != null) {
+                final CountingInputStream in = new CountingInputStream(body.getInputStream());
+                try {
+                    attachment.location = mStore.store(mIndex, partId, attachment.name, in);
+                } finally {
+                    in.close();
+                }
+                attachment.size = in.getByteCount();
+            }
+            return attachment;
+        }
+    }
+
+    /**
+     * Makes workers that each have a new temp directory of their own. A directory that is
+     * already there is never used, since it is emptied after every message.
+     */
+    private class WorkerThreadFactory implements ThreadFactory {
+        private int mCount;
+
+        @Override
+        public synchronized Thread newThread(final Runnable r) {
+            File candidate = new File(mTempRoot, "worker-" + mCount);
+            for (int attempt = 1; candidate.exists(); attempt++) {
+                candidate = new File(mTempRoot, "worker-" + mCount + "-" + attempt);
+            }
+            final File directory = candidate;
+            directory.mkdirs();
+            synchronized (mWorkerDirectories) {
+                mWorkerDirectories.add(directory);
+            }
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    TempDirectory.setThreadTempDirectory(directory);
+                    r.run();
+                }
+            }, "BulkMessageIngester-" + mCount++);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emailcommon.ingest;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stores attachments as files under a directory, one directory for each message, which stands
+ * in for the ContentResolver where there is none.
+ */
+public class FileAttachmentStore implements AttachmentStore {
+    private final File mRoot;
+
+    public FileAttachmentStore(File root) {
+        mRoot = root;
+    }
+
+    @Override
+    public String store(int message, String partId, String name, InputStream in)
+            throws IOException {
+        final File directory = new File(mRoot, Integer.toString(message));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final File file = new File(directory, partId + "-" + safeName(name));
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            IOUtils.copy(in, out);
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+
+    /**
+     * Returns a file name of only letters, digits, '.', '-' and '_'.
+     */
+    private static String safeName(String name) {
+        if (name == null || name.length() == 0) {
+            return "attachment";
+        }
+        final StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            final boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_';
+            sb.append(safe ? c : '_');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emailcommon.ingest;
+
+/**
+ * What {@link BulkMessageIngester} finds out about an attachment of a message, the fields that
+ * {@code com.android.mail.providers.Attachment} takes from an eml file.
+ */
+public class IngestedAttachment {
+    /** The index of the attachment among those of its message */
+    public String partId;
+    public String name;
+    public String contentType;
+    public long size;
+    /** Where the {@link AttachmentStore} put its contents */
+    public String location;
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.emailcommon.ingest;
+
+import java.util.ArrayList;
+
+/**
+ * What {@link BulkMessageIngester} finds out about a message, the fields that
+ * {@code com.android.mail.providers.Message} takes from an eml file: addresses are packed as by
+ * {@link com.android.emailcommon.mail.Address#pack}, and the body fields are those of
+ * {@link com.android.emailcommon.utility.ConversionUtilities.BodyFieldData}.
+ * <p>
+ * If the message could not be read or parsed, only {@link #source}, {@link #index} and
+ * {@link #error} are set.
+ */
+public class IngestedMessage {
+    /** The file the message came from, and its place in it if that is an mbox file */
+    public String source;
+    /** The order of the message among those of the ingestion */
+    public int index;
+    public Exception error;
+
+    public String messageId;
+    public String from;
+    public String to;
+    public String cc;
+    public String bcc;
+    public String replyTo;
+    public String subject;
+    /** The Date header, or 0 if there is none */
+    public long dateSentMs;
+    /**
+     * When the message was delivered: the date of its "From " line in an mbox file, or the
+     * modification time of an eml file. 0 if it is not known.
+     */
+    public long dateReceivedMs;
+    public String snippet;
+    public String bodyText;
+    public String bodyHtml;
+    public final ArrayList<IngestedAttachment> attachments = new ArrayList<IngestedAttachment>();
+}
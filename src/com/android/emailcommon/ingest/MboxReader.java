@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.ingest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Finds the messages in an mbox file, in one pass over it, so that they can be read separately
+ * and in parallel.
+ * <p>
+ * A message starts after a line that begins with "From ", at the start of the file or after an
+ * empty line, and ends before the empty line ahead of the next one. Each message is read
+ * through {@link #open(File, Region)}, which removes the '>' that mboxrd and mboxo writers put
+ * in front of lines in the message that begin with "From ".
+ * <p>
+ * The date at the end of each "From " line, when the message was delivered to the mailbox, is
+ * read as {@link Region#dateMs}. It is in asctime form, without a time zone, and is taken to
+ * be UTC.
+ */
+public class MboxReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] FROM = { 'F', 'r', 'o', 'm', ' ' };
+
+    /**
+     * The bytes of one message in the file.
+     */
+    public static class Region {
+        public final long start;
+        public final long end;
+        /** The date of the "From " line in ms, or 0 if it has none that can be read */
+        public final long dateMs;
+
+        public Region(long start, long end) {
+            this(start, end, 0);
+        }
+
+        public Region(long start, long end, long dateMs) {
+            this.start = start;
+            this.end = end;
+            this.dateMs = dateMs;
+        }
+    }
+
+    private final InputStream mIn;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mPos;
+    private int mEnd;
+    /** Offset in the file of the start of the buffer */
+    private long mBufferOffset;
+
+    /** Start of the message being read, or -1 before the first separator */
+    private long mMessageStart = -1;
+    /** Date of the "From " line of the message being read */
+    private long mMessageDate;
+    private SimpleDateFormat mDateFormat;
+    /** Start of the last line if it was empty, or -1 if it was not */
+    private long mEmptyLineStart = -1;
+    private boolean mDone;
+
+    public MboxReader(File file) throws IOException {
+        mIn = new FileInputStream(file);
+    }
+
+    /**
+     * Finds the next message.
+     *
+     * @return the message, or null if there are no more
+     * @throws IOException if the file cannot be read, or does not start with a "From " line
+     */
+    public Region next() throws IOException {
+        if (mDone) {
+            return null;
+        }
+        while (true) {
+            if (mEnd - mPos < FROM.length) {
+                compactAndFill();
+            }
+            if (mPos == mEnd) {
+                break;
+            }
+            final long lineStart = position();
+            final boolean from = startsWith(FROM);
+            final boolean empty = mBuffer[mPos] == '\n'
+                    || (mBuffer[mPos] == '\r' && mEnd - mPos > 1 && mBuffer[mPos + 1] == '\n');
+            final boolean separator = from && (mMessageStart < 0 || mEmptyLineStart >= 0);
+            final long date = separator ? readFromLineDate() : 0;
+            skipLine();
+            if (separator) {
+                final Region region = mMessageStart >= 0
+                        ? new Region(mMessageStart, mEmptyLineStart, mMessageDate) : null;
+                mMessageStart = position();
+                mMessageDate = date;
+                mEmptyLineStart = -1;
+                if (region != null) {
+                    return region;
+                }
+                continue;
+            }
+            if (mMessageStart < 0) {
+                throw new IOException("Not an mbox file");
+            }
+            mEmptyLineStart = empty ? lineStart : -1;
+        }
+        mDone = true;
+        if (mMessageStart < 0) {
+            return null;
+        }
+        return new Region(mMessageStart, mEmptyLineStart >= 0 ? mEmptyLineStart : position(),
+                mMessageDate);
+    }
+
+    /**
+     * Reads the date of the "From " line at the current position, such as
+     * "From alice@example.com Mon Oct 13 10:00:00 2014", without moving past it.
+     *
+     * @return the date in ms, or 0 if the line has none that can be read
+     */
+    private long readFromLineDate() throws IOException {
+        int lineEnd = indexOfLineEnd();
+        if (lineEnd < 0) {
+            // Keeps position(): the line moves to the start of the buffer
+            compactAndFill();
+            lineEnd = indexOfLineEnd();
+            if (lineEnd < 0) {
+                if (mEnd == mBuffer.length) {
+                    // Too long to be a "From " line with a date
+                    return 0;
+                }
+                // The last line of the file
+                lineEnd = mEnd;
+            }
+        }
+        // Skip "From " and the sender, then collapse the runs of spaces asctime pads with
+        int pos = mPos + FROM.length;
+        while (pos < lineEnd && mBuffer[pos] != ' ' && mBuffer[pos] != '\t') {
+            pos++;
+        }
+        final StringBuilder date = new StringBuilder(lineEnd - pos);
+        for (; pos < lineEnd; pos++) {
+            final char c = (char) (mBuffer[pos] & 0xff);
+            if (c == ' ' || c == '\t' || c == '\r') {
+                if (date.length() > 0 && date.charAt(date.length() - 1) != ' ') {
+                    date.append(' ');
+                }
+            } else {
+                date.append(c);
+            }
+        }
+        if (mDateFormat == null) {
+            mDateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy", Locale.US);
+            mDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        final Date parsed = mDateFormat.parse(date.toString().trim(), new ParsePosition(0));
+        return parsed != null ? parsed.getTime() : 0;
+    }
+
+    /**
+     * Returns the index in the buffer of the '\n' that ends the line at the current position, or
+     * -1 if it is not in the buffer.
+     */
+    private int indexOfLineEnd() {
+        for (int pos = mPos; pos < mEnd; pos++) {
+            if (mBuffer[pos] == '\n') {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private long position() {
+        return mBufferOffset + mPos;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (mEnd - mPos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer[mPos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves past the line at the current position, and its line break.
+     */
+    private void skipLine() throws IOException {
+        while (true) {
+            final byte[] buffer = mBuffer;
+            final int end = mEnd;
+            int pos = mPos;
+            while (pos < end && buffer[pos] != '\n') {
+                pos++;
+            }
+            if (pos < end) {
+                mPos = pos + 1;
+                return;
+            }
+            mPos = pos;
+            compactAndFill();
+            if (mPos == mEnd) {
+                return;
+            }
+        }
+    }
+
+    private void compactAndFill() throws IOException {
+        final int remaining = mEnd - mPos;
+        System.arraycopy(mBuffer, mPos, mBuffer, 0, remaining);
+        mBufferOffset += mPos;
+        mPos = 0;
+        mEnd = remaining;
+        while (mEnd < mBuffer.length) {
+            final int count = mIn.read(mBuffer, mEnd, mBuffer.length - mEnd);
+            if (count < 0) {
+                break;
+            }
+            mEnd += count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    /**
+     * Opens a stream that reads a message found in an mbox file, without the '>' in front of
+     * escaped "From " lines.
+     */
+    public static InputStream open(File file, Region region) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        boolean opened = false;
+        try {
+            long skipped = 0;
+            while (skipped < region.start) {
+                final long count = in.skip(region.start - skipped);
+                if (count <= 0) {
+                    throw new IOException("Cannot seek to message at " + region.start);
+                }
+                skipped += count;
+            }
+            opened = true;
+            return new MessageInputStream(in, region.end - region.start);
+        } finally {
+            if (!opened) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a message of the given length from a stream, and removes the first '>' from lines
+     * that are '>' one or more times followed by "From ".
+     */
+    static class MessageInputStream extends InputStream {
+        private final InputStream mIn;
+        private long mRemaining;
+        private final byte[] mBuffer = new byte[8 * 1024];
+        private int mPos;
+        private int mEnd;
+        /** The start of a line, held until it is known whether it is escaped */
+        private byte[] mPrefix = new byte[16];
+        private int mPrefixPos;
+        private int mPrefixLength;
+        private boolean mAtLineStart = true;
+        private final byte[] mSingle = new byte[1];
+
+        MessageInputStream(InputStream in, long length) {
+            mIn = in;
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(mSingle, 0, 1) < 0 ? -1 : mSingle[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (mPrefixPos < mPrefixLength) {
+                    final int count = Math.min(len, mPrefixLength - mPrefixPos);
+                    System.arraycopy(mPrefix, mPrefixPos, b, off, count);
+                    mPrefixPos += count;
+                    return count;
+                }
+                if (mAtLineStart) {
+                    if (!readPrefix()) {
+                        return -1;
+                    }
+                    continue;
+                }
+                if (mPos == mEnd && !fill()) {
+                    return -1;
+                }
+                // Copy to the end of the line at most
+                final int limit = mPos + Math.min(len, mEnd - mPos);
+                int pos = mPos;
+                while (pos < limit && mBuffer[pos] != '\n') {
+                    pos++;
+                }
+                if (pos < limit) {
+                    pos++;
+                    mAtLineStart = true;
+                }
+                final int count = pos - mPos;
+                System.arraycopy(mBuffer, mPos, b, off, count);
+                mPos = pos;
+                return count;
+            }
+        }
+
+        /**
+         * Reads the start of a line into the prefix, as far as needed to tell whether it is an
+         * escaped "From " line, and leaves out its first '>' if it is.
+         *
+         * @return false at the end of the message
+         */
+        private boolean readPrefix() throws IOException {
+            mPrefixPos = 0;
+            mPrefixLength = 0;
+            int c;
+            while ((c = next()) == '>') {
+                addToPrefix(c);
+            }
+            final int quotes = mPrefixLength;
+            int matched = 0;
+            while (c >= 0) {
+                addToPrefix(c);
+                if (c == '\n' || c != FROM[matched] || ++matched == FROM.length) {
+                    break;
+                }
+                c = next();
+            }
+            if (mPrefixLength == 0) {
+                return false;
+            }
+            mAtLineStart = mPrefix[mPrefixLength - 1] == '\n';
+            if (quotes > 0 && matched == FROM.length) {
+                mPrefixPos = 1;
+            }
+            return true;
+        }
+
+        private void addToPrefix(int c) {
+            if (mPrefixLength == mPrefix.length) {
+                final byte[] larger = new byte[mPrefix.length * 2];
+                System.arraycopy(mPrefix, 0, larger, 0, mPrefixLength);
+                mPrefix = larger;
+            }
+            mPrefix[mPrefixLength++] = (byte) c;
+        }
+
+        private int next() throws IOException {
+            if (mPos == mEnd && !fill()) {
+                return -1;
+            }
+            return mBuffer[mPos++] & 0xff;
+        }
+
+        private boolean fill() throws IOException {
+            if (mRemaining <= 0) {
+                return false;
+            }
+            final int count = mIn.read(mBuffer, 0, (int) Math.min(mBuffer.length, mRemaining));
+            if (count <= 0) {
+                return false;
+            }
+            mRemaining -= count;
+            mPos = 0;
+            mEnd = count;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.mail.Body;
+import com.android.emailcommon.mail.MessagingException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.codec.Base64OutputStream;
+import org.apache.james.mime4j.util.SpillBuffer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A Body that is held in memory while it is small, and in a temp file once it is not; see
+ * {@link SpillBuffer}. Like {@link BinaryTempFileBody}, the data is written to the stream from
+ * getOutputStream, and is then available via getInputStream and writeTo one time. After writeTo
+ * is called, or the InputStream returned from getInputStream is closed, the memory or file is
+ * given back and the Body should be considered disposed of.
+ */
+public class BinarySpillBody implements Body {
+    private final SpillBuffer mBuffer;
+
+    public BinarySpillBody() {
+        this(SpillBuffer.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold the most bytes to keep in memory before spilling to a temp file
+     */
+    public BinarySpillBody(int threshold) {
+        mBuffer = new SpillBuffer(TempDirectory.getTempDirectory(), threshold);
+    }
+
+    public OutputStream getOutputStream() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns whether the body is held in memory, rather than in a temp file.
+     */
+    public boolean isInMemory() {
+        return mBuffer.isInMemory();
+    }
+
+    @Override
+    public InputStream getInputStream() throws MessagingException {
+        try {
+            return new BinarySpillBodyInputStream(mBuffer.getInputStream());
+        } catch (IOException ioe) {
+            throw new MessagingException("Unable to open body", ioe);
+        } catch (IllegalStateException ise) {
+            throw new MessagingException("Unable to open body", ise);
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException, MessagingException {
+        InputStream in = getInputStream();
+        Base64OutputStream base64Out = new Base64OutputStream(out);
+        try {
+            IOUtils.copy(in, base64Out);
+        } finally {
+            in.close();
+        }
+        base64Out.finish();
+    }
+
+    class BinarySpillBodyInputStream extends FilterInputStream {
+        public BinarySpillBodyInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            mBuffer.release();
+        }
+    }
+}
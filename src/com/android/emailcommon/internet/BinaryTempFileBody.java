@@ -21,9 +21,7 @@ import com.android.emailcommon.mail.Body;
 import com.android.emailcommon.mail.MessagingException;
 
 import org.apache.commons.io.IOUtils;
-
-import android.util.Base64;
-import android.util.Base64OutputStream;
+import org.apache.james.mime4j.codec.Base64OutputStream;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -70,10 +68,13 @@ public class BinaryTempFileBody implements Body {
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
         InputStream in = getInputStream();
-        Base64OutputStream base64Out = new Base64OutputStream(
-            out, Base64.CRLF | Base64.NO_CLOSE);
-        IOUtils.copy(in, base64Out);
-        base64Out.close();
+        Base64OutputStream base64Out = new Base64OutputStream(out);
+        try {
+            IOUtils.copy(in, base64Out);
+        } finally {
+            in.close();
+        }
+        base64Out.finish();
         mFile.delete();
     }
 
@@ -20,10 +20,9 @@ import com.android.emailcommon.mail.Body;
 import com.android.emailcommon.mail.BodyPart;
 import com.android.emailcommon.mail.MessagingException;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.regex.Pattern;
 
 /**
@@ -197,12 +196,15 @@ public class MimeBodyPart extends BodyPart {
      */
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
-        mHeader.writeTo(out);
-        writer.write("\r\n");
-        writer.flush();
+        final BufferedOutputStream buffered = MimeUtility.getBufferedOutputStream(out);
+        mHeader.writeTo(buffered);
+        MimeUtility.writeCrlf(buffered);
         if (mBody != null) {
-            mBody.writeTo(out);
+            MimeUtility.writeBody(mBody,
+                    getFirstHeader(MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING), buffered);
+        }
+        if (buffered != out) {
+            buffered.flush();
         }
     }
 }
@@ -18,12 +18,19 @@ package com.android.emailcommon.internet;
 
 import com.android.emailcommon.mail.MessagingException;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
-
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fields of a message or body part header, in the order they were added, which is the order
+ * they are written in. Names are case-insensitive; the fields are also indexed by lowercase
+ * name, so that a field is found without a scan even in a header of hundreds of Received lines,
+ * and {@link #getFirstHeader} allocates nothing.
+ */
 public class MimeHeader {
     /**
      * Application specific header that contains Store specific information about an attachment.
@@ -52,22 +59,65 @@ public class MimeHeader {
         HEADER_ANDROID_ATTACHMENT_STORE_DATA
     };
 
+    private static final byte[] NAME_SEPARATOR = { ':', ' ' };
+
+    /** Lookup keys are cached for up to this many spellings of names */
+    private static final int MAX_KEYS = 512;
+
+    /**
+     * The lookup keys of the names seen so far: the interned lowercase names, by their spelling.
+     * Names are almost always constants, so this saves lowercasing one for every lookup.
+     */
+    private static final ConcurrentHashMap<String, String> sKeys =
+            new ConcurrentHashMap<String, String>();
+
     protected final ArrayList<Field> mFields = new ArrayList<Field>();
 
+    /** The first field of each name, by lowercase name; later ones are chained to it */
+    private final HashMap<String, Field> mIndex = new HashMap<String, Field>();
+
     public void clear() {
         mFields.clear();
+        mIndex.clear();
     }
 
-    public String getFirstHeader(String name) throws MessagingException {
-        String[] header = getHeader(name);
-        if (header == null) {
+    /**
+     * Returns the lookup key of a name, which is the same for all spellings of it.
+     */
+    private static String keyOf(String name) {
+        if (name == null) {
             return null;
         }
-        return header[0];
+        String key = sKeys.get(name);
+        if (key == null) {
+            key = name.toLowerCase(Locale.US).intern();
+            if (sKeys.size() < MAX_KEYS) {
+                sKeys.put(name, key);
+            }
+        }
+        return key;
+    }
+
+    public String getFirstHeader(String name) throws MessagingException {
+        final Field first = mIndex.get(keyOf(name));
+        return first != null ? first.value : null;
     }
 
     public void addHeader(String name, String value) throws MessagingException {
-        mFields.add(new Field(name, value));
+        final Field field = new Field(name, value, keyOf(name));
+        mFields.add(field);
+        if (field.key == null) {
+            return;
+        }
+        final Field first = mIndex.get(field.key);
+        if (first == null) {
+            field.last = field;
+            mIndex.put(field.key, field);
+        } else {
+            first.last.next = field;
+            first.last = field;
+            first.count++;
+        }
     }
 
     public void setHeader(String name, String value) throws MessagingException {
@@ -79,26 +129,35 @@ public class MimeHeader {
     }
 
     public String[] getHeader(String name) throws MessagingException {
-        ArrayList<String> values = new ArrayList<String>();
-        for (Field field : mFields) {
-            if (field.name.equalsIgnoreCase(name)) {
-                values.add(field.value);
-            }
-        }
-        if (values.size() == 0) {
+        final Field first = mIndex.get(keyOf(name));
+        if (first == null) {
             return null;
         }
-        return values.toArray(new String[] {});
+        final String[] values = new String[first.count];
+        Field field = first;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = field.value;
+            field = field.next;
+        }
+        return values;
     }
 
     public void removeHeader(String name) throws MessagingException {
-        ArrayList<Field> removeFields = new ArrayList<Field>();
-        for (Field field : mFields) {
-            if (field.name.equalsIgnoreCase(name)) {
-                removeFields.add(field);
+        final String key = keyOf(name);
+        if (mIndex.remove(key) == null) {
+            return;
+        }
+        // Keys are interned, so they can be compared by identity
+        int kept = 0;
+        for (int i = 0, count = mFields.size(); i < count; i++) {
+            final Field field = mFields.get(i);
+            if (field.key != key) {
+                mFields.set(kept++, field);
             }
         }
-        mFields.removeAll(removeFields);
+        for (int i = mFields.size() - 1; i >= kept; i--) {
+            mFields.remove(i);
+        }
     }
 
     /**
@@ -114,29 +173,38 @@ public class MimeHeader {
         StringBuilder builder = new StringBuilder();
         for (Field field : mFields) {
             if (!arrayContains(WRITE_OMIT_FIELDS, field.name)) {
-                builder.append(field.name + ": " + field.value + "\r\n");
+                builder.append(field.name).append(": ").append(field.value).append("\r\n");
             }
         }
         return builder.toString();
     }
     
     public void writeTo(OutputStream out) throws IOException, MessagingException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
         for (Field field : mFields) {
             if (!arrayContains(WRITE_OMIT_FIELDS, field.name)) {
-                writer.write(field.name + ": " + field.value + "\r\n");
+                MimeUtility.writeText(out, String.valueOf(field.name));
+                out.write(NAME_SEPARATOR);
+                MimeUtility.writeText(out, String.valueOf(field.value));
+                MimeUtility.writeCrlf(out);
             }
         }
-        writer.flush();
     }
 
     private static class Field {
         final String name;
         final String value;
-
-        public Field(String name, String value) {
+        /** The lowercase name, interned */
+        final String key;
+        /** The next field of the same name */
+        Field next;
+        /** On the first field of a name: the last field of the name, and how many there are */
+        Field last;
+        int count = 1;
+
+        public Field(String name, String value, String key) {
             this.name = name;
             this.value = value;
+            this.key = key;
         }
         
         @Override
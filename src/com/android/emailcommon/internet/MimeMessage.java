@@ -34,11 +34,10 @@ import org.apache.james.mime4j.field.Field;
 
 import android.text.TextUtils;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -523,16 +522,21 @@ public class MimeMessage extends Message {
      */
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
+        // The whole message, parts and all, is written through one buffer, and its bodies are
+        // encoded as they are written, so that it takes no more memory for large attachments
+        final BufferedOutputStream buffered = MimeUtility.getBufferedOutputStream(out);
         // Force creation of local message-id
         getMessageId();
-        getMimeHeaders().writeTo(out);
+        getMimeHeaders().writeTo(buffered);
         // mExtendedHeader will not be write out to external output stream,
         // because it is intended to internal use.
-        writer.write("\r\n");
-        writer.flush();
+        MimeUtility.writeCrlf(buffered);
         if (mBody != null) {
-            mBody.writeTo(out);
+            MimeUtility.writeBody(mBody,
+                    getFirstHeader(MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING), buffered);
+        }
+        if (buffered != out) {
+            buffered.flush();
         }
     }
 
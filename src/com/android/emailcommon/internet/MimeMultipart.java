@@ -20,11 +20,12 @@ import com.android.emailcommon.mail.BodyPart;
 import com.android.emailcommon.mail.MessagingException;
 import com.android.emailcommon.mail.Multipart;
 
-import java.io.BufferedWriter;
+import org.apache.james.mime4j.util.CharsetUtil;
+
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 
 public class MimeMultipart extends Multipart {
     protected String mPreamble;
@@ -84,22 +85,29 @@ public class MimeMultipart extends Multipart {
 
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
+        final BufferedOutputStream buffered = MimeUtility.getBufferedOutputStream(out);
+        final byte[] delimiter = ("--" + mBoundary).getBytes(CharsetUtil.UTF_8);
 
         if (mPreamble != null) {
-            writer.write(mPreamble + "\r\n");
+            MimeUtility.writeText(buffered, mPreamble);
+            MimeUtility.writeCrlf(buffered);
         }
 
         for (int i = 0, count = mParts.size(); i < count; i++) {
             BodyPart bodyPart = mParts.get(i);
-            writer.write("--" + mBoundary + "\r\n");
-            writer.flush();
-            bodyPart.writeTo(out);
-            writer.write("\r\n");
+            buffered.write(delimiter);
+            MimeUtility.writeCrlf(buffered);
+            bodyPart.writeTo(buffered);
+            MimeUtility.writeCrlf(buffered);
         }
 
-        writer.write("--" + mBoundary + "--\r\n");
-        writer.flush();
+        buffered.write(delimiter);
+        buffered.write('-');
+        buffered.write('-');
+        MimeUtility.writeCrlf(buffered);
+        if (buffered != out) {
+            buffered.flush();
+        }
     }
 
     @Override
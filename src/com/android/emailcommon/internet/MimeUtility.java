@@ -31,10 +31,12 @@ import com.android.emailcommon.mail.Part;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.codec.EncoderUtil;
+import org.apache.james.mime4j.codec.QuotedPrintableOutputStream;
 import org.apache.james.mime4j.decoder.DecoderUtil;
 import org.apache.james.mime4j.decoder.QuotedPrintableInputStream;
 import org.apache.james.mime4j.util.CharsetUtil;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,6 +51,10 @@ public class MimeUtility {
     public static final String MIME_TYPE_RFC822 = "message/rfc822";
     private final static Pattern PATTERN_CR_OR_LF = Pattern.compile("\r|\n");
 
+    /** The size of the buffer that a message is written through */
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] CRLF = { '\r', '\n' };
+
     /**
      * Replace sequences of CRLF+WSP with WSP.  Tries to preserve original string
      * object whenever possible.
@@ -57,6 +63,10 @@ public class MimeUtility {
         if (s == null) {
             return null;
         }
+        // Most header values are on one line, so skip the matcher for them
+        if (s.indexOf('\r') < 0 && s.indexOf('\n') < 0) {
+            return s;
+        }
         Matcher patternMatcher = PATTERN_CR_OR_LF.matcher(s);
         if (patternMatcher.find()) {
             patternMatcher.reset();
@@ -371,7 +381,46 @@ public class MimeUtility {
     }
 
     /**
-     * Removes any content transfer encoding from the stream and returns a Body.
+     * Returns a buffered stream to write a message or part into: the given stream if it is
+     * buffered already, as it is for the parts within a message, so that a whole message is
+     * written through one buffer.
+     */
+    static BufferedOutputStream getBufferedOutputStream(OutputStream out) {
+        return out instanceof BufferedOutputStream ? (BufferedOutputStream) out
+                : new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes text of a message, such as a header field or a boundary, in UTF-8.
+     */
+    static void writeText(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(CharsetUtil.UTF_8));
+    }
+
+    static void writeCrlf(OutputStream out) throws IOException {
+        out.write(CRLF);
+    }
+
+    /**
+     * Writes a body in the transfer encoding of its part. Text is written as base64, unless its
+     * part has been set to quoted-printable; other bodies are written as they are.
+     */
+    static void writeBody(Body body, String contentTransferEncoding, OutputStream out)
+            throws IOException, MessagingException {
+        if (body instanceof TextBody && contentTransferEncoding != null
+                && "quoted-printable".equalsIgnoreCase(
+                        getHeaderParameter(contentTransferEncoding, null))) {
+            final QuotedPrintableOutputStream qpOut = new QuotedPrintableOutputStream(out);
+            ((TextBody) body).writeUtf8To(qpOut);
+            qpOut.finish();
+        } else {
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * Removes any content transfer encoding from the stream and returns a Body, which is held
+     * in memory if it is small and in a temp file if it is not.
      */
     public static Body decodeBody(InputStream in, String contentTransferEncoding)
             throws IOException {
@@ -379,7 +428,7 @@ public class MimeUtility {
          * We'll remove any transfer encoding by wrapping the stream.
          */
         in = getInputStreamForContentTransferEncoding(in, contentTransferEncoding);
-        BinaryTempFileBody tempBody = new BinaryTempFileBody();
+        BinarySpillBody tempBody = new BinarySpillBody();
         OutputStream out = tempBody.getOutputStream();
         try {
             IOUtils.copy(in, out);
@@ -19,15 +19,20 @@ package com.android.emailcommon.internet;
 import com.android.emailcommon.mail.Body;
 import com.android.emailcommon.mail.MessagingException;
 
-import android.util.Base64;
+import org.apache.james.mime4j.codec.Base64OutputStream;
+import org.apache.james.mime4j.util.CharsetUtil;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 
 public class TextBody implements Body {
+    /**
+     * The characters of the text that are encoded at a time, so that all of it is never in
+     * memory as bytes.
+     */
+    private static final int CHUNK_LENGTH = 4096;
+
     String mBody;
 
     public TextBody(String body) {
@@ -36,8 +41,35 @@ public class TextBody implements Body {
 
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
-        byte[] bytes = mBody.getBytes("UTF-8");
-        out.write(Base64.encode(bytes, Base64.CRLF));
+        final Base64OutputStream base64Out = new Base64OutputStream(out);
+        writeUtf8To(base64Out);
+        base64Out.finish();
+    }
+
+    /**
+     * Writes the text in UTF-8, unencoded.
+     */
+    void writeUtf8To(OutputStream out) throws IOException {
+        final int length = mBody.length();
+        int start = 0;
+        while (start < length) {
+            final int end = chunkEnd(start);
+            out.write(mBody.substring(start, end).getBytes(CharsetUtil.UTF_8));
+            start = end;
+        }
+    }
+
+    /**
+     * Returns the end of the chunk of the text that starts at the given index, which does not
+     * split a surrogate pair.
+     */
+    private int chunkEnd(int start) {
+        final int length = mBody.length();
+        int end = Math.min(start + CHUNK_LENGTH, length);
+        if (end < length && Character.isHighSurrogate(mBody.charAt(end - 1))) {
+            end--;
+        }
+        return end;
     }
 
     /**
@@ -53,12 +85,59 @@ public class TextBody implements Body {
      */
     @Override
     public InputStream getInputStream() throws MessagingException {
-        try {
-            byte[] b = mBody.getBytes("UTF-8");
-            return new ByteArrayInputStream(b);
+        return new Utf8InputStream();
+    }
+
+    /**
+     * Reads the text in UTF-8, encoding one chunk of it at a time.
+     */
+    private class Utf8InputStream extends InputStream {
+        /** The start of the next chunk to encode */
+        private int mPosition;
+        private byte[] mBytes;
+        private int mOffset;
+
+        /**
+         * Encodes the next chunk if all of the last one has been read.
+         *
+         * @return false at the end of the text
+         */
+        private boolean fill() {
+            if (mBytes != null && mOffset < mBytes.length) {
+                return true;
+            }
+            if (mPosition == mBody.length()) {
+                return false;
+            }
+            final int end = chunkEnd(mPosition);
+            mBytes = mBody.substring(mPosition, end).getBytes(CharsetUtil.UTF_8);
+            mOffset = 0;
+            mPosition = end;
+            return true;
         }
-        catch (UnsupportedEncodingException usee) {
-            return null;
+
+        @Override
+        public int read() {
+            return fill() ? mBytes[mOffset++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int count = Math.min(len, mBytes.length - mOffset);
+            System.arraycopy(mBytes, mOffset, b, off, count);
+            mOffset += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mBytes != null ? mBytes.length - mOffset : 0;
         }
     }
 }
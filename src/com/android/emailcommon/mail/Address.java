@@ -16,16 +16,13 @@
 
 package com.android.emailcommon.mail;
 
-import android.text.TextUtils;
-import android.text.util.Rfc822Token;
-import android.text.util.Rfc822Tokenizer;
-
 import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.james.mime4j.codec.EncoderUtil;
 import org.apache.james.mime4j.decoder.DecoderUtil;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.regex.Pattern;
 
 /**
@@ -59,20 +56,6 @@ public class Address {
     private static final Pattern UNQUOTE = Pattern.compile("\\\\([\\\\\"])");
 
 
-    // TODO: LOCAL_PART and DOMAIN_PART_PART are too permissive and can be improved.
-    // TODO: Fix this to better constrain comments.
-    /** Regex for the local part of an email address. */
-    private static final String LOCAL_PART = "[^@]+";
-    /** Regex for each part of the domain part, i.e. the thing between the dots. */
-    private static final String DOMAIN_PART_PART = "[[\\w][\\d]\\-\\(\\)\\[\\]]+";
-    /** Regex for the domain part, which is two or more {@link #DOMAIN_PART_PART} separated by . */
-    private static final String DOMAIN_PART =
-            "(" + DOMAIN_PART_PART + "\\.)+" + DOMAIN_PART_PART;
-
-    /** Pattern to check if an email address is valid. */
-    private static final Pattern EMAIL_ADDRESS =
-            Pattern.compile("\\A" + LOCAL_PART + "@" + DOMAIN_PART + "\\z");
-
     private static final Address[] EMPTY_ADDRESS_ARRAY = new Address[0];
 
     // delimiters are chars that do not appear in an email address, used by pack/unpack
@@ -88,6 +71,29 @@ public class Address {
         setAddress(address);
     }
 
+    private Address() {
+    }
+
+    /**
+     * Creates an address from the parts found by {@link AddressParser}. The setters only need
+     * their regular expressions for parts with brackets, quotes or escapes, which are rare.
+     */
+    static Address fromParsed(String address, String personal) {
+        final Address result = new Address();
+        if (address.indexOf('<') < 0 && address.indexOf('>') < 0) {
+            result.mAddress = address;
+        } else {
+            result.setAddress(address);
+        }
+        if (personal != null && personal.indexOf('"') < 0 && personal.indexOf('\\') < 0) {
+            personal = DecoderUtil.decodeEncodedWords(personal);
+            result.mPersonal = personal.length() > 0 ? personal : null;
+        } else {
+            result.setPersonal(personal);
+        }
+        return result;
+    }
+
     public String getAddress() {
         return mAddress;
     }
@@ -128,19 +134,7 @@ public class Address {
      * entered in a list (e.g. To:) are valid, so that none is dropped.
      */
     public static boolean isAllValid(String addressList) {
-        // This code mimics the parse() method below.
-        // I don't know how to better avoid the code-duplication.
-        if (addressList != null && addressList.length() > 0) {
-            Rfc822Token[] tokens = Rfc822Tokenizer.tokenize(addressList);
-            for (int i = 0, length = tokens.length; i < length; ++i) {
-                Rfc822Token token = tokens[i];
-                String address = token.getAddress();
-                if (!TextUtils.isEmpty(address) && !isValidAddress(address)) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return AddressParser.isAllValid(addressList);
     }
 
     /**
@@ -154,22 +148,34 @@ public class Address {
         if (addressList == null || addressList.length() == 0) {
             return EMPTY_ADDRESS_ARRAY;
         }
-        Rfc822Token[] tokens = Rfc822Tokenizer.tokenize(addressList);
-        ArrayList<Address> addresses = new ArrayList<Address>();
-        for (int i = 0, length = tokens.length; i < length; ++i) {
-            Rfc822Token token = tokens[i];
-            String address = token.getAddress();
-            if (!TextUtils.isEmpty(address)) {
-                if (isValidAddress(address)) {
-                    String name = token.getName();
-                    if (TextUtils.isEmpty(name)) {
-                        name = null;
-                    }
-                    addresses.add(new Address(address, name));
-                }
-            }
+        final AddressParser parser = new AddressParser(addressList);
+        if (!parser.hasNext()) {
+            return EMPTY_ADDRESS_ARRAY;
+        }
+        final Address first = parser.next();
+        if (!parser.hasNext()) {
+            // Most lists have one address
+            return new Address[] { first };
+        }
+        final ArrayList<Address> addresses = new ArrayList<Address>();
+        addresses.add(first);
+        while (parser.hasNext()) {
+            addresses.add(parser.next());
         }
-        return addresses.toArray(new Address[] {});
+        return addresses.toArray(new Address[addresses.size()]);
+    }
+
+    /**
+     * Returns the same addresses as {@link #parse(String)}, parsed one at a time as they are
+     * iterated over, so that callers that look at each address once need not collect them.
+     */
+    public static Iterable<Address> iterate(final String addressList) {
+        return new Iterable<Address>() {
+            @Override
+            public Iterator<Address> iterator() {
+                return new AddressParser(addressList);
+            }
+        };
     }
 
     /**
@@ -178,7 +184,7 @@ public class Address {
      */
     @VisibleForTesting
     static boolean isValidAddress(final String address) {
-        return EMAIL_ADDRESS.matcher(address).find();
+        return AddressParser.isValidAddress(address);
     }
 
     @Override
@@ -360,24 +366,111 @@ public class Address {
      * Returns exactly the same result as Address.toString(Address.unpack(packedList)).
      */
     public static String unpackToString(String packedList) {
+        if (!isPacked(packedList)) {
+            return join(packedList, ",", false);
+        }
         return toString(unpack(packedList));
     }
 
+    /**
+     * Returns exactly the same result as Address.toFriendly(Address.unpack(packedList)).
+     */
+    public static String unpackToFriendly(String packedList) {
+        if (!isPacked(packedList)) {
+            return join(packedList, ", ", true);
+        }
+        return toFriendly(unpack(packedList));
+    }
+
     /**
      * Returns exactly the same result as Address.pack(Address.parse(textList)).
      */
     public static String parseAndPack(String textList) {
-        return Address.pack(Address.parse(textList));
+        if (textList == null) {
+            return null;
+        }
+        final AddressParser parser = new AddressParser(textList);
+        StringBuilder sb = null;
+        String first = null;
+        while (parser.hasNext()) {
+            final String header = parser.next().toHeader();
+            if (first == null) {
+                first = header;
+            } else {
+                if (sb == null) {
+                    sb = new StringBuilder(first);
+                }
+                // We need space character to be able to fold line.
+                sb.append(", ");
+                sb.append(header);
+            }
+        }
+        return sb != null ? sb.toString() : first;
+    }
+
+    /**
+     * Returns whether a list was packed with the delimiters of the old pack() format, rather
+     * than being RFC822 addresses.
+     */
+    private static boolean isPacked(String list) {
+        return list != null && (list.indexOf(LIST_DELIMITER_PERSONAL) != -1
+                || list.indexOf(LIST_DELIMITER_EMAIL) != -1);
+    }
+
+    /**
+     * Joins the human readable or friendly strings of the addresses of a list in RFC822 format
+     * as it is parsed, with the same result as {@link #toString(Address[], String)} or
+     * {@link #toFriendly(Address[])} of the parsed list.
+     */
+    private static String join(String addressList, String separator, boolean friendly) {
+        if (addressList == null) {
+            return null;
+        }
+        final AddressParser parser = new AddressParser(addressList);
+        StringBuilder sb = null;
+        String first = null;
+        while (parser.hasNext()) {
+            final Address address = parser.next();
+            if (first == null) {
+                first = friendly ? address.toFriendly() : address.toString();
+            } else {
+                if (sb == null) {
+                    sb = new StringBuilder(first);
+                }
+                sb.append(separator);
+                // The same as toString(Address[], String), which trims all but the first
+                sb.append(friendly ? address.toFriendly() : address.toString().trim());
+            }
+        }
+        return sb != null ? sb.toString() : first;
     }
 
     /**
      * Returns null if the packedList has 0 addresses, otherwise returns the first address.
      * The same as Address.unpack(packedList)[0] for non-empty list.
-     * This is an utility method that offers some performance optimization opportunities.
+     * Only the first address is parsed, or unpacked.
      */
     public static Address unpackFirst(String packedList) {
-        Address[] array = unpack(packedList);
-        return array.length > 0 ? array[0] : null;
+        if (packedList == null || packedList.length() == 0) {
+            return null;
+        }
+        // IF we're CSV, just parse
+        final int addressEndIndex = packedList.indexOf(LIST_DELIMITER_PERSONAL);
+        int pairEndIndex = packedList.indexOf(LIST_DELIMITER_EMAIL);
+        if (addressEndIndex == -1 && pairEndIndex == -1) {
+            // Only the addresses up to the first valid one are parsed
+            final AddressParser parser = new AddressParser(packedList);
+            return parser.hasNext() ? parser.next() : null;
+        }
+        if (pairEndIndex == -1) {
+            pairEndIndex = packedList.length();
+        }
+        if (addressEndIndex == -1 || pairEndIndex <= addressEndIndex) {
+            // The first address has no personal
+            return new Address(packedList.substring(0, pairEndIndex), null);
+        }
+        return new Address(packedList.substring(0, addressEndIndex),
+                packedList.substring(addressEndIndex + 1, pairEndIndex));
     }
 
     /**
@@ -400,8 +493,7 @@ public class Address {
             return EMPTY_ADDRESS_ARRAY;
         }
         // IF we're CSV, just parse
-        if ((addressList.indexOf(LIST_DELIMITER_PERSONAL) == -1) &&
-                (addressList.indexOf(LIST_DELIMITER_EMAIL) == -1)) {
+        if (!isPacked(addressList)) {
             return Address.parse(addressList);
         }
         // Otherwise, do backward-compatibile unpack
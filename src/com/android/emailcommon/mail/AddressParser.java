@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.mail;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Scans a comma-delimited list of addresses in RFC822 format, and returns the valid addresses
+ * one at a time, so that a long list can be read without collecting it first.
+ * <p>
+ * Each entry of the list is delimited by ',' or ';'. It is either an address, or a name
+ * followed by an address in angle brackets. Names may be quoted, with '\' escapes; comments in
+ * parentheses, which may nest, are skipped; and the name of a group, up to its ':', is dropped
+ * along with the ';' that ends it. Runs of whitespace outside quotes become single spaces, so
+ * folded lists need not be unfolded. Entries without a valid address are skipped.
+ * <p>
+ * Entries are scanned into two builders that are reused, so only the addresses that are
+ * returned are allocated.
+ */
+public class AddressParser implements Iterator<Address> {
+    private final String mList;
+    private final int mLength;
+    private int mPosition;
+
+    /** The text of the entry outside angle brackets: its name, or its address if it has none */
+    private final StringBuilder mPhrase = new StringBuilder();
+    /** The text of the entry inside angle brackets */
+    private final StringBuilder mAngle = new StringBuilder();
+    /** Whether whitespace was skipped since the last character of the phrase */
+    private boolean mSpace;
+    /** Whether the phrase has an '@', in which case a ':' does not end a group name */
+    private boolean mPhraseHasAt;
+
+    private Address mNext;
+
+    public AddressParser(String addressList) {
+        mList = addressList != null ? addressList : "";
+        mLength = mList.length();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (mNext == null && scanEntry()) {
+            mNext = toAddress();
+        }
+        return mNext != null;
+    }
+
+    @Override
+    public Address next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Address next = mNext;
+        mNext = null;
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Checks that every entry of a list that has an address has a valid one, i.e. that
+     * {@link Address#parse(String)} would drop none of the addresses that the user entered.
+     */
+    static boolean isAllValid(String addressList) {
+        final AddressParser parser = new AddressParser(addressList);
+        while (parser.scanEntry()) {
+            final CharSequence address = parser.getEntryAddress();
+            if (address.length() > 0 && !isValidAddress(address)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an address is valid: some local part, an '@', and a domain of two or more
+     * labels separated by '.', each made of letters, digits, '_', '-', '(', ')', '[' and ']'.
+     * Non-ASCII letters, digits and marks are accepted, for internationalized domains.
+     */
+    static boolean isValidAddress(CharSequence address) {
+        final int length = address.length();
+        int at = 0;
+        while (at < length && address.charAt(at) != '@') {
+            at++;
+        }
+        if (at == 0 || at == length) {
+            return false;
+        }
+        int labels = 1;
+        int labelLength = 0;
+        for (int i = at + 1; i < length; i++) {
+            final char c = address.charAt(i);
+            if (c == '.') {
+                if (labelLength == 0) {
+                    return false;
+                }
+                labels++;
+                labelLength = 0;
+            } else if (isDomainChar(c)) {
+                labelLength++;
+            } else {
+                return false;
+            }
+        }
+        return labels > 1 && labelLength > 0;
+    }
+
+    private static boolean isDomainChar(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '-' || c == '(' || c == ')' || c == '[' || c == ']';
+        }
+        // The regex's \w is Unicode-aware on Android, so internationalized domains are valid
+        return isUnicodeWordChar(c);
+    }
+
+    /**
+     * Whether a non-ASCII character is matched by ICU's \w: letters, marks, digits and connector
+     * punctuation. Surrogates are accepted as they are, since the domain is checked one char at
+     * a time.
+     */
+    private static boolean isUnicodeWordChar(char c) {
+        if (Character.isLetterOrDigit(c) || Character.isHighSurrogate(c)
+                || Character.isLowSurrogate(c)) {
+            return true;
+        }
+        switch (Character.getType(c)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.CONNECTOR_PUNCTUATION:
+                return true;
+            default:
+                return c == '\u200c' || c == '\u200d'; // ZWNJ and ZWJ (Join_Control)
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Scans the next entry of the list into the builders.
+     *
+     * @return false if there are no more entries
+     */
+    private boolean scanEntry() {
+        if (mPosition >= mLength) {
+            return false;
+        }
+        mPhrase.setLength(0);
+        mAngle.setLength(0);
+        mSpace = false;
+        mPhraseHasAt = false;
+        while (mPosition < mLength) {
+            final char c = mList.charAt(mPosition++);
+            switch (c) {
+                case ',':
+                case ';':
+                    return true;
+                case '"':
+                    scanQuoted();
+                    break;
+                case '(':
+                    skipComment();
+                    break;
+                case '<':
+                    scanAngle();
+                    break;
+                case ':':
+                    if (mAngle.length() == 0 && !mPhraseHasAt) {
+                        // The phrase so far names a group; its members follow
+                        mPhrase.setLength(0);
+                        mSpace = false;
+                    } else {
+                        appendPhrase(c);
+                    }
+                    break;
+                default:
+                    if (isWhitespace(c)) {
+                        mSpace = mPhrase.length() > 0;
+                    } else {
+                        appendPhrase(c);
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private void appendPhrase(char c) {
+        if (mSpace) {
+            mSpace = false;
+            // A single space between words, even next to a quoted one
+            if (c != ' ' && mPhrase.charAt(mPhrase.length() - 1) != ' ') {
+                mPhrase.append(' ');
+            }
+        }
+        if (c == '@') {
+            mPhraseHasAt = true;
+        }
+        mPhrase.append(c);
+    }
+
+    private void scanQuoted() {
+        while (mPosition < mLength) {
+            final char c = mList.charAt(mPosition++);
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                if (mPosition < mLength) {
+                    appendPhrase(mList.charAt(mPosition));
+                }
+                mPosition++;
+            } else {
+                appendPhrase(c);
+            }
+        }
+    }
+
+    private void skipComment() {
+        int level = 1;
+        while (mPosition < mLength && level > 0) {
+            final char c = mList.charAt(mPosition++);
+            if (c == ')') {
+                level--;
+            } else if (c == '(') {
+                level++;
+            } else if (c == '\\') {
+                mPosition++;
+            }
+        }
+    }
+
+    private void scanAngle() {
+        while (mPosition < mLength) {
+            final char c = mList.charAt(mPosition++);
+            if (c == '>') {
+                break;
+            } else if (!isWhitespace(c) || mAngle.length() > 0) {
+                mAngle.append(c);
+            }
+        }
+        int end = mAngle.length();
+        while (end > 0 && isWhitespace(mAngle.charAt(end - 1))) {
+            end--;
+        }
+        mAngle.setLength(end);
+    }
+
+    /**
+     * Returns the address of the entry just scanned: the text in angle brackets, or if there is
+     * none, the rest of the entry.
+     */
+    private CharSequence getEntryAddress() {
+        return mAngle.length() > 0 ? mAngle : mPhrase;
+    }
+
+    /**
+     * Returns the entry just scanned as an address, or null if it has no valid address.
+     */
+    private Address toAddress() {
+        final CharSequence address = getEntryAddress();
+        if (address.length() == 0 || !isValidAddress(address)) {
+            return null;
+        }
+        if (address == mPhrase) {
+            return Address.fromParsed(mPhrase.toString(), null);
+        }
+        return Address.fromParsed(mAngle.toString(),
+                mPhrase.length() > 0 ? mPhrase.toString() : null);
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.android.emailcommon.mail;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,17 +26,29 @@ import java.util.Map;
  * Uses non-printable (control chars) for internal delimiters;  Intended for regular displayable
  * strings only, so please use base64 or other encoding if you need to hide any binary data here.
  *
- * Binary compatible with Address.pack() format, which should migrate to use this code.
+ * Strings are packed as indexed records, whose header lists the tags and the lengths of their
+ * values, so that a single value is read by scanning the header, without splitting the string.
+ * Strings packed in the older delimited format, which is binary compatible with Address.pack(),
+ * can still be read and edited.
  */
 public class PackedString {
 
     /**
-     * Packing format is:
+     * Delimited packing format is:
      *   element : [ value ] or [ value TAG-DELIMITER tag ]
      *   packed-string : [ element ] [ ELEMENT-DELIMITER [ element ] ]*
+     *
+     * Indexed packing format is:
+     *   entry : tag TAG-DELIMITER decimal-length-of-value
+     *   header : entry [ ELEMENT-DELIMITER entry ]*
+     *   packed-string : INDEX-DELIMITER header INDEX-DELIMITER [ value ]*
+     * with the values in the same order as their entries. The values may contain any character.
      */
     private static final char DELIMITER_ELEMENT = '\1';
     private static final char DELIMITER_TAG = '\2';
+    private static final char DELIMITER_INDEX = '\3';
+    /** The most digits of a value length, which is less than the length of the string */
+    private static final int MAX_LENGTH_DIGITS = 9;
 
     private String mString;
     private HashMap<String, String> mExploded;
@@ -56,10 +69,77 @@ public class PackedString {
      * @return returns value, or null if no string is found
      */
     public String get(String tag) {
-        if (mExploded == null) {
-            mExploded = explode(mString);
+        if (!isIndexed(mString)) {
+            if (mExploded == null) {
+                mExploded = explode(mString);
+            }
+            return mExploded.get(tag);
+        }
+        final long range = findValue(mString, tag);
+        return range < 0 ? null : mString.substring((int) (range >>> 32), (int) range);
+    }
+
+    /**
+     * Get the value referred to by a given tag as a long.
+     * @param tag identifier of the value of interest
+     * @param defaultValue returned if the tag does not exist or its value is not a number
+     */
+    public long getLong(String tag, long defaultValue) {
+        if (!isIndexed(mString)) {
+            final String value = get(tag);
+            if (value != null) {
+                try {
+                    return Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    // Fall through to the default
+                }
+            }
+            return defaultValue;
+        }
+        final long range = findValue(mString, tag);
+        if (range < 0) {
+            return defaultValue;
+        }
+        int pos = (int) (range >>> 32);
+        final int end = (int) range;
+        final boolean negative = pos < end && mString.charAt(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        // Values written by Builder.put(String, long) have at most 19 digits
+        if (pos == end || end - pos > 19) {
+            return defaultValue;
+        }
+        // Accumulate negatively, like Long.parseLong(), so that MIN_VALUE can be read. With at
+        // most 19 digits, an overflow wraps around once, to a positive value.
+        long value = 0;
+        for (; pos < end; pos++) {
+            final char c = mString.charAt(pos);
+            if (c < '0' || c > '9') {
+                return defaultValue;
+            }
+            value = value * 10 - (c - '0');
+            if (value > 0) {
+                return defaultValue;
+            }
         }
-        return mExploded.get(tag);
+        if (!negative) {
+            value = -value;
+            if (value < 0) {
+                return defaultValue;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the value referred to by a given tag as an int.
+     * @param tag identifier of the value of interest
+     * @param defaultValue returned if the tag does not exist or its value is not an int
+     */
+    public int getInt(String tag, int defaultValue) {
+        final long value = getLong(tag, defaultValue);
+        return value == (int) value ? (int) value : defaultValue;
     }
 
     /**
@@ -74,6 +154,58 @@ public class PackedString {
         return new HashMap<String,String>(mExploded);
     }
 
+    private static boolean isIndexed(String packed) {
+        return packed != null && packed.length() > 0 && packed.charAt(0) == DELIMITER_INDEX;
+    }
+
+    /**
+     * Finds a value in an indexed string.
+     * @return the start of the value in the upper 32 bits and its end in the lower ones, or -1 if
+     * the tag does not exist
+     */
+    private static long findValue(String packed, String tag) {
+        final int headerEnd = packed.indexOf(DELIMITER_INDEX, 1);
+        if (headerEnd < 0) {
+            return -1;
+        }
+        final int tagLength = tag.length();
+        int valueStart = headerEnd + 1;
+        int entryStart = 1;
+        while (entryStart < headerEnd) {
+            final int tagEnd = packed.indexOf(DELIMITER_TAG, entryStart);
+            if (tagEnd < 0 || tagEnd > headerEnd) {
+                return -1;
+            }
+            int entryEnd = packed.indexOf(DELIMITER_ELEMENT, tagEnd);
+            if (entryEnd < 0 || entryEnd > headerEnd) {
+                entryEnd = headerEnd;
+            }
+            if (entryEnd - tagEnd > MAX_LENGTH_DIGITS + 1) {
+                // Not a record we wrote
+                return -1;
+            }
+            int valueLength = 0;
+            for (int i = tagEnd + 1; i < entryEnd; i++) {
+                final int digit = packed.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                valueLength = valueLength * 10 + digit;
+            }
+            final int valueEnd = valueStart + valueLength;
+            if (valueEnd < valueStart || valueEnd > packed.length()) {
+                return -1;
+            }
+            if (tagEnd - entryStart == tagLength
+                    && packed.regionMatches(entryStart, tag, 0, tagLength)) {
+                return ((long) valueStart << 32) | valueEnd;
+            }
+            valueStart = valueEnd;
+            entryStart = entryEnd + 1;
+        }
+        return -1;
+    }
+
     /**
      * Read out all values into a map.
      */
@@ -82,6 +214,15 @@ public class PackedString {
             return EMPTY_MAP;
         }
         HashMap<String, String> map = new HashMap<String, String>();
+        if (isIndexed(packed)) {
+            final ArrayList<String> tags = new ArrayList<String>();
+            final ArrayList<String> values = new ArrayList<String>();
+            decodeIndexed(packed, tags, values);
+            for (int i = 0; i < tags.size(); i++) {
+                map.put(tags.get(i), values.get(i));
+            }
+            return map;
+        }
 
         int length = packed.length();
         int elementStartIndex = 0;
@@ -113,25 +254,75 @@ public class PackedString {
         return map;
     }
 
+    /**
+     * Read out all entries of an indexed string, in order, stopping at the first one that is
+     * malformed.
+     */
+    private static void decodeIndexed(String packed, ArrayList<String> tags,
+            ArrayList<String> values) {
+        final int headerEnd = packed.indexOf(DELIMITER_INDEX, 1);
+        if (headerEnd < 0) {
+            return;
+        }
+        int valueStart = headerEnd + 1;
+        int entryStart = 1;
+        while (entryStart < headerEnd) {
+            final int tagEnd = packed.indexOf(DELIMITER_TAG, entryStart);
+            if (tagEnd < 0 || tagEnd > headerEnd) {
+                return;
+            }
+            int entryEnd = packed.indexOf(DELIMITER_ELEMENT, tagEnd);
+            if (entryEnd < 0 || entryEnd > headerEnd) {
+                entryEnd = headerEnd;
+            }
+            final int valueEnd;
+            try {
+                valueEnd = valueStart + Integer.parseInt(packed.substring(tagEnd + 1, entryEnd));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            if (valueEnd < valueStart || valueEnd > packed.length()) {
+                return;
+            }
+            tags.add(packed.substring(entryStart, tagEnd));
+            values.add(packed.substring(valueStart, valueEnd));
+            valueStart = valueEnd;
+            entryStart = entryEnd + 1;
+        }
+    }
+
     /**
      * Builder class for creating PackedString values.  Can also be used for editing existing
      * PackedString representations.
+     *
+     * A builder can be {@link #clear() cleared} and reused, e.g. to pack the rows of a table;
+     * it keeps the buffer that it packs into between uses.
      */
     static public class Builder {
-        HashMap<String, String> mMap;
+        /** The tags, in the order they were first put */
+        private final ArrayList<String> mTags = new ArrayList<String>();
+        /** The values, parallel to {@link #mTags} */
+        private final ArrayList<String> mValues = new ArrayList<String>();
+        private final StringBuilder mBuffer = new StringBuilder();
 
         /**
          * Create a builder that's empty (for filling)
          */
         public Builder() {
-            mMap = new HashMap<String, String>();
         }
 
         /**
          * Create a builder using the values of an existing PackedString (for editing).
          */
         public Builder(String packed) {
-            mMap = explode(packed);
+            if (isIndexed(packed)) {
+                decodeIndexed(packed, mTags, mValues);
+            } else {
+                for (Map.Entry<String, String> entry : explode(packed).entrySet()) {
+                    mTags.add(entry.getKey());
+                    mValues.add(entry.getValue());
+                }
+            }
         }
 
         /**
@@ -140,20 +331,44 @@ public class PackedString {
          * @param value the value to record in this position.  null to delete entry.
          */
         public void put(String tag, String value) {
+            final int index = mTags.indexOf(tag);
             if (value == null) {
-                mMap.remove(tag);
+                if (index >= 0) {
+                    mTags.remove(index);
+                    mValues.remove(index);
+                }
+            } else if (index >= 0) {
+                mValues.set(index, value);
             } else {
-                mMap.put(tag, value);
+                mTags.add(tag);
+                mValues.add(value);
             }
         }
 
+        /**
+         * Add a tagged number, to be read with {@link PackedString#getLong} or
+         * {@link PackedString#getInt}.
+         */
+        public void put(String tag, long value) {
+            put(tag, Long.toString(value));
+        }
+
         /**
          * Get the value referred to by a given tag.  If the tag does not exist, return null.
          * @param tag identifier of string of interest
          * @return returns value, or null if no string is found
          */
         public String get(String tag) {
-            return mMap.get(tag);
+            final int index = mTags.indexOf(tag);
+            return index >= 0 ? mValues.get(index) : null;
+        }
+
+        /**
+         * Remove all values, to reuse this builder.
+         */
+        public void clear() {
+            mTags.clear();
+            mValues.clear();
         }
 
         /**
@@ -161,14 +376,24 @@ public class PackedString {
          */
         @Override
         public String toString() {
-            StringBuilder sb = new StringBuilder();
-            for (Map.Entry<String,String> entry : mMap.entrySet()) {
-                if (sb.length() > 0) {
+            final int count = mTags.size();
+            if (count == 0) {
+                return "";
+            }
+            final StringBuilder sb = mBuffer;
+            sb.setLength(0);
+            sb.append(DELIMITER_INDEX);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
                     sb.append(DELIMITER_ELEMENT);
                 }
-                sb.append(entry.getValue());
+                sb.append(mTags.get(i));
                 sb.append(DELIMITER_TAG);
-                sb.append(entry.getKey());
+                sb.append(mValues.get(i).length());
+            }
+            sb.append(DELIMITER_INDEX);
+            for (int i = 0; i < count; i++) {
+                sb.append(mValues.get(i));
             }
             return sb.toString();
         }
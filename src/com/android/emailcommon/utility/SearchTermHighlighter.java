@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.style.BackgroundColorSpan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * Highlights the terms of a search query in message text. The query is compiled once into an
+ * Aho-Corasick automaton over case-folded characters, so each message is highlighted in a single
+ * pass regardless of how many terms the query has. A compiled highlighter is immutable and may
+ * be shared between threads, e.g. for every message in a search result set.
+ * <p>
+ * In HTML, tags and character entities are copied through untouched and never matched, as are
+ * the contents of the tags in {@link TextUtilities#STRIP_TAGS}. Matches never span a tag, so the
+ * highlight markup is always well-formed.
+ */
+public final class SearchTermHighlighter {
+    private static final String HIGHLIGHT_START = "<span style=\"background-color: "
+            + TextUtilities.HIGHLIGHT_COLOR_STRING + "\">";
+    private static final String HIGHLIGHT_END = "</span>";
+
+    private static final int ROOT = 0;
+
+    /** For each state, the characters it has transitions on, sorted. */
+    private final char[][] mTransitionChars;
+    /** For each state, the target states, parallel to {@link #mTransitionChars}. */
+    private final int[][] mTransitionTargets;
+    /** For each state, the state of its longest proper suffix in the automaton. */
+    private final int[] mFailure;
+    /** For each state, the length of the longest term ending there, or 0 if none does. */
+    private final int[] mMatchLength;
+
+    private SearchTermHighlighter(ArrayList<String> terms) {
+        // Build the trie
+        final ArrayList<StringBuilder> keys = new ArrayList<StringBuilder>();
+        final ArrayList<ArrayList<Integer>> targets = new ArrayList<ArrayList<Integer>>();
+        final ArrayList<Integer> termLengths = new ArrayList<Integer>();
+        keys.add(new StringBuilder());
+        targets.add(new ArrayList<Integer>());
+        termLengths.add(0);
+        for (String term : terms) {
+            int state = ROOT;
+            for (int i = 0; i < term.length(); i++) {
+                final char c = fold(term.charAt(i));
+                final int index = keys.get(state).indexOf(String.valueOf(c));
+                if (index >= 0) {
+                    state = targets.get(state).get(index);
+                } else {
+                    final int next = keys.size();
+                    keys.add(new StringBuilder());
+                    targets.add(new ArrayList<Integer>());
+                    termLengths.add(0);
+                    keys.get(state).append(c);
+                    targets.get(state).add(next);
+                    state = next;
+                }
+            }
+            termLengths.set(state, term.length());
+        }
+
+        final int stateCount = keys.size();
+        mTransitionChars = new char[stateCount][];
+        mTransitionTargets = new int[stateCount][];
+        mFailure = new int[stateCount];
+        mMatchLength = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            final char[] chars = keys.get(state).toString().toCharArray();
+            final ArrayList<Integer> stateTargets = targets.get(state);
+            // Sort transitions by character, for binary search
+            final long[] packed = new long[chars.length];
+            for (int i = 0; i < chars.length; i++) {
+                packed[i] = ((long) chars[i] << 32) | stateTargets.get(i);
+            }
+            Arrays.sort(packed);
+            mTransitionChars[state] = new char[chars.length];
+            mTransitionTargets[state] = new int[chars.length];
+            for (int i = 0; i < packed.length; i++) {
+                mTransitionChars[state][i] = (char) (packed[i] >>> 32);
+                mTransitionTargets[state][i] = (int) packed[i];
+            }
+            mMatchLength[state] = termLengths.get(state);
+        }
+
+        // Compute failure links breadth first, so a state's suffix is always done before it
+        final int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int target : mTransitionTargets[ROOT]) {
+            mFailure[target] = ROOT;
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            final int state = queue[head++];
+            final char[] chars = mTransitionChars[state];
+            for (int i = 0; i < chars.length; i++) {
+                final int target = mTransitionTargets[state][i];
+                int fallback = mFailure[state];
+                int next;
+                while ((next = transition(fallback, chars[i])) < 0 && fallback != ROOT) {
+                    fallback = mFailure[fallback];
+                }
+                mFailure[target] = next >= 0 ? next : ROOT;
+                mMatchLength[target] = Math.max(mMatchLength[target],
+                        mMatchLength[mFailure[target]]);
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    /**
+     * Compiles the whitespace separated terms of a search query.
+     */
+    public static SearchTermHighlighter compile(String query) {
+        final ArrayList<String> terms = new ArrayList<String>();
+        if (query != null) {
+            final StringTokenizer st = new StringTokenizer(query);
+            while (st.hasMoreTokens()) {
+                terms.add(st.nextToken());
+            }
+        }
+        return new SearchTermHighlighter(terms);
+    }
+
+    /**
+     * Returns whether the query had no terms, in which case nothing will be highlighted.
+     */
+    public boolean isEmpty() {
+        return mTransitionChars[ROOT].length == 0;
+    }
+
+    /**
+     * Returns a copy of the given HTML with the search terms highlighted, for use in a WebView.
+     */
+    public String highlightHtml(String html) {
+        if (html == null || html.length() == 0) {
+            return "";
+        }
+        final long[] matches = findMatches(html, true);
+        final int count = (int) matches[0];
+        if (count == 0) {
+            return html;
+        }
+        final StringBuilder sb = new StringBuilder(html.length()
+                + count * (HIGHLIGHT_START.length() + HIGHLIGHT_END.length()));
+        int copied = 0;
+        for (int i = 1; i <= count; i++) {
+            final int start = (int) (matches[i] >>> 32);
+            final int end = (int) matches[i];
+            sb.append(html, copied, start).append(HIGHLIGHT_START)
+                    .append(html, start, end).append(HIGHLIGHT_END);
+            copied = end;
+        }
+        return sb.append(html, copied, html.length()).toString();
+    }
+
+    /**
+     * Returns the given plain text with the search terms highlighted, for use in a TextView.
+     */
+    public CharSequence highlightText(String text) {
+        if (text == null || text.length() == 0) {
+            return "";
+        }
+        final SpannableStringBuilder sb = new SpannableStringBuilder(text);
+        final long[] matches = findMatches(text, false);
+        final int count = (int) matches[0];
+        for (int i = 1; i <= count; i++) {
+            sb.setSpan(new BackgroundColorSpan(TextUtilities.HIGHLIGHT_COLOR_INT),
+                    (int) (matches[i] >>> 32), (int) matches[i],
+                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return sb;
+    }
+
+    /**
+     * Finds the ranges of text to highlight. Overlapping matches are merged.
+     *
+     * @return an array whose first element is the number of ranges, followed by that many ranges
+     *     sorted by start, each packed as <code>start &lt;&lt; 32 | end</code> (exclusive)
+     */
+    private long[] findMatches(String text, boolean html) {
+        long[] matches = new long[9];
+        int count = 0;
+        if (isEmpty()) {
+            return matches;
+        }
+
+        final int length = text.length();
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (html) {
+                final int skipTo = skipMarkup(text, i);
+                if (skipTo > i) {
+                    // Matches never span markup
+                    state = ROOT;
+                    i = skipTo - 1;
+                    continue;
+                }
+            }
+
+            final char folded = fold(c);
+            int next;
+            while ((next = transition(state, folded)) < 0 && state != ROOT) {
+                state = mFailure[state];
+            }
+            state = next >= 0 ? next : ROOT;
+
+            final int matchLength = mMatchLength[state];
+            if (matchLength > 0) {
+                if (count + 1 == matches.length) {
+                    matches = Arrays.copyOf(matches, matches.length * 2);
+                }
+                matches[++count] = ((long) (i + 1 - matchLength) << 32) | (i + 1);
+            }
+        }
+
+        // Ends are already ascending, but a longer match may start before an earlier one
+        Arrays.sort(matches, 1, count + 1);
+        int merged = 0;
+        for (int i = 1; i <= count; i++) {
+            final int start = (int) (matches[i] >>> 32);
+            final int end = (int) matches[i];
+            if (merged > 0 && start < (int) matches[merged]) {
+                final int mergedStart = (int) (matches[merged] >>> 32);
+                final int mergedEnd = Math.max(end, (int) matches[merged]);
+                matches[merged] = ((long) mergedStart << 32) | mergedEnd;
+            } else {
+                matches[++merged] = matches[i];
+            }
+        }
+        matches[0] = merged;
+        return matches;
+    }
+
+    /**
+     * If an HTML tag, comment, or character entity starts at <code>pos</code>, returns the
+     * position just after it (and after the content of the tag, for tags whose content is not
+     * displayed). Otherwise returns <code>pos</code>.
+     */
+    private static int skipMarkup(String text, int pos) {
+        final int length = text.length();
+        final char c = text.charAt(pos);
+        if (c == '<' && pos < length - 1) {
+            // Tags begin with <! or <- or </ or <letter
+            final char peek = text.charAt(pos + 1);
+            if (peek != '!' && peek != '-' && peek != '/' && !Character.isLetter(peek)) {
+                return pos;
+            }
+            int from = pos;
+            if (pos < length - (TextUtilities.MAX_STRIP_TAG_LENGTH + 2)) {
+                for (String stripTag : TextUtilities.STRIP_TAGS) {
+                    if (text.regionMatches(true, pos + 1, stripTag, 0, stripTag.length())) {
+                        final int endTag = TextUtilities.findTagEnd(text,
+                                text.substring(pos + 1, pos + 1 + stripTag.length()), pos);
+                        if (endTag < 0) {
+                            return length;
+                        }
+                        from = endTag;
+                        break;
+                    }
+                }
+            }
+            final int close = text.indexOf('>', from);
+            return close < 0 ? length : close + 1;
+        } else if (c == '&') {
+            // All entities are <= 8 characters long (+ & and ;)
+            final int end = Math.min(length, pos + 10);
+            for (int i = pos + 1; i < end; i++) {
+                final char e = text.charAt(i);
+                if (e == ';') {
+                    final boolean numeric = i > pos + 2 && text.charAt(pos + 1) == '#';
+                    if (numeric || TextUtilities.ESCAPE_STRINGS.containsKey(
+                            text.substring(pos, i))) {
+                        return i + 1;
+                    }
+                    break;
+                } else if (!Character.isLetterOrDigit(e) && e != '#') {
+                    break;
+                }
+            }
+        }
+        return pos;
+    }
+
+    private int transition(int state, char c) {
+        final int index = Arrays.binarySearch(mTransitionChars[state], c);
+        return index >= 0 ? mTransitionTargets[state][index] : -1;
+    }
+
+    /**
+     * Simple (one to one) Unicode case folding, so that offsets in the folded text are the same
+     * as in the original.
+     */
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
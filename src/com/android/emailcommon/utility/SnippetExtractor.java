@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Extracts the snippet of a message body: its first {@link #MAX_SNIPPET_LENGTH} characters of
+ * visible text, with runs of whitespace collapsed and, for HTML, tags stripped and character
+ * entities decoded.
+ * <p>
+ * The body is read through a small window in a single pass that ends as soon as the snippet is
+ * full, so a long body is never read past its snippet, or copied, or even fully materialized when
+ * it comes from a {@link Reader}. The content of the tags in {@link TextUtilities#STRIP_TAGS} is
+ * skipped by scanning for their end tag in the same pass, without allocating.
+ * <p>
+ * The snippets are the same as those of the original random-access implementation, quirks
+ * included: e.g. the content of <code>&lt;header&gt;</code> is stripped like that of
+ * <code>&lt;head&gt;</code>, and a strip tag that is never closed ends the snippet.
+ */
+public final class SnippetExtractor {
+    /** This is how many chars we'll allow in a snippet */
+    static final int MAX_SNIPPET_LENGTH = 200;
+
+    private static final int WINDOW_SIZE = 512;
+    /** A strip tag is only recognized with this many characters after its '<' */
+    private static final int STRIP_TAG_LOOKAHEAD = TextUtilities.MAX_STRIP_TAG_LENGTH + 2;
+    /** All entities are <= 8 characters long, so the ';' is at most this far after the '&' */
+    private static final int ENTITY_LOOKAHEAD = 9;
+
+    /** The names of the entities in {@link TextUtilities#ESCAPE_STRINGS}, without '&', sorted */
+    private static final String[] ENTITY_NAMES;
+    /** The characters of the entities, parallel to {@link #ENTITY_NAMES} */
+    private static final char[] ENTITY_CHARS;
+    static {
+        final Map<String, Character> escapes = TextUtilities.ESCAPE_STRINGS;
+        final String[] entities = escapes.keySet().toArray(new String[escapes.size()]);
+        Arrays.sort(entities);
+        ENTITY_NAMES = new String[entities.length];
+        ENTITY_CHARS = new char[entities.length];
+        for (int i = 0; i < entities.length; i++) {
+            ENTITY_NAMES[i] = entities[i].substring(1);
+            ENTITY_CHARS[i] = escapes.get(entities[i]);
+        }
+    }
+
+    private final Reader mReader;
+    private final CharSequence mText;
+    /** The position in {@link #mText} of the first character not yet in the window */
+    private int mTextPos;
+
+    private final char[] mWindow = new char[WINDOW_SIZE];
+    /** The position in the window of the next character to scan */
+    private int mPos;
+    private int mLimit;
+    private boolean mEndOfInput;
+
+    /** The first characters of the strip tag being skipped, for matching its end tag */
+    private final char[] mTag = new char[TextUtilities.MAX_STRIP_TAG_LENGTH];
+
+    private SnippetExtractor(Reader reader, CharSequence text) {
+        mReader = reader;
+        mText = text;
+    }
+
+    /**
+     * Returns the snippet of the given body.
+     *
+     * @param text the body; may be null
+     * @param html whether the body is HTML, in which case tags and entities are stripped
+     */
+    public static String extract(CharSequence text, boolean html) {
+        if (text == null || text.length() == 0) {
+            return "";
+        }
+        try {
+            return new SnippetExtractor(null, text).extract(html);
+        } catch (IOException e) {
+            // Not thrown when reading a CharSequence
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the snippet of the body read from the given reader, which is read no further than
+     * needed (plus what is buffered) and is not closed.
+     *
+     * @param reader the body
+     * @param html whether the body is HTML, in which case tags and entities are stripped
+     */
+    public static String extract(Reader reader, boolean html) throws IOException {
+        return new SnippetExtractor(reader, null).extract(html);
+    }
+
+    private String extract(boolean html) throws IOException {
+        final char[] snippet = new char[MAX_SNIPPET_LENGTH];
+        int count = 0;
+        // Start with space as last character to avoid leading whitespace
+        char last = ' ';
+
+        while (count < MAX_SNIPPET_LENGTH && (mPos < mLimit || fill(1))) {
+            char c = mWindow[mPos++];
+            if (html) {
+                if (c == '<') {
+                    // Find tags to strip; they will begin with <! or <- or </ or <letter
+                    if (fill(1)) {
+                        final char peek = mWindow[mPos];
+                        if (peek == '!' || peek == '-' || peek == '/'
+                                || Character.isLetter(peek)) {
+                            final int tagLength = fill(STRIP_TAG_LOOKAHEAD) ? matchStripTag() : 0;
+                            // We just skip by everything in a tag; a tag that never ends hides
+                            // the rest of the text
+                            if (!(tagLength == 0 ? skipPast('>') : skipStripTag(tagLength))) {
+                                break;
+                            }
+                            continue;
+                        }
+                    }
+                } else if (c == '&') {
+                    c = decodeEntity();
+                }
+            }
+
+            if (Character.isWhitespace(c) || (c == TextUtilities.NON_BREAKING_SPACE_CHARACTER)) {
+                // The idea is to find the content in the message, not the whitespace, so we'll
+                // turn any combination of contiguous whitespace into a single space
+                if (last == ' ') {
+                    continue;
+                }
+                // Make every whitespace character a simple space
+                c = ' ';
+            } else if ((c == '-' || c == '=') && (last == c)) {
+                // Lots of messages (especially digests) have whole lines of --- or ===
+                // We'll get rid of those duplicates here
+                continue;
+            }
+
+            // After all that, maybe we've got a character for our snippet
+            snippet[count++] = c;
+            last = c;
+        }
+
+        // Lose trailing space and return our snippet
+        if ((count > 0) && (last == ' ')) {
+            count--;
+        }
+        return new String(snippet, 0, count);
+    }
+
+    /**
+     * If the tag name at the current position starts with one of
+     * {@link TextUtilities#STRIP_TAGS}, ignoring ASCII case, returns the length of that strip tag
+     * and copies those characters to {@link #mTag}. Otherwise returns 0.
+     */
+    private int matchStripTag() {
+        for (String stripTag : TextUtilities.STRIP_TAGS) {
+            final int length = stripTag.length();
+            int i = 0;
+            while (i < length && (mWindow[mPos + i] | 0x20) == stripTag.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                System.arraycopy(mWindow, mPos, mTag, 0, length);
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Skips a strip tag, whose name starts at the current position, and its content: up to and
+     * including the '>' of the start tag if it is empty (<code>&lt;tag/&gt;</code>) and otherwise
+     * the '>' that follows the end tag, which is found by its first characters, with the same case
+     * as in the start tag. The end tag may start within the start tag, e.g. in
+     * <code>&lt;script src="/script.js"&gt;</code>.
+     *
+     * @return false if the input ended first
+     */
+    private boolean skipStripTag(int tagLength) throws IOException {
+        // The scan starts at the '<', so the first character before the name is that
+        char prev = '<';
+        // The number of characters of "/tag" matched
+        int matched = 0;
+        boolean endTagFound = false;
+        while (mPos < mLimit || fill(1)) {
+            final char c = mWindow[mPos++];
+            if (c == '>') {
+                if (prev == '/' || endTagFound) {
+                    return true;
+                }
+                break;
+            }
+            if (!endTagFound) {
+                matched = matchEndTag(matched, c, tagLength);
+                endTagFound = matched > tagLength;
+            }
+            prev = c;
+        }
+        if (!endTagFound) {
+            // Look for the end tag after the start tag
+            do {
+                if (!skipPast('/')) {
+                    return false;
+                }
+            } while (!matchTag(tagLength));
+        }
+        return skipPast('>');
+    }
+
+    /**
+     * If the characters at the current position are those of {@link #mTag}, skips them and returns
+     * true.
+     */
+    private boolean matchTag(int tagLength) throws IOException {
+        if (!fill(tagLength)) {
+            return false;
+        }
+        for (int i = 0; i < tagLength; i++) {
+            if (mWindow[mPos + i] != mTag[i]) {
+                return false;
+            }
+        }
+        mPos += tagLength;
+        return true;
+    }
+
+    /**
+     * Skips past the next occurrence of the given character.
+     *
+     * @return false if the input ended first
+     */
+    private boolean skipPast(char target) throws IOException {
+        while (mPos < mLimit || fill(1)) {
+            final char[] window = mWindow;
+            final int limit = mLimit;
+            for (int i = mPos; i < limit; i++) {
+                if (window[i] == target) {
+                    mPos = i + 1;
+                    return true;
+                }
+            }
+            mPos = limit;
+        }
+        return false;
+    }
+
+    /**
+     * Advances the match of "/" + {@link #mTag} by one character. The '/' occurs only at the start
+     * of the pattern, so a mismatch can only restart the match there.
+     */
+    private int matchEndTag(int matched, char c, int tagLength) {
+        if (matched == 0 ? c == '/' : c == mTag[matched - 1]) {
+            return matched + 1;
+        }
+        return c == '/' ? 1 : 0;
+    }
+
+    /**
+     * Decodes the entity whose '&' was just consumed, and skips the rest of it. If there is no
+     * entity there, returns the '&'.
+     */
+    private char decodeEntity() throws IOException {
+        fill(ENTITY_LOOKAHEAD);
+        final int end = Math.min(mLimit, mPos + ENTITY_LOOKAHEAD);
+        int semicolon = -1;
+        for (int i = mPos; i < end; i++) {
+            if (mWindow[i] == ';') {
+                semicolon = i;
+                break;
+            }
+        }
+        if (semicolon < 0) {
+            // This wasn't really an HTML entity
+            return '&';
+        }
+        // The length of the name, without the '&'
+        final int length = semicolon - mPos;
+        final int index = findEntity(mPos, length);
+        if (index >= 0) {
+            mPos = semicolon + 1;
+            return ENTITY_CHARS[index];
+        } else if ((length > 1) && (mWindow[mPos] == '#')) {
+            // &#nn; means ascii nn (decimal) and &#xnn means ascii nn (hex)
+            final int start = mPos;
+            mPos = semicolon + 1;
+            if ((mWindow[start + 1] == 'x') && (length > 2)) {
+                return parseCharacterReference(start + 2, semicolon, 16);
+            }
+            return parseCharacterReference(start + 1, semicolon, 10);
+        }
+        // Worst case, we return the original start character, ampersand
+        return '&';
+    }
+
+    /**
+     * Binary searches {@link #ENTITY_NAMES} for the characters of the window in the given range.
+     */
+    private int findEntity(int start, int length) {
+        int low = 0;
+        int high = ENTITY_NAMES.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final String name = ENTITY_NAMES[middle];
+            final int nameLength = name.length();
+            final int common = Math.min(length, nameLength);
+            int compare = nameLength - length;
+            for (int i = 0; i < common; i++) {
+                final int diff = name.charAt(i) - mWindow[start + i];
+                if (diff != 0) {
+                    compare = diff;
+                    break;
+                }
+            }
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the number of a character reference like {@link Integer#parseInt(String, int)},
+     * returning '?' if it is not a number.
+     */
+    private char parseCharacterReference(int start, int end, int radix) {
+        // The number is at most 7 characters long, so it can't overflow
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final char c = mWindow[i];
+            final int digit = c < 0x80 ? Character.digit(c, radix) : -1;
+            if (digit < 0) {
+                // Signs and non-ASCII digits are rare, so leave them to the platform
+                try {
+                    return (char) Integer.parseInt(new String(mWindow, start, end - start), radix);
+                } catch (NumberFormatException e) {
+                    // We'll just return the ? in this case
+                    return '?';
+                }
+            }
+            value = value * radix + digit;
+        }
+        return start < end ? (char) value : '?';
+    }
+
+    /**
+     * Ensures that at least <code>count</code> characters, up to the size of the window, are
+     * available from the current position, by moving the unread characters to the start of the
+     * window and refilling the rest.
+     *
+     * @return false if the input ends first
+     */
+    private boolean fill(int count) throws IOException {
+        if (mLimit - mPos >= count) {
+            return true;
+        }
+        if (mEndOfInput) {
+            return false;
+        }
+        final int remaining = mLimit - mPos;
+        System.arraycopy(mWindow, mPos, mWindow, 0, remaining);
+        mPos = 0;
+        mLimit = remaining;
+        while (mLimit < count) {
+            final int read = read(mWindow, mLimit, WINDOW_SIZE - mLimit);
+            if (read < 0) {
+                mEndOfInput = true;
+                return false;
+            }
+            mLimit += read;
+        }
+        return true;
+    }
+
+    private int read(char[] buffer, int offset, int length) throws IOException {
+        if (mReader != null) {
+            return mReader.read(buffer, offset, length);
+        }
+        final int textLength = mText.length();
+        if (mTextPos >= textLength) {
+            return -1;
+        }
+        final int end = Math.min(textLength, mTextPos + length);
+        if (mText instanceof String) {
+            ((String) mText).getChars(mTextPos, end, buffer, offset);
+        } else {
+            for (int i = mTextPos; i < end; i++) {
+                buffer[offset + i - mTextPos] = mText.charAt(i);
+            }
+        }
+        final int read = end - mTextPos;
+        mTextPos = end;
+        return read;
+    }
+}
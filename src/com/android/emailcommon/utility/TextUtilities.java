@@ -39,8 +39,6 @@ public class TextUtilities {
     /*package*/ static final String HIGHLIGHT_COLOR_STRING =
         '#' + Integer.toHexString(HIGHLIGHT_COLOR_INT & 0x00FFFFFF);
 
-    // This is how many chars we'll allow in a snippet
-    private static final int MAX_SNIPPET_LENGTH = 200;
     // For some reason, isWhitespace() returns false with the following...
     /*package*/ static final char NON_BREAKING_SPACE_CHARACTER = (char)160;
 
@@ -324,6 +322,8 @@ public class TextUtilities {
      * care about a small amount of text for the snippet.  So it's critically important that we just
      * stop when we've gotten enough; existing methods that exist will go through the entire
      * incoming string, at great (and useless, in this case) expense.
+     *
+     * The work is done by {@link SnippetExtractor}, which can also read the text from a Reader.
      */
 
     public static String makeSnippetFromHtmlText(String text) {
@@ -362,180 +362,38 @@ public class TextUtilities {
     }
 
     public static String makeSnippetFromText(String text, boolean stripHtml) {
-        // Handle null and empty string
-        if (TextUtils.isEmpty(text)) return "";
-
-        final int length = text.length();
-        // Use char[] instead of StringBuilder purely for performance; fewer method calls, etc.
-        char[] buffer = new char[MAX_SNIPPET_LENGTH];
-        // skipCount is an array of a single int; that int is set inside stripHtmlEntity and is
-        // used to determine how many characters can be "skipped" due to the transformation of the
-        // entity to a single character.  When Java allows multiple return values, we can make this
-        // much cleaner :-)
-        int[] skipCount = new int[1];
-        int bufferCount = 0;
-        // Start with space as last character to avoid leading whitespace
-        char last = ' ';
-        // Indicates whether we're in the middle of an HTML tag
-        boolean inTag = false;
-
-        // Walk through the text until we're done with the input OR we've got a large enough snippet
-        for (int i = 0; i < length && bufferCount < MAX_SNIPPET_LENGTH; i++) {
-            char c = text.charAt(i);
-            if (stripHtml && !inTag && (c == '<')) {
-                // Find tags to strip; they will begin with <! or !- or </ or <letter
-                if (i < (length - 1)) {
-                    char peek = text.charAt(i + 1);
-                    if (peek == '!' || peek == '-' || peek == '/' || Character.isLetter(peek)) {
-                        inTag = true;
-                        // Strip content of title, script, style and applet tags
-                        if (i < (length - (MAX_STRIP_TAG_LENGTH + 2))) {
-                            String tag = text.substring(i + 1, i + MAX_STRIP_TAG_LENGTH + 1);
-                            String tagLowerCase = tag.toLowerCase();
-                            boolean stripContent = false;
-                            for (String stripTag: STRIP_TAGS) {
-                                if (tagLowerCase.startsWith(stripTag)) {
-                                    stripContent = true;
-                                    tag = tag.substring(0, stripTag.length());
-                                    break;
-                                }
-                            }
-                            if (stripContent) {
-                                // Look for the end of this tag
-                                int endTagPosition = findTagEnd(text, tag, i);
-                                if (endTagPosition < 0) {
-                                    break;
-                                } else {
-                                    i = endTagPosition;
-                                }
-                            }
-                        }
-                    }
-                }
-            } else if (stripHtml && inTag && (c == '>')) {
-                // Terminate stripping here
-                inTag = false;
-                continue;
-            }
-
-            if (inTag) {
-                // We just skip by everything while we're in a tag
-                continue;
-            } else if (stripHtml && (c == '&')) {
-                // Handle a possible HTML entity here
-                // We always get back a character to use; we also get back a "skip count",
-                // indicating how many characters were eaten from the entity
-                c = stripHtmlEntity(text, i, skipCount);
-                i += skipCount[0];
-            }
-
-            if (Character.isWhitespace(c) || (c == NON_BREAKING_SPACE_CHARACTER)) {
-                // The idea is to find the content in the message, not the whitespace, so we'll
-                // turn any combination of contiguous whitespace into a single space
-                if (last == ' ') {
-                    continue;
-                } else {
-                    // Make every whitespace character a simple space
-                    c = ' ';
-                }
-            } else if ((c == '-' || c == '=') && (last == c)) {
-                // Lots of messages (especially digests) have whole lines of --- or ===
-                // We'll get rid of those duplicates here
-                continue;
-            }
-
-            // After all that, maybe we've got a character for our snippet
-            buffer[bufferCount++] = c;
-            last = c;
-        }
-
-        // Lose trailing space and return our snippet
-        if ((bufferCount > 0) && (last == ' ')) {
-            bufferCount--;
-        }
-        return new String(buffer, 0, bufferCount);
-    }
-
-    static /*package*/ char stripHtmlEntity(String text, int pos, int[] skipCount) {
-        int length = text.length();
-        // Ugly, but we store our skip count in this array; we can't use a static here, because
-        // multiple threads might be calling in
-        skipCount[0] = 0;
-        // All entities are <= 8 characters long, so that's how far we'll look for one (+ & and ;)
-        int end = pos + 10;
-        String entity = null;
-        // Isolate the entity
-        for (int i = pos; (i < length) && (i < end); i++) {
-            if (text.charAt(i) == ';') {
-                entity = text.substring(pos, i);
-                break;
-            }
-        }
-        if (entity == null) {
-            // This wasn't really an HTML entity
-            return '&';
-        } else {
-            // Skip count is the length of the entity
-            Character mapping = ESCAPE_STRINGS.get(entity);
-            int entityLength = entity.length();
-            if (mapping != null) {
-                skipCount[0] = entityLength;
-                return mapping;
-            } else if ((entityLength > 2) && (entity.charAt(1) == '#')) {
-                // &#nn; means ascii nn (decimal) and &#xnn means ascii nn (hex)
-                char c = '?';
-                try {
-                    int i;
-                    if ((entity.charAt(2) == 'x') && (entityLength > 3)) {
-                        i = Integer.parseInt(entity.substring(3), 16);
-                    } else {
-                        i = Integer.parseInt(entity.substring(2));
-                    }
-                    c = (char)i;
-                } catch (NumberFormatException e) {
-                    // We'll just return the ? in this case
-                }
-                skipCount[0] = entityLength;
-                return c;
-            }
-        }
-        // Worst case, we return the original start character, ampersand
-        return '&';
+        return SnippetExtractor.extract(text, stripHtml);
     }
 
     /**
      * Given a string of HTML text and a query containing any number of search terms, returns
      * an HTML string in which those search terms are highlighted (intended for use in a WebView)
      *
+     * To highlight many messages with the same query, compile it once with
+     * {@link SearchTermHighlighter#compile(String)} instead.
+     *
      * @param text the HTML text to process
      * @param query the search terms
      * @return HTML text with the search terms highlighted
      */
     @VisibleForTesting
     public static String highlightTermsInHtml(String text, String query) {
-        try {
-            return highlightTerms(text, query, true).toString();
-        } catch (IOException e) {
-            // Can't happen, but we must catch this
-            return text;
-        }
+        return SearchTermHighlighter.compile(query).highlightHtml(text);
     }
 
     /**
      * Given a string of plain text and a query containing any number of search terms, returns
      * a CharSequence in which those search terms are highlighted (intended for use in a TextView)
      *
+     * To highlight many messages with the same query, compile it once with
+     * {@link SearchTermHighlighter#compile(String)} instead.
+     *
      * @param text the text to process
      * @param query the search terms
      * @return a CharSequence with the search terms highlighted
      */
     public static CharSequence highlightTermsInText(String text, String query) {
-        try {
-            return highlightTerms(text, query, false);
-        } catch (IOException e) {
-            // Can't happen, but we must catch this
-            return text;
-        }
+        return SearchTermHighlighter.compile(query).highlightText(text);
     }
 
     static class SearchTerm {
@@ -556,6 +414,9 @@ public class TextUtilities {
      * Generate a version of the incoming text in which all search terms in a query are highlighted.
      * If the input is HTML, we return a StringBuilder with additional markup as required
      * If the input is text, we return a SpannableStringBuilder with additional spans as required
+     * <p>
+     * This compares every term against every character; {@link SearchTermHighlighter} is used
+     * instead by {@link #highlightTermsInHtml} and {@link #highlightTermsInText}.
      *
      * @param text the text to be processed
      * @param query the query, which can contain multiple terms separated by whitespace
@@ -17,6 +17,7 @@
 
 package com.android.mail;
 
+import com.android.mail.perf.Metrics;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 
@@ -163,6 +164,9 @@ public class MailLogService extends Service {
 
     @Override
     protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (Metrics.isEnabled()) {
+            Metrics.dump(writer);
+        }
         if (!DEBUG_ENABLED) {
             return;
         }
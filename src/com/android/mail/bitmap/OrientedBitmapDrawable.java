@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.bitmap;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import com.android.bitmap.ReusableBitmap;
+import com.android.mail.utils.RectUtils;
+
+/**
+ * Draws a {@link ReusableBitmap} upright, by rotating the canvas by the bitmap's orientation
+ * rather than by making a rotated copy of it. The intrinsic size is that of the upright image,
+ * scaled for the display density like a {@link android.graphics.drawable.BitmapDrawable}, so the
+ * drawable can be scaled and cropped by an {@link android.widget.ImageView}.
+ */
+public class OrientedBitmapDrawable extends Drawable {
+    private final ReusableBitmap mBitmap;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mRotatedBounds = new Rect();
+    private final int mIntrinsicWidth;
+    private final int mIntrinsicHeight;
+
+    public OrientedBitmapDrawable(final Resources res, final ReusableBitmap bitmap) {
+        mBitmap = bitmap;
+        final int densityDpi = res.getDisplayMetrics().densityDpi;
+        final int width = bitmap.bmp.getScaledWidth(densityDpi);
+        final int height = bitmap.bmp.getScaledHeight(densityDpi);
+        if (isSideways()) {
+            mIntrinsicWidth = height;
+            mIntrinsicHeight = width;
+        } else {
+            mIntrinsicWidth = width;
+            mIntrinsicHeight = height;
+        }
+    }
+
+    private boolean isSideways() {
+        final int orientation = mBitmap.getOrientation();
+        return orientation == 90 || orientation == 270;
+    }
+
+    @Override
+    public void draw(final Canvas canvas) {
+        final Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            return;
+        }
+        final int orientation = mBitmap.getOrientation();
+        if (orientation == 0) {
+            canvas.drawBitmap(mBitmap.bmp, null, bounds, mPaint);
+            return;
+        }
+
+        // We rotate the canvas, so we also have to rotate the bounds.
+        mRotatedBounds.set(bounds);
+        RectUtils.rotateRect(orientation, bounds.centerX(), bounds.centerY(), mRotatedBounds);
+
+        canvas.save();
+        canvas.rotate(orientation, bounds.centerX(), bounds.centerY());
+        canvas.drawBitmap(mBitmap.bmp, null, mRotatedBounds, mPaint);
+        canvas.restore();
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mIntrinsicWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mIntrinsicHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (alpha != mPaint.getAlpha()) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return (mBitmap.bmp.hasAlpha() || mPaint.getAlpha() < 255) ?
+                PixelFormat.TRANSLUCENT : PixelFormat.OPAQUE;
+    }
+}
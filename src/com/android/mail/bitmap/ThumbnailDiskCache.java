@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.bitmap;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.android.bitmap.ReusableBitmap;
+import com.android.mail.lib.base.ByteArrays;
+import com.android.mail.perf.Counter;
+import com.android.mail.perf.Metrics;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A disk cache of finished attachment thumbnails, keyed by {@link ThumbnailRequest}, so that
+ * tiles seen before show without decoding the full image again, even in a new process.
+ * <p>
+ * Thumbnails are stored compressed and as decoded, with their EXIF orientation kept in the file
+ * name; they are drawn upright by {@link OrientedBitmapDrawable}. The least recently used are
+ * evicted once the files take more than {@link #MAX_BYTES}.
+ * <p>
+ * Files are read and written on the thread that calls, so this must not be used from the UI
+ * thread.
+ */
+public class ThumbnailDiskCache {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    private static final String DIRECTORY = "thumbnails";
+    private static final String SUFFIX = ".thumbnail";
+    private static final String TEMP_PREFIX = "tmp-";
+    private static final char ORIENTATION_SEPARATOR = '-';
+
+    /** The thumbnails are kept up to this many bytes in total */
+    private static final long MAX_BYTES = 10 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    private static final Counter sHits = Metrics.counter("thumbnail_disk_cache/hits");
+    private static final Counter sMisses = Metrics.counter("thumbnail_disk_cache/misses");
+
+    private static ThumbnailDiskCache sInstance;
+
+    private final File mDirectory;
+    /** The cached thumbnails by hash, least recently used first. Guarded by this. */
+    private final LinkedHashMap<String, Thumbnail> mEntries =
+            new LinkedHashMap<String, Thumbnail>(16, 0.75f, true);
+    /** The total size of the cached files. Guarded by this. */
+    private long mTotalBytes;
+
+    /**
+     * A cached thumbnail: the file of its compressed image, and the orientation to draw it in.
+     */
+    public static class Thumbnail {
+        public final File file;
+        public final int orientation;
+        final long size;
+
+        Thumbnail(File file, int orientation, long size) {
+            this.file = file;
+            this.orientation = orientation;
+            this.size = size;
+        }
+    }
+
+    public static synchronized ThumbnailDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailDiskCache(new File(context.getCacheDir(), DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    private ThumbnailDiskCache(File directory) {
+        mDirectory = directory;
+        mDirectory.mkdirs();
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Files are touched when they are used, so oldest first is least recently used first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified > rhsModified ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            final String name = file.getName();
+            final int separator = name.lastIndexOf(ORIENTATION_SEPARATOR);
+            int orientation = -1;
+            if (!name.startsWith(TEMP_PREFIX) && name.endsWith(SUFFIX) && separator > 0) {
+                try {
+                    orientation = Integer.parseInt(
+                            name.substring(separator + 1, name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+            if (orientation < 0) {
+                // Left over from an interrupted write
+                file.delete();
+                continue;
+            }
+            final Thumbnail entry = new Thumbnail(file, orientation, file.length());
+            mEntries.put(name.substring(0, separator), entry);
+            mTotalBytes += entry.size;
+        }
+    }
+
+    /**
+     * @return the cached thumbnail for the request, or null if there is none
+     */
+    public synchronized Thumbnail get(ThumbnailRequest key) {
+        final String hash = hash(key);
+        final Thumbnail entry = mEntries.get(hash);
+        if (entry == null) {
+            sMisses.increment();
+            return null;
+        }
+        if (!entry.file.setLastModified(System.currentTimeMillis()) && !entry.file.exists()) {
+            // Deleted behind our back
+            mEntries.remove(hash);
+            mTotalBytes -= entry.size;
+            sMisses.increment();
+            return null;
+        }
+        sHits.increment();
+        return entry;
+    }
+
+    /**
+     * Caches a finished thumbnail for the request. Failures are logged, since the thumbnail can
+     * always be decoded again.
+     */
+    public void put(ThumbnailRequest key, ReusableBitmap thumbnail) {
+        final String hash = hash(key);
+        final Bitmap bitmap = thumbnail.bmp;
+        File temp = null;
+        OutputStream out = null;
+        try {
+            temp = File.createTempFile(TEMP_PREFIX, null, mDirectory);
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            // Keep transparency, which JPEG cannot
+            final boolean compressed = bitmap.hasAlpha()
+                    ? bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+                    : bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+            if (compressed) {
+                commit(temp, hash, thumbnail.getOrientation());
+                temp = null;
+            }
+        } catch (IOException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to cache thumbnail %s", key);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing more to do
+                }
+            }
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Moves a written thumbnail into place, replacing any thumbnail cached for the same request.
+     */
+    private synchronized void commit(File temp, String hash, int orientation)
+            throws IOException {
+        final File file = new File(mDirectory, hash + ORIENTATION_SEPARATOR + orientation + SUFFIX);
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+        final Thumbnail previous = mEntries.remove(hash);
+        if (previous != null) {
+            mTotalBytes -= previous.size;
+            if (!previous.file.equals(file)) {
+                previous.file.delete();
+            }
+        }
+        final Thumbnail entry = new Thumbnail(file, orientation, file.length());
+        mEntries.put(hash, entry);
+        mTotalBytes += entry.size;
+        LogUtils.d(LOG_TAG, "Cached %d byte thumbnail as %s", entry.size, file);
+
+        final Iterator<Thumbnail> iterator = mEntries.values().iterator();
+        while (mTotalBytes > MAX_BYTES && iterator.hasNext()) {
+            final Thumbnail eldest = iterator.next();
+            iterator.remove();
+            mTotalBytes -= eldest.size;
+            eldest.file.delete();
+        }
+    }
+
+    private static String hash(ThumbnailRequest key) {
+        try {
+            return ByteArrays.toHexString(
+                    MessageDigest.getInstance("SHA-1").digest(key.getDiskKey().getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            // Every platform has SHA-1
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            // Every platform has UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.bitmap;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import com.android.bitmap.DecodeTask;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A request for the thumbnail of an attachment tile: the image at a URI, sized to fill a tile of
+ * the given dimensions. Requests are equal when they are for the same URI and size, so they serve
+ * as keys of both the in-memory and the {@link ThumbnailDiskCache disk} thumbnail caches, which
+ * outlive activities; so requests should be made with the application context.
+ */
+public class ThumbnailRequest implements DecodeTask.Request {
+    private final Context mContext;
+    public final Uri mUri;
+    public final int mDestW;
+    public final int mDestH;
+
+    public ThumbnailRequest(final Context context, final Uri uri, final int destW,
+            final int destH) {
+        mContext = context;
+        mUri = uri;
+        mDestW = destW;
+        mDestH = destH;
+    }
+
+    /**
+     * Returns a string that identifies this request across processes, for naming the files of
+     * the disk cache.
+     */
+    public String getDiskKey() {
+        return mUri + "#" + mDestW + "x" + mDestH;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || !(o instanceof ThumbnailRequest)) {
+            return false;
+        }
+        final ThumbnailRequest other = (ThumbnailRequest) o;
+        return mUri.equals(other.mUri) && mDestW == other.mDestW && mDestH == other.mDestH;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 17;
+        hash += 31 * hash + mUri.hashCode();
+        hash += 31 * hash + mDestW;
+        hash += 31 * hash + mDestH;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        sb.append(super.toString());
+        sb.append(" uri=");
+        sb.append(mUri);
+        sb.append(" w=");
+        sb.append(mDestW);
+        sb.append(" h=");
+        sb.append(mDestH);
+        sb.append("]");
+        return sb.toString();
+    }
+
+    /**
+     * Thumbnails are decoded from a single stream, so no file descriptor is offered.
+     */
+    @Override
+    public AssetFileDescriptor createFd() throws IOException {
+        return null;
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+        return mContext.getContentResolver().openInputStream(mUri);
+    }
+}
@@ -38,7 +38,10 @@ import android.os.SystemClock;
 import android.support.v4.util.SparseArrayCompat;
 import android.text.TextUtils;
 
-import com.android.mail.content.ThreadSafeCursorWrapper;
+import com.android.mail.content.ColumnarSnapshotCursor;
+import com.android.mail.perf.Counter;
+import com.android.mail.perf.Histogram;
+import com.android.mail.perf.Metrics;
 import com.android.mail.providers.Conversation;
 import com.android.mail.providers.Folder;
 import com.android.mail.providers.FolderList;
@@ -99,6 +102,9 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
      */
     private static final int URI_COLUMN_INDEX = UIProvider.CONVERSATION_URI_COLUMN;
 
+    private static final Histogram PERF_QUERY = Metrics.histogram("conversation_cursor/query");
+    private static final Counter PERF_QUERY_ROWS = Metrics.counter("conversation_cursor/rows");
+
     private static final boolean DEBUG_DUPLICATE_KEYS = true;
 
     /** The resolver for the cursor instantiator's context */
@@ -261,10 +267,10 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
     }
 
     /**
-     * Simple wrapper for a cursor that provides methods for quickly determining
-     * the existence of a row.
+     * The rows of the underlying query, copied into a {@link ColumnarSnapshotCursor} so that the
+     * {@link CacheLoaderTask} and the UI thread can read them concurrently without locking.
      */
-    private static class UnderlyingCursorWrapper extends ThreadSafeCursorWrapper
+    private static class UnderlyingCursorWrapper extends ColumnarSnapshotCursor
             implements DrawIdler.IdleListener {
 
         /**
@@ -371,6 +377,14 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         private boolean mCursorUpdated = false;
 
         public UnderlyingCursorWrapper(Cursor result) {
+            this(result, SystemClock.uptimeMillis());
+        }
+
+        /**
+         * @param start the time the snapshot started being built, so the pre-loading time
+         *     includes copying the columns
+         */
+        private UnderlyingCursorWrapper(Cursor result, long start) {
             super(result);
 
             // Register the content observer immediately, as we want to make sure that we don't miss
@@ -382,7 +396,6 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 mUpdateObserverRegistered = true;
             }
 
-            final long start = SystemClock.uptimeMillis();
             final Map<String, Integer> uriPositionMap;
             final Map<Long, Integer> idPositionMap;
             final UnderlyingRowData[] cache;
@@ -447,8 +460,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
             mRowCache = Collections.unmodifiableList(Arrays.asList(cache));
             final long end = SystemClock.uptimeMillis();
-            LogUtils.i(LOG_TAG, "*** ConversationCursor pre-loading took %sms n=%s", (end-start),
-                    count);
+            LogUtils.i(LOG_TAG, "*** ConversationCursor pre-loading took %sms n=%s bytes=%s",
+                    (end-start), count, getMemoryFootprint());
 
             Utils.traceEndSection();
 
@@ -629,11 +642,16 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         long time = System.currentTimeMillis();
 
         Utils.traceBeginSection("query");
+        PERF_QUERY.begin();
         final Cursor result = mResolver.query(uri, qProjection, null, null, null);
+        PERF_QUERY.end();
         Utils.traceEndSection();
         if (result == null) {
             LogUtils.w(LOG_TAG, "doQuery returning null cursor, uri: " + uri);
-        } else if (DEBUG) {
+        } else {
+            PERF_QUERY_ROWS.add(result.getCount());
+        }
+        if (result != null && DEBUG) {
             time = System.currentTimeMillis() - time;
             LogUtils.i(LOG_TAG, "ConversationCursor query: %s, %dms, %d results",
                     uri, time, result.getCount());
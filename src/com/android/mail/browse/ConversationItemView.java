@@ -72,7 +72,8 @@ import com.android.mail.analytics.Analytics;
 import com.android.mail.bitmap.AttachmentDrawable;
 import com.android.mail.bitmap.AttachmentGridDrawable;
 import com.android.mail.browse.ConversationItemViewModel.SenderFragment;
-import com.android.mail.perf.Timer;
+import com.android.mail.perf.Histogram;
+import com.android.mail.perf.Metrics;
 import com.android.mail.photomanager.ContactPhotoManager;
 import com.android.mail.photomanager.ContactPhotoManager.ContactIdentifier;
 import com.android.mail.photomanager.PhotoManager.PhotoIdentifier;
@@ -109,16 +110,13 @@ import java.util.List;
 public class ConversationItemView extends View
         implements SwipeableItemView, ToggleableItem, InvalidateCallback, OnScrollListener {
 
-    // Timer.
-    private static int sLayoutCount = 0;
-    private static Timer sTimer; // Create the sTimer here if you need to do
-                                 // perf analysis.
-    private static final int PERF_LAYOUT_ITERATIONS = 50;
-    private static final String PERF_TAG_LAYOUT = "CCHV.layout";
-    private static final String PERF_TAG_CALCULATE_TEXTS_BITMAPS = "CCHV.txtsbmps";
-    private static final String PERF_TAG_CALCULATE_SENDER_SUBJECT = "CCHV.sendersubj";
-    private static final String PERF_TAG_CALCULATE_FOLDERS = "CCHV.folders";
-    private static final String PERF_TAG_CALCULATE_COORDINATES = "CCHV.coordinates";
+    // Metrics.
+    private static final Histogram PERF_BIND = Metrics.histogram("list/bind");
+    private static final Histogram PERF_LAYOUT = Metrics.histogram("list/layout");
+    private static final Histogram PERF_CALCULATE_TEXTS_BITMAPS =
+            Metrics.histogram("list/layout/texts_bitmaps");
+    private static final Histogram PERF_CALCULATE_COORDINATES =
+            Metrics.histogram("list/layout/coordinates");
     private static final String LOG_TAG = LogTag.getLogTag();
 
     // Static bitmaps.
@@ -518,12 +516,14 @@ public class ConversationItemView extends View
             final boolean swipeEnabled, final boolean priorityArrowEnabled,
             final AnimatedAdapter adapter) {
         Utils.traceBeginSection("CIVC.bind");
+        PERF_BIND.begin();
         bind(ConversationItemViewModel.forConversation(mAccount, conversation), activity,
                 conversationListListener, null /* conversationItemAreaClickListener */, set, folder,
                 checkboxOrSenderImage, showAttachmentPreviews, parallaxSpeedAlternative,
                 parallaxDirectionAlternative, swipeEnabled, priorityArrowEnabled, adapter,
                 -1 /* backgroundOverrideResId */,
                 null /* photoBitmap */);
+        PERF_BIND.end();
         Utils.traceEndSection();
     }
 
@@ -701,18 +701,6 @@ public class ConversationItemView extends View
         return mHeader.conversation;
     }
 
-    private static void startTimer(String tag) {
-        if (sTimer != null) {
-            sTimer.start(tag);
-        }
-    }
-
-    private static void pauseTimer(String tag) {
-        if (sTimer != null) {
-            sTimer.pause(tag);
-        }
-    }
-
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         Utils.traceBeginSection("CIVC.measure");
@@ -746,7 +734,7 @@ public class ConversationItemView extends View
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        startTimer(PERF_TAG_LAYOUT);
+        PERF_LAYOUT.begin();
         Utils.traceBeginSection("CIVC.layout");
 
         super.onLayout(changed, left, top, right, bottom);
@@ -767,12 +755,7 @@ public class ConversationItemView extends View
         }
         mHeader.validate();
 
-        pauseTimer(PERF_TAG_LAYOUT);
-        if (sTimer != null && ++sLayoutCount >= PERF_LAYOUT_ITERATIONS) {
-            sTimer.dumpResults();
-            sTimer = new Timer();
-            sLayoutCount = 0;
-        }
+        PERF_LAYOUT.end();
         Utils.traceEndSection();
     }
 
@@ -798,7 +781,7 @@ public class ConversationItemView extends View
     }
 
     private void calculateTextsAndBitmaps() {
-        startTimer(PERF_TAG_CALCULATE_TEXTS_BITMAPS);
+        PERF_CALCULATE_TEXTS_BITMAPS.begin();
 
         if (mSelectedConversationSet != null) {
             mSelected = mSelectedConversationSet.contains(mHeader.conversation);
@@ -829,10 +812,10 @@ public class ConversationItemView extends View
             mHeader.displayableSenderEmails = new ArrayList<String>();
             mHeader.displayableSenderNames = new ArrayList<String>();
             mHeader.styledSenders = new ArrayList<SpannableString>();
-            SendersView.format(context, mHeader.conversation.conversationInfo,
-                    mHeader.messageInfoString.toString(), maxChars, mHeader.styledSenders,
-                    mHeader.displayableSenderNames, mHeader.displayableSenderEmails, mAccount,
-                    true);
+            SendersView.format(context, mHeader.conversation.id,
+                    mHeader.conversation.conversationInfo, mHeader.messageInfoString.toString(),
+                    maxChars, mHeader.styledSenders, mHeader.displayableSenderNames,
+                    mHeader.displayableSenderEmails, mAccount, true);
 
             if (mHeader.displayableSenderEmails.isEmpty() && mHeader.hasDraftMessage) {
                 mHeader.displayableSenderEmails.add(mAccount);
@@ -866,13 +849,9 @@ public class ConversationItemView extends View
         }
 
         if (mHeader.isLayoutValid()) {
-            pauseTimer(PERF_TAG_CALCULATE_TEXTS_BITMAPS);
+            PERF_CALCULATE_TEXTS_BITMAPS.end();
             return;
         }
-        startTimer(PERF_TAG_CALCULATE_FOLDERS);
-
-
-        pauseTimer(PERF_TAG_CALCULATE_FOLDERS);
 
         // Paper clip icon.
         mHeader.paperclip = null;
@@ -880,10 +859,7 @@ public class ConversationItemView extends View
             mHeader.paperclip = ATTACHMENT;
         }
 
-        startTimer(PERF_TAG_CALCULATE_SENDER_SUBJECT);
-
-        pauseTimer(PERF_TAG_CALCULATE_SENDER_SUBJECT);
-        pauseTimer(PERF_TAG_CALCULATE_TEXTS_BITMAPS);
+        PERF_CALCULATE_TEXTS_BITMAPS.end();
     }
 
     private boolean isAttachmentPreviewsEnabled() {
@@ -1104,7 +1080,7 @@ public class ConversationItemView extends View
     }
 
     private void calculateCoordinates() {
-        startTimer(PERF_TAG_CALCULATE_COORDINATES);
+        PERF_CALCULATE_COORDINATES.begin();
 
         sPaint.setTextSize(mCoordinates.dateFontSize);
         sPaint.setTypeface(Typeface.DEFAULT);
@@ -1179,7 +1155,7 @@ public class ConversationItemView extends View
             mSendersWidth = 0;
         }
 
-        pauseTimer(PERF_TAG_CALCULATE_COORDINATES);
+        PERF_CALCULATE_COORDINATES.end();
     }
 
     // The rules for displaying ellipsized senders are as follows:
@@ -47,6 +47,8 @@ import com.google.common.base.Objects;
 public final class ConversationMessage extends Message {
 
     private transient ConversationController mController;
+    /** Memoized {@link #getBodyAsHtml()}, which converts plain text bodies to HTML. */
+    private transient String mBodyAsHtml;
 
     private ConversationMessage(Cursor cursor) {
         super(cursor);
@@ -61,6 +63,20 @@ public final class ConversationMessage extends Message {
         mController = controller;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Messages from a cursor never change their body, so the result is computed once. This lets
+     * {@link ConversationPrefetcher} render bodies ahead of time, and re-renders reuse it.
+     */
+    @Override
+    public String getBodyAsHtml() {
+        if (mBodyAsHtml == null) {
+            mBodyAsHtml = super.getBodyAsHtml();
+        }
+        return mBodyAsHtml;
+    }
+
     public Conversation getConversation() {
         return mController != null ? mController.getConversation() : null;
     }
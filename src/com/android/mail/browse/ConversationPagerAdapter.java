@@ -22,6 +22,7 @@ import android.app.FragmentManager;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.DataSetObserver;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.support.v4.view.ViewPager;
@@ -38,6 +39,9 @@ import com.android.mail.ui.ConversationViewFragment;
 import com.android.mail.ui.SecureConversationViewFragment;
 import com.android.mail.utils.FragmentStatePagerAdapter2;
 import com.android.mail.utils.LogUtils;
+import com.google.common.collect.Lists;
+
+import java.util.List;
 
 public class ConversationPagerAdapter extends FragmentStatePagerAdapter2
         implements ViewPager.OnPageChangeListener {
@@ -99,6 +103,14 @@ public class ConversationPagerAdapter extends FragmentStatePagerAdapter2
      */
     private int mLastKnownCount;
 
+    /**
+     * Loads the messages of the conversations around the current one once the pager settles.
+     * Created with the pager, since the adapter has no other handle on a context.
+     */
+    private ConversationPrefetcher mPrefetcher;
+    /** The position the pager last settled on, to tell which way the user is swiping. */
+    private int mLastSettledPosition = -1;
+
     private static final String LOG_TAG = ConversationPagerController.LOG_TAG;
 
     private static final String BUNDLE_DETACHED_MODE =
@@ -414,6 +426,12 @@ public class ConversationPagerAdapter extends FragmentStatePagerAdapter2
         mPager = pager;
         if (mPager != null) {
             mPager.setOnPageChangeListener(this);
+            if (mPrefetcher == null) {
+                mPrefetcher = new ConversationPrefetcher(
+                        mPager.getContext().getApplicationContext().getContentResolver());
+            }
+        } else if (mPrefetcher != null) {
+            mPrefetcher.cancel();
         }
     }
 
@@ -455,6 +473,9 @@ public class ConversationPagerAdapter extends FragmentStatePagerAdapter2
         }
         mLastKnownCount = getCount();
         mStopListeningMode = true;
+        if (mPrefetcher != null) {
+            mPrefetcher.cancel();
+        }
         LogUtils.d(LOG_TAG, "CPA.stopListening, this=%s", this);
     }
 
@@ -481,7 +502,46 @@ public class ConversationPagerAdapter extends FragmentStatePagerAdapter2
 
     @Override
     public void onPageScrollStateChanged(int state) {
-        // no-op
+        if (state == ViewPager.SCROLL_STATE_IDLE && mPager != null) {
+            prefetchAround(mPager.getCurrentItem());
+        }
+    }
+
+    /**
+     * Prefetches the messages of the conversations the user is likely to swipe to next: the one
+     * ahead in the swipe direction, the one behind, and the one after the next (whose fragment
+     * the pager will create during the next swipe). Conversations whose fragment already has its
+     * messages are skipped.
+     */
+    private void prefetchAround(int position) {
+        if (mPrefetcher == null || mStopListeningMode || mDetachedMode || mSingletonMode) {
+            return;
+        }
+        final ConversationCursor cursor = getCursor();
+        if (isPagingDisabled(cursor)) {
+            return;
+        }
+        final int direction = position < mLastSettledPosition ? -1 : 1;
+        mLastSettledPosition = position;
+
+        final List<Uri> uris = Lists.newArrayListWithCapacity(3);
+        for (int offset : new int[] { direction, -direction, 2 * direction }) {
+            final int target = position + offset;
+            final Fragment f = getFragmentAt(target);
+            if (f instanceof AbstractConversationViewFragment
+                    && ((AbstractConversationViewFragment) f).getMessageCursor() != null) {
+                continue;
+            }
+            if (!cursor.moveToPosition(target)) {
+                continue;
+            }
+            final Conversation c = cursor.getConversation();
+            // Remote conversations go to the network, which only the visible fragment should do
+            if (!c.isRemote && c.messageListUri != null) {
+                uris.add(c.messageListUri);
+            }
+        }
+        mPrefetcher.prefetch(uris);
     }
 
     // update the pager dataset as the Controller's cursor changes
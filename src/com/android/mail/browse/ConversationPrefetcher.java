@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import com.android.mail.providers.UIProvider;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the messages of the conversations around the one being read, so that swiping to them does
+ * not have to wait for a fresh message query. Each prefetched {@link MessageCursor} has every
+ * {@link ConversationMessage} built and its body HTML rendered (see
+ * {@link ConversationMessage#getBodyAsHtml()}), and is kept in a small process-wide cache until a
+ * message loader claims it with {@link #take(Uri)}.
+ * <p>
+ * A cached cursor is dropped as soon as its content changes, so whatever {@link #take(Uri)} returns
+ * is as current as a new query would be.
+ */
+public class ConversationPrefetcher {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /** Enough for both neighbours of the current conversation, plus the one after the next. */
+    private static final int MAX_ENTRIES = 4;
+
+    /** Prefetched cursors by message list uri, least recently used first. Guarded by itself. */
+    private static final LinkedHashMap<Uri, Entry> sCache =
+            new LinkedHashMap<Uri, Entry>(MAX_ENTRIES, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Uri, Entry> eldest) {
+                    if (size() > MAX_ENTRIES) {
+                        eldest.getValue().discard();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    private final ContentResolver mResolver;
+    private PrefetchTask mTask;
+
+    public ConversationPrefetcher(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Removes and returns the prefetched cursor for the given message list uri, or returns null if
+     * there is none. The caller owns the returned cursor and must close it.
+     */
+    public static MessageCursor take(Uri messageListUri) {
+        final Entry entry;
+        synchronized (sCache) {
+            entry = sCache.remove(messageListUri);
+        }
+        if (entry == null) {
+            return null;
+        }
+        entry.cursor.unregisterContentObserver(entry);
+        LogUtils.d(LOG_TAG, "Using prefetched messages for %s, state=%d", messageListUri,
+                entry.stateHashCode);
+        return entry.cursor;
+    }
+
+    /**
+     * Returns whether a prefetched cursor is waiting for the given message list uri.
+     */
+    public static boolean contains(Uri messageListUri) {
+        synchronized (sCache) {
+            return sCache.containsKey(messageListUri);
+        }
+    }
+
+    /**
+     * Starts prefetching the given message list uris, in order, replacing any prefetch that is
+     * still running. Must be called from the UI thread.
+     */
+    public void prefetch(List<Uri> messageListUris) {
+        cancel();
+        if (messageListUris.isEmpty()) {
+            return;
+        }
+        mTask = new PrefetchTask(messageListUris);
+        mTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Stops any prefetch that is running. Cursors that were already prefetched stay cached.
+     */
+    public void cancel() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+    }
+
+    private MessageCursor load(Uri messageListUri) {
+        final Cursor inner = mResolver.query(messageListUri, UIProvider.MESSAGE_PROJECTION, null,
+                null, null);
+        if (inner == null) {
+            return null;
+        }
+        final MessageCursor cursor = new MessageCursor(inner);
+        if (!cursor.isLoaded()) {
+            // Still waiting on the network; the loader will have to query again anyway
+            cursor.close();
+            return null;
+        }
+        int pos = -1;
+        while (cursor.moveToPosition(++pos)) {
+            cursor.getMessage().getBodyAsHtml();
+        }
+        return cursor;
+    }
+
+    private static void put(Uri messageListUri, MessageCursor cursor) {
+        final Entry entry = new Entry(messageListUri, cursor);
+        cursor.registerContentObserver(entry);
+        final Entry previous;
+        synchronized (sCache) {
+            previous = sCache.put(messageListUri, entry);
+        }
+        if (previous != null) {
+            previous.discard();
+        }
+    }
+
+    private class PrefetchTask extends AsyncTask<Void, Void, Void> {
+        private final List<Uri> mUris;
+
+        PrefetchTask(List<Uri> uris) {
+            mUris = uris;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            for (Uri uri : mUris) {
+                if (isCancelled()) {
+                    break;
+                }
+                if (contains(uri)) {
+                    continue;
+                }
+                final MessageCursor cursor = load(uri);
+                if (cursor == null) {
+                    continue;
+                }
+                if (isCancelled()) {
+                    cursor.close();
+                    break;
+                }
+                put(uri, cursor);
+                LogUtils.d(LOG_TAG, "Prefetched %d messages for %s", cursor.getCount(), uri);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A cached cursor, which drops itself from the cache when its content changes.
+     */
+    private static class Entry extends ContentObserver {
+        final Uri uri;
+        final MessageCursor cursor;
+        final int stateHashCode;
+
+        Entry(Uri uri, MessageCursor cursor) {
+            super(null);
+            this.uri = uri;
+            this.cursor = cursor;
+            this.stateHashCode = cursor.getStateHashCode();
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            final boolean removed;
+            synchronized (sCache) {
+                removed = sCache.get(uri) == this && sCache.remove(uri) != null;
+            }
+            if (removed) {
+                LogUtils.d(LOG_TAG, "Dropping stale prefetched messages for %s", uri);
+                discard();
+            }
+        }
+
+        void discard() {
+            cursor.unregisterContentObserver(this);
+            cursor.close();
+        }
+    }
+}
@@ -21,7 +21,6 @@ import android.app.FragmentManager;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
@@ -30,6 +29,7 @@ import android.view.View.OnClickListener;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 
+import com.android.bitmap.ReusableBitmap;
 import com.android.ex.photo.util.ImageUtils;
 import com.android.mail.R;
 import com.android.mail.analytics.Analytics;
@@ -192,7 +192,7 @@ public class MessageAttachmentTile extends AttachmentTile implements OnClickList
     }
 
     @Override
-    public void setThumbnail(Bitmap result) {
+    public void setThumbnail(ReusableBitmap result) {
         super.setThumbnail(result);
         mTextContainer.setVisibility(GONE);
     }
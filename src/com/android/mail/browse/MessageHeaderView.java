@@ -52,7 +52,8 @@ import com.android.mail.R;
 import com.android.mail.browse.ConversationViewAdapter.BorderItem;
 import com.android.mail.browse.ConversationViewAdapter.MessageHeaderItem;
 import com.android.mail.compose.ComposeActivity;
-import com.android.mail.perf.Timer;
+import com.android.mail.perf.Histogram;
+import com.android.mail.perf.Metrics;
 import com.android.mail.photomanager.LetterTileProvider;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.Address;
@@ -84,12 +85,10 @@ public class MessageHeaderView extends LinearLayout implements OnClickListener,
     private static final int SHOW_IMAGE_PROMPT_ONCE = 1;
     private static final int SHOW_IMAGE_PROMPT_ALWAYS = 2;
 
-    private static final String HEADER_INFLATE_TAG = "message header inflate";
-    private static final String HEADER_ADDVIEW_TAG = "message header addView";
-    private static final String HEADER_RENDER_TAG = "message header render";
-    private static final String PREMEASURE_TAG = "message header pre-measure";
-    private static final String LAYOUT_TAG = "message header layout";
-    private static final String MEASURE_TAG = "message header measure";
+    private static final Histogram PERF_RENDER = Metrics.histogram("conversation/header/render");
+    private static final Histogram PERF_LAYOUT = Metrics.histogram("conversation/header/layout");
+    private static final Histogram PERF_MEASURE =
+            Metrics.histogram("conversation/header/measure");
 
     private static final String RECIPIENT_HEADING_DELIMITER = "   ";
 
@@ -398,8 +397,7 @@ public class MessageHeaderView extends LinearLayout implements OnClickListener,
             return;
         }
 
-        Timer t = new Timer();
-        t.start(HEADER_RENDER_TAG);
+        PERF_RENDER.begin();
 
         mCollapsedDetailsValid = false;
         mExpandedDetailsValid = false;
@@ -479,7 +477,7 @@ public class MessageHeaderView extends LinearLayout implements OnClickListener,
             }
         }
 
-        t.pause(HEADER_RENDER_TAG);
+        PERF_RENDER.end();
     }
 
     /**
@@ -1499,22 +1497,19 @@ public class MessageHeaderView extends LinearLayout implements OnClickListener,
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        Timer perf = new Timer();
-        perf.start(LAYOUT_TAG);
+        PERF_LAYOUT.begin();
         super.onLayout(changed, l, t, r, b);
-        perf.pause(LAYOUT_TAG);
+        PERF_LAYOUT.end();
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        Timer t = new Timer();
-        if (Timer.ENABLE_TIMER && !mPreMeasuring) {
-            t.count("header measure id=" + mMessage.id);
-            t.start(MEASURE_TAG);
+        if (!mPreMeasuring) {
+            PERF_MEASURE.begin();
         }
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         if (!mPreMeasuring) {
-            t.pause(MEASURE_TAG);
+            PERF_MEASURE.end();
         }
     }
 }
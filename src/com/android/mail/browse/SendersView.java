@@ -40,11 +40,14 @@ import com.android.mail.providers.ConversationInfo;
 import com.android.mail.providers.MessageInfo;
 import com.android.mail.providers.UIProvider;
 import com.android.mail.ui.DividedImageCanvas;
+import com.android.mail.utils.LruCache;
 import com.android.mail.utils.ObjectCache;
 import com.google.common.base.Objects;
 import com.google.common.collect.Maps;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 
@@ -96,6 +99,15 @@ public class SendersView {
                         }
                     }, MAX_PRIORITY_LENGTH_MAP_LIST);
 
+    // Enough for a screenful of conversations in the list and the widget, plus notifications
+    private static final int MAX_FORMATTED_SENDERS = 128;
+
+    private static final long UNKNOWN_CONVERSATION_ID = -1;
+
+    /** Formatted senders of recently shown conversations, shared by every caller of format(). */
+    private static final LruCache<FormattedSendersKey, FormattedSenders> FORMATTED_SENDERS_CACHE =
+            new LruCache<FormattedSendersKey, FormattedSenders>(MAX_FORMATTED_SENDERS);
+
     public static Typeface getTypeface(boolean isUnread) {
         return isUnread ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT;
     }
@@ -108,6 +120,7 @@ public class SendersView {
                 public void onReceive(Context context, Intent intent) {
                     sDraftSingularString = null;
                     getSenderResources(context, true);
+                    clearFormattedSendersCache();
                 }
             };
             context.registerReceiver(sConfigurationChangedReceiver, new IntentFilter(
@@ -204,14 +217,29 @@ public class SendersView {
         return messageInfo;
     }
 
+    /**
+     * Same as {@link #format(Context, long, ConversationInfo, String, int, ArrayList, ArrayList,
+     * ArrayList, String, boolean)}, for callers that do not know the conversation id. The cached
+     * formatting is then only shared with conversations in exactly the same state.
+     */
     public static void format(Context context, ConversationInfo conversationInfo,
             String messageInfo, int maxChars, ArrayList<SpannableString> styledSenders,
             ArrayList<String> displayableSenderNames, ArrayList<String> displayableSenderEmails,
             String account, final boolean resourceCachingRequired) {
+        format(context, UNKNOWN_CONVERSATION_ID, conversationInfo, messageInfo, maxChars,
+                styledSenders, displayableSenderNames, displayableSenderEmails, account,
+                resourceCachingRequired);
+    }
+
+    public static void format(Context context, long conversationId,
+            ConversationInfo conversationInfo, String messageInfo, int maxChars,
+            ArrayList<SpannableString> styledSenders, ArrayList<String> displayableSenderNames,
+            ArrayList<String> displayableSenderEmails, String account,
+            final boolean resourceCachingRequired) {
         try {
             getSenderResources(context, resourceCachingRequired);
-            format(context, conversationInfo, messageInfo, maxChars, styledSenders,
-                    displayableSenderNames, displayableSenderEmails, account,
+            format(context, conversationId, conversationInfo, messageInfo, maxChars,
+                    styledSenders, displayableSenderNames, displayableSenderEmails, account,
                     sUnreadStyleSpan, sReadStyleSpan, resourceCachingRequired);
         } finally {
             if (!resourceCachingRequired) {
@@ -220,16 +248,25 @@ public class SendersView {
         }
     }
 
-    public static void format(Context context, ConversationInfo conversationInfo,
-            String messageInfo, int maxChars, ArrayList<SpannableString> styledSenders,
-            ArrayList<String> displayableSenderNames, ArrayList<String> displayableSenderEmails,
-            String account, final TextAppearanceSpan notificationUnreadStyleSpan,
+    /**
+     * Adds the formatted senders of a conversation to the given lists. The formatting is done once
+     * per conversation state and kept in a cache shared by the conversation list, the widget and
+     * notifications, so the returned {@link SpannableString}s may be shared between threads and
+     * must not be modified.
+     */
+    public static void format(Context context, long conversationId,
+            ConversationInfo conversationInfo, String messageInfo, int maxChars,
+            ArrayList<SpannableString> styledSenders, ArrayList<String> displayableSenderNames,
+            ArrayList<String> displayableSenderEmails, String account,
+            final TextAppearanceSpan notificationUnreadStyleSpan,
             final CharacterStyle notificationReadStyleSpan, final boolean resourceCachingRequired) {
         try {
             getSenderResources(context, resourceCachingRequired);
-            handlePriority(context, maxChars, messageInfo, conversationInfo, styledSenders,
-                    displayableSenderNames, displayableSenderEmails, account,
-                    notificationUnreadStyleSpan, notificationReadStyleSpan);
+            final FormattedSenders formatted = getFormattedSenders(context, conversationId,
+                    conversationInfo, messageInfo.length(), maxChars,
+                    displayableSenderEmails != null, account, notificationUnreadStyleSpan,
+                    notificationReadStyleSpan);
+            formatted.addTo(styledSenders, displayableSenderNames, displayableSenderEmails);
         } finally {
             if (!resourceCachingRequired) {
                 clearResourceCache();
@@ -237,14 +274,45 @@ public class SendersView {
         }
     }
 
-    public static void handlePriority(Context context, int maxChars, String messageInfoString,
+    private static FormattedSenders getFormattedSenders(Context context, long conversationId,
+            ConversationInfo conversationInfo, int messageInfoLength, int maxChars,
+            boolean withPhotos, String account, TextAppearanceSpan unreadStyleSpan,
+            CharacterStyle readStyleSpan) {
+        final FormattedSendersKey key = new FormattedSendersKey(conversationId,
+                conversationInfo, messageInfoLength, maxChars, withPhotos ? account : null,
+                withPhotos, unreadStyleSpan, readStyleSpan, getMe(context));
+        FormattedSenders formatted = FORMATTED_SENDERS_CACHE.getElement(key);
+        if (formatted == null) {
+            final ArrayList<SpannableString> styledSenders = new ArrayList<SpannableString>();
+            final ArrayList<String> names = withPhotos ? new ArrayList<String>() : null;
+            final ArrayList<String> emails = withPhotos ? new ArrayList<String>() : null;
+            // Formatting is not done under any lock: two threads may format the same
+            // conversation at once, and they produce equal results.
+            handlePriority(context, maxChars, messageInfoLength, conversationInfo, styledSenders,
+                    names, emails, account, unreadStyleSpan, readStyleSpan);
+            formatted = new FormattedSenders(styledSenders, names, emails);
+            FORMATTED_SENDERS_CACHE.putElement(key, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * Drops every cached formatting, e.g. when the strings they were built from have changed.
+     */
+    public static void clearFormattedSendersCache() {
+        synchronized (FORMATTED_SENDERS_CACHE) {
+            FORMATTED_SENDERS_CACHE.clear();
+        }
+    }
+
+    private static void handlePriority(Context context, int maxChars, int messageInfoLength,
             ConversationInfo conversationInfo, ArrayList<SpannableString> styledSenders,
             ArrayList<String> displayableSenderNames, ArrayList<String> displayableSenderEmails,
             String account, final TextAppearanceSpan unreadStyleSpan,
             final CharacterStyle readStyleSpan) {
         boolean shouldAddPhotos = displayableSenderEmails != null;
         int maxPriorityToInclude = -1; // inclusive
-        int numCharsUsed = messageInfoString.length(); // draft, number drafts,
+        int numCharsUsed = messageInfoLength; // draft, number drafts,
                                                        // count
         int numSendersUsed = 0;
         int numCharsToRemovePerWord = 0;
@@ -446,6 +514,124 @@ public class SendersView {
         }
     }
 
+    /**
+     * Identifies one formatting of a conversation's senders: the conversation, the state of its
+     * senders and everything else {@link #handlePriority} depends on. The sender fields are
+     * copied, since {@link MessageInfo}s are modified in place when a message is read. Styles are
+     * compared by identity, since they are only recreated when the configuration changes.
+     */
+    private static final class FormattedSendersKey {
+        private final long mConversationId;
+        private final boolean[] mRead;
+        private final int[] mPriorities;
+        private final String[] mSenders;
+        private final String[] mSenderEmails;
+        private final int mMessageInfoLength;
+        private final int mMaxChars;
+        private final String mAccount;
+        private final boolean mWithPhotos;
+        private final CharacterStyle mUnreadStyle;
+        private final CharacterStyle mReadStyle;
+        private final String mMe;
+        private final int mHashCode;
+
+        FormattedSendersKey(long conversationId, ConversationInfo conversationInfo,
+                int messageInfoLength, int maxChars, String account, boolean withPhotos,
+                CharacterStyle unreadStyle, CharacterStyle readStyle, String me) {
+            mConversationId = conversationId;
+            final int count = conversationInfo.messageInfos.size();
+            mRead = new boolean[count];
+            mPriorities = new int[count];
+            mSenders = new String[count];
+            mSenderEmails = new String[count];
+            for (int i = 0; i < count; i++) {
+                final MessageInfo info = conversationInfo.messageInfos.get(i);
+                mRead[i] = info.read;
+                mPriorities[i] = info.priority;
+                mSenders[i] = info.sender;
+                mSenderEmails[i] = info.senderEmail;
+            }
+            mMessageInfoLength = messageInfoLength;
+            mMaxChars = maxChars;
+            mAccount = account;
+            mWithPhotos = withPhotos;
+            mUnreadStyle = unreadStyle;
+            mReadStyle = readStyle;
+            mMe = me;
+            // Unlike ConversationInfo#hashCode(), this includes the priority, which decides
+            // which senders are shown
+            mHashCode = Objects.hashCode(conversationId, Arrays.hashCode(mRead),
+                    Arrays.hashCode(mPriorities), Arrays.hashCode(mSenders),
+                    Arrays.hashCode(mSenderEmails), messageInfoLength, maxChars, account,
+                    withPhotos, System.identityHashCode(unreadStyle),
+                    System.identityHashCode(readStyle), me);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FormattedSendersKey)) {
+                return false;
+            }
+            final FormattedSendersKey other = (FormattedSendersKey) o;
+            return mHashCode == other.mHashCode
+                    && mConversationId == other.mConversationId
+                    && mMessageInfoLength == other.mMessageInfoLength
+                    && mMaxChars == other.mMaxChars
+                    && mWithPhotos == other.mWithPhotos
+                    && mUnreadStyle == other.mUnreadStyle
+                    && mReadStyle == other.mReadStyle
+                    && TextUtils.equals(mAccount, other.mAccount)
+                    && TextUtils.equals(mMe, other.mMe)
+                    && Arrays.equals(mRead, other.mRead)
+                    && Arrays.equals(mPriorities, other.mPriorities)
+                    && Arrays.equals(mSenders, other.mSenders)
+                    && Arrays.equals(mSenderEmails, other.mSenderEmails);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * The result of {@link #handlePriority}, which is never modified once built.
+     */
+    private static final class FormattedSenders {
+        /** May contain nulls where duplicate senders were removed. */
+        private final SpannableString[] mStyledSenders;
+        /** Null unless sender photos were asked for. */
+        private final String[] mDisplayableSenderNames;
+        private final String[] mDisplayableSenderEmails;
+
+        FormattedSenders(ArrayList<SpannableString> styledSenders,
+                ArrayList<String> displayableSenderNames,
+                ArrayList<String> displayableSenderEmails) {
+            mStyledSenders = styledSenders.toArray(new SpannableString[styledSenders.size()]);
+            mDisplayableSenderNames = displayableSenderNames != null
+                    ? displayableSenderNames.toArray(new String[displayableSenderNames.size()])
+                    : null;
+            mDisplayableSenderEmails = displayableSenderEmails != null
+                    ? displayableSenderEmails.toArray(new String[displayableSenderEmails.size()])
+                    : null;
+        }
+
+        void addTo(ArrayList<SpannableString> styledSenders,
+                ArrayList<String> displayableSenderNames,
+                ArrayList<String> displayableSenderEmails) {
+            Collections.addAll(styledSenders, mStyledSenders);
+            if (displayableSenderNames != null && mDisplayableSenderNames != null) {
+                Collections.addAll(displayableSenderNames, mDisplayableSenderNames);
+            }
+            if (displayableSenderEmails != null && mDisplayableSenderEmails != null) {
+                Collections.addAll(displayableSenderEmails, mDisplayableSenderEmails);
+            }
+        }
+    }
+
     private static void clearResourceCache() {
         sDraftSingularString = null;
     }
@@ -230,10 +230,26 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
 
     private static final String KEY_INNER_SAVED_STATE = "compose_state";
 
+    /** How long the draft has to go without changes before it is saved automatically. */
+    private static final long AUTO_SAVE_DELAY_MS = 10 * 1000;
+
     /**
      * A single thread for running tasks in the background.
      */
     private Handler mSendSaveTaskHandler = null;
+    private final Handler mHandler = new Handler();
+    private final Runnable mAutoSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mAccount == null || mPerformedSendOrDiscard || isFinishing() || !shouldSave()) {
+                return;
+            }
+            LogUtils.d(LOG_TAG, "auto-saving draft %d", mDraftId);
+            doSave(false /* showToast */);
+        }
+    };
+    /** The quoted text of the last save, which later saves reuse while it is unchanged. */
+    private DraftBody.Quote mQuote;
     private RecipientEditTextView mTo;
     private RecipientEditTextView mCc;
     private RecipientEditTextView mBcc;
@@ -770,6 +786,8 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
     protected void onPause() {
         super.onPause();
 
+        mHandler.removeCallbacks(mAutoSaveRunnable);
+
         // When the user exits the compose view, see if this draft needs saving.
         // Don't save unnecessary drafts if we are only changing the orientation.
         if (!isChangingConfigurations()) {
@@ -874,6 +892,10 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         state.putInt(EXTRA_ACTION, mode);
 
         final Message message = createMessage(selectedReplyFromAccount, mode);
+        // The state is written out when this returns, so the body can't wait for a background
+        // conversion the way it does in sendOrSave()
+        message.bodyHtml = Html.toHtml(removeComposingSpans(mBodyView.getText()));
+        message.bodyText = mBodyView.getText().toString();
         if (mDraft != null) {
             message.id = mDraft.id;
             message.serverId = mDraft.serverId;
@@ -908,6 +930,10 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         return mode;
     }
 
+    /**
+     * Creates a message from the compose fields, without the body. Sends and saves convert the
+     * body on the send/save thread, from a snapshot taken by {@link #sendOrSaveInternal}.
+     */
     private Message createMessage(ReplyFromAccount selectedReplyFromAccount, int mode) {
         Message message = new Message();
         message.id = UIProvider.INVALID_MESSAGE_ID;
@@ -921,10 +947,6 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         message.setBcc(formatSenders(mBcc.getText().toString()));
         message.setReplyTo(null);
         message.dateReceivedMs = 0;
-        final String htmlBody = Html.toHtml(removeComposingSpans(mBodyView.getText()));
-        final StringBuilder fullBody = new StringBuilder(htmlBody);
-        message.bodyHtml = fullBody.toString();
-        message.bodyText = mBodyView.getText().toString();
         message.embedsExternalResources = false;
         message.refMessageUri = mRefMessage != null ? mRefMessage.uri : null;
         message.appendRefMessageContent = mQuotedTextView.getQuotedTextIfIncluded() != null;
@@ -2118,6 +2140,10 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         @Override
         public void run() {
             final SendOrSaveMessage sendOrSaveMessage = mSendOrSaveMessage;
+            if (sendOrSaveMessage.mBody != null) {
+                sendOrSaveMessage.mBody.putInto(sendOrSaveMessage.mValues);
+                sendOrSaveMessage.mBody = null;
+            }
 
             final ReplyFromAccount selectedAccount = sendOrSaveMessage.mAccount;
             Message message = mSendOrSaveCallback.getMessage();
@@ -2287,6 +2313,8 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         public final boolean mSave;
         final int mRequestId;
         private final Bundle mAttachmentFds;
+        /** The body, if its columns still have to be put in {@link #mValues}. */
+        DraftBody mBody;
 
         public SendOrSaveMessage(Context context, ReplyFromAccount account, ContentValues values,
                 String refMessageId, List<Attachment> attachments, boolean save) {
@@ -2461,6 +2489,18 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         if (mSave != null) {
             mSave.setEnabled((shouldSave() && !isBlank()));
         }
+        scheduleAutoSave();
+    }
+
+    /**
+     * Saves the draft once it has gone {@link #AUTO_SAVE_DELAY_MS} without changes, so a burst of
+     * edits costs a single save. Each change pushes the save back.
+     */
+    private void scheduleAutoSave() {
+        mHandler.removeCallbacks(mAutoSaveRunnable);
+        if (!mPerformedSendOrDiscard && shouldSave()) {
+            mHandler.postDelayed(mAutoSaveRunnable, AUTO_SAVE_DELAY_MS);
+        }
     }
 
     /**
@@ -2705,7 +2745,7 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
 
     /* package */
     static int sendOrSaveInternal(Context context, ReplyFromAccount replyFromAccount,
-            Message message, final Message refMessage, Spanned body, final CharSequence quotedText,
+            Message message, final Message refMessage, Spanned body, final DraftBody.Quote quote,
             SendOrSaveCallback callback, Handler handler, boolean save, int composeMode,
             ReplyFromAccount draftAccount, final ContentValues extraValues) {
         final ContentValues values = new ContentValues();
@@ -2719,43 +2759,9 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         MessageModification.putCustomFromAddress(values, message.getFrom());
 
         MessageModification.putSubject(values, message.subject);
-        // Make sure to remove only the composing spans from the Spannable before saving.
-        final String htmlBody = Html.toHtml(removeComposingSpans(body));
-
-        boolean includeQuotedText = !TextUtils.isEmpty(quotedText);
-        StringBuilder fullBody = new StringBuilder(htmlBody);
-        if (includeQuotedText) {
-            // HTML gets converted to text for now
-            final String text = quotedText.toString();
-            if (QuotedTextView.containsQuotedText(text)) {
-                int pos = QuotedTextView.getQuotedTextOffset(text);
-                final int quoteStartPos = fullBody.length() + pos;
-                fullBody.append(text);
-                MessageModification.putQuoteStartPos(values, quoteStartPos);
-                MessageModification.putForward(values, composeMode == ComposeActivity.FORWARD);
-                MessageModification.putAppendRefMessageContent(values, includeQuotedText);
-            } else {
-                LogUtils.w(LOG_TAG, "Couldn't find quoted text");
-                // This shouldn't happen, but just use what we have,
-                // and don't do server-side expansion
-                fullBody.append(text);
-            }
-        }
+
         int draftType = getDraftType(composeMode);
         MessageModification.putDraftType(values, draftType);
-        if (refMessage != null) {
-            if (!TextUtils.isEmpty(refMessage.bodyHtml)) {
-                MessageModification.putBodyHtml(values, fullBody.toString());
-            }
-            if (!TextUtils.isEmpty(refMessage.bodyText)) {
-                MessageModification.putBody(values,
-                        Utils.convertHtmlToPlainText(fullBody.toString()).toString());
-            }
-        } else {
-            MessageModification.putBodyHtml(values, fullBody.toString());
-            MessageModification.putBody(values, Utils.convertHtmlToPlainText(fullBody.toString())
-                    .toString());
-        }
         MessageModification.putAttachments(values, message.getAttachments());
         if (!TextUtils.isEmpty(refMessageId)) {
             MessageModification.putRefMessageId(values, refMessageId);
@@ -2765,6 +2771,12 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
         }
         SendOrSaveMessage sendOrSaveMessage = new SendOrSaveMessage(context, replyFromAccount,
                 values, refMessageId, message.getAttachments(), save);
+        // Make sure to remove only the composing spans from the Spannable before saving.
+        // Converting the body is left to the send/save thread.
+        sendOrSaveMessage.mBody = new DraftBody(removeComposingSpans(body), quote,
+                composeMode == ComposeActivity.FORWARD,
+                refMessage == null || !TextUtils.isEmpty(refMessage.bodyHtml),
+                refMessage == null || !TextUtils.isEmpty(refMessage.bodyText));
         SendOrSaveTask sendOrSaveTask = new SendOrSaveTask(context, sendOrSaveMessage, callback,
                 draftAccount);
 
@@ -2903,10 +2915,20 @@ public class ComposeActivity extends Activity implements OnClickListener, OnNavi
             mSendSaveTaskHandler = new Handler(handlerThread.getLooper());
         }
 
+        final CharSequence quotedText = mQuotedTextView.getQuotedTextIfIncluded();
+        final DraftBody.Quote quote;
+        if (TextUtils.isEmpty(quotedText)) {
+            quote = null;
+        } else {
+            if (mQuote == null || !mQuote.isFor(quotedText)) {
+                mQuote = new DraftBody.Quote(quotedText);
+            }
+            quote = mQuote;
+        }
+
         Message msg = createMessage(mReplyFromAccount, getMode());
-        mRequestId = sendOrSaveInternal(this, mReplyFromAccount, msg, mRefMessage, body,
-                mQuotedTextView.getQuotedTextIfIncluded(), callback,
-                mSendSaveTaskHandler, save, mComposeMode, mDraftAccount, mExtraValues);
+        mRequestId = sendOrSaveInternal(this, mReplyFromAccount, msg, mRefMessage, body, quote,
+                callback, mSendSaveTaskHandler, save, mComposeMode, mDraftAccount, mExtraValues);
 
         // Don't display the toast if the user is just changing the orientation,
         // but we still need to save the draft to the cursor because this is how we restore
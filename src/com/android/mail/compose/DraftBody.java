@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2014, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.compose;
+
+import android.content.ContentValues;
+import android.text.Html;
+import android.text.Spanned;
+
+import com.android.mail.providers.MessageModification;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.android.mail.utils.Utils;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The body of a message being sent or saved. The composed text is converted to the HTML and plain
+ * text body columns by {@link #putInto(ContentValues)}, which runs on the send/save thread rather
+ * than the UI thread.
+ * <p>
+ * The quoted text of a reply or forward does not change while the message is composed, so it is
+ * held in a {@link Quote} that every save of the draft shares, and is searched for the quoted
+ * message only once.
+ */
+class DraftBody {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /**
+     * The quoted text of a draft.
+     */
+    static class Quote {
+        private final CharSequence mSource;
+        final String mHtml;
+        /** Offset of the quoted message after the attribution header, or -1 if not found. */
+        final int mQuoteOffset;
+
+        Quote(CharSequence quotedText) {
+            mSource = quotedText;
+            mHtml = quotedText.toString();
+            mQuoteOffset = QuotedTextView.containsQuotedText(mHtml)
+                    ? QuotedTextView.getQuotedTextOffset(mHtml) : -1;
+        }
+
+        @VisibleForTesting
+        Quote(String html, int quoteOffset) {
+            mSource = html;
+            mHtml = html;
+            mQuoteOffset = quoteOffset;
+        }
+
+        /**
+         * Returns whether this holds the given quoted text. Quoted text is set once on the
+         * {@link QuotedTextView}, so the same instance means the same text.
+         */
+        boolean isFor(CharSequence quotedText) {
+            return mSource == quotedText;
+        }
+    }
+
+    private final Spanned mBody;
+    private final Quote mQuote;
+    private final boolean mForward;
+    private final boolean mPutHtml;
+    private final boolean mPutText;
+
+    /**
+     * @param body the composed text, which must not be modified afterwards
+     * @param quote the included quoted text, or null
+     * @param putHtml whether to fill in the HTML body
+     * @param putText whether to fill in the plain text body
+     */
+    DraftBody(Spanned body, Quote quote, boolean forward, boolean putHtml, boolean putText) {
+        mBody = body;
+        mQuote = quote;
+        mForward = forward;
+        mPutHtml = putHtml;
+        mPutText = putText;
+    }
+
+    /**
+     * Converts the body and puts the body columns in the given values. Columns that the values
+     * already have, e.g. from the extra values the compose activity was started with, are kept.
+     */
+    void putInto(ContentValues values) {
+        final ContentValues bodyValues = new ContentValues();
+        putBody(bodyValues);
+        bodyValues.putAll(values);
+        values.putAll(bodyValues);
+    }
+
+    private void putBody(ContentValues values) {
+        final String htmlBody = Html.toHtml(mBody);
+        String html = htmlBody;
+        if (mQuote != null) {
+            if (mQuote.mQuoteOffset >= 0) {
+                MessageModification.putQuoteStartPos(values,
+                        htmlBody.length() + mQuote.mQuoteOffset);
+                MessageModification.putForward(values, mForward);
+                MessageModification.putAppendRefMessageContent(values, true);
+            } else {
+                // This shouldn't happen, but just use what we have,
+                // and don't do server-side expansion
+                LogUtils.w(LOG_TAG, "Couldn't find quoted text");
+            }
+            html = htmlBody + mQuote.mHtml;
+        }
+        if (mPutHtml) {
+            MessageModification.putBodyHtml(values, html);
+        }
+        if (mPutText) {
+            // The body and the quote are converted together: converted apart, the line break
+            // between them would be lost
+            MessageModification.putBody(values, Utils.convertHtmlToPlainText(html));
+        }
+    }
+}
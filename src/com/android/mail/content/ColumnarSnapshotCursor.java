@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.content;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.os.Bundle;
+
+import com.android.mail.providers.UIProvider;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+
+import java.util.HashMap;
+
+/**
+ * A cursor over an immutable, columnar copy of another cursor's rows. Every value is copied once,
+ * at construction, into per-column primitive arrays plus a shared table of distinct strings
+ * (conversation cursors repeat the same account and folder uris on every row).
+ * <p>
+ * Like {@link ThreadSafeCursorWrapper}, each thread has its own position, so a background thread
+ * can walk the rows while the UI thread binds views. Unlike it, column reads never take a lock or
+ * move the wrapped cursor, since the data no longer lives there. Positions are kept in a
+ * per-thread <code>int[]</code>, so moving does not box.
+ * <p>
+ * The wrapped cursor is kept open to serve {@link #respond(Bundle)}, {@link #getExtras()} and
+ * content observers. Column values are read with {@link Cursor#getType(int)}, so types are
+ * preserved per cell.
+ */
+public class ColumnarSnapshotCursor extends CursorWrapper {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    /** Rough size of an object header plus a reference to it, for memory accounting. */
+    private static final int OBJECT_OVERHEAD = 16;
+
+    private final int mCount;
+    /** Cursor.FIELD_TYPE_* of each cell, indexed [column][row]. */
+    private final byte[][] mTypes;
+    /** Integer values; only allocated for columns that have any. */
+    private final long[][] mLongs;
+    /** Float values; only allocated for columns that have any. */
+    private final double[][] mDoubles;
+    /** Indices into {@link #mStrings}; only allocated for columns that have any strings. */
+    private final int[][] mStringIndices;
+    /** Blob values; only allocated for columns that have any. */
+    private final byte[][][] mBlobs;
+    /** The distinct strings of all the rows. */
+    private final String[] mStrings;
+    private final long mMemoryFootprint;
+
+    private final ThreadLocal<int[]> mPosition = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] { -1 };
+        }
+    };
+    /** Only used to move the wrapped cursor for commands which need its position. */
+    private final Object mRespondLock = new Object();
+
+    public ColumnarSnapshotCursor(Cursor cursor) {
+        super(cursor);
+
+        final int count = cursor != null ? cursor.getCount() : 0;
+        final int columnCount = cursor != null ? cursor.getColumnCount() : 0;
+        mCount = count;
+        mTypes = new byte[columnCount][];
+        mLongs = new long[columnCount][];
+        mDoubles = new double[columnCount][];
+        mStringIndices = new int[columnCount][];
+        mBlobs = new byte[columnCount][][];
+
+        final HashMap<String, Integer> stringIndices = new HashMap<String, Integer>();
+        String[] stringTable = new String[Math.max(16, count)];
+        int stringCount = 0;
+        long footprint = 0;
+
+        for (int column = 0; column < columnCount; column++) {
+            mTypes[column] = new byte[count];
+            footprint += OBJECT_OVERHEAD + count;
+        }
+
+        if (count > 0 && cursor.moveToFirst()) {
+            int row = 0;
+            do {
+                for (int column = 0; column < columnCount; column++) {
+                    final int type = cursor.getType(column);
+                    mTypes[column][row] = (byte) type;
+                    switch (type) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            if (mLongs[column] == null) {
+                                mLongs[column] = new long[count];
+                                footprint += OBJECT_OVERHEAD + 8L * count;
+                            }
+                            mLongs[column][row] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            if (mDoubles[column] == null) {
+                                mDoubles[column] = new double[count];
+                                footprint += OBJECT_OVERHEAD + 8L * count;
+                            }
+                            mDoubles[column][row] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING: {
+                            if (mStringIndices[column] == null) {
+                                mStringIndices[column] = new int[count];
+                                footprint += OBJECT_OVERHEAD + 4L * count;
+                            }
+                            final String value = cursor.getString(column);
+                            Integer index = stringIndices.get(value);
+                            if (index == null) {
+                                if (stringCount == stringTable.length) {
+                                    final String[] grown = new String[stringCount * 2];
+                                    System.arraycopy(stringTable, 0, grown, 0, stringCount);
+                                    stringTable = grown;
+                                }
+                                index = stringCount;
+                                stringTable[stringCount++] = value;
+                                stringIndices.put(value, index);
+                                footprint += OBJECT_OVERHEAD * 2 + 2L * value.length();
+                            }
+                            mStringIndices[column][row] = index;
+                            break;
+                        }
+                        case Cursor.FIELD_TYPE_BLOB: {
+                            if (mBlobs[column] == null) {
+                                mBlobs[column] = new byte[count][];
+                                footprint += OBJECT_OVERHEAD + 4L * count;
+                            }
+                            final byte[] blob = cursor.getBlob(column);
+                            mBlobs[column][row] = blob;
+                            footprint += OBJECT_OVERHEAD + (blob != null ? blob.length : 0);
+                            break;
+                        }
+                        default:
+                            // FIELD_TYPE_NULL; nothing to store
+                            break;
+                    }
+                }
+                row++;
+            } while (row < count && cursor.moveToNext());
+
+            if (row < count) {
+                LogUtils.e(LOG_TAG, "Snapshot only copied %d of %d rows", row, count);
+            }
+        }
+
+        if (stringCount < stringTable.length) {
+            final String[] trimmed = new String[stringCount];
+            System.arraycopy(stringTable, 0, trimmed, 0, stringCount);
+            stringTable = trimmed;
+        }
+        mStrings = stringTable;
+        footprint += OBJECT_OVERHEAD + 4L * stringCount;
+        mMemoryFootprint = footprint;
+    }
+
+    /**
+     * Returns an estimate, in bytes, of the memory held by the copied rows.
+     */
+    public long getMemoryFootprint() {
+        return mMemoryFootprint;
+    }
+
+    /**
+     * Returns the number of distinct strings held by the copied rows.
+     */
+    public int getDistinctStringCount() {
+        return mStrings.length;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getType(int column) {
+        return mTypes[column][currentRow()];
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mTypes[column][currentRow()] == Cursor.FIELD_TYPE_NULL;
+    }
+
+    @Override
+    public String getString(int column) {
+        final int row = currentRow();
+        switch (mTypes[column][row]) {
+            case Cursor.FIELD_TYPE_STRING:
+                return mStrings[mStringIndices[column][row]];
+            case Cursor.FIELD_TYPE_INTEGER:
+                return Long.toString(mLongs[column][row]);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return Double.toString(mDoubles[column][row]);
+            case Cursor.FIELD_TYPE_BLOB:
+                final byte[] blob = mBlobs[column][row];
+                return blob != null ? new String(blob) : null;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void copyStringToBuffer(int column, CharArrayBuffer buffer) {
+        final String value = getString(column);
+        if (value == null) {
+            buffer.sizeCopied = 0;
+            return;
+        }
+        final int length = value.length();
+        if (buffer.data == null || buffer.data.length < length) {
+            buffer.data = value.toCharArray();
+        } else {
+            value.getChars(0, length, buffer.data, 0);
+        }
+        buffer.sizeCopied = length;
+    }
+
+    @Override
+    public long getLong(int column) {
+        final int row = currentRow();
+        switch (mTypes[column][row]) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return mLongs[column][row];
+            case Cursor.FIELD_TYPE_FLOAT:
+                return (long) mDoubles[column][row];
+            case Cursor.FIELD_TYPE_STRING:
+                return parseLong(mStrings[mStringIndices[column][row]]);
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        final int row = currentRow();
+        switch (mTypes[column][row]) {
+            case Cursor.FIELD_TYPE_FLOAT:
+                return mDoubles[column][row];
+            case Cursor.FIELD_TYPE_INTEGER:
+                return mLongs[column][row];
+            case Cursor.FIELD_TYPE_STRING:
+                try {
+                    return Double.parseDouble(mStrings[mStringIndices[column][row]]);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        final int row = currentRow();
+        switch (mTypes[column][row]) {
+            case Cursor.FIELD_TYPE_BLOB:
+                return mBlobs[column][row];
+            case Cursor.FIELD_TYPE_STRING:
+                return mStrings[mStringIndices[column][row]].getBytes();
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            default:
+                throw new IllegalStateException("Column " + column + " is not a blob");
+        }
+    }
+
+    @Override
+    public Bundle respond(Bundle extras) {
+        final int opts = extras.getInt(UIProvider.ConversationCursorCommand.COMMAND_KEY_OPTIONS);
+        if ((opts & UIProvider.ConversationCursorCommand.OPTION_MOVE_POSITION) != 0) {
+            synchronized (mRespondLock) {
+                getWrappedCursor().moveToPosition(getPosition());
+                return super.respond(extras);
+            }
+        } else {
+            return super.respond(extras);
+        }
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition.get()[0];
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        final int[] current = mPosition.get();
+        // Make sure position isn't past the end of the cursor
+        if (position >= mCount) {
+            current[0] = mCount;
+            return false;
+        }
+        // Make sure position isn't before the beginning of the cursor
+        if (position < 0) {
+            current[0] = -1;
+            return false;
+        }
+        current[0] = position;
+        return true;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(getPosition() + offset);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mCount - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(getPosition() + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(getPosition() - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mCount > 0 && getPosition() == 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return mCount > 0 && getPosition() == mCount - 1;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mCount == 0 || getPosition() == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mCount == 0 || getPosition() == mCount;
+    }
+
+    private int currentRow() {
+        final int row = mPosition.get()[0];
+        if (row < 0 || row >= mCount) {
+            throw new IndexOutOfBoundsException("Cursor position " + row + " out of range, count="
+                    + mCount);
+        }
+        return row;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -73,6 +73,12 @@ public class ObjectCursorLoader<T> extends AsyncTaskLoader<ObjectCursor<T>> {
     /* Runs on a worker thread */
     @Override
     public ObjectCursor<T> loadInBackground() {
+        final ObjectCursor<T> prefetched = takePrefetchedCursor();
+        if (prefetched != null) {
+            prefetched.registerContentObserver(mObserver);
+            return prefetched;
+        }
+
         final Cursor inner = getContext().getContentResolver().query(mUri, mProjection,
                 mSelection, mSelectionArgs, mSortOrder);
         if (inner == null) {
@@ -96,6 +102,15 @@ public class ObjectCursorLoader<T> extends AsyncTaskLoader<ObjectCursor<T>> {
         return cursor;
     }
 
+    /**
+     * Returns a cursor that was already loaded for the current uri, to use in place of a new
+     * query, or null if there is none. The returned cursor's cache must already be filled.
+     * Called on a worker thread.
+     */
+    protected ObjectCursor<T> takePrefetchedCursor() {
+        return null;
+    }
+
     protected ObjectCursor<T> getObjectCursor(Cursor inner) {
         return new ObjectCursor<T>(inner, mFactory);
     }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count of events, updated without locks. Nothing is counted while {@link Metrics#isEnabled()}
+ * is false.
+ */
+public final class Counter {
+    private final String mName;
+    private final AtomicLong mValue = new AtomicLong();
+
+    Counter(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void increment() {
+        if (Metrics.isEnabled()) {
+            mValue.incrementAndGet();
+        }
+    }
+
+    public void add(long delta) {
+        if (Metrics.isEnabled()) {
+            mValue.addAndGet(delta);
+        }
+    }
+
+    public long get() {
+        return mValue.get();
+    }
+
+    void reset() {
+        mValue.set(0);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A distribution of durations, in nanoseconds, recorded without locks or allocation.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so any percentile is reported within 12.5% of the true
+ * value, from a nanosecond up to about 18 minutes, in a fixed {@value #BUCKET_COUNT} counters.
+ * <p>
+ * A histogram also times spans of code: {@link #begin()} and {@link #end()} may be nested, on
+ * each thread, with the spans of other histograms. The span that encloses a histogram's spans
+ * the first time one is recorded becomes its parent in {@link Metrics#dump(java.io.PrintWriter)}.
+ * <p>
+ * Nothing is recorded while {@link Metrics#isEnabled()} is false.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values of 2^MAX_EXPONENT ns or more are counted in the last bucket. */
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String mName;
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+    private volatile Histogram mParent;
+
+    Histogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the histogram whose span enclosed this one's, or null if it was not nested.
+     */
+    public Histogram getParent() {
+        return mParent;
+    }
+
+    /**
+     * Starts a span on the current thread, to be ended by {@link #end()} on the same thread.
+     */
+    public void begin() {
+        if (Metrics.isEnabled()) {
+            Metrics.getSpanStack().push(this, System.nanoTime());
+        }
+    }
+
+    /**
+     * Ends the innermost span of this histogram on the current thread, and records its duration.
+     * Spans nested in it which were never ended are discarded. Does nothing if there is no such
+     * span, e.g. because recording was enabled after it began.
+     */
+    public void end() {
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+        final Metrics.SpanStack stack = Metrics.getSpanStack();
+        final long startNanos = stack.pop(this);
+        if (startNanos == 0) {
+            return;
+        }
+        record(System.nanoTime() - startNanos);
+        if (mParent == null) {
+            final Histogram parent = stack.peek();
+            if (parent != null && parent != this) {
+                mParent = parent;
+            }
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given {@link Metrics#now()}. Does nothing if it is 0,
+     * which is what {@link Metrics#now()} returns while recording is disabled.
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != 0) {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records a duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+        final long value = Math.max(nanos, 0);
+        mBuckets.incrementAndGet(bucketIndex(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getSumNanos() {
+        return mSum.get();
+    }
+
+    public long getMaxNanos() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns the highest value that is counted together with the value at the given percentile,
+     * e.g. 0.99, or 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        final long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Returns the count of each bucket. Buckets are counted independently, so the counts may be
+     * slightly behind {@link #getCount()} while values are being recorded.
+     */
+    public long[] getBucketCounts() {
+        final long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(i);
+        }
+        return counts;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final int subBucket = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long bucketUpperBound(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : bucketLowerBound(index + 1) - 1;
+    }
+}
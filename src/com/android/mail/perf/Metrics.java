@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.perf;
+
+import android.util.Log;
+
+import com.google.common.collect.Lists;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of the app's {@link Histogram}s and {@link Counter}s.
+ * <p>
+ * Metrics are looked up by name once, typically into a static final field, and are then updated
+ * without locks or allocation. Recording is off by default and costs a volatile read while off.
+ * It is turned on at startup by setting the {@value #LOG_TAG} log tag to DEBUG, or at any time
+ * with {@link #setEnabled(boolean)}.
+ * <p>
+ * The results are dumped as text by {@link #dump(PrintWriter)}, with spans indented under the
+ * spans they were nested in, and exported for collection by {@link #export()}, one metric per
+ * line:
+ * <pre>
+ * H name parentName count sumNanos maxNanos bucketIndex:count ...
+ * C name value
+ * </pre>
+ * where a histogram without a parent has "-" as its parent name, names have spaces replaced by
+ * underscores, and only non-empty buckets are listed.
+ */
+public final class Metrics {
+    /** Set this log tag to DEBUG to record metrics from startup. */
+    public static final String LOG_TAG = "MailMetrics";
+
+    private static final double[] DUMP_PERCENTILES = { 0.5, 0.9, 0.99 };
+
+    private static final ConcurrentHashMap<String, Histogram> sHistograms =
+            new ConcurrentHashMap<String, Histogram>();
+    private static final ConcurrentHashMap<String, Counter> sCounters =
+            new ConcurrentHashMap<String, Counter>();
+
+    private static volatile boolean sEnabled = Log.isLoggable(LOG_TAG, Log.DEBUG);
+    /** Incremented whenever recording is toggled, to drop spans begun before the toggle. */
+    private static volatile int sGeneration;
+
+    private static final ThreadLocal<SpanStack> sSpanStack = new ThreadLocal<SpanStack>() {
+        @Override
+        protected SpanStack initialValue() {
+            return new SpanStack();
+        }
+    };
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        if (enabled != sEnabled) {
+            sGeneration++;
+            sEnabled = enabled;
+        }
+    }
+
+    /**
+     * Returns a start time for {@link Histogram#recordSince(long)}, or 0 if recording is disabled.
+     */
+    public static long now() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Returns the histogram of the given name, creating it if needed.
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            final Histogram created = new Histogram(name);
+            histogram = sHistograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the counter of the given name, creating it if needed.
+     */
+    public static Counter counter(String name) {
+        Counter counter = sCounters.get(name);
+        if (counter == null) {
+            final Counter created = new Counter(name);
+            counter = sCounters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Clears everything recorded so far.
+     */
+    public static void reset() {
+        for (Histogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+        for (Counter counter : sCounters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Writes every metric that has recorded anything, in a readable form.
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Metrics" + (sEnabled ? "" : " (disabled)") + ":");
+        final List<Histogram> histograms = getSortedHistograms();
+        for (Histogram histogram : histograms) {
+            if (histogram.getParent() == null) {
+                dump(writer, histogram, histograms, "  ");
+            }
+        }
+        for (Counter counter : getSortedCounters()) {
+            if (counter.get() != 0) {
+                writer.println("  " + counter.getName() + ": " + counter.get());
+            }
+        }
+    }
+
+    private static void dump(PrintWriter writer, Histogram histogram, List<Histogram> histograms,
+            String indent) {
+        final long count = histogram.getCount();
+        if (count != 0) {
+            final StringBuilder line = new StringBuilder(indent).append(histogram.getName())
+                    .append(": n=").append(count)
+                    .append(" mean=").append(formatMillis(histogram.getSumNanos() / count));
+            for (double percentile : DUMP_PERCENTILES) {
+                line.append(" p").append((int) (percentile * 100)).append('=')
+                        .append(formatMillis(histogram.getPercentileNanos(percentile)));
+            }
+            line.append(" max=").append(formatMillis(histogram.getMaxNanos()));
+            writer.println(line);
+        }
+        for (Histogram child : histograms) {
+            if (child.getParent() == histogram) {
+                dump(writer, child, histograms, indent + "  ");
+            }
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.2fms", nanos / 1e6);
+    }
+
+    /**
+     * Returns every metric that has recorded anything, in the format described above.
+     */
+    public static String export() {
+        final StringBuilder out = new StringBuilder();
+        for (Histogram histogram : getSortedHistograms()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            final Histogram parent = histogram.getParent();
+            out.append("H ").append(exportName(histogram.getName()))
+                    .append(' ').append(parent != null ? exportName(parent.getName()) : "-")
+                    .append(' ').append(histogram.getCount())
+                    .append(' ').append(histogram.getSumNanos())
+                    .append(' ').append(histogram.getMaxNanos());
+            final long[] buckets = histogram.getBucketCounts();
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != 0) {
+                    out.append(' ').append(i).append(':').append(buckets[i]);
+                }
+            }
+            out.append('\n');
+        }
+        for (Counter counter : getSortedCounters()) {
+            if (counter.get() != 0) {
+                out.append("C ").append(exportName(counter.getName()))
+                        .append(' ').append(counter.get()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String exportName(String name) {
+        return name.replace(' ', '_');
+    }
+
+    private static List<Histogram> getSortedHistograms() {
+        final ArrayList<Histogram> histograms = Lists.newArrayList(sHistograms.values());
+        Collections.sort(histograms, new Comparator<Histogram>() {
+            @Override
+            public int compare(Histogram lhs, Histogram rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        return histograms;
+    }
+
+    private static List<Counter> getSortedCounters() {
+        final ArrayList<Counter> counters = Lists.newArrayList(sCounters.values());
+        Collections.sort(counters, new Comparator<Counter>() {
+            @Override
+            public int compare(Counter lhs, Counter rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        return counters;
+    }
+
+    static SpanStack getSpanStack() {
+        return sSpanStack.get();
+    }
+
+    /**
+     * The spans that are open on one thread, innermost last.
+     */
+    static final class SpanStack {
+        private static final int MAX_DEPTH = 32;
+
+        private final Histogram[] mHistograms = new Histogram[MAX_DEPTH];
+        private final long[] mStartNanos = new long[MAX_DEPTH];
+        private int mDepth;
+        /** Total number of spans pushed, including those too deep to be kept. */
+        private int mPushed;
+        private int mGeneration;
+
+        void push(Histogram histogram, long startNanos) {
+            if (mGeneration != sGeneration) {
+                mGeneration = sGeneration;
+                clear();
+            }
+            if (mDepth < MAX_DEPTH) {
+                mHistograms[mDepth] = histogram;
+                mStartNanos[mDepth] = startNanos;
+                mDepth++;
+            }
+            mPushed++;
+        }
+
+        /**
+         * Removes the innermost span of the given histogram and the spans nested in it, and
+         * returns its start time, or 0 if it has no span open.
+         */
+        long pop(Histogram histogram) {
+            if (mGeneration != sGeneration) {
+                mGeneration = sGeneration;
+                clear();
+                return 0;
+            }
+            if (mPushed > mDepth) {
+                // Ending a span that was too deep to keep
+                mPushed--;
+                return 0;
+            }
+            for (int i = mDepth - 1; i >= 0; i--) {
+                if (mHistograms[i] == histogram) {
+                    final long startNanos = mStartNanos[i];
+                    for (int j = i; j < mDepth; j++) {
+                        mHistograms[j] = null;
+                    }
+                    mDepth = i;
+                    mPushed = i;
+                    return startNanos;
+                }
+            }
+            return 0;
+        }
+
+        Histogram peek() {
+            return mDepth > 0 ? mHistograms[mDepth - 1] : null;
+        }
+
+        private void clear() {
+            for (int i = 0; i < mDepth; i++) {
+                mHistograms[i] = null;
+            }
+            mDepth = 0;
+            mPushed = 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.perf;
+
+import com.android.mail.utils.LogUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times the milestones of a multi-step operation, such as showing a conversation, from a common
+ * start. The time to each milestone is recorded in a histogram named "name/milestone".
+ */
+public class MilestoneTimer {
+    private final String mName;
+    private final ConcurrentHashMap<String, Histogram> mMilestones =
+            new ConcurrentHashMap<String, Histogram>();
+    private volatile long mStartNanos;
+
+    public MilestoneTimer(String name) {
+        mName = name;
+    }
+
+    /**
+     * Starts timing a new run of the operation.
+     */
+    public void start() {
+        mStartNanos = Metrics.now();
+    }
+
+    /**
+     * Records the time since {@link #start()} for the given milestone. Does nothing if the timer
+     * was started while recording was disabled.
+     */
+    public void mark(String milestone) {
+        final long startNanos = mStartNanos;
+        if (startNanos == 0 || !Metrics.isEnabled()) {
+            return;
+        }
+        Histogram histogram = mMilestones.get(milestone);
+        if (histogram == null) {
+            histogram = Metrics.histogram(mName + "/" + milestone);
+            mMilestones.put(milestone, histogram);
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        histogram.record(elapsedNanos);
+        if (LogUtils.isLoggable(Metrics.LOG_TAG, LogUtils.VERBOSE)) {
+            LogUtils.v(Metrics.LOG_TAG, "%s [%s] %dms elapsed", mName, milestone,
+                    elapsedNanos / 1000000);
+        }
+    }
+}
@@ -28,6 +28,8 @@ import android.os.Message;
 import android.os.Process;
 import android.util.LruCache;
 
+import com.android.mail.perf.Histogram;
+import com.android.mail.perf.Metrics;
 import com.android.mail.ui.ImageCanvas;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.Utils;
@@ -104,6 +106,9 @@ public abstract class PhotoManager implements ComponentCallbacks2, Callback {
 
     private static final String LOADER_THREAD_NAME = "PhotoLoader";
 
+    private static final Histogram PERF_LOAD = Metrics.histogram("photo/load");
+    private static final Histogram PERF_DECODE = Metrics.histogram("photo/decode");
+
     /**
      * Type of message sent by the UI thread to itself to indicate that some photos
      * need to be loaded.
@@ -738,7 +743,9 @@ public abstract class PhotoManager implements ComponentCallbacks2, Callback {
 
             Utils.traceBeginSection("load photos");
             // Ask subclass to do the actual loading
+            PERF_LOAD.begin();
             final Map<String, BitmapHolder> photosMap = loadPhotos(loadRequests);
+            PERF_LOAD.end();
             Utils.traceEndSection();
 
             if (DEBUG) {
@@ -781,7 +788,9 @@ public abstract class PhotoManager implements ComponentCallbacks2, Callback {
                             r, w, h);
                 }
 
+                PERF_DECODE.begin();
                 final Bitmap decoded = BitmapUtil.decodeByteArrayWithCenterCrop(src, w, h);
+                PERF_DECODE.end();
                 if (DEBUG) {
                     LogUtils.i(TAG,
                             "worker thread completed decode bmpKey=%s decoded=%s holder=%s",
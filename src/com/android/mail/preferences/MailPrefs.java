@@ -28,6 +28,7 @@ import com.android.mail.widget.BaseWidgetProvider;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -46,6 +47,23 @@ public final class MailPrefs extends VersionedPrefs {
 
     private static MailPrefs sInstance;
 
+    /**
+     * Compiled form of the sender image whitelist, lazily rebuilt after either of the backing
+     * preferences changes.
+     */
+    private volatile SenderImageWhitelist mSenderWhitelist;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mWhitelistListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (PreferenceKeys.DISPLAY_IMAGES.equals(key)
+                            || PreferenceKeys.DISPLAY_IMAGES_PATTERNS.equals(key)) {
+                        mSenderWhitelist = null;
+                    }
+                }
+            };
+
     public static final class PreferenceKeys {
         private static final String MIGRATED_VERSION = "migrated-version";
 
@@ -70,6 +88,13 @@ public final class MailPrefs extends VersionedPrefs {
         private static final String CACHED_ACTIVE_NOTIFICATION_SET =
                 "cache-active-notification-set";
 
+        /**
+         * Hidden preference used to cache the active notifications, packed into a single string.
+         * Replaces {@link #CACHED_ACTIVE_NOTIFICATION_SET}.
+         */
+        private static final String CACHED_ACTIVE_NOTIFICATION_MAP =
+                "cache-active-notification-map";
+
         /**
          * A string indicating whether the conversation photo teaser has been previously
          * shown and dismissed. This is the third version of it (thus the three at the end).
@@ -128,6 +153,8 @@ public final class MailPrefs extends VersionedPrefs {
 
     private MailPrefs(Context c) {
         super(c, PREFS_NAME);
+        // The listener is held weakly by SharedPreferences, and strongly by this singleton
+        getSharedPreferences().registerOnSharedPreferenceChangeListener(mWhitelistListener);
     }
 
     @Override
@@ -140,6 +167,13 @@ public final class MailPrefs extends VersionedPrefs {
         }
     }
 
+    @Override
+    public void clearAllPreferences() {
+        super.clearAllPreferences();
+        // Editor.clear() does not notify change listeners
+        mSenderWhitelist = null;
+    }
+
     @Override
     protected boolean canBackup(final String key) {
         return PreferenceKeys.BACKUP_KEYS.contains(key);
@@ -265,6 +299,26 @@ public final class MailPrefs extends VersionedPrefs {
                 .apply();
     }
 
+    /**
+     * Returns the previously cached notification map, or <code>null</code> if it has not been
+     * cached in the packed format yet.
+     */
+    public String getActiveNotificationMap() {
+        return getSharedPreferences()
+                .getString(PreferenceKeys.CACHED_ACTIVE_NOTIFICATION_MAP, null);
+    }
+
+    /**
+     * Caches the current notification map, in the packed format. This replaces any notification
+     * set cached by {@link #cacheActiveNotificationSet(Set)}.
+     */
+    public void cacheActiveNotificationMap(final String packedNotificationMap) {
+        getEditor().putString(PreferenceKeys.CACHED_ACTIVE_NOTIFICATION_MAP,
+                packedNotificationMap)
+                .remove(PreferenceKeys.CACHED_ACTIVE_NOTIFICATION_SET)
+                .apply();
+    }
+
     /**
      * Returns whether the teaser has been shown before
      */
@@ -296,41 +350,50 @@ public final class MailPrefs extends VersionedPrefs {
     }
 
     public void setSenderWhitelist(Set<String> addresses) {
+        mSenderWhitelist = null;
         getEditor().putStringSet(PreferenceKeys.DISPLAY_IMAGES, addresses).apply();
         notifyBackupPreferenceChanged();
     }
     public void setSenderWhitelistPatterns(Set<String> patterns) {
+        mSenderWhitelist = null;
         getEditor().putStringSet(PreferenceKeys.DISPLAY_IMAGES_PATTERNS, patterns).apply();
         notifyBackupPreferenceChanged();
     }
 
     /**
      * Returns whether or not an email address is in the whitelist of senders to show images for.
-     * This method reads the entire whitelist, so if you have multiple emails to check, you should
-     * probably call getSenderWhitelist() and check membership yourself.
+     * The whitelist is compiled once per change to the underlying preferences, so this is cheap
+     * to call repeatedly. To check several senders at once, use
+     * {@link #getDisplayImagesFromSenders(Collection)}.
      *
      * @param sender raw email address ("foo@bar.com")
      * @return whether we should show pictures for this sender
      */
     public boolean getDisplayImagesFromSender(String sender) {
-        boolean displayImages = getSenderWhitelist().contains(sender);
-        if (!displayImages) {
-            final SharedPreferences sharedPreferences = getSharedPreferences();
-            // Check the saved email address patterns to determine if this pattern matches
-            final Set<String> defaultPatternSet = Collections.emptySet();
-            final Set<String> currentPatterns = sharedPreferences.getStringSet(
-                        PreferenceKeys.DISPLAY_IMAGES_PATTERNS, defaultPatternSet);
-            for (String pattern : currentPatterns) {
-                displayImages = Pattern.compile(pattern).matcher(sender).matches();
-                if (displayImages) {
-                    break;
-                }
-            }
-        }
+        return getCompiledSenderWhitelist().matches(sender);
+    }
 
-        return displayImages;
+    /**
+     * Returns the subset of the given raw email addresses that are in the whitelist of senders
+     * to show images for.
+     */
+    public Set<String> getDisplayImagesFromSenders(Collection<String> senders) {
+        return getCompiledSenderWhitelist().filter(senders);
     }
 
+    /**
+     * Returns the compiled sender image whitelist. The returned object is immutable and remains
+     * valid until the whitelist preferences are next changed.
+     */
+    public SenderImageWhitelist getCompiledSenderWhitelist() {
+        SenderImageWhitelist whitelist = mSenderWhitelist;
+        if (whitelist == null) {
+            whitelist = SenderImageWhitelist.create(getSenderWhitelist(),
+                    getSenderWhitelistPatterns());
+            mSenderWhitelist = whitelist;
+        }
+        return whitelist;
+    }
 
     public void setDisplayImagesFromSender(String sender, List<Pattern> allowedPatterns) {
         if (allowedPatterns != null) {
@@ -383,6 +446,7 @@ public final class MailPrefs extends VersionedPrefs {
         editor.putStringSet(PreferenceKeys.DISPLAY_IMAGES, Collections.EMPTY_SET);
         editor.putStringSet(PreferenceKeys.DISPLAY_IMAGES_PATTERNS, Collections.EMPTY_SET);
         editor.apply();
+        mSenderWhitelist = SenderImageWhitelist.EMPTY;
     }
 
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.preferences;
+
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable, precompiled form of the "always show images from" sender whitelist stored in
+ * {@link MailPrefs}. The exact addresses and the saved address patterns are combined into a
+ * single pattern that is compiled once per preference change, rather than once per message.
+ * Instances are safe to share between threads.
+ */
+public final class SenderImageWhitelist {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    public static final SenderImageWhitelist EMPTY = new SenderImageWhitelist(
+            ImmutableSet.<String>of(), ImmutableSet.<String>of());
+
+    private final ImmutableSet<String> mAddresses;
+    private final ImmutableSet<String> mPatternStrings;
+    /**
+     * All saved patterns joined into a single alternation, or <code>null</code> if there are none.
+     */
+    private final Pattern mCombinedPattern;
+    /**
+     * Individually compiled patterns, only used if the patterns could not be combined (e.g. they
+     * use back references, whose group numbers would shift inside an alternation).
+     */
+    private final List<Pattern> mPatterns;
+
+    private SenderImageWhitelist(Set<String> addresses, Set<String> patterns) {
+        mAddresses = ImmutableSet.copyOf(addresses);
+        mPatternStrings = ImmutableSet.copyOf(patterns);
+
+        Pattern combined = null;
+        List<Pattern> individual = null;
+        if (!mPatternStrings.isEmpty()) {
+            // Compile each entry on its own first so that an invalid pattern is skipped instead
+            // of breaking, or changing the meaning of, its neighbours in the alternation.
+            final List<String> valid = new ArrayList<String>(mPatternStrings.size());
+            individual = compileIndividually(mPatternStrings, valid);
+            combined = compileCombined(valid);
+            if (combined != null) {
+                individual = null;
+            }
+        }
+        mCombinedPattern = combined;
+        mPatterns = individual;
+    }
+
+    /**
+     * Builds a whitelist from the raw preference values. Either argument may be
+     * <code>null</code>.
+     */
+    public static SenderImageWhitelist create(Set<String> addresses, Set<String> patterns) {
+        if ((addresses == null || addresses.isEmpty()) && (patterns == null || patterns.isEmpty())) {
+            return EMPTY;
+        }
+        return new SenderImageWhitelist(
+                addresses != null ? addresses : ImmutableSet.<String>of(),
+                patterns != null ? patterns : ImmutableSet.<String>of());
+    }
+
+    public boolean isEmpty() {
+        return mAddresses.isEmpty() && mPatternStrings.isEmpty();
+    }
+
+    public Set<String> getAddresses() {
+        return mAddresses;
+    }
+
+    public Set<String> getPatterns() {
+        return mPatternStrings;
+    }
+
+    /**
+     * Returns whether images should be shown for the given raw email address ("foo@bar.com").
+     */
+    public boolean matches(String sender) {
+        if (sender == null) {
+            return false;
+        }
+        if (mAddresses.contains(sender)) {
+            return true;
+        }
+        if (mCombinedPattern != null) {
+            return mCombinedPattern.matcher(sender).matches();
+        }
+        if (mPatterns != null) {
+            for (Pattern pattern : mPatterns) {
+                if (pattern.matcher(sender).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the subset of the given senders for which images should be shown. Use this when
+     * checking every sender of a conversation so the whitelist is consulted once per unique
+     * address.
+     */
+    public Set<String> filter(Collection<String> senders) {
+        final Set<String> result = Sets.newHashSet();
+        if (senders == null || isEmpty()) {
+            return result;
+        }
+        final Set<String> rejected = Sets.newHashSet();
+        for (String sender : senders) {
+            if (sender == null || result.contains(sender) || rejected.contains(sender)) {
+                continue;
+            }
+            if (matches(sender)) {
+                result.add(sender);
+            } else {
+                rejected.add(sender);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Joins the given (individually valid) patterns into one alternation, or returns
+     * <code>null</code> if they cannot safely be combined.
+     */
+    private static Pattern compileCombined(Collection<String> patterns) {
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (String pattern : patterns) {
+            if (pattern.indexOf('\\') >= 0 && needsIsolation(pattern)) {
+                return null;
+            }
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append("(?:").append(pattern).append(')');
+        }
+        try {
+            return Pattern.compile(sb.toString());
+        } catch (PatternSyntaxException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to combine sender whitelist patterns");
+            return null;
+        }
+    }
+
+    private static List<Pattern> compileIndividually(Collection<String> patterns,
+            List<String> outValid) {
+        final List<Pattern> compiled = new ArrayList<Pattern>(patterns.size());
+        for (String pattern : patterns) {
+            try {
+                compiled.add(Pattern.compile(pattern));
+                outValid.add(pattern);
+            } catch (PatternSyntaxException e) {
+                LogUtils.w(LOG_TAG, e, "Ignoring invalid sender whitelist pattern %s", pattern);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns whether the pattern uses a back reference, whose group number would shift inside
+     * an alternation, or an unterminated quote, which would swallow the rest of it.
+     */
+    private static boolean needsIsolation(String pattern) {
+        final int length = pattern.length();
+        for (int i = 0; i < length - 1; i++) {
+            if (pattern.charAt(i) == '\\') {
+                final char next = pattern.charAt(i + 1);
+                if ((next >= '1' && next <= '9') || next == 'k' || next == 'Q') {
+                    return true;
+                }
+                // skip the escaped character
+                i++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.android.mail.providers.MailAppProvider.AccountCacheEntry;
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+import com.google.common.collect.Lists;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the account list of {@link MailAppProvider} in a compact binary file, which is memory
+ * mapped to read it back on a cold start.
+ * <p>
+ * The file holds the values of every column of {@link UIProvider#ACCOUNTS_PROJECTION} for each
+ * account, so accounts are rebuilt through {@link Account#Account(android.database.Cursor)} just
+ * as if they came from their provider. The column names are stored too: when the projection
+ * changes, the file is ignored rather than misread.
+ * <pre>
+ * int magic, int version
+ * int columnCount, columnCount x string columnName
+ * int accountCount, accountCount x (string accountsQueryUri, columnCount x value)
+ * value: byte tag (0 null, 1 int, 2 long, 3 string), then the int, long or string
+ * string: int length in bytes (-1 for null), then UTF-8 bytes
+ * </pre>
+ */
+final class AccountListFile {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    private static final int MAGIC = 0x4d414c41; // "MALA"
+    private static final int VERSION = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_STRING = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    /**
+     * The contents of the file as last read (still mapped, not copied) or written, to skip writes
+     * that change nothing.
+     */
+    private ByteBuffer mPersisted;
+
+    AccountListFile(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the persisted account list. Returns null if there is no file, or it cannot be used.
+     */
+    synchronized List<AccountCacheEntry> read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final List<AccountCacheEntry> entries = decode(buffer);
+            if (entries != null) {
+                // The mapping stays valid after the channel is closed, and after the file is
+                // replaced by a later write
+                buffer.rewind();
+                mPersisted = buffer.asReadOnlyBuffer();
+            }
+            return entries;
+        } catch (IOException e) {
+            LogUtils.e(LOG_TAG, e, "Unable to read account list %s", mFile);
+        } catch (BufferUnderflowException e) {
+            LogUtils.e(LOG_TAG, e, "Truncated account list %s", mFile);
+        } catch (RuntimeException e) {
+            LogUtils.e(LOG_TAG, e, "Unparsable account list %s", mFile);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Persists the given account list, unless it is the same as what the file already holds. The
+     * new contents are written to a temporary file which then replaces the old one, so readers
+     * never see a partial file.
+     *
+     * @return true if the file was written
+     */
+    synchronized boolean write(Collection<AccountCacheEntry> entries) {
+        final byte[] bytes;
+        try {
+            bytes = encode(entries);
+        } catch (IOException e) {
+            LogUtils.e(LOG_TAG, e, "Unable to encode account list");
+            return false;
+        }
+        if (mPersisted != null && mPersisted.duplicate().equals(ByteBuffer.wrap(bytes))) {
+            return false;
+        }
+
+        final File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(bytes);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Unable to rename " + temp + " to " + mFile);
+            }
+            mPersisted = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            LogUtils.d(LOG_TAG, "Persisted %d accounts in %d bytes", entries.size(), bytes.length);
+            return true;
+        } catch (IOException e) {
+            LogUtils.e(LOG_TAG, e, "Unable to write account list %s", mFile);
+            temp.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    static byte[] encode(Collection<AccountCacheEntry> entries) throws IOException {
+        final String[] columns = UIProvider.ACCOUNTS_PROJECTION;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * entries.size() + 256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columns.length);
+        for (String column : columns) {
+            writeString(out, column);
+        }
+        out.writeInt(entries.size());
+        for (AccountCacheEntry entry : entries) {
+            writeString(out, entry.mAccountsQueryUri != null
+                    ? entry.mAccountsQueryUri.toString() : null);
+            final Map<String, Object> values = entry.getValueMap();
+            for (String column : columns) {
+                final Object value = values.get(column);
+                if (value == null) {
+                    out.writeByte(TAG_NULL);
+                } else if (value instanceof Integer) {
+                    out.writeByte(TAG_INT);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Long) {
+                    out.writeByte(TAG_LONG);
+                    out.writeLong((Long) value);
+                } else {
+                    out.writeByte(TAG_STRING);
+                    writeString(out, value.toString());
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an account list, or returns null if it was written for a different format or
+     * account projection.
+     */
+    static List<AccountCacheEntry> decode(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            LogUtils.w(LOG_TAG, "Ignoring account list of unknown version");
+            return null;
+        }
+        final int columnCount = buffer.getInt();
+        final String[] columns = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = readString(buffer);
+        }
+        if (!Arrays.equals(columns, UIProvider.ACCOUNTS_PROJECTION)) {
+            LogUtils.i(LOG_TAG, "Ignoring account list with a different projection");
+            return null;
+        }
+
+        final int accountCount = buffer.getInt();
+        final Uri[] queryUris = new Uri[accountCount];
+        final MatrixCursor cursor = new MatrixCursor(columns, accountCount);
+        final Object[] row = new Object[columnCount];
+        for (int i = 0; i < accountCount; i++) {
+            final String queryUri = readString(buffer);
+            queryUris[i] = queryUri != null ? Uri.parse(queryUri) : null;
+            for (int column = 0; column < columnCount; column++) {
+                final byte tag = buffer.get();
+                switch (tag) {
+                    case TAG_NULL:
+                        row[column] = null;
+                        break;
+                    case TAG_INT:
+                        row[column] = buffer.getInt();
+                        break;
+                    case TAG_LONG:
+                        row[column] = buffer.getLong();
+                        break;
+                    case TAG_STRING:
+                        row[column] = readString(buffer);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown value tag " + tag);
+                }
+            }
+            cursor.addRow(row);
+        }
+
+        final List<AccountCacheEntry> entries = Lists.newArrayListWithCapacity(accountCount);
+        try {
+            int i = 0;
+            while (cursor.moveToNext()) {
+                entries.add(new AccountCacheEntry(new Account(cursor), queryUris[i++]));
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (buffer.hasArray()) {
+            final int offset = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            return new String(buffer.array(), offset, length, UTF_8);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -403,11 +403,23 @@ public class Address implements Parcelable {
     /**
      * Returns null if the packedList has 0 addresses, otherwise returns the first address.
      * The same as Address.unpack(packedList)[0] for non-empty list.
-     * This is an utility method that offers some performance optimization opportunities.
+     * Only the first address is unpacked.
      */
     public static Address unpackFirst(String packedList) {
-        Address[] array = unpack(packedList);
-        return array.length > 0 ? array[0] : null;
+        if (packedList == null || packedList.length() == 0) {
+            return null;
+        }
+        int pairEndIndex = packedList.indexOf(LIST_DELIMITER_EMAIL);
+        if (pairEndIndex == -1) {
+            pairEndIndex = packedList.length();
+        }
+        final int addressEndIndex = packedList.indexOf(LIST_DELIMITER_PERSONAL);
+        if (addressEndIndex == -1 || pairEndIndex <= addressEndIndex) {
+            // The first address has no personal
+            return new Address(null, packedList.substring(0, pairEndIndex));
+        }
+        return new Address(packedList.substring(addressEndIndex + 1, pairEndIndex),
+                packedList.substring(0, addressEndIndex));
     }
 
     /**
@@ -32,6 +32,7 @@ import android.os.SystemClock;
 
 import com.android.ex.photo.provider.PhotoContract;
 import com.android.mail.R;
+import com.android.mail.utils.AttachmentUtils;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.MimeType;
@@ -43,8 +44,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Map;
 
@@ -67,14 +67,6 @@ public class EmlAttachmentProvider extends ContentProvider {
     private static final int ATTACHMENT_LIST = 0;
     private static final int ATTACHMENT = 1;
 
-    /**
-     * The buffer size used to copy data from cache to sd card.
-     */
-    private static final int BUFFER_SIZE = 4096;
-
-    /** Any IO reads should be limited to this timeout */
-    private static final long READ_TIMEOUT = 3600 * 1000;
-
     private static Uri BASE_URI;
 
     private DownloadManager mDownloadManager;
@@ -282,8 +274,8 @@ public class EmlAttachmentProvider extends ContentProvider {
         attachment.destination = UIProvider.AttachmentDestination.EXTERNAL;
         final String newFilePath = getFilePath(uri);
 
-        InputStream inputStream = null;
-        OutputStream outputStream = null;
+        FileInputStream inputStream = null;
+        FileOutputStream outputStream = null;
 
         try {
             try {
@@ -299,22 +291,11 @@ public class EmlAttachmentProvider extends ContentProvider {
                 return 0;
             }
             try {
-                final long now = SystemClock.elapsedRealtime();
-                final byte data[] = new byte[BUFFER_SIZE];
-                int size = 0;
-                while (true) {
-                    final int len = inputStream.read(data);
-                    if (len != -1) {
-                        outputStream.write(data, 0, len);
-
-                        size += len;
-                    } else {
-                        break;
-                    }
-                    if (SystemClock.elapsedRealtime() - now > READ_TIMEOUT) {
-                        throw new IOException("Timed out copying attachment.");
-                    }
-                }
+                // Let the kernel copy the file, rather than reading it through a buffer
+                final FileChannel source = inputStream.getChannel();
+                final long size = source.size();
+                AttachmentUtils.transfer(source, 0, size, outputStream.getChannel(),
+                        SystemClock.elapsedRealtime());
 
                 // if the attachment is an APK, change contentUri to be a direct file uri
                 if (MimeType.isInstallable(attachment.getContentType())) {
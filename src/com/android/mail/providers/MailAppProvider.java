@@ -31,6 +31,7 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 
 import com.android.mail.R;
@@ -38,7 +39,8 @@ import com.android.mail.providers.UIProvider.AccountCursorExtraKeys;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.MatrixCursorWithExtra;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -46,6 +48,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -65,7 +70,9 @@ public abstract class MailAppProvider extends ContentProvider
         implements OnLoadCompleteListener<Cursor>{
 
     private static final String SHARED_PREFERENCES_NAME = "MailAppProvider";
+    /** Legacy JSON account list, replaced by {@link #ACCOUNT_LIST_FILE_NAME}. */
     private static final String ACCOUNT_LIST_KEY = "accountList";
+    private static final String ACCOUNT_LIST_FILE_NAME = "account_list";
     private static final String LAST_VIEWED_ACCOUNT_KEY = "lastViewedAccount";
     private static final String LAST_SENT_FROM_ACCOUNT_KEY = "lastSendFromAccount";
 
@@ -78,8 +85,14 @@ public abstract class MailAppProvider extends ContentProvider
 
     private final static String LOG_TAG = LogTag.getLogTag();
 
-    private final LinkedHashMap<Uri, AccountCacheEntry> mAccountCache =
-            new LinkedHashMap<Uri, AccountCacheEntry>();
+    /**
+     * The accounts, in display order. Never modified: writers build a new map and replace it, so
+     * readers need no lock. Writers hold {@link #mAccountCacheWriteLock}.
+     */
+    private volatile ImmutableMap<Uri, AccountCacheEntry> mAccountCache = ImmutableMap.of();
+    private final Object mAccountCacheWriteLock = new Object();
+
+    private AccountListFile mAccountListFile;
 
     private final Map<Uri, CursorLoader> mCursorLoaderMap = Maps.newHashMap();
 
@@ -179,19 +192,14 @@ public abstract class MailAppProvider extends ContentProvider
         final Bundle extras = new Bundle();
         extras.putInt(AccountCursorExtraKeys.ACCOUNTS_LOADED, mAccountsFullyLoaded ? 1 : 0);
 
-        // Make a copy of the account cache
-        final List<AccountCacheEntry> accountList;
-        synchronized (mAccountCache) {
-            accountList = ImmutableList.copyOf(mAccountCache.values());
-        }
+        final Collection<AccountCacheEntry> accountList = mAccountCache.values();
 
         final MatrixCursor cursor =
                 new MatrixCursorWithExtra(resultProjection, accountList.size(), extras);
 
         for (AccountCacheEntry accountEntry : accountList) {
-            final Account account = accountEntry.mAccount;
             final MatrixCursor.RowBuilder builder = cursor.newRow();
-            final Map<String, Object> accountValues = account.getValueMap();
+            final Map<String, Object> accountValues = accountEntry.getValueMap();
 
             for (final String columnName : resultProjection) {
                 if (accountValues.containsKey(columnName)) {
@@ -265,24 +273,6 @@ public abstract class MailAppProvider extends ContentProvider
         mCursorLoaderMap.put(accountsQueryUri, accountsCursorLoader);
     }
 
-    private void addAccountImpl(Account account, Uri accountsQueryUri, boolean notify) {
-        addAccountImpl(account.uri, new AccountCacheEntry(account, accountsQueryUri));
-
-        // Explicitly calling this out of the synchronized block in case any of the observers get
-        // called synchronously.
-        if (notify) {
-            broadcastAccountChange();
-        }
-    }
-
-    private void addAccountImpl(Uri key, AccountCacheEntry accountEntry) {
-        synchronized (mAccountCache) {
-            LogUtils.v(LOG_TAG, "adding account %s", accountEntry.mAccount);
-            // LinkedHashMap will not change the iteration order when re-inserting a key
-            mAccountCache.put(key, accountEntry);
-        }
-    }
-
     private static void broadcastAccountChange() {
         final MailAppProvider provider = sInstance;
 
@@ -326,6 +316,49 @@ public abstract class MailAppProvider extends ContentProvider
     }
 
     private void loadCachedAccountList() {
+        mAccountListFile = new AccountListFile(
+                new File(getContext().getFilesDir(), ACCOUNT_LIST_FILE_NAME));
+        List<AccountCacheEntry> accountList = mAccountListFile.read();
+        final boolean migrate = accountList == null;
+        if (migrate) {
+            accountList = loadLegacyAccountList();
+        }
+        if (accountList == null) {
+            return;
+        }
+
+        final LinkedHashMap<Uri, AccountCacheEntry> accounts = Maps.newLinkedHashMap();
+        for (AccountCacheEntry accountEntry : accountList) {
+            final Account account = accountEntry.mAccount;
+            if (account.settings == null) {
+                LogUtils.e(LOG_TAG, "Dropping account that doesn't specify settings");
+                continue;
+            }
+
+            ContentProviderClient client = mResolver.acquireContentProviderClient(account.uri);
+            if (client != null) {
+                client.release();
+                accounts.put(account.uri, accountEntry);
+            } else {
+                LogUtils.e(LOG_TAG, "Dropping account without provider: %s", account.name);
+            }
+        }
+        synchronized (mAccountCacheWriteLock) {
+            mAccountCache = ImmutableMap.copyOf(accounts);
+        }
+        broadcastAccountChange();
+
+        if (migrate) {
+            cacheAccountList();
+            getPreferences().edit().remove(ACCOUNT_LIST_KEY).apply();
+        }
+    }
+
+    /**
+     * Reads the account list from where it was kept before {@link AccountListFile}, as a JSON
+     * array in the shared preferences.
+     */
+    private List<AccountCacheEntry> loadLegacyAccountList() {
         JSONArray accounts = null;
         try {
             final String accountsJson = getPreferences().getString(ACCOUNT_LIST_KEY, null);
@@ -337,54 +370,35 @@ public abstract class MailAppProvider extends ContentProvider
         }
 
         if (accounts == null) {
-            return;
+            return null;
         }
 
+        final List<AccountCacheEntry> accountList = Lists.newArrayList();
         for (int i = 0; i < accounts.length(); i++) {
             try {
-                final AccountCacheEntry accountEntry = new AccountCacheEntry(
-                        accounts.getJSONObject(i));
-
-                if (accountEntry.mAccount.settings == null) {
-                    LogUtils.e(LOG_TAG, "Dropping account that doesn't specify settings");
-                    continue;
-                }
-
-                Account account = accountEntry.mAccount;
-                ContentProviderClient client =
-                        mResolver.acquireContentProviderClient(account.uri);
-                if (client != null) {
-                    client.release();
-                    addAccountImpl(account.uri, accountEntry);
-                } else {
-                    LogUtils.e(LOG_TAG, "Dropping account without provider: %s",
-                            account.name);
-                }
-
+                accountList.add(new AccountCacheEntry(accounts.getJSONObject(i)));
             } catch (Exception e) {
                 // Unable to create account object, skip to next
                 LogUtils.e(LOG_TAG, e,
                         "Unable to create account object from serialized form");
             }
         }
-        broadcastAccountChange();
+        return accountList;
     }
 
+    /**
+     * Persists the current account list in the background. Nothing is written if the accounts
+     * have not changed since they were last persisted.
+     */
     private void cacheAccountList() {
-        final List<AccountCacheEntry> accountList;
-
-        synchronized (mAccountCache) {
-            accountList = ImmutableList.copyOf(mAccountCache.values());
-        }
-
-        final JSONArray arr = new JSONArray();
-        for (AccountCacheEntry accountEntry : accountList) {
-            arr.put(accountEntry.toJSONObject());
-        }
-
-        final SharedPreferences.Editor editor = getPreferences().edit();
-        editor.putString(ACCOUNT_LIST_KEY, arr.toString());
-        editor.apply();
+        final AccountListFile file = mAccountListFile;
+        final Collection<AccountCacheEntry> accountList = mAccountCache.values();
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                file.write(accountList);
+            }
+        });
     }
 
     private SharedPreferences getPreferences() {
@@ -398,11 +412,9 @@ public abstract class MailAppProvider extends ContentProvider
     static public Account getAccountFromAccountUri(Uri accountUri) {
         MailAppProvider provider = getInstance();
         if (provider != null && provider.mAccountsFullyLoaded) {
-            synchronized(provider.mAccountCache) {
-                AccountCacheEntry entry = provider.mAccountCache.get(accountUri);
-                if (entry != null) {
-                    return entry.mAccount;
-                }
+            final AccountCacheEntry entry = provider.mAccountCache.get(accountUri);
+            if (entry != null) {
+                return entry.mAccount;
             }
         }
         return null;
@@ -422,60 +434,59 @@ public abstract class MailAppProvider extends ContentProvider
         // preserve ordering on partial updates
         // also preserve ordering on complete updates for any that existed previously
 
-
-        final List<AccountCacheEntry> accountList;
-        synchronized (mAccountCache) {
-            accountList = ImmutableList.copyOf(mAccountCache.values());
-        }
-
-        // Build a set of the account uris that had been associated with that query
-        final Set<Uri> previousQueryUriSet = Sets.newHashSet();
-        for (AccountCacheEntry entry : accountList) {
-            if (accountsQueryUri.equals(entry.mAccountsQueryUri)) {
-                previousQueryUriSet.add(entry.mAccount.uri);
-            }
-        }
-
         // Update the internal state of this provider if the returned result set
         // represents all accounts
         // TODO: determine what should happen with a heterogeneous set of accounts
         final Bundle extra = data.getExtras();
         mAccountsFullyLoaded = extra.getInt(AccountCursorExtraKeys.ACCOUNTS_LOADED) != 0;
 
-        final Set<Uri> newQueryUriMap = Sets.newHashSet();
-
-        // We are relying on the fact that all accounts are added in the order specified in the
-        // cursor.  Initially assume that we insert these items to at the end of the list
-        while (data.moveToNext()) {
-            final Account account = new Account(data);
-            final Uri accountUri = account.uri;
-            newQueryUriMap.add(accountUri);
-            // preserve existing order if already present and this is a partial update,
-            // otherwise add to the end
-            //
-            // N.B. this ordering policy means the order in which providers respond will affect
-            // the order of accounts.
-            if (mAccountsFullyLoaded) {
-                synchronized (mAccountCache) {
+        synchronized (mAccountCacheWriteLock) {
+            // Apply the changes to a copy, then replace the published map in one step
+            final LinkedHashMap<Uri, AccountCacheEntry> accounts =
+                    Maps.newLinkedHashMap(mAccountCache);
+
+            // Build a set of the account uris that had been associated with that query
+            final Set<Uri> previousQueryUriSet = Sets.newHashSet();
+            for (AccountCacheEntry entry : accounts.values()) {
+                if (accountsQueryUri.equals(entry.mAccountsQueryUri)) {
+                    previousQueryUriSet.add(entry.mAccount.uri);
+                }
+            }
+
+            final Set<Uri> newQueryUriMap = Sets.newHashSet();
+
+            // We are relying on the fact that all accounts are added in the order specified in the
+            // cursor.  Initially assume that we insert these items to at the end of the list
+            while (data.moveToNext()) {
+                final Account account = new Account(data);
+                final Uri accountUri = account.uri;
+                newQueryUriMap.add(accountUri);
+                // preserve existing order if already present and this is a partial update,
+                // otherwise add to the end
+                //
+                // N.B. this ordering policy means the order in which providers respond will affect
+                // the order of accounts.
+                if (mAccountsFullyLoaded) {
                     // removing the existing item will prevent LinkedHashMap from preserving the
                     // original insertion order
-                    mAccountCache.remove(accountUri);
+                    accounts.remove(accountUri);
                 }
+                LogUtils.v(LOG_TAG, "adding account %s", account);
+                // LinkedHashMap will not change the iteration order when re-inserting a key
+                accounts.put(accountUri, new AccountCacheEntry(account, accountsQueryUri));
             }
-            addAccountImpl(account, accountsQueryUri, false /* don't notify */);
-        }
-        // Remove all of the accounts that are in the new result set
-        previousQueryUriSet.removeAll(newQueryUriMap);
+            // Remove all of the accounts that are in the new result set
+            previousQueryUriSet.removeAll(newQueryUriMap);
 
-        // For all of the entries that had been in the previous result set, and are not
-        // in the new result set, remove them from the cache
-        if (previousQueryUriSet.size() > 0 && mAccountsFullyLoaded) {
-            synchronized (mAccountCache) {
+            // For all of the entries that had been in the previous result set, and are not
+            // in the new result set, remove them from the cache
+            if (previousQueryUriSet.size() > 0 && mAccountsFullyLoaded) {
                 for (Uri accountUri : previousQueryUriSet) {
                     LogUtils.d(LOG_TAG, "Removing account %s", accountUri);
-                    mAccountCache.remove(accountUri);
+                    accounts.remove(accountUri);
                 }
             }
+            mAccountCache = ImmutableMap.copyOf(accounts);
         }
         broadcastAccountChange();
 
@@ -487,9 +498,15 @@ public abstract class MailAppProvider extends ContentProvider
      * Object that allows the Account Cache provider to associate the account with the content
      * provider uri that originated that account.
      */
-    private static class AccountCacheEntry {
+    static class AccountCacheEntry {
         final Account mAccount;
         final Uri mAccountsQueryUri;
+        /**
+         * {@link Account#getValueMap()}, built once since the account never changes. It is
+         * published through a volatile field so readers never lock; racing first readers may
+         * each build it, but they build equal maps.
+         */
+        private volatile Map<String, Object> mValueMap;
 
         private static final String KEY_ACCOUNT = "acct";
         private static final String KEY_QUERY_URI = "queryUri";
@@ -518,16 +535,13 @@ public abstract class MailAppProvider extends ContentProvider
             }
         }
 
-        public JSONObject toJSONObject() {
-            try {
-                return new JSONObject()
-                .put(KEY_ACCOUNT, mAccount.serialize())
-                .putOpt(KEY_QUERY_URI, mAccountsQueryUri);
-            } catch (JSONException e) {
-                // shouldn't happen
-                throw new IllegalArgumentException(e);
+        public Map<String, Object> getValueMap() {
+            Map<String, Object> valueMap = mValueMap;
+            if (valueMap == null) {
+                valueMap = Collections.unmodifiableMap(mAccount.getValueMap());
+                mValueMap = valueMap;
             }
+            return valueMap;
         }
-
     }
 }
@@ -30,8 +30,10 @@ import android.net.Uri;
 import android.text.TextUtils;
 
 import com.android.mail.R;
+import com.android.mail.utils.MatrixCursorWithCachedColumns;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class SearchRecentSuggestionsProvider extends ContentProvider {
     /*
@@ -47,8 +49,10 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
     private SQLiteOpenHelper mOpenHelper;
     private static final String sDatabaseName = "suggestions.db";
     private static final String sSuggestions = "suggestions";
-    private static final String ORDER_BY = "date DESC";
     private static final String NULL_COLUMN = "query";
+    private static final String HITS_COLUMN = "hits";
+    private static final String[] INDEX_PROJECTION =
+            new String[] { "_id", "display1", "query", "date", HITS_COLUMN };
 
     // Table of database versions.  Don't forget to update!
     // NOTE:  These version values are shifted left 8 bits (x 256) in order to create space for
@@ -56,7 +60,8 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
     //
     // 1      original implementation with queries, and 1 or 2 display columns
     // 1->2   added UNIQUE constraint to display1 column
-    private static final int DATABASE_VERSION = 2 * 256;
+    // 2->3   added hits column, to rank suggestions by frequency as well as recency
+    private static final int DATABASE_VERSION = 3 * 256;
 
     /**
      * This mode bit configures the database to record recent queries.  <i>required</i>
@@ -71,8 +76,17 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
     private Uri mSuggestionsUri;
     private UriMatcher mUriMatcher;
 
-    private String mSuggestSuggestionClause;
     private String[] mSuggestionProjection;
+    private String mHistoricalIcon;
+
+    /**
+     * In-memory prefix index over the suggestions table, built on the first query and dropped
+     * whenever the table is modified.
+     */
+    private volatile SuggestionIndex mIndex;
+    /** Incremented on every modification, so that a load racing with a write is not kept. */
+    private volatile int mIndexGeneration;
+    private final Object mIndexLock = new Object();
 
     /**
      * Builds the database.  This version has extra support for using the version field
@@ -94,12 +108,19 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
                     ",display1 TEXT UNIQUE ON CONFLICT REPLACE" +
                     ",query TEXT" +
                     ",date LONG" +
+                    "," + HITS_COLUMN + " INTEGER DEFAULT 1" +
                     ");");
             db.execSQL(builder.toString());
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // The low 8 bits hold the mode, which must not have changed to keep the table
+            if ((oldVersion >> 8) == 2 && (oldVersion & 0xff) == (newVersion & 0xff)) {
+                db.execSQL("ALTER TABLE suggestions ADD COLUMN " + HITS_COLUMN
+                        + " INTEGER DEFAULT 1");
+                return;
+            }
             db.execSQL("DROP TABLE IF EXISTS suggestions");
             onCreate(db);
         }
@@ -133,15 +154,14 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
         mUriMatcher.addURI(mAuthority, SearchManager.SUGGEST_URI_PATH_QUERY, URI_MATCH_SUGGEST);
 
         // The URI of the icon that we will include on every suggestion here.
-        final String historicalIcon = ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
+        mHistoricalIcon = ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
                 + getContext().getPackageName() + "/" + R.drawable.ic_history_holo_light;
 
-        mSuggestSuggestionClause = "display1 LIKE ?";
         mSuggestionProjection = new String [] {
                 "_id",
-                "display1 AS " + SearchManager.SUGGEST_COLUMN_TEXT_1,
-                "query AS " + SearchManager.SUGGEST_COLUMN_QUERY,
-                "'" + historicalIcon + "' AS " + SearchManager.SUGGEST_COLUMN_ICON_1
+                SearchManager.SUGGEST_COLUMN_TEXT_1,
+                SearchManager.SUGGEST_COLUMN_QUERY,
+                SearchManager.SUGGEST_COLUMN_ICON_1
         };
     }
 
@@ -162,6 +182,7 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
         int count = 0;
         if (base.equals(sSuggestions)) {
             count = db.delete(sSuggestions, selection, selectionArgs);
+            invalidateIndex();
         } else {
             throw new IllegalArgumentException("Unknown Uri");
         }
@@ -210,7 +231,9 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
         Uri newUri = null;
         if (base.equals(sSuggestions)) {
             if (length == 1) {
+                values = withIncrementedHits(db, values);
                 rowID = db.insert(sSuggestions, NULL_COLUMN, values);
+                invalidateIndex();
                 if (rowID > 0) {
                     newUri = Uri.withAppendedPath(mSuggestionsUri, String.valueOf(rowID));
                 }
@@ -241,32 +264,88 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
     private ArrayList<String> mFullQueryTerms;
 
     /**
-     *  Copy the projection, and change the query field alone.
-     * @param selectionArgs
-     * @return projection
+     * Returns the text to prepend to each suggestion's query: the other terms the user has typed,
+     * in addition to the one being completed.
      */
-    private String[] createProjection(String[] selectionArgs) {
-        String[] newProjection = new String[mSuggestionProjection.length];
-        String queryAs;
-        int fullSize = (mFullQueryTerms != null) ? mFullQueryTerms.size() : 0;
-        if (fullSize > 0) {
-            String realQuery = "'";
-            for (int i = 0; i < fullSize; i++) {
-                realQuery+= mFullQueryTerms.get(i);
-                if (i < fullSize -1) {
-                    realQuery += QUERY_TOKEN_SEPARATOR;
+    private String getQueryPrefix() {
+        final ArrayList<String> terms = mFullQueryTerms;
+        final int fullSize = (terms != null) ? terms.size() : 0;
+        if (fullSize == 0) {
+            return null;
+        }
+        final StringBuilder realQuery = new StringBuilder();
+        for (int i = 0; i < fullSize; i++) {
+            realQuery.append(terms.get(i));
+            if (i < fullSize - 1) {
+                realQuery.append(QUERY_TOKEN_SEPARATOR);
+            }
+        }
+        return realQuery.append(' ').toString();
+    }
+
+    /**
+     * Since the table has on-conflict-replace semantics, repeating a search replaces its row.
+     * Carry the number of times it has been searched for over to the new row.
+     */
+    private static ContentValues withIncrementedHits(SQLiteDatabase db, ContentValues values) {
+        final String display = values.getAsString("display1");
+        if (display == null || values.containsKey(HITS_COLUMN)) {
+            return values;
+        }
+        int hits = 1;
+        final Cursor c = db.query(sSuggestions, new String[] { HITS_COLUMN }, "display1 = ?",
+                new String[] { display }, null, null, null);
+        if (c != null) {
+            try {
+                if (c.moveToFirst()) {
+                    hits = c.getInt(0) + 1;
                 }
+            } finally {
+                c.close();
             }
-            queryAs = realQuery + " ' || query AS " + SearchManager.SUGGEST_COLUMN_QUERY;
-        } else {
-            queryAs = "query AS " + SearchManager.SUGGEST_COLUMN_QUERY;
         }
-        for (int i = 0; i < mSuggestionProjection.length; i++) {
-            newProjection[i] = mSuggestionProjection[i];
+        final ContentValues newValues = new ContentValues(values);
+        newValues.put(HITS_COLUMN, hits);
+        return newValues;
+    }
+
+    private void invalidateIndex() {
+        synchronized (mIndexLock) {
+            mIndexGeneration++;
+            mIndex = null;
         }
-        // Assumes that newProjection[length-2] is the query field.
-        newProjection[mSuggestionProjection.length - 2] = queryAs;
-        return newProjection;
+    }
+
+    private SuggestionIndex getIndex() {
+        SuggestionIndex index = mIndex;
+        if (index != null) {
+            return index;
+        }
+        final int generation = mIndexGeneration;
+        index = loadIndex();
+        synchronized (mIndexLock) {
+            if (generation == mIndexGeneration) {
+                mIndex = index;
+            }
+        }
+        return index;
+    }
+
+    private SuggestionIndex loadIndex() {
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        final List<SuggestionIndex.Entry> entries = new ArrayList<SuggestionIndex.Entry>();
+        final Cursor c = db.query(sSuggestions, INDEX_PROJECTION, null, null, null, null, null);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    entries.add(new SuggestionIndex.Entry(c.getLong(0), c.getString(1),
+                            c.getString(2), c.getLong(3), c.getInt(4)));
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return new SuggestionIndex(entries);
     }
 
     /**
@@ -281,31 +360,33 @@ public class SearchRecentSuggestionsProvider extends ContentProvider {
     /**
      * This method is provided for use by the ContentResolver. Do not override,
      * or directly call from your own code.
+     * <p>
+     * Suggestions are looked up in an in-memory index by word prefix, and ranked by recency and
+     * frequency. A {@link SearchManager#SUGGEST_PARAMETER_LIMIT} parameter on the uri limits
+     * the number of results.
      */
-    // TODO: Confirm no injection attacks here, or rewrite.
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
             String sortOrder) {
-        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-
-        // special case for actual suggestions (from search manager)
-        String suggestSelection;
-        String[] myArgs;
-        if (TextUtils.isEmpty(selectionArgs[0])) {
-            suggestSelection = null;
-            myArgs = null;
-        } else {
-            String like = "%" + selectionArgs[0] + "%";
-            myArgs = new String[] { like };
-            suggestSelection = mSuggestSuggestionClause;
+        int limit = 0;
+        final String limitParam = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
+        if (!TextUtils.isEmpty(limitParam)) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+        }
+
+        final List<SuggestionIndex.Entry> entries = getIndex().query(selectionArgs[0], limit);
+        final String queryPrefix = getQueryPrefix();
+        // The real query will show up in the suggestion, along with the other typed terms
+        final MatrixCursorWithCachedColumns c =
+                new MatrixCursorWithCachedColumns(mSuggestionProjection, entries.size());
+        for (final SuggestionIndex.Entry entry : entries) {
+            final String query = queryPrefix != null ? queryPrefix + entry.query : entry.query;
+            c.addRow(new Object[] { entry.id, entry.display, query, mHistoricalIcon });
         }
-        // Suggestions are always performed with the default sort order
-        // Add this to the query:
-        // "select 'real_query' as SearchManager.SUGGEST_COLUMN_QUERY.
-        // rest of query
-        // real query will then show up in the suggestion
-        Cursor c = db.query(sSuggestions, createProjection(selectionArgs), suggestSelection, myArgs,
-                null, null, ORDER_BY, null);
         c.setNotificationUri(getContext().getContentResolver(), uri);
         return c;
     }
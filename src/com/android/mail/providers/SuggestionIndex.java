@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable in-memory index over the recent search suggestions. Every word of every suggestion
+ * is kept in a sorted array, so the suggestions matching a typed prefix are found with two
+ * binary searches rather than a scan over the whole table. Matches are ranked by a combination
+ * of recency and how often the suggestion has been searched for.
+ */
+final class SuggestionIndex {
+    /** How much a single repeat search is worth, expressed as an age difference. */
+    private static final long FREQUENCY_BONUS_MS = 24L * 60 * 60 * 1000;
+
+    static final class Entry {
+        final long id;
+        final String display;
+        final String query;
+        final long date;
+        final int hits;
+        final long score;
+
+        Entry(long id, String display, String query, long date, int hits) {
+            this.id = id;
+            this.display = display;
+            this.query = query;
+            this.date = date;
+            this.hits = hits;
+            this.score = date + (Math.max(hits, 1) - 1) * FREQUENCY_BONUS_MS;
+        }
+    }
+
+    private static final Comparator<Entry> SCORE_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.score != rhs.score) {
+                return lhs.score > rhs.score ? -1 : 1;
+            }
+            return lhs.id > rhs.id ? -1 : (lhs.id == rhs.id ? 0 : 1);
+        }
+    };
+
+    /** All entries, in descending score order. */
+    private final Entry[] mEntries;
+    /** Lowercased words of all suggestions, sorted. */
+    private final String[] mWords;
+    /** For each word in {@link #mWords}, the index of its entry in {@link #mEntries}. */
+    private final int[] mWordEntries;
+
+    SuggestionIndex(List<Entry> entries) {
+        mEntries = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(mEntries, SCORE_ORDER);
+
+        final List<WordRef> refs = new ArrayList<WordRef>(mEntries.length * 2);
+        for (int i = 0; i < mEntries.length; i++) {
+            final String display = mEntries[i].display;
+            if (display == null) {
+                continue;
+            }
+            final String lower = display.toLowerCase(Locale.getDefault());
+            // Index the whole string as well as each word, so multi-word prefixes still match
+            refs.add(new WordRef(lower, i));
+            int start = -1;
+            for (int j = 0; j <= lower.length(); j++) {
+                final boolean boundary = j == lower.length()
+                        || Character.isWhitespace(lower.charAt(j));
+                if (boundary) {
+                    // The first word is already covered by the whole string
+                    if (start > 0) {
+                        refs.add(new WordRef(lower.substring(start, j), i));
+                    }
+                    start = -1;
+                } else if (start < 0) {
+                    start = j;
+                }
+            }
+        }
+        final WordRef[] sorted = refs.toArray(new WordRef[refs.size()]);
+        Arrays.sort(sorted);
+        mWords = new String[sorted.length];
+        mWordEntries = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            mWords[i] = sorted[i].word;
+            mWordEntries[i] = sorted[i].entry;
+        }
+    }
+
+    int size() {
+        return mEntries.length;
+    }
+
+    /**
+     * Returns up to <code>limit</code> entries with a word starting with <code>prefix</code>,
+     * best first. An empty prefix matches everything.
+     */
+    List<Entry> query(String prefix, int limit) {
+        if (limit <= 0) {
+            limit = Integer.MAX_VALUE;
+        }
+        final List<Entry> results = new ArrayList<Entry>(Math.min(limit, mEntries.length));
+        if (prefix == null || prefix.length() == 0) {
+            for (int i = 0; i < mEntries.length && results.size() < limit; i++) {
+                results.add(mEntries[i]);
+            }
+            return results;
+        }
+
+        final String lower = prefix.toLowerCase(Locale.getDefault());
+        final int start = lowerBound(lower);
+        final int end = upperBound(lower, start);
+        // Entries are sorted by score, so the entry indices themselves are the rank
+        final int[] matches = new int[end - start];
+        for (int i = start; i < end; i++) {
+            matches[i - start] = mWordEntries[i];
+        }
+        Arrays.sort(matches);
+        int previous = -1;
+        for (int i = 0; i < matches.length && results.size() < limit; i++) {
+            if (matches[i] != previous) {
+                results.add(mEntries[matches[i]]);
+                previous = matches[i];
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the index one past the last word at or after <code>from</code> that starts with
+     * <code>prefix</code>.
+     */
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = mWords.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mWords[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = mWords.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mWords[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class WordRef implements Comparable<WordRef> {
+        final String word;
+        final int entry;
+
+        WordRef(String word, int entry) {
+            this.word = word;
+            this.entry = entry;
+        }
+
+        @Override
+        public int compareTo(WordRef another) {
+            final int result = word.compareTo(another.word);
+            return result != 0 ? result : entry - another.entry;
+        }
+    }
+}
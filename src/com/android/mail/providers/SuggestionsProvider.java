@@ -25,9 +25,11 @@ import android.provider.ContactsContract;
 import android.app.SearchManager;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.android.mail.R;
+import com.android.mail.utils.LruCache;
 import com.android.mail.utils.MatrixCursorWithCachedColumns;
 
 import java.util.ArrayList;
@@ -64,6 +66,34 @@ public class SuggestionsProvider extends SearchRecentSuggestionsProvider {
      * Minimum length of query before we start showing contacts suggestions.
      */
     static private final int MIN_QUERY_LENGTH_FOR_CONTACTS = 2;
+    /**
+     * Number of prefixes for which contacts matches are remembered.
+     */
+    static private final int CONTACTS_CACHE_SIZE = 32;
+    /**
+     * How long contacts matches are remembered for. This only needs to cover the user typing
+     * (and deleting) characters of a single search.
+     */
+    static private final long CONTACTS_CACHE_EXPIRY_MS = 30 * 1000;
+
+    /**
+     * Recent contacts matches, keyed by the typed prefix.
+     */
+    private final LruCache<String, ContactsMatches> mContactsCache =
+            new LruCache<String, ContactsMatches>(CONTACTS_CACHE_SIZE);
+
+    /**
+     * The display strings of the contacts matching a prefix, and when they were looked up.
+     */
+    private static final class ContactsMatches {
+        final long timestamp;
+        final ArrayList<String> matches;
+
+        ContactsMatches(long timestamp, ArrayList<String> matches) {
+            this.timestamp = timestamp;
+            this.matches = matches;
+        }
+    }
 
     public SuggestionsProvider() {
         super();
@@ -132,37 +162,55 @@ public class SuggestionsProvider extends SearchRecentSuggestionsProvider {
 
         /**
          * Searches over the contacts cursor with the specified query as the starting characters to
-         * match.
+         * match. Matches are cached for a short while, since the same prefixes are queried
+         * repeatedly as the user types and corrects the search.
          * @param query
          * @return a cursor over the contacts database with the contacts matching the query.
          */
         public ContactsCursor query(String query) {
-            final Uri contactsUri = Uri.withAppendedPath(
-                    ContactsContract.CommonDataKinds.Email.CONTENT_FILTER_URI, Uri.encode(query));
-            final Cursor cursor = mContext.getContentResolver().query(
-                    contactsUri, sContract, null, null, null);
+            final long now = SystemClock.elapsedRealtime();
+            ContactsMatches cached = mContactsCache.getElement(query);
+            if (cached == null || now - cached.timestamp > CONTACTS_CACHE_EXPIRY_MS) {
+                cached = new ContactsMatches(now, queryContacts(query));
+                mContactsCache.putElement(query, cached);
+            }
             // We don't want to show a contact icon here. Leaving the SEARCH_ICON_1 field
             // empty causes inconsistent behavior because the cursor is merged with the
             // historical suggestions, which have an icon.  The solution is to show an empty icon
             // instead.
             final String emptyIcon = ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
                     + mContext.getPackageName() + "/" + R.drawable.empty;
+            for (final String match : cached.matches) {
+                // The order of fields is:
+                // _ID, SUGGEST_COLUMN_TEXT_1, SUGGEST_COLUMN_QUERY, SUGGEST_COLUMN_ICON_1
+                addRow(new Object[] {0, match, createQuery(match), emptyIcon});
+            }
+            return this;
+        }
+
+        private ArrayList<String> queryContacts(String query) {
+            final ArrayList<String> matches = new ArrayList<String>();
+            final Uri contactsUri = Uri.withAppendedPath(
+                    ContactsContract.CommonDataKinds.Email.CONTENT_FILTER_URI, Uri.encode(query));
+            final Cursor cursor = mContext.getContentResolver().query(
+                    contactsUri, sContract, null, null, null);
             if (cursor != null) {
-                final int nameIndex = cursor
-                        .getColumnIndex(ContactsContract.CommonDataKinds.Email.DISPLAY_NAME);
-                final int addressIndex = cursor
-                        .getColumnIndex(ContactsContract.CommonDataKinds.Email.DATA);
-                String match;
-                while (cursor.moveToNext()) {
-                    match = cursor.getString(nameIndex);
-                    match = !TextUtils.isEmpty(match) ? match : cursor.getString(addressIndex);
-                    // The order of fields is:
-                    // _ID, SUGGEST_COLUMN_TEXT_1, SUGGEST_COLUMN_QUERY, SUGGEST_COLUMN_ICON_1
-                    addRow(new Object[] {0, match, createQuery(match), emptyIcon});
+                try {
+                    final int nameIndex = cursor
+                            .getColumnIndex(ContactsContract.CommonDataKinds.Email.DISPLAY_NAME);
+                    final int addressIndex = cursor
+                            .getColumnIndex(ContactsContract.CommonDataKinds.Email.DATA);
+                    String match;
+                    while (cursor.moveToNext()) {
+                        match = cursor.getString(nameIndex);
+                        match = !TextUtils.isEmpty(match) ? match : cursor.getString(addressIndex);
+                        matches.add(match);
+                    }
+                } finally {
+                    cursor.close();
                 }
-                cursor.close();
             }
-            return this;
+            return matches;
         }
     }
 
@@ -34,6 +34,7 @@ import com.android.mail.R;
 import com.android.mail.analytics.Analytics;
 import com.android.mail.browse.ConversationAccountController;
 import com.android.mail.browse.ConversationMessage;
+import com.android.mail.browse.ConversationPrefetcher;
 import com.android.mail.browse.ConversationViewHeader.ConversationViewHeaderCallbacks;
 import com.android.mail.browse.MessageCursor;
 import com.android.mail.browse.MessageCursor.ConversationController;
@@ -580,6 +581,12 @@ public abstract class AbstractConversationViewFragment extends Fragment implemen
             }
         }
 
+        @Override
+        protected ObjectCursor<ConversationMessage> takePrefetchedCursor() {
+            // Only the first load uses the plain message list uri, see deliverResult()
+            return ConversationPrefetcher.take(getUri());
+        }
+
         @Override
         protected ObjectCursor<ConversationMessage> getObjectCursor(Cursor inner) {
             return new MessageCursor(inner);
@@ -18,7 +18,9 @@
 package com.android.mail.ui;
 
 import android.content.ContentResolver;
-import android.graphics.Bitmap;
+import android.content.Context;
+
+import com.android.bitmap.ReusableBitmap;
 
 /**
  * Interface to enable reuse of {@link ThumbnailLoadTask} with various
@@ -27,9 +29,13 @@ import android.graphics.Bitmap;
 public interface AttachmentBitmapHolder {
     public int getThumbnailWidth();
     public int getThumbnailHeight();
-    public void setThumbnail(Bitmap result);
+    /**
+     * Shows a thumbnail, taking over a reference to it that is released when it is replaced.
+     */
+    public void setThumbnail(ReusableBitmap result);
     public void setThumbnailToDefault();
     public ContentResolver getResolver();
+    public Context getContext();
     public boolean bitmapSetToDefault();
     public void thumbnailLoadFailed();
 }
@@ -32,8 +32,10 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.ImageView.ScaleType;
 
+import com.android.bitmap.ReusableBitmap;
 import com.android.ex.photo.util.ImageUtils;
 import com.android.mail.R;
+import com.android.mail.bitmap.OrientedBitmapDrawable;
 import com.android.mail.providers.Attachment;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.AttachmentUtils;
@@ -48,6 +50,8 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
     private ImageView mIcon;
     private ImageView mDefaultIcon;
     private ThumbnailLoadTask mThumbnailTask;
+    /** The thumbnail shown, to which the tile holds a reference */
+    private ReusableBitmap mThumbnail;
     private TextView mTitle;
     private TextView mSubtitle;
     private String mAttachmentSizeText;
@@ -96,6 +100,17 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
         ThumbnailLoadTask.setupThumbnailPreview(mThumbnailTask, this, mAttachment, null);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        // Give the thumbnail back to be reused. It is shown again, usually from memory, when the
+        // tile is laid out or rendered again.
+        clearThumbnail();
+        mDefaultIcon.setVisibility(View.VISIBLE);
+        mDefaultThumbnailSet = true;
+    }
+
     /**
      * Render or update an attachment's view. This happens immediately upon instantiation, and
      * repeatedly as status updates stream in, so only properties with new or changed values will
@@ -149,17 +164,19 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
 
     @Override
     public void setThumbnailToDefault() {
-        Bitmap cachedPreview = mAttachmentPreviewCache.get(mAttachment);
+        final ReusableBitmap cachedPreview = mAttachmentPreviewCache.get(mAttachment);
         if (cachedPreview != null) {
+            cachedPreview.acquireReference();
             setThumbnail(cachedPreview);
             return;
         }
+        clearThumbnail();
         mDefaultIcon.setVisibility(View.VISIBLE);
         mDefaultThumbnailSet = true;
     }
 
     @Override
-    public void setThumbnail(Bitmap result) {
+    public void setThumbnail(ReusableBitmap result) {
         if (result == null) {
             return;
         }
@@ -168,8 +185,11 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
         mDefaultIcon.setVisibility(View.GONE);
 
         final int maxSize = getResources().getInteger(R.integer.attachment_preview_max_size);
-        final int width = result.getWidth();
-        final int height = result.getHeight();
+        // The size of the image as it is drawn, upright
+        final boolean isNotRotatedOr180 =
+                result.getOrientation() == 0 || result.getOrientation() == 180;
+        final int width = isNotRotatedOr180 ? result.getLogicalWidth() : result.getLogicalHeight();
+        final int height = isNotRotatedOr180 ? result.getLogicalHeight() : result.getLogicalWidth();
         final int scaledWidth = width * getResources().getDisplayMetrics().densityDpi
                 / DisplayMetrics.DENSITY_DEFAULT;
         final int scaledHeight = height * getResources().getDisplayMetrics().densityDpi
@@ -205,11 +225,24 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
             mIcon.setScaleType(ScaleType.CENTER);
         }
 
-        mIcon.setImageBitmap(result);
+        mIcon.setImageDrawable(new OrientedBitmapDrawable(getResources(), result));
+        // The reference passed in replaces the one to the thumbnail shown, even if it is the same
+        if (mThumbnail != null) {
+            mThumbnail.releaseReference();
+        }
+        mThumbnail = result;
         mAttachmentPreviewCache.set(mAttachment, result);
         mDefaultThumbnailSet = false;
     }
 
+    private void clearThumbnail() {
+        if (mThumbnail != null) {
+            mIcon.setImageDrawable(null);
+            mThumbnail.releaseReference();
+            mThumbnail = null;
+        }
+    }
+
     @Override
     public int getThumbnailWidth() {
         return mIcon.getWidth();
@@ -232,7 +265,7 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
 
     public static final class AttachmentPreview implements Parcelable {
         public String attachmentIdentifier;
-        public Bitmap preview;
+        public ReusableBitmap preview;
 
         @Override
         public int describeContents() {
@@ -242,7 +275,8 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
         @Override
         public void writeToParcel(Parcel dest, int flags) {
             dest.writeString(attachmentIdentifier);
-            dest.writeParcelable(preview, 0);
+            dest.writeParcelable(preview != null ? preview.bmp : null, 0);
+            dest.writeInt(preview != null ? preview.getOrientation() : 0);
         }
 
         public static final Parcelable.Creator<AttachmentPreview> CREATOR
@@ -260,18 +294,29 @@ public class AttachmentTile extends RelativeLayout implements AttachmentBitmapHo
 
         private AttachmentPreview(Parcel in) {
             attachmentIdentifier = in.readString();
-            preview = in.readParcelable(null);
+            final Bitmap bitmap = in.readParcelable(null);
+            final int orientation = in.readInt();
+            if (bitmap != null) {
+                // Not from the thumbnail cache, so never reused
+                preview = new ReusableBitmap(bitmap, false /* reusable */);
+                preview.setLogicalWidth(bitmap.getWidth());
+                preview.setLogicalHeight(bitmap.getHeight());
+                preview.setOrientation(orientation);
+            }
         }
 
-        public AttachmentPreview(Attachment attachment, Bitmap preview) {
+        public AttachmentPreview(Attachment attachment, ReusableBitmap preview) {
             this.attachmentIdentifier = attachment.getIdentifierUri().toString();
             this.preview = preview;
         }
     }
 
+    /**
+     * Keeps the thumbnails of attachments. The cache takes its own references to them.
+     */
     public interface AttachmentPreviewCache {
-        void set(Attachment attachment, Bitmap preview);
-        Bitmap get(Attachment attachment);
+        void set(Attachment attachment, ReusableBitmap preview);
+        ReusableBitmap get(Attachment attachment);
     }
 
     @Override
@@ -18,13 +18,13 @@ package com.android.mail.ui;
 
 import android.app.FragmentManager;
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.FrameLayout;
 
+import com.android.bitmap.ReusableBitmap;
 import com.android.mail.R;
 import com.android.mail.browse.MessageAttachmentTile;
 import com.android.mail.compose.ComposeAttachmentTile;
@@ -209,20 +209,42 @@ public class AttachmentTileGrid extends FrameLayout implements AttachmentPreview
     public void setAttachmentPreviews(ArrayList<AttachmentPreview> previews) {
         if (previews != null) {
             for (AttachmentPreview preview : previews) {
-                mAttachmentPreviews.put(preview.attachmentIdentifier, preview);
+                if (preview.preview != null) {
+                    preview.preview.acquireReference();
+                }
+                releasePreview(mAttachmentPreviews.put(preview.attachmentIdentifier, preview));
             }
         }
     }
 
+    private static void releasePreview(AttachmentPreview preview) {
+        if (preview != null && preview.preview != null) {
+            preview.preview.releaseReference();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        // Give the previews back to be reused; the tiles load them again from the thumbnail
+        // caches if they are shown again
+        for (AttachmentPreview preview : mAttachmentPreviews.values()) {
+            releasePreview(preview);
+        }
+        mAttachmentPreviews.clear();
+    }
+
     /*
      * Save the preview for an attachment
      */
     @Override
-    public void set(Attachment attachment, Bitmap preview) {
+    public void set(Attachment attachment, ReusableBitmap preview) {
         final String attachmentIdentifier = attachment.getIdentifierUri().toString();
         if (attachmentIdentifier != null) {
-            mAttachmentPreviews.put(
-                    attachmentIdentifier, new AttachmentPreview(attachment, preview));
+            preview.acquireReference();
+            releasePreview(mAttachmentPreviews.put(
+                    attachmentIdentifier, new AttachmentPreview(attachment, preview)));
         }
     }
 
@@ -230,7 +252,7 @@ public class AttachmentTileGrid extends FrameLayout implements AttachmentPreview
      * Returns a saved preview that was previously set
      */
     @Override
-    public Bitmap get(Attachment attachment) {
+    public ReusableBitmap get(Attachment attachment) {
         final String attachmentIdentifier = attachment.getIdentifierUri().toString();
         if (attachmentIdentifier != null) {
             final AttachmentPreview attachmentPreview = mAttachmentPreviews.get(
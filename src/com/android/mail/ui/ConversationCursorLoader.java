@@ -22,6 +22,8 @@ import android.content.AsyncTaskLoader;
 import android.net.Uri;
 
 import com.android.mail.browse.ConversationCursor;
+import com.android.mail.perf.Histogram;
+import com.android.mail.perf.Metrics;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.UIProvider.AccountCapabilities;
 import com.android.mail.utils.LogUtils;
@@ -30,6 +32,7 @@ import java.util.ArrayList;
 
 public class ConversationCursorLoader extends AsyncTaskLoader<ConversationCursor> {
     private static final String TAG = "ConversationCursorLoader";
+    private static final Histogram PERF_LOAD = Metrics.histogram("conversation_cursor/load");
     private final Uri mUri;
     private boolean mInitialConversationLimit;
     private final ConversationCursor mConversationCursor;
@@ -107,7 +110,9 @@ public class ConversationCursorLoader extends AsyncTaskLoader<ConversationCursor
     @Override
     public ConversationCursor loadInBackground() {
         if (!mInit) {
+            PERF_LOAD.begin();
             mConversationCursor.load();
+            PERF_LOAD.end();
             mInit = true;
         }
         return mConversationCursor;
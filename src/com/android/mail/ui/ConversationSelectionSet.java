@@ -22,6 +22,7 @@ import android.os.Parcelable;
 
 import com.android.mail.browse.ConversationCursor;
 import com.android.mail.providers.Conversation;
+import com.android.mail.utils.LongHashMap;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
@@ -30,9 +31,6 @@ import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -64,8 +62,11 @@ public class ConversationSelectionSet implements Parcelable {
     };
 
     private final Object mLock = new Object();
-    /** Map of conversation ID to conversation objects. Every selected conversation is here. */
-    private final HashMap<Long, Conversation> mInternalMap = new HashMap<Long, Conversation>();
+    /**
+     * Map of conversation ID to conversation objects. Every selected conversation is here. Keys
+     * are kept unboxed, so selecting every conversation in a large folder stays cheap.
+     */
+    private final LongHashMap<Conversation> mInternalMap = new LongHashMap<Conversation>();
     /** Map of Conversation URI to Conversation ID. */
     private final BiMap<String, Long> mConversationUriToIdMap = HashBiMap.create();
     /** All objects that are interested in changes to the selected set. */
@@ -121,7 +122,7 @@ public class ConversationSelectionSet implements Parcelable {
      * @param key the id of the conversation
      * @return true if the key exists in this selected set.
      */
-    private boolean containsKey(Long key) {
+    private boolean containsKey(long key) {
         synchronized (mLock) {
             return mInternalMap.containsKey(key);
         }
@@ -179,7 +180,7 @@ public class ConversationSelectionSet implements Parcelable {
         }
     }
 
-    private void put(Long id, Conversation info) {
+    private void put(long id, Conversation info) {
         synchronized (mLock) {
             final boolean initiallyEmpty = mInternalMap.isEmpty();
             mInternalMap.put(id, info);
@@ -194,21 +195,25 @@ public class ConversationSelectionSet implements Parcelable {
     }
 
     /** @see java.util.HashMap#remove */
-    private void remove(Long id) {
+    private void remove(long id) {
         synchronized (mLock) {
-            removeAll(Collections.singleton(id));
+            removeAll(new long[] { id }, 1);
         }
     }
 
-    private void removeAll(Collection<Long> ids) {
+    /**
+     * Removes the first <code>count</code> ids in <code>ids</code>.
+     */
+    private void removeAll(long[] ids, int count) {
         synchronized (mLock) {
             final boolean initiallyNotEmpty = !mInternalMap.isEmpty();
 
             final BiMap<Long, String> inverseMap = mConversationUriToIdMap.inverse();
 
-            for (Long id : ids) {
-                mInternalMap.remove(id);
-                inverseMap.remove(id);
+            for (int i = 0; i < count; i++) {
+                if (mInternalMap.remove(ids[i]) != null) {
+                    inverseMap.remove(ids[i]);
+                }
             }
 
             ArrayList<ConversationSetObserver> observersCopy = Lists.newArrayList(mObservers);
@@ -263,10 +268,18 @@ public class ConversationSelectionSet implements Parcelable {
         }
     }
 
-    /** @see java.util.HashMap#keySet() */
+    /**
+     * Returns a copy of the ids of the selected conversations. Unlike {@link #values()}, this is
+     * not a live view.
+     */
     public Set<Long> keySet() {
         synchronized (mLock) {
-            return mInternalMap.keySet();
+            final long[] ids = mInternalMap.keys();
+            final Set<Long> result = Sets.newHashSetWithExpectedSize(ids.length);
+            for (long id : ids) {
+                result.add(id);
+            }
+            return result;
         }
     }
 
@@ -283,6 +296,7 @@ public class ConversationSelectionSet implements Parcelable {
 
         final boolean initiallyEmpty = mInternalMap.isEmpty();
         mInternalMap.putAll(other.mInternalMap);
+        mConversationUriToIdMap.putAll(other.mConversationUriToIdMap);
 
         final ArrayList<ConversationSetObserver> observersCopy = Lists.newArrayList(mObservers);
         dispatchOnChange(observersCopy);
@@ -310,6 +324,9 @@ public class ConversationSelectionSet implements Parcelable {
      * Iterates through a cursor of conversations and ensures that the current set is present
      * within the result set denoted by the cursor. Any conversations not foun in the result set
      * is removed from the collection.
+     * <p>
+     * Each selected id is probed in the cursor's id index, so the cost is proportional to the
+     * size of the selection rather than the size of the cursor.
      */
     public void validateAgainstCursor(ConversationCursor cursor) {
         synchronized (mLock) {
@@ -323,42 +340,44 @@ public class ConversationSelectionSet implements Parcelable {
             }
 
             // First ask the ConversationCursor for the list of conversations that have been deleted
-            final Set<String> deletedConversations = cursor.getDeletedItems();
-            // For each of the uris in the deleted set, add the conversation id to the
-            // itemsToRemoveFromBatch set.
-            final Set<Long> itemsToRemoveFromBatch = Sets.newHashSet();
+            validateAgainst(cursor.getDeletedItems(), cursor.getConversationIds());
+        }
+    }
+
+    /**
+     * Removes the selected conversations whose uris are in <code>deletedConversations</code>,
+     * or whose ids are missing from <code>cursorIds</code>. If <code>cursorIds</code> is
+     * <code>null</code> (the cursor has not loaded yet), only the deleted items are removed.
+     */
+    @VisibleForTesting
+    void validateAgainst(Set<String> deletedConversations, Set<Long> cursorIds) {
+        synchronized (mLock) {
+            if (isEmpty()) {
+                return;
+            }
+
+            final long[] selectedIds = mInternalMap.keys();
+            // The ids to remove are collected at the front of selectedIds
+            int removeCount = 0;
+
+            final LongHashMap<Boolean> deletedIds = new LongHashMap<Boolean>(
+                    deletedConversations.size());
             for (String conversationUri : deletedConversations) {
                 final Long conversationId = mConversationUriToIdMap.get(conversationUri);
                 if (conversationId != null) {
-                    itemsToRemoveFromBatch.add(conversationId);
+                    deletedIds.put(conversationId, Boolean.TRUE);
                 }
             }
 
-            // Get the set of the items that had been in the batch
-            final Set<Long> batchConversationToCheck = new HashSet<Long>(keySet());
-
-            // Remove all of the items that we know are missing.  This will leave the items where
-            // we need to check for existence in the cursor
-            batchConversationToCheck.removeAll(itemsToRemoveFromBatch);
-            // At this point batchConversationToCheck contains the conversation ids for the
-            // conversations that had been in the batch selection, with the items we know have been
-            // deleted removed.
-
-            // This set contains the conversation ids that are in the conversation cursor
-            final Set<Long> cursorConversationIds = cursor.getConversationIds();
-
-            // We want to remove all of the valid items that are in the conversation cursor, from
-            // the batchConversations to check.  The goal is after this block, anything remaining
-            // would be items that don't exist in the conversation cursor anymore.
-            if (!batchConversationToCheck.isEmpty() && cursorConversationIds != null) {
-                batchConversationToCheck.removeAll(cursorConversationIds);
+            for (int i = 0; i < selectedIds.length; i++) {
+                final long id = selectedIds[i];
+                if (deletedIds.containsKey(id)
+                        || (cursorIds != null && !cursorIds.contains(id))) {
+                    selectedIds[removeCount++] = id;
+                }
             }
 
-            // At this point any of the item that are remaining in the batchConversationToCheck set
-            // are to be removed from the selected conversation set
-            itemsToRemoveFromBatch.addAll(batchConversationToCheck);
-
-            removeAll(itemsToRemoveFromBatch);
+            removeAll(selectedIds, removeCount);
         }
     }
 
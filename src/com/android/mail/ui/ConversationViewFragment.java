@@ -63,6 +63,8 @@ import com.android.mail.browse.ScrollIndicatorsView;
 import com.android.mail.browse.SuperCollapsedBlock;
 import com.android.mail.browse.WebViewContextMenu;
 import com.android.mail.content.ObjectCursor;
+import com.android.mail.perf.Histogram;
+import com.android.mail.perf.Metrics;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.Address;
 import com.android.mail.providers.Conversation;
@@ -93,6 +95,8 @@ public class ConversationViewFragment extends AbstractConversationViewFragment i
     private static final String LOG_TAG = LogTag.getLogTag();
     public static final String LAYOUT_TAG = "ConvLayout";
 
+    private static final Histogram PERF_RENDER = Metrics.histogram("conversation/render");
+
     private static final boolean ENABLE_CSS_ZOOM = false;
 
     /**
@@ -570,7 +574,9 @@ public class ConversationViewFragment extends AbstractConversationViewFragment i
     }
 
     private void renderConversation(MessageCursor messageCursor) {
+        PERF_RENDER.begin();
         final String convHtml = renderMessageBodies(messageCursor, mEnableContentReadySignal);
+        PERF_RENDER.end();
         timerMark("rendered conversation");
 
         if (DEBUG_DUMP_CONVERSATION_HTML) {
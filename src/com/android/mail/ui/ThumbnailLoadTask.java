@@ -17,22 +17,33 @@
 
 package com.android.mail.ui;
 
-import android.content.ContentResolver;
+import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.util.DisplayMetrics;
 
+import com.android.bitmap.AltBitmapCache;
+import com.android.bitmap.BitmapCache;
+import com.android.bitmap.DecodeTask;
+import com.android.bitmap.ReusableBitmap;
 import com.android.ex.photo.util.Exif;
 import com.android.ex.photo.util.ImageUtils;
 
+import com.android.mail.bitmap.ThumbnailDiskCache;
+import com.android.mail.bitmap.ThumbnailRequest;
+import com.android.mail.perf.Counter;
+import com.android.mail.perf.Metrics;
 import com.android.mail.providers.Attachment;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
+import com.android.mail.utils.Utils;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -40,13 +51,41 @@ import java.io.InputStream;
  * Performs the load of a thumbnail bitmap in a background
  * {@link AsyncTask}. Available for use with any view that implements
  * the {@link AttachmentBitmapHolder} interface.
+ * <p>
+ * Each image is opened once: its EXIF orientation and bounds are read ahead of the decode from
+ * the same buffered stream, which is then rewound. The orientation is applied when the thumbnail
+ * is drawn, by {@link com.android.mail.bitmap.OrientedBitmapDrawable}, rather than by copying
+ * it. Finished thumbnails are kept in memory, where unreferenced ones are reused to decode into,
+ * and in a {@link ThumbnailDiskCache}, so tiles seen before show without decoding the image again.
  */
-public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
+public class ThumbnailLoadTask extends AsyncTask<Uri, Void, ReusableBitmap> {
     private static final String LOG_TAG = LogTag.getLogTag();
 
+    /** Unreferenced thumbnails are kept in memory up to about this many bytes */
+    private static final int CACHE_TARGET_SIZE_BYTES = 4 * 1024 * 1024;
+    /** The part of the memory cache for thumbnails that cannot be decoded into */
+    private static final float CACHE_NON_POOLED_FRACTION = 0.5f;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    /** Streams are rewound without opening them again while at most this many bytes are read */
+    private static final int MARK_LIMIT = 256 * 1024;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final Counter sReopens = Metrics.counter("thumbnails/reopens");
+
+    /**
+     * Thumbnails in memory, shared by all tiles. Entries that are no longer referenced are polled
+     * to decode new thumbnails into.
+     */
+    private static final BitmapCache sCache = new AltBitmapCache(CACHE_TARGET_SIZE_BYTES,
+            CACHE_NON_POOLED_FRACTION);
+
     private final AttachmentBitmapHolder mHolder;
     private final int mWidth;
     private final int mHeight;
+    private final BitmapFactory.Options mOpts = new BitmapFactory.Options();
+
+    /** A bitmap from the pool to decode into, if it is large enough */
+    private ReusableBitmap mInBitmap;
 
     public static void setupThumbnailPreview(
             ThumbnailLoadTask task, final AttachmentBitmapHolder holder,
@@ -73,6 +112,16 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
                 task.cancel(true);
             }
 
+            // show a thumbnail that is still in memory without waiting for a task
+            ReusableBitmap cached = getCachedThumbnail(holder, thumbnailUri, width, height);
+            if (cached == null) {
+                cached = getCachedThumbnail(holder, contentUri, width, height);
+            }
+            if (cached != null) {
+                holder.setThumbnail(cached);
+                return;
+            }
+
             task = new ThumbnailLoadTask(
                     holder, width, height);
             task.execute(thumbnailUri, contentUri);
@@ -83,15 +132,25 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
         }
     }
 
+    private static ReusableBitmap getCachedThumbnail(final AttachmentBitmapHolder holder,
+            final Uri uri, final int width, final int height) {
+        if (uri == null) {
+            return null;
+        }
+        return sCache.get(new ThumbnailRequest(holder.getContext().getApplicationContext(), uri,
+                width, height), true /* incrementRefCount */);
+    }
+
     public ThumbnailLoadTask(AttachmentBitmapHolder holder, int width, int height) {
         mHolder = holder;
         mWidth = width;
         mHeight = height;
+        mOpts.inDensity = DisplayMetrics.DENSITY_LOW;
     }
 
     @Override
-    protected Bitmap doInBackground(Uri... params) {
-        Bitmap result = loadBitmap(params[0]);
+    protected ReusableBitmap doInBackground(Uri... params) {
+        ReusableBitmap result = loadBitmap(params[0]);
         if (result == null) {
             result = loadBitmap(params[1]);
         }
@@ -99,103 +158,269 @@ public class ThumbnailLoadTask extends AsyncTask<Uri, Void, Bitmap> {
         return result;
     }
 
-    private Bitmap loadBitmap(final Uri thumbnailUri) {
+    private ReusableBitmap loadBitmap(final Uri thumbnailUri) {
         if (thumbnailUri == null) {
             LogUtils.e(LOG_TAG, "Attempting to load bitmap for null uri");
             return null;
         }
 
-        final int orientation = getOrientation(thumbnailUri);
-
-        AssetFileDescriptor fd = null;
+        final Context context = mHolder.getContext().getApplicationContext();
+        final ThumbnailRequest key = new ThumbnailRequest(context, thumbnailUri, mWidth, mHeight);
+        ReusableBitmap result = null;
         try {
-            fd = mHolder.getResolver().openAssetFileDescriptor(thumbnailUri, "r");
-            if (isCancelled() || fd == null) {
+            if (isCancelled()) {
                 return null;
             }
-
-            final BitmapFactory.Options opts = new BitmapFactory.Options();
-            opts.inJustDecodeBounds = true;
-            opts.inDensity = DisplayMetrics.DENSITY_LOW;
-
-            BitmapFactory.decodeFileDescriptor(fd.getFileDescriptor(), null, opts);
-            if (isCancelled() || opts.outWidth == -1 || opts.outHeight == -1) {
-                return null;
+            if (Utils.isRunningKitkatOrLater()) {
+                // Decoding into an existing bitmap needs the same size before KitKat, and
+                // thumbnails have all kinds of sizes
+                mInBitmap = sCache.poll();
             }
 
-            opts.inJustDecodeBounds = false;
-            // Shrink both X and Y (but do not over-shrink)
-            // and pick the least affected dimension to ensure the thumbnail is fillable
-            // (i.e. ScaleType.CENTER_CROP)
-            final int wDivider = Math.max(opts.outWidth / mWidth, 1);
-            final int hDivider = Math.max(opts.outHeight / mHeight, 1);
-            opts.inSampleSize = Math.min(wDivider, hDivider);
-
-            LogUtils.d(LOG_TAG, "in background, src w/h=%d/%d dst w/h=%d/%d, divider=%d",
-                    opts.outWidth, opts.outHeight, mWidth, mHeight, opts.inSampleSize);
-
-            final Bitmap originalBitmap = BitmapFactory.decodeFileDescriptor(
-                    fd.getFileDescriptor(), null, opts);
-            if (originalBitmap != null && orientation != 0) {
-                final Matrix matrix = new Matrix();
-                matrix.postRotate(orientation);
-                return Bitmap.createBitmap(originalBitmap, 0, 0, originalBitmap.getWidth(),
-                        originalBitmap.getHeight(), matrix, true);
+            final ThumbnailDiskCache diskCache = ThumbnailDiskCache.getInstance(context);
+            final ThumbnailDiskCache.Thumbnail cached = diskCache.get(key);
+            if (cached != null) {
+                try {
+                    result = decode(new CachedThumbnailRequest(cached), cached.orientation,
+                            false /* scale */);
+                } catch (IOException e) {
+                    // Decode the image again instead
+                    LogUtils.i(LOG_TAG, "Unable to read cached thumbnail %s: %s", thumbnailUri,
+                            e.getMessage());
+                }
+            }
+            if (result == null && !isCancelled()) {
+                result = decode(key, -1 /* orientation */, true /* scale */);
+                if (result != null) {
+                    diskCache.put(key, result);
+                }
             }
-            return originalBitmap;
         } catch (Throwable t) {
             LogUtils.i(LOG_TAG, "Unable to decode thumbnail %s: %s %s", thumbnailUri,
                     t.getClass(), t.getMessage());
         } finally {
-            if (fd != null) {
-                try {
-                    fd.close();
-                } catch (IOException e) {
-                    LogUtils.e(LOG_TAG, e, "");
-                }
+            if (result != null) {
+                // Cached even if the task was cancelled, for the next time the tile is shown
+                result.acquireReference();
+                sCache.put(key, result);
+            }
+            if (mInBitmap != null) {
+                sCache.offer(mInBitmap);
+                mInBitmap = null;
             }
         }
 
-        return null;
+        return result;
     }
 
-    private int getOrientation(final Uri thumbnailUri) {
-        if (thumbnailUri == null) {
-            return 0;
-        }
-
-        InputStream in = null;
+    /**
+     * Decodes the image of a request, from a single stream that is rewound between reading the
+     * orientation and bounds and decoding.
+     *
+     * @param orientation the orientation of the image, or -1 to read it from the EXIF data
+     * @param scale whether to scale the image down to fill the thumbnail, or decode it as it is
+     */
+    private ReusableBitmap decode(final DecodeTask.Request request, int orientation,
+            final boolean scale) throws IOException {
+        final InputStream in = new RewindableInputStream(request);
         try {
-            final ContentResolver resolver = mHolder.getResolver();
-            in = resolver.openInputStream(thumbnailUri);
-            return Exif.getOrientation(in, -1);
-        } catch (Throwable t) {
-            LogUtils.i(LOG_TAG, "Unable to get orientation of thumbnail %s: %s %s", thumbnailUri,
-                    t.getClass(), t.getMessage());
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    LogUtils.e(LOG_TAG, e, "error attemtping to close input stream");
+            if (orientation < 0) {
+                orientation = Exif.getOrientation(in, -1);
+                in.reset();
+            }
+            if (isCancelled()) {
+                return null;
+            }
+
+            mOpts.inJustDecodeBounds = true;
+            mOpts.inSampleSize = 1;
+            mOpts.inBitmap = null;
+            BitmapFactory.decodeStream(in, null, mOpts);
+            if (isCancelled() || mOpts.outWidth <= 0 || mOpts.outHeight <= 0) {
+                return null;
+            }
+
+            if (scale) {
+                // Measure the image "as if" the orientation has been corrected
+                final boolean isNotRotatedOr180 = orientation == 0 || orientation == 180;
+                final int srcW = isNotRotatedOr180 ? mOpts.outWidth : mOpts.outHeight;
+                final int srcH = isNotRotatedOr180 ? mOpts.outHeight : mOpts.outWidth;
+                // Shrink both X and Y (but do not over-shrink)
+                // and pick the least affected dimension to ensure the thumbnail is fillable
+                // (i.e. ScaleType.CENTER_CROP)
+                final int wDivider = Math.max(srcW / mWidth, 1);
+                final int hDivider = Math.max(srcH / mHeight, 1);
+                mOpts.inSampleSize = Math.min(wDivider, hDivider);
+            }
+            mOpts.inJustDecodeBounds = false;
+            mOpts.inMutable = true;
+
+            LogUtils.d(LOG_TAG, "in background, src w/h=%d/%d dst w/h=%d/%d, divider=%d",
+                    mOpts.outWidth, mOpts.outHeight, mWidth, mHeight, mOpts.inSampleSize);
+
+            if (mInBitmap != null) {
+                final long sampledW = (mOpts.outWidth + mOpts.inSampleSize - 1)
+                        / mOpts.inSampleSize;
+                final long sampledH = (mOpts.outHeight + mOpts.inSampleSize - 1)
+                        / mOpts.inSampleSize;
+                if (mInBitmap.bmp.getAllocationByteCount()
+                        >= sampledW * sampledH * BYTES_PER_PIXEL) {
+                    mOpts.inBitmap = mInBitmap.bmp;
+                } else {
+                    // Too small for this image; drop it rather than have it polled again
+                    mInBitmap = null;
                 }
             }
-        }
 
-        return 0;
+            Bitmap bitmap;
+            try {
+                in.reset();
+                bitmap = BitmapFactory.decodeStream(in, null, mOpts);
+            } catch (IllegalArgumentException e) {
+                if (mOpts.inBitmap == null) {
+                    throw e;
+                }
+                // Some images cannot be decoded into an existing bitmap; use a new one
+                mOpts.inBitmap = null;
+                in.reset();
+                bitmap = BitmapFactory.decodeStream(in, null, mOpts);
+            }
+            if (bitmap == null) {
+                return null;
+            }
+
+            final ReusableBitmap result;
+            if (bitmap == mOpts.inBitmap) {
+                result = mInBitmap;
+                mInBitmap = null;
+            } else {
+                result = new ReusableBitmap(bitmap,
+                        bitmap.isMutable() && Utils.isRunningKitkatOrLater() /* reusable */);
+            }
+            result.setLogicalWidth(bitmap.getWidth());
+            result.setLogicalHeight(bitmap.getHeight());
+            result.setOrientation(orientation);
+            return result;
+        } finally {
+            mOpts.inBitmap = null;
+            try {
+                in.close();
+            } catch (IOException e) {
+                LogUtils.e(LOG_TAG, e, "error attempting to close input stream");
+            }
+        }
     }
 
     @Override
-    protected void onPostExecute(Bitmap result) {
+    protected void onPostExecute(ReusableBitmap result) {
         if (result == null) {
             LogUtils.d(LOG_TAG, "back in UI thread, decode failed or file does not exist");
             mHolder.thumbnailLoadFailed();
             return;
         }
 
-        LogUtils.d(LOG_TAG, "back in UI thread, decode success, w/h=%d/%d", result.getWidth(),
-                result.getHeight());
+        LogUtils.d(LOG_TAG, "back in UI thread, decode success, w/h=%d/%d",
+                result.getLogicalWidth(), result.getLogicalHeight());
         mHolder.setThumbnail(result);
     }
 
+    @Override
+    protected void onCancelled(ReusableBitmap result) {
+        if (result != null) {
+            // still in the cache, from where it can be shown or pooled
+            result.releaseReference();
+        }
+    }
+
+    /**
+     * The decode request for a thumbnail from the {@link ThumbnailDiskCache}.
+     */
+    private static class CachedThumbnailRequest implements DecodeTask.Request {
+        private final ThumbnailDiskCache.Thumbnail mThumbnail;
+
+        CachedThumbnailRequest(ThumbnailDiskCache.Thumbnail thumbnail) {
+            mThumbnail = thumbnail;
+        }
+
+        @Override
+        public AssetFileDescriptor createFd() {
+            return null;
+        }
+
+        @Override
+        public InputStream createInputStream() throws IOException {
+            return new FileInputStream(mThumbnail.file);
+        }
+    }
+
+    /**
+     * A buffered stream of a request that can always be reset to its start: from the buffer
+     * while what has been read fits in {@link #MARK_LIMIT}, and otherwise by opening the request
+     * again. Marks are ignored, so {@link BitmapFactory} and the decoder can rewind it too.
+     */
+    private static class RewindableInputStream extends InputStream {
+        private final DecodeTask.Request mRequest;
+        private BufferedInputStream mIn;
+
+        RewindableInputStream(DecodeTask.Request request) throws IOException {
+            mRequest = request;
+            open();
+        }
+
+        private void open() throws IOException {
+            final InputStream in = mRequest.createInputStream();
+            if (in == null) {
+                throw new FileNotFoundException("No input for " + mRequest);
+            }
+            mIn = new BufferedInputStream(in, BUFFER_SIZE);
+            mIn.mark(MARK_LIMIT);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return mIn.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            return mIn.read(buffer, offset, count);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            return mIn.skip(count);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mIn.available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            // Only the start is ever returned to
+        }
+
+        @Override
+        public void reset() throws IOException {
+            try {
+                mIn.reset();
+            } catch (IOException e) {
+                // Read past the mark limit
+                mIn.close();
+                open();
+                sReopens.increment();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
 }
@@ -18,6 +18,7 @@ package com.android.mail.utils;
 import com.google.common.collect.ImmutableMap;
 
 import android.app.DownloadManager;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
@@ -35,6 +36,7 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.File;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -52,6 +54,11 @@ public class AttachmentUtils {
     private static final float MIN_CACHE_THRESHOLD = 0.25f;
     private static final int MIN_CACHE_AVAILABLE_SPACE_BYTES = 100 * 1024 * 1024;
 
+    /** Streams that are not files are copied through a buffer of this size */
+    private static final int BUFFER_SIZE = 64 * KILO;
+    /** Files are transferred in steps of this size, to check the timeout between them */
+    private static final long MAX_TRANSFER = 4 * MEGA;
+
     /**
      * Singleton map of MIME->friendly description
      * @see #getMimeTypeDisplayName(Context, String)
@@ -160,6 +167,10 @@ public class AttachmentUtils {
     /**
      * Cache the file specified by the given attachment.  This will attempt to use any
      * {@link ParcelFileDescriptor} in the Bundle parameter
+     *
+     * When the attachment can be opened as a file, it is copied by the kernel with
+     * {@link #transfer}, without passing through the Java heap.
+     *
      * @param context
      * @param attachment  Attachment to be cached
      * @param attachmentFds optional {@link Bundle} containing {@link ParcelFileDescriptor} if the
@@ -203,23 +214,22 @@ public class AttachmentUtils {
                     LogUtils.d(LOG_TAG, "contentUri is null in attachment: %s", attachment);
                     throw new FileNotFoundException("Missing contentUri in attachment");
                 }
-                // Attempt to open the file
-                inputStream = context.getContentResolver().openInputStream(attachment.contentUri);
-            }
-            outputStream = new FileOutputStream(file);
-            final long now = SystemClock.elapsedRealtime();
-            final byte[] bytes = new byte[1024];
-            while (true) {
-                int len = inputStream.read(bytes);
-                if (len <= 0) {
-                    break;
-                }
-                outputStream.write(bytes, 0, len);
-                if (SystemClock.elapsedRealtime() - now > READ_TIMEOUT) {
-                    throw new IOException("Timed out reading attachment data");
+                // Attempt to open the file, as a file descriptor if the provider has one, so
+                // that it can be copied without reading it into memory
+                final ContentResolver resolver = context.getContentResolver();
+                ParcelFileDescriptor descriptor;
+                try {
+                    descriptor = resolver.openFileDescriptor(attachment.contentUri, "r");
+                } catch (FileNotFoundException e) {
+                    // e.g. the provider only serves part of a file
+                    descriptor = null;
                 }
+                inputStream = descriptor != null
+                        ? new ParcelFileDescriptor.AutoCloseInputStream(descriptor)
+                        : resolver.openInputStream(attachment.contentUri);
             }
-            outputStream.flush();
+            outputStream = new FileOutputStream(file);
+            copy(inputStream, outputStream);
             String cachedFileUri = file.getAbsolutePath();
             LogUtils.d(LOG_TAG, "Cached %s to %s", attachment.contentUri, cachedFileUri);
 
@@ -255,6 +265,62 @@ public class AttachmentUtils {
         }
     }
 
+    /**
+     * Copies the rest of the given stream to the given file. A seekable file is copied with
+     * {@link #transfer}; other streams, e.g. pipes, through a buffer.
+     */
+    private static void copy(InputStream in, FileOutputStream out) throws IOException {
+        final long now = SystemClock.elapsedRealtime();
+        if (in instanceof FileInputStream) {
+            final FileChannel channel = ((FileInputStream) in).getChannel();
+            long position = -1;
+            try {
+                position = channel.position();
+            } catch (IOException e) {
+                // Not seekable
+            }
+            if (position >= 0) {
+                transfer(channel, position, channel.size() - position, out.getChannel(), now);
+                return;
+            }
+        }
+        final byte[] bytes = new byte[BUFFER_SIZE];
+        while (true) {
+            int len = in.read(bytes);
+            if (len <= 0) {
+                break;
+            }
+            out.write(bytes, 0, len);
+            if (SystemClock.elapsedRealtime() - now > READ_TIMEOUT) {
+                throw new IOException("Timed out reading attachment data");
+            }
+        }
+    }
+
+    /**
+     * Copies <code>count</code> bytes from a file, starting at <code>position</code>, to the
+     * current position of another file. The data is moved by the kernel where possible, rather
+     * than through a buffer.
+     *
+     * @param startTime the {@link SystemClock#elapsedRealtime()} at which the copy started, to
+     *        time it out
+     */
+    public static void transfer(FileChannel source, long position, long count,
+            FileChannel target, long startTime) throws IOException {
+        final long end = position + count;
+        while (position < end) {
+            final long transferred =
+                    source.transferTo(position, Math.min(end - position, MAX_TRANSFER), target);
+            if (transferred <= 0) {
+                throw new IOException("Source file ended early");
+            }
+            position += transferred;
+            if (SystemClock.elapsedRealtime() - startTime > READ_TIMEOUT) {
+                throw new IOException("Timed out reading attachment data");
+            }
+        }
+    }
+
     private static boolean isLowSpace(long totalSpace, long usableSpace) {
         // For caching attachments we want to enable caching if there is
         // more than 100MB available, or if 25% of total space is free on devices
@@ -394,7 +394,7 @@ public class LogUtils {
      *   We got a report saying eBay sends a date in this format
      */
     public static String cleanUpMimeDate(String date) {
-        if (TextUtils.isEmpty(date)) {
+        if (TextUtils.isEmpty(date) || !date.contains("GMT")) {
             return date;
         }
         date = DATE_CLEANUP_PATTERN_WRONG_TIMEZONE.matcher(date).replaceFirst("$1");
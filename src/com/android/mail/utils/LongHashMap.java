@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from primitive longs to objects, using open addressing with linear probing. Unlike
+ * a {@link java.util.HashMap HashMap&lt;Long, V&gt;}, keys are never boxed and no entry objects
+ * are allocated, so inserting or probing for thousands of ids does not create garbage.
+ * <p>
+ * This class is not thread-safe. <code>null</code> values are not allowed.
+ */
+public class LongHashMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+    private int mModCount;
+
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a map which can hold <code>expectedSize</code> mappings without resizing.
+     */
+    public LongHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int size) {
+        // Keep the load factor at or below 1/2
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+    }
+
+    private static int hash(long key) {
+        // Spread the bits; conversation ids are often sequential
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int indexOf(long key) {
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mValues[i] != null) {
+            if (mKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final int i = indexOf(key);
+        return i >= 0 ? (V) mValues[i] : null;
+    }
+
+    /**
+     * Maps <code>key</code> to <code>value</code>, returning the previous value or
+     * <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            final V old = (V) mValues[i];
+            mValues[i] = value;
+            return old;
+        }
+        if ((mSize + 1) * 2 > mKeys.length) {
+            rehash(mKeys.length << 1);
+            i = indexOf(key);
+        }
+        i = ~i;
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+        mModCount++;
+        return null;
+    }
+
+    /**
+     * Copies all of the mappings from <code>other</code> into this map.
+     */
+    public void putAll(LongHashMap<? extends V> other) {
+        final long[] keys = other.mKeys;
+        final Object[] values = other.mValues;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                @SuppressWarnings("unchecked")
+                final V value = (V) values[i];
+                put(keys[i], value);
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for <code>key</code>, returning the removed value or
+     * <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        final V old = (V) mValues[i];
+        // Shift later entries of the probe sequence back, so no tombstones are needed
+        final int mask = mKeys.length - 1;
+        int next = (i + 1) & mask;
+        while (mValues[next] != null) {
+            final int home = hash(mKeys[next]) & mask;
+            // Move the entry at next into the gap at i if its home slot is not in (i, next]
+            if ((next > i) ? (home <= i || home > next) : (home <= i && home > next)) {
+                mKeys[i] = mKeys[next];
+                mValues[i] = mValues[next];
+                i = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mValues[i] = null;
+        mSize--;
+        mModCount++;
+        return old;
+    }
+
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mValues, null);
+            mSize = 0;
+            mModCount++;
+        }
+    }
+
+    /**
+     * Returns the keys of this map in a new array, in no particular order.
+     */
+    public long[] keys() {
+        final long[] result = new long[mSize];
+        int n = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mValues[i] != null) {
+                result[n++] = mKeys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a live, read-only view of the values of this map.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return mSize;
+            }
+        };
+    }
+
+    private void rehash(int newCapacity) {
+        final long[] oldKeys = mKeys;
+        final Object[] oldValues = mValues;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                final int slot = ~indexOf(oldKeys[i]);
+                mKeys[slot] = oldKeys[i];
+                mValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mValues[i] != null) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(mKeys[i]).append('=').append(mValues[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+        private final int mExpectedModCount = mModCount;
+        private int mNext = advance(0);
+
+        private int advance(int from) {
+            while (from < mValues.length && mValues[from] == null) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext < mValues.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (mNext >= mValues.length) {
+                throw new NoSuchElementException();
+            }
+            final V value = (V) mValues[mNext];
+            mNext = advance(mNext + 1);
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
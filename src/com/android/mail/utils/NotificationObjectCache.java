@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import com.android.mail.providers.Account;
+import com.android.mail.providers.Folder;
+import com.android.mail.providers.MailAppProvider;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recent {@link Account} and {@link Folder} objects seen for notifications, so that
+ * restoring the notification map does not need to query for them again.
+ * <p>
+ * Both maps are bounded. Accounts are dropped, with their folders, when the account list
+ * changes; the folders of an account are dropped when its folder list changes. Folders whose
+ * notifications are cleared because they no longer exist are dropped too.
+ */
+class NotificationObjectCache {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    private static final int MAX_ACCOUNTS = 16;
+    private static final int MAX_FOLDERS = 64;
+
+    /** Guarded by this */
+    private final LruCache<Uri, Account> mAccounts = new LruCache<Uri, Account>(MAX_ACCOUNTS);
+    /** Guarded by this */
+    private final LruCache<FolderUri, CachedFolder> mFolders =
+            new LruCache<FolderUri, CachedFolder>(MAX_FOLDERS);
+    /**
+     * Observers of folder lists, by account uri, eldest first. Not an {@link LruCache}, which
+     * would drop observers without unregistering them. Guarded by this.
+     */
+    private final LinkedHashMap<Uri, ContentObserver> mFolderObservers =
+            new LinkedHashMap<Uri, ContentObserver>();
+
+    private ContentResolver mResolver;
+
+    private static class CachedFolder {
+        final Uri accountUri;
+        final Folder folder;
+
+        CachedFolder(Uri accountUri, Folder folder) {
+            this.accountUri = accountUri;
+            this.folder = folder;
+        }
+    }
+
+    private final ContentObserver mAccountsObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            LogUtils.d(LOG_TAG, "Account list changed, dropping cached notification objects");
+            clear();
+        }
+    };
+
+    /**
+     * Starts observing the account list, so that cached objects are dropped when it changes.
+     */
+    synchronized void register(Context context) {
+        if (mResolver != null) {
+            return;
+        }
+        mResolver = context.getApplicationContext().getContentResolver();
+        mResolver.registerContentObserver(MailAppProvider.getAccountsUri(), true,
+                mAccountsObserver);
+    }
+
+    synchronized Account getAccount(Uri accountUri) {
+        return mAccounts.get(accountUri);
+    }
+
+    synchronized Folder getFolder(FolderUri folderUri) {
+        final CachedFolder cached = mFolders.get(folderUri);
+        return cached != null ? cached.folder : null;
+    }
+
+    synchronized void putAccount(Account account) {
+        if (mResolver == null) {
+            return;
+        }
+        mAccounts.put(account.uri, account);
+        observeFolders(account);
+    }
+
+    synchronized void putFolder(Account account, Folder folder) {
+        if (mResolver == null || !mAccounts.containsKey(account.uri)) {
+            // Only keep folders whose account list changes are seen
+            return;
+        }
+        mFolders.put(folder.folderUri, new CachedFolder(account.uri, folder));
+    }
+
+    synchronized void removeFolder(FolderUri folderUri) {
+        mFolders.remove(folderUri);
+    }
+
+    private void observeFolders(final Account account) {
+        if (mFolderObservers.containsKey(account.uri) || account.folderListUri == null
+                || Uri.EMPTY.equals(account.folderListUri)) {
+            return;
+        }
+        final Uri accountUri = account.uri;
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                removeFolders(accountUri);
+            }
+        };
+        mResolver.registerContentObserver(account.folderListUri, true, observer);
+        mFolderObservers.put(accountUri, observer);
+        // Drop observers beyond the bound, along with the folders they guard
+        if (mFolderObservers.size() > MAX_ACCOUNTS) {
+            final Iterator<Map.Entry<Uri, ContentObserver>> iterator =
+                    mFolderObservers.entrySet().iterator();
+            final Map.Entry<Uri, ContentObserver> eldest = iterator.next();
+            mResolver.unregisterContentObserver(eldest.getValue());
+            iterator.remove();
+            mAccounts.remove(eldest.getKey());
+            removeFolders(eldest.getKey());
+        }
+    }
+
+    private synchronized void removeFolders(Uri accountUri) {
+        final Iterator<CachedFolder> iterator = mFolders.values().iterator();
+        while (iterator.hasNext()) {
+            if (accountUri.equals(iterator.next().accountUri)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized void clear() {
+        mAccounts.clear();
+        mFolders.clear();
+        if (mResolver != null) {
+            for (ContentObserver observer : mFolderObservers.values()) {
+                mResolver.unregisterContentObserver(observer);
+            }
+        }
+        mFolderObservers.clear();
+    }
+}
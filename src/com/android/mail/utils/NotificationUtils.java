@@ -73,7 +73,9 @@ import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -83,6 +85,10 @@ public class NotificationUtils {
     /** Contains a list of <(account, label), unread conversations> */
     private static NotificationMap sActiveNotificationMap = null;
 
+    /** Accounts and folders seen by {@link #validateNotifications}, reused by the restore path */
+    private static final NotificationObjectCache sNotificationObjects =
+            new NotificationObjectCache();
+
     private static final SparseArray<Bitmap> sNotificationIcons = new SparseArray<Bitmap>();
 
     private static TextAppearanceSpan sNotificationUnreadStyleSpan;
@@ -113,6 +119,7 @@ public class NotificationUtils {
      * Returns the notification map, creating it if necessary.
      */
     private static synchronized NotificationMap getNotificationMap(Context context) {
+        sNotificationObjects.register(context);
         if (sActiveNotificationMap == null) {
             sActiveNotificationMap = new NotificationMap();
 
@@ -132,6 +139,35 @@ public class NotificationUtils {
         private static final String NOTIFICATION_PART_SEPARATOR = " ";
         private static final int NUM_NOTIFICATION_PARTS= 4;
 
+        /**
+         * The packed form of the map is a version line, followed by one line per account,
+         * each followed by one line per folder with notifications in that account:
+         * <pre>
+         * 1
+         * A &lt;account uri&gt;
+         * F &lt;unread&gt; &lt;unseen&gt; &lt;folder uri&gt;
+         * </pre>
+         */
+        private static final String PACKED_MAP_VERSION = "1";
+        private static final char PACKED_LINE_SEPARATOR = '\n';
+        private static final String PACKED_ACCOUNT_PREFIX = "A ";
+        private static final String PACKED_FOLDER_PREFIX = "F ";
+
+        /**
+         * A persisted notification entry for a single folder, before the folder is resolved.
+         */
+        private static final class PersistedEntry {
+            final FolderUri folderUri;
+            final int unread;
+            final int unseen;
+
+            PersistedEntry(FolderUri folderUri, int unread, int unseen) {
+                this.folderUri = folderUri;
+                this.unread = unread;
+                this.unseen = unseen;
+            }
+        }
+
         /**
          * Retuns the unread count for the given NotificationKey.
          */
@@ -158,75 +194,227 @@ public class NotificationUtils {
         }
 
         /**
-         * Populates the notification map with previously cached data.
+         * Populates the notification map with previously cached data. Entries are grouped by
+         * account, so each account is looked up once and its folders are fetched together.
          */
         public synchronized void loadNotificationMap(final Context context) {
             final MailPrefs mailPrefs = MailPrefs.get(context);
-            final Set<String> notificationSet = mailPrefs.getActiveNotificationSet();
-            if (notificationSet != null) {
-                for (String notificationEntry : notificationSet) {
-                    // Get the parts of the string that make the notification entry
-                    final String[] notificationParts =
-                            TextUtils.split(notificationEntry, NOTIFICATION_PART_SEPARATOR);
-                    if (notificationParts.length == NUM_NOTIFICATION_PARTS) {
-                        final Uri accountUri = Uri.parse(notificationParts[0]);
-                        final Cursor accountCursor = context.getContentResolver().query(
-                                accountUri, UIProvider.ACCOUNTS_PROJECTION, null, null, null);
-                        final Account account;
-                        try {
-                            if (accountCursor.moveToFirst()) {
-                                account = new Account(accountCursor);
-                            } else {
-                                continue;
-                            }
-                        } finally {
-                            accountCursor.close();
-                        }
+            final Map<Uri, List<PersistedEntry>> entries;
+            final String packedMap = mailPrefs.getActiveNotificationMap();
+            if (packedMap != null) {
+                entries = unpack(packedMap);
+            } else {
+                entries = unpackLegacy(mailPrefs.getActiveNotificationSet());
+            }
 
-                        final Uri folderUri = Uri.parse(notificationParts[1]);
-                        final Cursor folderCursor = context.getContentResolver().query(
-                                folderUri, UIProvider.FOLDERS_PROJECTION, null, null, null);
-                        final Folder folder;
-                        try {
-                            if (folderCursor.moveToFirst()) {
-                                folder = new Folder(folderCursor);
-                            } else {
-                                continue;
+            for (final Map.Entry<Uri, List<PersistedEntry>> accountEntries : entries.entrySet()) {
+                final Account account = loadAccount(context, accountEntries.getKey());
+                if (account == null) {
+                    continue;
+                }
+                final List<PersistedEntry> folderEntries = accountEntries.getValue();
+                final Map<FolderUri, Folder> folders = loadFolders(context, account, folderEntries);
+                for (final PersistedEntry entry : folderEntries) {
+                    final Folder folder = folders.get(entry.folderUri);
+                    if (folder == null) {
+                        continue;
+                    }
+                    put(new NotificationKey(account, folder), entry.unread, entry.unseen);
+                }
+            }
+        }
+
+        private static Map<Uri, List<PersistedEntry>> unpack(final String packedMap) {
+            final Map<Uri, List<PersistedEntry>> entries =
+                    new LinkedHashMap<Uri, List<PersistedEntry>>();
+            int start = packedMap.indexOf(PACKED_LINE_SEPARATOR);
+            final String version = start < 0 ? packedMap : packedMap.substring(0, start);
+            if (!PACKED_MAP_VERSION.equals(version)) {
+                LogUtils.w(LOG_TAG, "Ignoring notification map with unknown version %s", version);
+                return entries;
+            }
+            if (start < 0) {
+                return entries;
+            }
+            List<PersistedEntry> accountEntries = null;
+            final int length = packedMap.length();
+            while (++start < length) {
+                int end = packedMap.indexOf(PACKED_LINE_SEPARATOR, start);
+                if (end < 0) {
+                    end = length;
+                }
+                final String line = packedMap.substring(start, end);
+                start = end;
+                if (line.startsWith(PACKED_ACCOUNT_PREFIX)) {
+                    accountEntries = Lists.newArrayList();
+                    entries.put(Uri.parse(line.substring(PACKED_ACCOUNT_PREFIX.length())),
+                            accountEntries);
+                } else if (line.startsWith(PACKED_FOLDER_PREFIX) && accountEntries != null) {
+                    final int unreadEnd = line.indexOf(' ', PACKED_FOLDER_PREFIX.length());
+                    final int unseenEnd = unreadEnd < 0 ? -1 : line.indexOf(' ', unreadEnd + 1);
+                    if (unseenEnd < 0) {
+                        continue;
+                    }
+                    try {
+                        final int unread = Integer.parseInt(
+                                line.substring(PACKED_FOLDER_PREFIX.length(), unreadEnd));
+                        final int unseen =
+                                Integer.parseInt(line.substring(unreadEnd + 1, unseenEnd));
+                        accountEntries.add(new PersistedEntry(
+                                new FolderUri(Uri.parse(line.substring(unseenEnd + 1))),
+                                unread, unseen));
+                    } catch (NumberFormatException e) {
+                        LogUtils.w(LOG_TAG, "Ignoring malformed notification entry %s", line);
+                    }
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Reads the notification set stored by earlier versions, with one
+         * "accountUri folderUri unread unseen" string per notification.
+         */
+        private static Map<Uri, List<PersistedEntry>> unpackLegacy(
+                final Set<String> notificationSet) {
+            final Map<Uri, List<PersistedEntry>> entries =
+                    new LinkedHashMap<Uri, List<PersistedEntry>>();
+            if (notificationSet == null) {
+                return entries;
+            }
+            for (String notificationEntry : notificationSet) {
+                // Get the parts of the string that make the notification entry
+                final String[] notificationParts =
+                        TextUtils.split(notificationEntry, NOTIFICATION_PART_SEPARATOR);
+                if (notificationParts.length == NUM_NOTIFICATION_PARTS) {
+                    final Uri accountUri = Uri.parse(notificationParts[0]);
+                    List<PersistedEntry> accountEntries = entries.get(accountUri);
+                    if (accountEntries == null) {
+                        accountEntries = Lists.newArrayList();
+                        entries.put(accountUri, accountEntries);
+                    }
+                    accountEntries.add(new PersistedEntry(
+                            new FolderUri(Uri.parse(notificationParts[1])),
+                            Integer.valueOf(notificationParts[2]),
+                            Integer.valueOf(notificationParts[3])));
+                }
+            }
+            return entries;
+        }
+
+        private static Account loadAccount(final Context context, final Uri accountUri) {
+            final Account cached = sNotificationObjects.getAccount(accountUri);
+            if (cached != null) {
+                return cached;
+            }
+            final Cursor accountCursor = context.getContentResolver().query(
+                    accountUri, UIProvider.ACCOUNTS_PROJECTION, null, null, null);
+            if (accountCursor == null) {
+                return null;
+            }
+            try {
+                if (accountCursor.moveToFirst()) {
+                    final Account account = new Account(accountCursor);
+                    sNotificationObjects.putAccount(account);
+                    return account;
+                }
+            } finally {
+                accountCursor.close();
+            }
+            return null;
+        }
+
+        /**
+         * Resolves the folders of the given entries. When more than one folder is needed, the
+         * account's full folder list is read in a single query; any folders not found there are
+         * queried individually.
+         */
+        private static Map<FolderUri, Folder> loadFolders(final Context context,
+                final Account account, final List<PersistedEntry> entries) {
+            final Map<FolderUri, Folder> folders = new LinkedHashMap<FolderUri, Folder>();
+            for (final PersistedEntry entry : entries) {
+                final Folder cached = sNotificationObjects.getFolder(entry.folderUri);
+                if (cached != null) {
+                    folders.put(entry.folderUri, cached);
+                }
+            }
+
+            if (entries.size() - folders.size() > 1 && account.fullFolderListUri != null
+                    && !Uri.EMPTY.equals(account.fullFolderListUri)) {
+                final Set<FolderUri> wanted = Sets.newHashSet();
+                for (final PersistedEntry entry : entries) {
+                    if (!folders.containsKey(entry.folderUri)) {
+                        wanted.add(entry.folderUri);
+                    }
+                }
+                final Cursor folderCursor = context.getContentResolver().query(
+                        account.fullFolderListUri, UIProvider.FOLDERS_PROJECTION, null, null,
+                        null);
+                if (folderCursor != null) {
+                    try {
+                        while (folderCursor.moveToNext() && !wanted.isEmpty()) {
+                            final Folder folder = new Folder(folderCursor);
+                            if (wanted.remove(folder.folderUri)) {
+                                folders.put(folder.folderUri, folder);
+                                sNotificationObjects.putFolder(account, folder);
                             }
-                        } finally {
-                            folderCursor.close();
                         }
+                    } finally {
+                        folderCursor.close();
+                    }
+                }
+            }
 
-                        final NotificationKey key = new NotificationKey(account, folder);
-                        final Integer unreadValue = Integer.valueOf(notificationParts[2]);
-                        final Integer unseenValue = Integer.valueOf(notificationParts[3]);
-                        final Pair<Integer, Integer> unreadUnseenValue =
-                                new Pair<Integer, Integer>(unreadValue, unseenValue);
-                        put(key, unreadUnseenValue);
+            for (final PersistedEntry entry : entries) {
+                if (folders.containsKey(entry.folderUri)) {
+                    continue;
+                }
+                final Cursor folderCursor = context.getContentResolver().query(
+                        entry.folderUri.fullUri, UIProvider.FOLDERS_PROJECTION, null, null, null);
+                if (folderCursor == null) {
+                    continue;
+                }
+                try {
+                    if (folderCursor.moveToFirst()) {
+                        final Folder folder = new Folder(folderCursor);
+                        folders.put(entry.folderUri, folder);
+                        sNotificationObjects.putFolder(account, folder);
                     }
+                } finally {
+                    folderCursor.close();
                 }
             }
+            return folders;
         }
 
         /**
          * Cache the notification map.
          */
         public synchronized void saveNotificationMap(Context context) {
-            final Set<String> notificationSet = Sets.newHashSet();
-            final Set<NotificationKey> keys = keySet();
-            for (NotificationKey key : keys) {
-                final Pair<Integer, Integer> value = get(key);
-                final Integer unreadCount = value.first;
-                final Integer unseenCount = value.second;
+            final Map<Uri, StringBuilder> accountLines = new LinkedHashMap<Uri, StringBuilder>();
+            for (final Map.Entry<NotificationKey, Pair<Integer, Integer>> entry : entrySet()) {
+                final NotificationKey key = entry.getKey();
+                final Integer unreadCount = entry.getValue().first;
+                final Integer unseenCount = entry.getValue().second;
                 if (unreadCount != null && unseenCount != null) {
-                    final String[] partValues = new String[] {
-                            key.account.uri.toString(), key.folder.folderUri.fullUri.toString(),
-                            unreadCount.toString(), unseenCount.toString()};
-                    notificationSet.add(TextUtils.join(NOTIFICATION_PART_SEPARATOR, partValues));
+                    StringBuilder lines = accountLines.get(key.account.uri);
+                    if (lines == null) {
+                        lines = new StringBuilder();
+                        accountLines.put(key.account.uri, lines);
+                    }
+                    lines.append(PACKED_LINE_SEPARATOR).append(PACKED_FOLDER_PREFIX)
+                            .append(unreadCount.intValue()).append(' ')
+                            .append(unseenCount.intValue()).append(' ')
+                            .append(key.folder.folderUri.fullUri.toString());
                 }
             }
+            final StringBuilder packedMap = new StringBuilder(PACKED_MAP_VERSION);
+            for (final Map.Entry<Uri, StringBuilder> lines : accountLines.entrySet()) {
+                packedMap.append(PACKED_LINE_SEPARATOR).append(PACKED_ACCOUNT_PREFIX)
+                        .append(lines.getKey().toString()).append(lines.getValue());
+            }
             final MailPrefs mailPrefs = MailPrefs.get(context);
-            mailPrefs.cacheActiveNotificationSet(notificationSet);
+            mailPrefs.cacheActiveNotificationMap(packedMap.toString());
         }
     }
 
@@ -451,6 +639,9 @@ public class NotificationUtils {
                 context.getSystemService(Context.NOTIFICATION_SERVICE);
 
         final NotificationMap notificationMap = getNotificationMap(context);
+        // Remember the latest account and folder, to restore the notification map from
+        sNotificationObjects.putAccount(account);
+        sNotificationObjects.putFolder(account, folder);
         if (LogUtils.isLoggable(LOG_TAG, LogUtils.VERBOSE)) {
             LogUtils.i(LOG_TAG, "Validating Notification: %s mapSize: %d "
                     + "folder: %s getAttention: %b", createNotificationString(notificationMap),
@@ -482,6 +673,7 @@ public class NotificationUtils {
                 // This folder doesn't exist.
                 LogUtils.i(LOG_TAG,
                         "The cursor is null, so the specified folder probably does not exist");
+                sNotificationObjects.removeFolder(folder.folderUri);
                 clearFolderNotification(context, account, folder, false);
                 return;
             }
@@ -1017,8 +1209,9 @@ public class NotificationUtils {
             sNotificationReadStyleSpan =
                     new TextAppearanceSpan(context, R.style.NotificationSendersReadTextAppearance);
         }
-        SendersView.format(context, conversationInfo, "", maxLength, senders, null, null, account,
-                sNotificationUnreadStyleSpan, sNotificationReadStyleSpan, false);
+        SendersView.format(context, conversation.id, conversationInfo, "", maxLength, senders,
+                null, null, account, sNotificationUnreadStyleSpan, sNotificationReadStyleSpan,
+                false);
 
         return ellipsizeStyledSenders(context, senders);
     }
@@ -61,7 +61,7 @@ import android.webkit.WebView;
 import com.android.mail.R;
 import com.android.mail.browse.ConversationCursor;
 import com.android.mail.compose.ComposeActivity;
-import com.android.mail.perf.SimpleTimer;
+import com.android.mail.perf.MilestoneTimer;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.Conversation;
 import com.android.mail.providers.Folder;
@@ -83,7 +83,6 @@ public class Utils {
      * longest extension we recognize is 4 characters (e.g. "html", "docx")
      */
     private static final int FILE_EXTENSION_MAX_CHARS = 4;
-    private static final Map<Integer, Integer> sPriorityToLength = Maps.newHashMap();
     public static final String SENDER_LIST_TOKEN_ELIDED = "e";
     public static final String SENDER_LIST_TOKEN_NUM_MESSAGES = "n";
     public static final String SENDER_LIST_TOKEN_NUM_DRAFTS = "d";
@@ -91,9 +90,6 @@ public class Utils {
     public static final String SENDER_LIST_TOKEN_SENDING = "s";
     public static final String SENDER_LIST_TOKEN_SEND_FAILED = "f";
     public static final Character SENDER_LIST_SEPARATOR = '\n';
-    public static final SimpleStringSplitter sSenderListSplitter = new SimpleStringSplitter(
-            SENDER_LIST_SEPARATOR);
-    public static String[] sSenderFragments = new String[8];
 
     public static final String EXTRA_ACCOUNT = "account";
     public static final String EXTRA_ACCOUNT_URI = "accountUri";
@@ -130,9 +126,7 @@ public class Utils {
 
     private static final String LOG_TAG = LogTag.getLogTag();
 
-    public static final boolean ENABLE_CONV_LOAD_TIMER = false;
-    public static final SimpleTimer sConvLoadTimer =
-            new SimpleTimer(ENABLE_CONV_LOAD_TIMER).withSessionName("ConvLoadTimer");
+    public static final MilestoneTimer sConvLoadTimer = new MilestoneTimer("conversation_load");
 
     private static final int[] STYLE_ATTR = new int[] {android.R.attr.background};
 
@@ -305,7 +299,7 @@ public class Utils {
      * @param draftString the string to use for "Draft"
      * @param draftPluralString the string to use for "Drafts"
      */
-    public static synchronized void getSenderSnippet(String instructions,
+    public static void getSenderSnippet(String instructions,
             SpannableStringBuilder senderBuilder, SpannableStringBuilder statusBuilder,
             int maxChars, CharacterStyle unreadStyle, CharacterStyle readStyle,
             CharacterStyle draftsStyle, CharSequence meString, CharSequence draftString,
@@ -319,8 +313,7 @@ public class Utils {
         // Measure each fragment. It's ok to iterate over the entire set of
         // fragments because it is
         // never a long list, even if there are many senders.
-        final Map<Integer, Integer> priorityToLength = sPriorityToLength;
-        priorityToLength.clear();
+        final Map<Integer, Integer> priorityToLength = Maps.newHashMap();
 
         int maxFoundPriority = Integer.MIN_VALUE;
         int numMessages = 0;
@@ -329,17 +322,20 @@ public class Utils {
         CharSequence sendingFragment = "";
         CharSequence sendFailedFragment = "";
 
-        sSenderListSplitter.setString(instructions);
+        // Split into local state, so that callers on different threads don't share anything
+        final SimpleStringSplitter senderListSplitter =
+                new SimpleStringSplitter(SENDER_LIST_SEPARATOR);
+        senderListSplitter.setString(instructions);
         int numFragments = 0;
-        String[] fragments = sSenderFragments;
+        String[] fragments = new String[8];
         int currentSize = fragments.length;
-        while (sSenderListSplitter.hasNext()) {
-            fragments[numFragments++] = sSenderListSplitter.next();
+        while (senderListSplitter.hasNext()) {
+            fragments[numFragments++] = senderListSplitter.next();
             if (numFragments == currentSize) {
-                sSenderFragments = new String[2 * currentSize];
-                System.arraycopy(fragments, 0, sSenderFragments, 0, currentSize);
+                final String[] grown = new String[2 * currentSize];
+                System.arraycopy(fragments, 0, grown, 0, currentSize);
                 currentSize *= 2;
-                fragments = sSenderFragments;
+                fragments = grown;
             }
         }
 
@@ -52,9 +52,11 @@ import com.android.mail.utils.FolderUri;
 import com.android.mail.utils.DelayedTaskHandler;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
+import com.android.mail.utils.LongHashMap;
 import com.android.mail.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class WidgetService extends RemoteViewsService {
     /**
@@ -225,6 +227,11 @@ public class WidgetService extends RemoteViewsService {
         private String mElidedPaddingToken;
         private TextAppearanceSpan mUnreadStyle;
         private TextAppearanceSpan mReadStyle;
+        /**
+         * The rows built for the conversations in the cursor, by conversation id. Guarded by
+         * sWidgetLock.
+         */
+        private LongHashMap<CachedRow> mRows = new LongHashMap<CachedRow>();
 
         public MailFactory(Context context, Intent intent, WidgetService service) {
             mContext = context;
@@ -325,6 +332,7 @@ public class WidgetService extends RemoteViewsService {
                 // The Loader should close the cursor, so just unset the reference
                 // to it here.
                 mConversationCursor = null;
+                mRows.clear();
             }
 
             if (mFolderLoader != null) {
@@ -351,6 +359,104 @@ public class WidgetService extends RemoteViewsService {
             //    for updates from the existing cursor.  If one is seen, the loader will load a new
             //    cursor in the background.
             mFolderUpdateHandler.scheduleTask();
+            prebuildConversationViews();
+        }
+
+        /**
+         * Builds the rows of the conversations that changed since they were last built, so that
+         * the calls to {@link #getViewAt(int)} that follow a data change only look them up.
+         * sWidgetLock is only held to read the cursor; dates are formatted and views built
+         * outside of it.
+         */
+        private void prebuildConversationViews() {
+            final ArrayList<CachedRow> candidates;
+            synchronized (sWidgetLock) {
+                if (mConversationCursor == null || mConversationCursor.isClosed()) {
+                    mRows.clear();
+                    return;
+                }
+                final int count = getConversationCount();
+                candidates = new ArrayList<CachedRow>(count);
+                for (int position = 0; position < count; position++) {
+                    if (!mConversationCursor.moveToPosition(position)) {
+                        break;
+                    }
+                    candidates.add(getCachedRow(mConversationCursor));
+                }
+            }
+
+            final LongHashMap<CachedRow> rows = new LongHashMap<CachedRow>(candidates.size());
+            int rebuilt = 0;
+            for (CachedRow candidate : candidates) {
+                final CachedRow row = getBuiltRow(candidate);
+                if (row != candidate) {
+                    rebuilt++;
+                }
+                rows.put(row.conversation.id, row);
+            }
+
+            synchronized (sWidgetLock) {
+                mRows = rows;
+            }
+            LogUtils.d(LOG_TAG, "Widget %d: rebuilt %d of %d rows", mAppWidgetId, rebuilt,
+                    rows.size());
+        }
+
+        /**
+         * Returns the row for the conversation at the cursor's position if its data has not
+         * changed since it was built, or else a new row for it that is not built yet. Must be
+         * called with sWidgetLock held.
+         */
+        private CachedRow getCachedRow(Cursor cursor) {
+            final Object[] values = readRow(cursor);
+            final CachedRow cached = mRows.get(cursor.getLong(UIProvider.CONVERSATION_ID_COLUMN));
+            if (cached != null && Arrays.deepEquals(cached.values, values)) {
+                return cached;
+            }
+            return new CachedRow(values, new Conversation(cursor));
+        }
+
+        /**
+         * Returns the given row if it is built and its date still reads the same, or else a new,
+         * built copy of it. Called without sWidgetLock held.
+         */
+        private CachedRow getBuiltRow(CachedRow row) {
+            final CharSequence date =
+                    DateUtils.getRelativeTimeSpanString(mContext, row.conversation.dateMs);
+            if (row.views != null && TextUtils.equals(row.date, date)) {
+                return row;
+            }
+            final CachedRow built = new CachedRow(row.values, row.conversation);
+            built.date = date;
+            built.views = buildConversationView(row.conversation, date);
+            return built;
+        }
+
+        /**
+         * Copies every column of the cursor's current row, so that a row is only rebuilt when
+         * something it shows may have changed.
+         */
+        private static Object[] readRow(Cursor cursor) {
+            final Object[] values = new Object[cursor.getColumnCount()];
+            for (int column = 0; column < values.length; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[column] = cursor.getDouble(column);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        values[column] = cursor.getBlob(column);
+                        break;
+                    default:
+                        values[column] = cursor.getString(column);
+                        break;
+                }
+            }
+            return values;
         }
 
         /**
@@ -388,6 +494,7 @@ public class WidgetService extends RemoteViewsService {
          */
         @Override
         public RemoteViews getViewAt(int position) {
+            final CachedRow row;
             synchronized (sWidgetLock) {
                 // "View more conversations" view.
                 if (mConversationCursor == null || mConversationCursor.isClosed()
@@ -403,43 +510,54 @@ public class WidgetService extends RemoteViewsService {
                     return getViewMoreConversationsView();
                 }
 
-                Conversation conversation = new Conversation(mConversationCursor);
-                // Split the senders and status from the instructions.
-                SpannableStringBuilder senderBuilder = new SpannableStringBuilder();
+                row = getCachedRow(mConversationCursor);
+            }
 
-                if (conversation.conversationInfo != null) {
-                    ArrayList<SpannableString> senders = new ArrayList<SpannableString>();
-                    SendersView.format(mContext, conversation.conversationInfo, "",
-                            MAX_SENDERS_LENGTH, senders, null, null, mAccount.name, true);
-                    senderBuilder = ellipsizeStyledSenders(senders);
-                } else {
-                    senderBuilder.append(conversation.senders);
-                    senderBuilder.setSpan(conversation.read ? getReadStyle() : getUnreadStyle(), 0,
-                            senderBuilder.length(), 0);
+            final CachedRow built = getBuiltRow(row);
+            if (built != row) {
+                synchronized (sWidgetLock) {
+                    mRows.put(built.conversation.id, built);
                 }
-                // Get styled date.
-                CharSequence date = DateUtils.getRelativeTimeSpanString(mContext,
-                        conversation.dateMs);
+            }
+            return built.views;
+        }
 
-                final int ignoreFolderType;
-                if ((mFolderType & FolderType.INBOX) != 0) {
-                    ignoreFolderType = FolderType.INBOX;
-                } else {
-                    ignoreFolderType = -1;
-                }
+        /**
+         * Builds the row for a conversation.
+         */
+        private RemoteViews buildConversationView(Conversation conversation, CharSequence date) {
+            // Split the senders and status from the instructions.
+            SpannableStringBuilder senderBuilder = new SpannableStringBuilder();
+
+            if (conversation.conversationInfo != null) {
+                ArrayList<SpannableString> senders = new ArrayList<SpannableString>();
+                SendersView.format(mContext, conversation.id, conversation.conversationInfo,
+                        "", MAX_SENDERS_LENGTH, senders, null, null, mAccount.name, true);
+                senderBuilder = ellipsizeStyledSenders(senders);
+            } else {
+                senderBuilder.append(conversation.senders);
+                senderBuilder.setSpan(conversation.read ? getReadStyle() : getUnreadStyle(), 0,
+                        senderBuilder.length(), 0);
+            }
 
-                // Load up our remote view.
-                RemoteViews remoteViews = mWidgetConversationListItemViewBuilder.getStyledView(date,
-                        conversation, new FolderUri(mFolderUri), ignoreFolderType,
-                        senderBuilder, filterTag(conversation.subject));
+            final int ignoreFolderType;
+            if ((mFolderType & FolderType.INBOX) != 0) {
+                ignoreFolderType = FolderType.INBOX;
+            } else {
+                ignoreFolderType = -1;
+            }
 
-                // On click intent.
-                remoteViews.setOnClickFillInIntent(R.id.widget_conversation_list_item,
-                        Utils.createViewConversationIntent(mContext, conversation, mFolderUri,
-                                mAccount));
+            // Load up our remote view.
+            RemoteViews remoteViews = mWidgetConversationListItemViewBuilder.getStyledView(date,
+                    conversation, new FolderUri(mFolderUri), ignoreFolderType,
+                    senderBuilder, filterTag(conversation.subject));
 
-                return remoteViews;
-            }
+            // On click intent.
+            remoteViews.setOnClickFillInIntent(R.id.widget_conversation_list_item,
+                    Utils.createViewConversationIntent(mContext, conversation, mFolderUri,
+                            mAccount));
+
+            return remoteViews;
         }
 
         private CharacterStyle getUnreadStyle() {
@@ -635,6 +753,25 @@ public class WidgetService extends RemoteViewsService {
             return result;
         }
 
+        /**
+         * A conversation row, with the data it was built from. A row is not modified once it is
+         * built and shared.
+         */
+        private static class CachedRow {
+            /** The values of the cursor's columns for the conversation. */
+            final Object[] values;
+            final Conversation conversation;
+            /** Null until the row is built. */
+            CharSequence date;
+            /** Null until the row is built. */
+            RemoteViews views;
+
+            CachedRow(Object[] values, Conversation conversation) {
+                this.values = values;
+                this.conversation = conversation;
+            }
+        }
+
         /**
          * A {@link DelayedTaskHandler} to throttle folder update to a reasonable rate.
          */
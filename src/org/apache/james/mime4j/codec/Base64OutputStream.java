@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.codec;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * ANDROID: Encodes what is written to it as base64 in lines of 76 characters, each ending in
+ * CRLF, as for a body with a Content-Transfer-Encoding of base64. The output is the same as
+ * that of {@link android.util.Base64#encode(byte[], int)} with the CRLF flag.
+ * <p>
+ * Whole groups of three bytes are encoded in bulk from the array given to
+ * {@link #write(byte[], int, int)} into a buffer of whole lines, which is written out when it
+ * is full, so the stream needs no buffering below it. Call {@link #finish()} to write the last
+ * group and line without closing the stream below.
+ */
+public class Base64OutputStream extends FilterOutputStream {
+    /** Characters in a full line, as in RFC 2045 */
+    private static final int LINE_LENGTH = 76;
+    /** Full lines in the buffer */
+    private static final int LINES = 64;
+    private static final byte PAD = '=';
+
+    private final byte[] mBuffer = new byte[(LINE_LENGTH + 2) * LINES];
+    private int mCount;
+    private int mLineLength;
+
+    /** Bytes of a group that is not complete yet */
+    private final byte[] mGroup = new byte[3];
+    private int mGroupLength;
+
+    private final byte[] mSingle = new byte[1];
+    private boolean mFinished;
+
+    public Base64OutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mSingle[0] = (byte) b;
+        write(mSingle, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mFinished) {
+            throw new IOException("Stream is finished");
+        }
+        // Complete the group left over from the last write
+        while (mGroupLength > 0 && len > 0) {
+            mGroup[mGroupLength++] = b[off++];
+            len--;
+            if (mGroupLength == 3) {
+                encodeGroups(mGroup, 0, 3);
+                mGroupLength = 0;
+            }
+        }
+        final int whole = len - len % 3;
+        encodeGroups(b, off, whole);
+        for (int i = whole; i < len; i++) {
+            mGroup[mGroupLength++] = b[off + i];
+        }
+    }
+
+    private void encodeGroups(byte[] b, int off, int len) throws IOException {
+        final byte[] table = EncoderUtil.BASE64_TABLE;
+        final byte[] buffer = mBuffer;
+        final int end = off + len;
+        int count = mCount;
+        int lineLength = mLineLength;
+        while (off < end) {
+            if (count > buffer.length - 6) {
+                mCount = count;
+                flushBuffer();
+                count = 0;
+            }
+            final int data = (b[off] & 0xff) << 16 | (b[off + 1] & 0xff) << 8 | b[off + 2] & 0xff;
+            off += 3;
+            buffer[count++] = table[data >> 18 & 0x3f];
+            buffer[count++] = table[data >> 12 & 0x3f];
+            buffer[count++] = table[data >> 6 & 0x3f];
+            buffer[count++] = table[data & 0x3f];
+            lineLength += 4;
+            if (lineLength == LINE_LENGTH) {
+                buffer[count++] = '\r';
+                buffer[count++] = '\n';
+                lineLength = 0;
+            }
+        }
+        mCount = count;
+        mLineLength = lineLength;
+    }
+
+    /**
+     * Writes the last group, padded, and ends the last line, without flushing or closing the
+     * stream below: its owner flushes it once the whole message is written. Nothing more can be
+     * written after this.
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        if (mCount > mBuffer.length - 6) {
+            flushBuffer();
+        }
+        final byte[] table = EncoderUtil.BASE64_TABLE;
+        if (mGroupLength > 0) {
+            final int data = (mGroup[0] & 0xff) << 16
+                    | (mGroupLength == 2 ? (mGroup[1] & 0xff) << 8 : 0);
+            mBuffer[mCount++] = table[data >> 18 & 0x3f];
+            mBuffer[mCount++] = table[data >> 12 & 0x3f];
+            mBuffer[mCount++] = mGroupLength == 2 ? table[data >> 6 & 0x3f] : PAD;
+            mBuffer[mCount++] = PAD;
+            mLineLength += 4;
+            mGroupLength = 0;
+        }
+        if (mLineLength > 0) {
+            mBuffer[mCount++] = '\r';
+            mBuffer[mCount++] = '\n';
+            mLineLength = 0;
+        }
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mCount > 0) {
+            out.write(mBuffer, 0, mCount);
+            mCount = 0;
+        }
+    }
+
+    /**
+     * Writes out what has been encoded, which does not include a group that is not complete.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+}
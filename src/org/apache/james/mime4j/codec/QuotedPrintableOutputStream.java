@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.codec;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * ANDROID: Encodes what is written to it as quoted-printable, as in RFC 2045 section 6.7.
+ * <p>
+ * CRLF is kept as a line break; any other CR or LF is encoded, so that decoding gives back
+ * exactly the bytes that were written. Whitespace at the end of a line is encoded, and lines
+ * are broken with soft line breaks as they are written, so that none is longer than 76
+ * characters. Bytes are looked up in a table and encoded into a buffer that is written out when
+ * it is full, so the stream needs no buffering below it. Call {@link #finish()} to write the
+ * end of the text without closing the stream below.
+ */
+public class QuotedPrintableOutputStream extends FilterOutputStream {
+    /** Characters in a line before its soft line break */
+    private static final int LINE_LENGTH = 75;
+    private static final int BUFFER_SIZE = 4096;
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    /** Whether each byte can be written as it is, if not at the end of a line */
+    private static final boolean[] LITERAL = new boolean[256];
+    static {
+        for (int i = 33; i <= 126; i++) {
+            LITERAL[i] = i != '=';
+        }
+        LITERAL[' '] = true;
+        LITERAL['\t'] = true;
+    }
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mCount;
+    private int mLineLength;
+
+    /** Whitespace that was written last, which is encoded if a line break follows, or -1 */
+    private int mPendingSpace = -1;
+    /** Whether a CR was written last, which is a line break if a LF follows */
+    private boolean mPendingCr;
+
+    private final byte[] mSingle = new byte[1];
+    private boolean mFinished;
+
+    public QuotedPrintableOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mSingle[0] = (byte) b;
+        write(mSingle, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mFinished) {
+            throw new IOException("Stream is finished");
+        }
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            final int c = b[i] & 0xff;
+            if (mPendingCr) {
+                mPendingCr = false;
+                if (c == '\n') {
+                    writePendingSpace(true);
+                    lineBreak();
+                    continue;
+                }
+                writePendingSpace(false);
+                writeEncoded('\r');
+            }
+            if (c == '\r') {
+                mPendingCr = true;
+            } else if (c == ' ' || c == '\t') {
+                writePendingSpace(false);
+                mPendingSpace = c;
+            } else {
+                writePendingSpace(false);
+                if (LITERAL[c]) {
+                    writeLiteral(c);
+                } else {
+                    writeEncoded(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the whitespace held back from the end of the text so far, if there is any.
+     *
+     * @param encoded whether a line break follows it, so that it has to be encoded
+     */
+    private void writePendingSpace(boolean encoded) throws IOException {
+        if (mPendingSpace >= 0) {
+            if (encoded) {
+                writeEncoded(mPendingSpace);
+            } else {
+                writeLiteral(mPendingSpace);
+            }
+            mPendingSpace = -1;
+        }
+    }
+
+    private void writeLiteral(int c) throws IOException {
+        ensureRoom(1);
+        mBuffer[mCount++] = (byte) c;
+        mLineLength++;
+    }
+
+    private void writeEncoded(int c) throws IOException {
+        ensureRoom(3);
+        mBuffer[mCount++] = '=';
+        mBuffer[mCount++] = HEX[c >> 4];
+        mBuffer[mCount++] = HEX[c & 0xf];
+        mLineLength += 3;
+    }
+
+    private void lineBreak() throws IOException {
+        if (mCount > mBuffer.length - 2) {
+            flushBuffer();
+        }
+        mBuffer[mCount++] = '\r';
+        mBuffer[mCount++] = '\n';
+        mLineLength = 0;
+    }
+
+    /**
+     * Makes room in the line for the given number of characters, with a soft line break if it
+     * is needed, and room in the buffer for them.
+     */
+    private void ensureRoom(int length) throws IOException {
+        if (mCount > mBuffer.length - 6) {
+            flushBuffer();
+        }
+        if (mLineLength + length > LINE_LENGTH) {
+            mBuffer[mCount++] = '=';
+            lineBreak();
+        }
+    }
+
+    /**
+     * Writes the end of the text, without flushing or closing the stream below: its owner
+     * flushes it once the whole message is written. Nothing more can be written after this.
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        if (mPendingCr) {
+            mPendingCr = false;
+            writePendingSpace(false);
+            writeEncoded('\r');
+        } else {
+            // Whitespace at the end of the text is at the end of a line
+            writePendingSpace(true);
+        }
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mCount > 0) {
+            out.write(mBuffer, 0, mCount);
+            mCount = 0;
+        }
+    }
+
+    /**
+     * Writes out what has been encoded, which does not include whitespace or a CR that were
+     * written last.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+}
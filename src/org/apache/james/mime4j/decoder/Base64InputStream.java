@@ -28,16 +28,26 @@ import java.io.InputStream;
 
 /**
  * Performs Base-64 decoding on an underlying stream.
- * 
+ * <p>
+ * ANDROID: The underlying stream is read in chunks, which are decoded into a
+ * {@link ByteRingBuffer} that {@link #read(byte[], int, int)} drains in bulk.
  * 
  * @version $Id: Base64InputStream.java,v 1.3 2004/11/29 13:15:47 ntherning Exp $
  */
 public class Base64InputStream extends InputStream {
+    private static final int BUFFER_SIZE = 4096;
+
     private final InputStream s;
-    private int outCount = 0;
-    private int outIndex = 0;
-    private final int[] outputBuffer = new int[3];
+    private final byte[] input = new byte[BUFFER_SIZE];
+    /** The range of input that has been read but not decoded yet */
+    private int inputPos = 0;
+    private int inputEnd = 0;
     private final byte[] inputBuffer = new byte[4];
+    private int inCount = 0;
+    /** Decoded groups, before they are added to the decoded buffer in bulk */
+    private final byte[] outputBuffer = new byte[BUFFER_SIZE];
+    private int outCount = 0;
+    private final ByteRingBuffer decoded = new ByteRingBuffer(BUFFER_SIZE);
     private boolean done = false;
 
     public Base64InputStream(InputStream s) {
@@ -56,49 +66,80 @@ public class Base64InputStream extends InputStream {
     
     @Override
     public int read() throws IOException {
-        if (outIndex == outCount) {
-            fillBuffer();
-            if (outIndex == outCount) {
-                return -1;
-            }
+        fillBuffer();
+        if (decoded.isEmpty()) {
+            return -1;
+        }
+        return decoded.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
         }
+        fillBuffer();
+        if (decoded.isEmpty()) {
+            return -1;
+        }
+        return decoded.drainTo(b, off, len);
+    }
 
-        return outputBuffer[outIndex++];
+    @Override
+    public int available() throws IOException {
+        return decoded.count();
     }
 
     /**
      * Retrieve data from the underlying stream, decode it,
-     * and put the results in the byteq.
+     * and put the results in the decoded buffer.
      * @throws IOException
      */
     private void fillBuffer() throws IOException {
-        outCount = 0;
-        outIndex = 0;
-        int inCount = 0;
-
-        int i;
         // "done" is needed for the two successive '=' at the end
-        while (!done) {
-            switch (i = s.read()) {
-                case -1:
-                    // No more input - just return, let outputBuffer drain out, and be done
-                    return;
-                case '=':
-                    // once we meet the first '=', avoid reading the second '='
+        while (decoded.isEmpty() && !done) {
+            if (inputPos == inputEnd) {
+                final int count = s.read(input, 0, input.length);
+                if (count < 0) {
+                    // No more input - let the decoded buffer drain out, and be done
                     done = true;
-                    decodeAndEnqueue(inCount);
                     return;
-                default:
-                    byte sX = TRANSLATION[i];
-                    if (sX < 0) continue;
-                    inputBuffer[inCount++] = sX;
-                    if (inCount == 4) {
-                        decodeAndEnqueue(inCount);
-                        return;
-                    }
-                    break;
+                }
+                inputPos = 0;
+                inputEnd = count;
+            }
+            decodeInput();
+        }
+    }
+
+    /**
+     * Decodes the input that has been read, while there is room for it.
+     */
+    private void decodeInput() {
+        final byte[] in = input;
+        final int end = inputEnd;
+        final int limit = Math.min(outputBuffer.length, decoded.remaining()) - 3;
+        int pos = inputPos;
+        outCount = 0;
+        while (pos < end && outCount <= limit) {
+            final int i = in[pos++] & 0xFF;
+            if (i == '=') {
+                // once we meet the first '=', avoid reading the second '='
+                done = true;
+                decodeAndEnqueue(inCount);
+                inCount = 0;
+                break;
+            }
+            byte sX = TRANSLATION[i];
+            if (sX < 0) continue;
+            inputBuffer[inCount++] = sX;
+            if (inCount == 4) {
+                decodeAndEnqueue(inCount);
+                inCount = 0;
             }
         }
+        inputPos = pos;
+        decoded.put(outputBuffer, 0, outCount);
     }
 
     private void decodeAndEnqueue(int len) {
@@ -111,19 +152,16 @@ public class Base64InputStream extends InputStream {
         // There's a bit of duplicated code here because we want to have straight-through operation
         // for the most common case of len==4
         if (len == 4) {
-            outputBuffer[0] = (accum >> 16) & 0xFF;
-            outputBuffer[1] = (accum >> 8) & 0xFF;
-            outputBuffer[2] = (accum) & 0xFF;
-            outCount = 3;
+            outputBuffer[outCount++] = (byte) (accum >> 16);
+            outputBuffer[outCount++] = (byte) (accum >> 8);
+            outputBuffer[outCount++] = (byte) accum;
             return;
         } else if (len == 3) {
-            outputBuffer[0] = (accum >> 16) & 0xFF;
-            outputBuffer[1] = (accum >> 8) & 0xFF;
-            outCount = 2;
+            outputBuffer[outCount++] = (byte) (accum >> 16);
+            outputBuffer[outCount++] = (byte) (accum >> 8);
             return;
         } else {    // len == 2
-            outputBuffer[0] = (accum >> 16) & 0xFF;
-            outCount = 1;
+            outputBuffer[outCount++] = (byte) (accum >> 16);
             return;
         }
     }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ANDROID: A first-in, first-out queue of bytes in an array of fixed capacity, which replaces
+ * ByteQueue and UnboundedFifoByteBuffer for the decoder streams.
+ * <p>
+ * Bytes are kept as bytes and moved in bulk with {@link System#arraycopy}, in at most two
+ * pieces where the queue wraps around the end of the array; nothing is boxed or reallocated.
+ * It is up to the caller not to put more than {@link #remaining()} bytes. This class is not
+ * synchronized.
+ */
+public class ByteRingBuffer {
+    private final byte[] mBuffer;
+    /** Index of the first byte in the queue */
+    private int mHead;
+    private int mCount;
+
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than 0");
+        }
+        mBuffer = new byte[capacity];
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /** Returns the number of bytes in the queue. */
+    public int count() {
+        return mCount;
+    }
+
+    /** Returns the number of bytes that can still be put. */
+    public int remaining() {
+        return mBuffer.length - mCount;
+    }
+
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mCount = 0;
+    }
+
+    /**
+     * Adds a byte to the end of the queue.
+     *
+     * @throws IllegalStateException if the queue is full
+     */
+    public void put(byte b) {
+        if (mCount == mBuffer.length) {
+            throw new IllegalStateException("Buffer is full");
+        }
+        int tail = mHead + mCount;
+        if (tail >= mBuffer.length) {
+            tail -= mBuffer.length;
+        }
+        mBuffer[tail] = b;
+        mCount++;
+    }
+
+    /**
+     * Adds bytes to the end of the queue.
+     *
+     * @throws IllegalStateException if there is no room for all of them
+     */
+    public void put(byte[] b, int off, int len) {
+        if (len > mBuffer.length - mCount) {
+            throw new IllegalStateException("Buffer is full");
+        }
+        int tail = mHead + mCount;
+        if (tail >= mBuffer.length) {
+            tail -= mBuffer.length;
+        }
+        final int first = Math.min(len, mBuffer.length - tail);
+        System.arraycopy(b, off, mBuffer, tail, first);
+        System.arraycopy(b, off + first, mBuffer, 0, len - first);
+        mCount += len;
+    }
+
+    /**
+     * Removes the byte at the front of the queue.
+     *
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public byte get() {
+        if (mCount == 0) {
+            throw new NoSuchElementException("Buffer is empty");
+        }
+        final byte b = mBuffer[mHead];
+        if (++mHead == mBuffer.length) {
+            mHead = 0;
+        }
+        mCount--;
+        return b;
+    }
+
+    /**
+     * Removes up to <code>len</code> bytes from the front of the queue into an array.
+     *
+     * @return the number of bytes removed, which is 0 if the queue is empty
+     */
+    public int drainTo(byte[] b, int off, int len) {
+        final int count = Math.min(len, mCount);
+        final int first = Math.min(count, mBuffer.length - mHead);
+        System.arraycopy(mBuffer, mHead, b, off, first);
+        System.arraycopy(mBuffer, 0, b, off + first, count - first);
+        mHead += count;
+        if (mHead >= mBuffer.length) {
+            mHead -= mBuffer.length;
+        }
+        mCount -= count;
+        if (mCount == 0) {
+            // Keep the next bulk put in one piece
+            mHead = 0;
+        }
+        return count;
+    }
+}
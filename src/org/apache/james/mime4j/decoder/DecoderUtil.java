@@ -29,6 +29,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashMap;
 
 /**
  * Static methods for decoding strings, byte arrays and encoded words.
@@ -150,6 +158,11 @@ public class DecoderUtil {
      * 
      * ANDROID:  COPIED FROM A NEWER VERSION OF MIME4J
      * 
+     * ANDROID:  Words are decoded in place, without intermediate strings, into buffers kept per
+     * thread, by a CharsetDecoder kept per thread for each charset. The result is the same as
+     * that of decodeB() and decodeQ(), except that a string the original would fail on with a
+     * StringIndexOutOfBoundsException (a "?=" before a trailing "=?") is returned as it is.
+     * 
      * @param body the string to decode.
      * @return the decoded string.
      */
@@ -164,7 +177,8 @@ public class DecoderUtil {
         int previousEnd = 0;
         boolean previousWasEncoded = false;
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = null;
+        DecodeState state = null;
 
         while (true) {
             int begin = body.indexOf("=?", previousEnd);
@@ -175,9 +189,15 @@ public class DecoderUtil {
             int endScan = begin + 2;
             if (begin != -1) {
                 int qm1 = body.indexOf('?', endScan + 2);
-                int qm2 = body.indexOf('?', qm1 + 1);
-                if (qm2 != -1) {
-                    endScan = qm2 + 1;
+                if (qm1 == -1) {
+                    // ANDROID:  No encoded word can begin here or later, since the shortest
+                    // has a '?' four characters in
+                    begin = -1;
+                } else {
+                    int qm2 = body.indexOf('?', qm1 + 1);
+                    if (qm2 != -1) {
+                        endScan = qm2 + 1;
+                    }
                 }
             }
             
@@ -186,94 +206,353 @@ public class DecoderUtil {
                 if (previousEnd == 0)
                     return body;
 
-                sb.append(body.substring(previousEnd));
+                sb.append(body, previousEnd, body.length());
                 return sb.toString();
             }
             end += 2;
 
-            String sep = body.substring(previousEnd, begin);
+            if (sb == null) {
+                sb = new StringBuilder(body.length());
+                state = sDecodeState.get();
+            }
 
-            String decoded = decodeEncodedWord(body, begin, end);
-            if (decoded == null) {
-                sb.append(sep);
-                sb.append(body.substring(begin, end));
+            if (!decodeEncodedWord(state, body, begin, end)) {
+                sb.append(body, previousEnd, end);
+                previousWasEncoded = false;
             } else {
-                if (!previousWasEncoded || !CharsetUtil.isWhitespace(sep)) {
-                    sb.append(sep);
+                if (!previousWasEncoded || !isWhitespace(body, previousEnd, begin)) {
+                    sb.append(body, previousEnd, begin);
                 }
-                sb.append(decoded);
+                sb.append(state.chars.array(), 0, state.chars.position());
+                previousWasEncoded = true;
             }
 
             previousEnd = end;
-            previousWasEncoded = decoded != null;
         }
     }
 
-    // return null on error
-    private static String decodeEncodedWord(String body, int begin, int end) {
+    private static boolean isWhitespace(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!CharsetUtil.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the encoded word at [begin, end) of the body into state.chars.
+     *
+     * @return false on error
+     */
+    private static boolean decodeEncodedWord(DecodeState state, String body, int begin,
+            int end) {
         int qm1 = body.indexOf('?', begin + 2);
         if (qm1 == end - 2)
-            return null;
+            return false;
 
         int qm2 = body.indexOf('?', qm1 + 1);
         if (qm2 == end - 2)
-            return null;
+            return false;
 
-        String mimeCharset = body.substring(begin + 2, qm1);
-        String encoding = body.substring(qm1 + 1, qm2);
-        String encodedText = body.substring(qm2 + 1, end - 2);
-
-        String charset = CharsetUtil.toJavaCharset(mimeCharset);
-        if (charset == null) {
-            if (log.isWarnEnabled()) {
-                log.warn("MIME charset '" + mimeCharset + "' in encoded word '"
-                        + body.substring(begin, end) + "' doesn't have a "
-                        + "corresponding Java charset");
-            }
-            return null;
-        } else if (!CharsetUtil.isDecodingSupported(charset)) {
+        CharsetDecoder decoder = state.getDecoder(body, begin + 2, qm1);
+        if (decoder == null) {
             if (log.isWarnEnabled()) {
-                log.warn("Current JDK doesn't support decoding of charset '"
-                        + charset + "' (MIME charset '" + mimeCharset
+                log.warn("MIME charset '" + body.substring(begin + 2, qm1)
                         + "' in encoded word '" + body.substring(begin, end)
-                        + "')");
+                        + "' has no supported Java charset");
             }
-            return null;
+            return false;
         }
 
-        if (encodedText.length() == 0) {
+        int textStart = qm2 + 1;
+        int textEnd = end - 2;
+        if (textStart == textEnd) {
             if (log.isWarnEnabled()) {
                 log.warn("Missing encoded text in encoded word: '"
                         + body.substring(begin, end) + "'");
             }
-            return null;
+            return false;
         }
 
-        try {
-            if (encoding.equalsIgnoreCase("Q")) {
-                return DecoderUtil.decodeQ(encodedText, charset);
-            } else if (encoding.equalsIgnoreCase("B")) {
-                return DecoderUtil.decodeB(encodedText, charset);
-            } else {
-                if (log.isWarnEnabled()) {
-                    log.warn("Warning: Unknown encoding in encoded word '"
-                            + body.substring(begin, end) + "'");
-                }
-                return null;
-            }
-        } catch (UnsupportedEncodingException e) {
-            // should not happen because of isDecodingSupported check above
+        char encoding = qm2 == qm1 + 2 ? body.charAt(qm1 + 1) : 0;
+        int count;
+        if (encoding == 'Q' || encoding == 'q') {
+            count = decodeQ(state, body, textStart, textEnd);
+        } else if (encoding == 'B' || encoding == 'b') {
+            count = decodeB(state, body, textStart, textEnd);
+        } else {
             if (log.isWarnEnabled()) {
-                log.warn("Unsupported encoding in encoded word '"
-                        + body.substring(begin, end) + "'", e);
+                log.warn("Warning: Unknown encoding in encoded word '"
+                        + body.substring(begin, end) + "'");
             }
-            return null;
+            return false;
+        }
+
+        try {
+            state.decodeChars(decoder, count);
+            return true;
         } catch (RuntimeException e) {
             if (log.isWarnEnabled()) {
                 log.warn("Could not decode encoded word '"
                         + body.substring(begin, end) + "'", e);
             }
-            return null;
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the 'B' encoded text at [start, end) of the body into state.bytes, the way
+     * {@link #decodeB} does: characters outside the Base64 alphabet are skipped, a final
+     * incomplete quantum is dropped, and decoding stops at the first '='.
+     *
+     * @return the number of bytes decoded
+     */
+    private static int decodeB(DecodeState state, String body, int start, int end) {
+        byte[] out = state.ensureBytes(end - start);
+        int[] quantum = state.quantum;
+        Arrays.fill(quantum, 0);
+        int count = 0;
+        int inCount = 0;
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            if (c == '=') {
+                // As Base64InputStream does, complete the quantum with what was there before
+                int accum = quantum[0] << 18 | quantum[1] << 12 | quantum[2] << 6 | quantum[3];
+                out[count++] = (byte) (accum >> 16);
+                if (inCount == 3) {
+                    out[count++] = (byte) (accum >> 8);
+                }
+                break;
+            }
+            int sextet = c < 0x80 ? BASE64_VALUES[c] : -1;
+            if (sextet < 0) {
+                continue;
+            }
+            quantum[inCount++] = sextet;
+            if (inCount == 4) {
+                int accum = quantum[0] << 18 | quantum[1] << 12 | quantum[2] << 6 | quantum[3];
+                out[count++] = (byte) (accum >> 16);
+                out[count++] = (byte) (accum >> 8);
+                out[count++] = (byte) accum;
+                inCount = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decodes the 'Q' encoded text at [start, end) of the body into state.bytes, the way
+     * {@link #decodeQ} does, with its handling of malformed escapes and transport padding.
+     *
+     * @return the number of bytes decoded
+     */
+    private static int decodeQ(DecodeState state, String body, int start, int end) {
+        // Each '_' stands for the three bytes "=20", and each of those may be put out
+        state.ensureBytes(3 * (end - start));
+        state.count = 0;
+        state.qState = 0;
+        int i = start;
+        while (i < end) {
+            char c = body.charAt(i);
+            if (c == ' ' || c == '\t') {
+                int runEnd = i + 1;
+                while (runEnd < end
+                        && (body.charAt(runEnd) == ' ' || body.charAt(runEnd) == '\t')) {
+                    runEnd++;
+                }
+                // Whitespace before a line break or the end is transport padding
+                if (runEnd < end && body.charAt(runEnd) != '\r' && body.charAt(runEnd) != '\n') {
+                    for (; i < runEnd; i++) {
+                        state.putQ(body.charAt(i));
+                    }
+                }
+                i = runEnd;
+            } else if (c == '_') {
+                state.putQ('=');
+                state.putQ('2');
+                state.putQ('0');
+                i++;
+            } else if (c < 0x80) {
+                state.putQ(c);
+                i++;
+            } else {
+                // Not ASCII: replaced by '?', once for a surrogate pair
+                state.putQ('?');
+                i += Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(body.charAt(i + 1)) ? 2 : 1;
+            }
+        }
+        // An escape left incomplete at the end is dropped
+        return state.count;
+    }
+
+    /**
+     * The values of the characters of the Base64 alphabet, and -1 for the other ASCII characters.
+     */
+    private static final byte[] BASE64_VALUES = new byte[0x80];
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /** Per-thread charset decoders are forgotten once there are more than this many */
+    private static final int MAX_DECODERS = 32;
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final ThreadLocal<DecodeState> sDecodeState = new ThreadLocal<DecodeState>() {
+        @Override
+        protected DecodeState initialValue() {
+            return new DecodeState();
+        }
+    };
+
+    /**
+     * The state of decodeEncodedWords() on one thread: a decoder for each MIME charset name
+     * seen, and the buffers that words are decoded into.
+     */
+    private static class DecodeState {
+        /** The decoders by MIME charset name, with null for those that are not supported */
+        private final HashMap<String, CharsetDecoder> decoders =
+                new HashMap<String, CharsetDecoder>();
+        /** The charset name of the last word, whose decoder is looked up without a map */
+        private String lastCharsetName;
+        private CharsetDecoder lastDecoder;
+
+        byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        /** The sextets of the Base64 quantum being decoded */
+        final int[] quantum = new int[4];
+        CharBuffer chars = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        /** The quoted-printable decoder: bytes put out so far, state, and pending digit */
+        int count;
+        int qState;
+        char qDigit;
+
+        CharsetDecoder getDecoder(String body, int start, int end) {
+            int length = end - start;
+            if (lastCharsetName != null && lastCharsetName.length() == length
+                    && body.regionMatches(start, lastCharsetName, 0, length)) {
+                return lastDecoder;
+            }
+            String mimeCharset = body.substring(start, end);
+            CharsetDecoder decoder = decoders.get(mimeCharset);
+            if (decoder == null && !decoders.containsKey(mimeCharset)) {
+                decoder = newDecoder(mimeCharset);
+                if (decoders.size() >= MAX_DECODERS) {
+                    decoders.clear();
+                }
+                decoders.put(mimeCharset, decoder);
+            }
+            lastCharsetName = mimeCharset;
+            lastDecoder = decoder;
+            return decoder;
+        }
+
+        byte[] ensureBytes(int capacity) {
+            if (bytes.length < capacity) {
+                bytes = new byte[Math.max(capacity, 2 * bytes.length)];
+            }
+            return bytes;
+        }
+
+        /**
+         * Decodes the first count bytes into chars, replacing malformed and unmappable input as
+         * new String(bytes, charset) does.
+         */
+        void decodeChars(CharsetDecoder decoder, int count) {
+            ByteBuffer in = ByteBuffer.wrap(bytes, 0, count);
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(in, chars, true);
+            while (result.isOverflow()) {
+                growChars();
+                result = decoder.decode(in, chars, true);
+            }
+            result = decoder.flush(chars);
+            while (result.isOverflow()) {
+                growChars();
+                result = decoder.flush(chars);
+            }
+        }
+
+        private void growChars() {
+            CharBuffer grown = CharBuffer.allocate(2 * chars.capacity());
+            chars.flip();
+            grown.put(chars);
+            chars = grown;
+        }
+
+        /**
+         * Puts one byte of 'Q' encoded text through the state machine of
+         * QuotedPrintableInputStream.
+         */
+        void putQ(char b) {
+            switch (qState) {
+                case 0:  // start state, no bytes pending
+                    if (b != '=') {
+                        bytes[count++] = (byte) b;
+                    } else {
+                        qState = 1;
+                    }
+                    break;
+                case 1:  // encountered "=" so far
+                    if (b == '\r') {
+                        qState = 2;
+                    } else if (isHexDigit(b)) {
+                        qState = 3;
+                        qDigit = b;
+                    } else if (b == '=') {
+                        // Emit one = and stay in this state
+                        bytes[count++] = '=';
+                    } else {
+                        qState = 0;
+                        bytes[count++] = '=';
+                        bytes[count++] = (byte) b;
+                    }
+                    break;
+                case 2:  // encountered "=\r" so far
+                    qState = 0;
+                    if (b != '\n') {
+                        bytes[count++] = '=';
+                        bytes[count++] = '\r';
+                        bytes[count++] = (byte) b;
+                    }
+                    break;
+                default:  // encountered =<digit> so far
+                    qState = 0;
+                    if (isHexDigit(b)) {
+                        bytes[count++] = (byte) ((Character.digit(qDigit, 16) << 4)
+                                | Character.digit(b, 16));
+                    } else {
+                        bytes[count++] = '=';
+                        bytes[count++] = (byte) qDigit;
+                        bytes[count++] = (byte) b;
+                    }
+                    break;
+            }
+        }
+
+        private static boolean isHexDigit(char b) {
+            return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f');
+        }
+
+        private static CharsetDecoder newDecoder(String mimeCharset) {
+            String charset = CharsetUtil.toJavaCharset(mimeCharset);
+            if (charset == null || !CharsetUtil.isDecodingSupported(charset)) {
+                return null;
+            }
+            try {
+                return Charset.forName(charset).newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            } catch (IllegalArgumentException e) {
+                // Illegal or unsupported after all
+                return null;
+            }
         }
     }
 }
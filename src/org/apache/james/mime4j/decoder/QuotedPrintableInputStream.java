@@ -29,18 +29,39 @@ import org.apache.james.mime4j.LogFactory;
 
 /**
  * Performs Quoted-Printable decoding on an underlying stream.
- * 
- * 
+ * <p>
+ * ANDROID: The underlying stream is read in chunks, and runs of plain characters are decoded
+ * in bulk into a {@link ByteRingBuffer}, which {@link #read(byte[], int, int)} drains in bulk,
+ * rather than byte by byte through a growing queue of boxed bytes.
  * 
  * @version $Id: QuotedPrintableInputStream.java,v 1.3 2004/11/29 13:15:47 ntherning Exp $
  */
 public class QuotedPrintableInputStream extends InputStream {
     private static Log log = LogFactory.getLog(QuotedPrintableInputStream.class);
-    
+
+    private static final int BUFFER_SIZE = 4096;
+    /** The most bytes that one encoded byte can be decoded to, when it is malformed */
+    private static final int MAX_DECODED = 3;
+
+    /** Bytes that are decoded as they are from the start state */
+    private static final boolean[] LITERAL = new boolean[256];
+    static {
+        for (int i = 0; i < LITERAL.length; i++) {
+            LITERAL[i] = i != '=' && i != ' ' && i != '\t';
+        }
+    }
+
     private InputStream stream;
-    ByteQueue byteq = new ByteQueue();
-    ByteQueue pushbackq = new ByteQueue();
+    private byte[] input = new byte[BUFFER_SIZE];
+    /** The range of input that has been read but not decoded yet */
+    private int inputPos = 0;
+    private int inputEnd = 0;
+    /** Whitespace before this position is known not to be transport padding */
+    private int keepUntil = 0;
+    private boolean eof = false;
+    private final ByteRingBuffer decoded = new ByteRingBuffer(BUFFER_SIZE);
     private byte state = 0;
+    private byte msdChar = 0;  // first digit of escaped num
 
     public QuotedPrintableInputStream(InputStream stream) {
         this.stream = stream;
@@ -57,150 +78,197 @@ public class QuotedPrintableInputStream extends InputStream {
 
     public int read() throws IOException {
         fillBuffer();
-        if (byteq.count() == 0)
+        if (decoded.isEmpty())
             return -1;
-        else {
-            byte val = byteq.dequeue();
-            if (val >= 0)
-                return val;
-            else
-                return val & 0xFF;
-        }
+        else
+            return decoded.get() & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        // Decode what has been read already, then read more only if that gave nothing
+        decodeInput();
+        fillBuffer();
+        if (decoded.isEmpty())
+            return -1;
+        return decoded.drainTo(b, off, len);
+    }
+
+    public int available() throws IOException {
+        return decoded.count();
     }
 
     /**
-     * Pulls bytes out of the underlying stream and places them in the
-     * pushback queue.  This is necessary (vs. reading from the
-     * underlying stream directly) to detect and filter out "transport
-     * padding" whitespace, i.e., all whitespace that appears immediately
-     * before a CRLF.
+     * Reads and decodes bytes until one or more decoded bytes are in the buffer, or the
+     * underlying stream ends.
      *
      * @throws IOException Underlying stream threw IOException.
      */
-    private void populatePushbackQueue() throws IOException {
-        //Debug.verify(pushbackq.count() == 0, "PopulatePushbackQueue called when pushback queue was not empty!");
-
-        if (pushbackq.count() != 0)
-            return;
-
-        while (true) {
-            int i = stream.read();
-            switch (i) {
-                case -1:
-                    // stream is done
-                    pushbackq.clear();  // discard any whitespace preceding EOF
-                    return;
-                case ' ':
-                case '\t':
-                    pushbackq.enqueue((byte)i);
-                    break;
-                case '\r':
-                case '\n':
-                    pushbackq.clear();  // discard any whitespace preceding EOL
-                    pushbackq.enqueue((byte)i);
-                    return;
-                default:
-                    pushbackq.enqueue((byte)i);
-                    return;
+    private void fillBuffer() throws IOException {
+        while (decoded.isEmpty()) {
+            decodeInput();
+            if (!decoded.isEmpty())
+                return;
+            if (eof) {
+                // discard any whitespace preceding EOF
+                inputPos = inputEnd;
+                return;
             }
+            readInput();
         }
     }
 
     /**
-     * Causes the pushback queue to get populated if it is empty, then
-     * consumes and decodes bytes out of it until one or more bytes are
-     * in the byte queue.  This decoding step performs the actual QP
-     * decoding.
+     * Reads more of the underlying stream after the input that is not decoded yet, which is
+     * moved to the start of the input buffer.
      *
      * @throws IOException Underlying stream threw IOException.
      */
-    private void fillBuffer() throws IOException {
-        byte msdChar = 0;  // first digit of escaped num
-        while (byteq.count() == 0) {
-            if (pushbackq.count() == 0) {
-                populatePushbackQueue();
-                if (pushbackq.count() == 0)
-                    return;
-            }
+    private void readInput() throws IOException {
+        final int pending = inputEnd - inputPos;
+        if (pending == input.length) {
+            // A run of whitespace as long as the buffer, which only a broken encoder would
+            // write; keep all of it until it is known whether a line ends after it
+            final byte[] larger = new byte[input.length * 2];
+            System.arraycopy(input, 0, larger, 0, pending);
+            input = larger;
+        } else if (inputPos > 0) {
+            System.arraycopy(input, inputPos, input, 0, pending);
+        }
+        keepUntil = Math.max(0, keepUntil - inputPos);
+        inputPos = 0;
+        inputEnd = pending;
+        final int count = stream.read(input, inputEnd, input.length - inputEnd);
+        if (count < 0)
+            eof = true;
+        else
+            inputEnd += count;
+    }
 
-            byte b = (byte)pushbackq.dequeue();
+    /**
+     * Decodes the input that has been read into the decoded buffer, while there is room for
+     * it. Whitespace is filtered out if it is "transport padding", i.e., if it appears
+     * immediately before a CR or LF, or before the end of the stream; decoding stops at
+     * whitespace that runs to the end of the input, until more is read.
+     */
+    private void decodeInput() {
+        final byte[] in = input;
+        final int end = inputEnd;
+        int pos = inputPos;
+        while (pos < end && decoded.remaining() >= MAX_DECODED) {
+            final byte b = in[pos];
+            if (state == 0 && LITERAL[b & 0xFF]) {
+                int run = pos + 1;
+                final int limit = Math.min(end, pos + decoded.remaining());
+                while (run < limit && LITERAL[in[run] & 0xFF]) {
+                    run++;
+                }
+                decoded.put(in, pos, run - pos);
+                pos = run;
+                continue;
+            }
+            if ((b == ' ' || b == '\t') && pos >= keepUntil) {
+                int run = pos + 1;
+                while (run < end && (in[run] == ' ' || in[run] == '\t')) {
+                    run++;
+                }
+                if (run == end) {
+                    break;
+                }
+                if (in[run] == '\r' || in[run] == '\n') {
+                    // discard any whitespace preceding EOL
+                    pos = run;
+                    continue;
+                }
+                keepUntil = run;
+            }
+            decode(b);
+            pos++;
+        }
+        inputPos = pos;
+    }
 
-            switch (state) {
-                case 0:  // start state, no bytes pending
-                    if (b != '=') {
-                        byteq.enqueue(b);
-                        break;  // state remains 0
-                    } else {
-                        state = 1;
-                        break;
+    /**
+     * Decodes one byte after transport padding has been filtered out, which may complete an
+     * escape sequence or soft line break.
+     */
+    private void decode(byte b) {
+        switch (state) {
+            case 0:  // start state, no bytes pending
+                if (b != '=') {
+                    decoded.put(b);
+                    break;  // state remains 0
+                } else {
+                    state = 1;
+                    break;
+                }
+            case 1:  // encountered "=" so far
+                if (b == '\r') {
+                    state = 2;
+                    break;
+                } else if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f')) {
+                    state = 3;
+                    msdChar = b;  // save until next digit encountered
+                    break;
+                } else if (b == '=') {
+                    /*
+                     * Special case when == is encountered.
+                     * Emit one = and stay in this state.
+                     */
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; got ==");
                     }
-                case 1:  // encountered "=" so far
-                    if (b == '\r') {
-                        state = 2;
-                        break;
-                    } else if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f')) {
-                        state = 3;
-                        msdChar = b;  // save until next digit encountered
-                        break;
-                    } else if (b == '=') {
-                        /*
-                         * Special case when == is encountered.
-                         * Emit one = and stay in this state.
-                         */
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; got ==");
-                        }
-                        byteq.enqueue((byte)'=');
-                        break;
-                    } else {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; expected \\r or "
-                                    + "[0-9A-Z], got " + b);
-                        }
-                        state = 0;
-                        byteq.enqueue((byte)'=');
-                        byteq.enqueue(b);
-                        break;
+                    decoded.put((byte)'=');
+                    break;
+                } else {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; expected \\r or "
+                                + "[0-9A-Z], got " + b);
                     }
-                case 2:  // encountered "=\r" so far
-                    if (b == '\n') {
-                        state = 0;
-                        break;
-                    } else {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; expected " 
-                                    + (int)'\n' + ", got " + b);
-                        }
-                        state = 0;
-                        byteq.enqueue((byte)'=');
-                        byteq.enqueue((byte)'\r');
-                        byteq.enqueue(b);
-                        break;
+                    state = 0;
+                    decoded.put((byte)'=');
+                    decoded.put(b);
+                    break;
+                }
+            case 2:  // encountered "=\r" so far
+                if (b == '\n') {
+                    state = 0;
+                    break;
+                } else {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; expected " 
+                                + (int)'\n' + ", got " + b);
                     }
-                case 3:  // encountered =<digit> so far; expecting another <digit> to complete the octet
-                    if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f')) {
-                        byte msd = asciiCharToNumericValue(msdChar);
-                        byte low = asciiCharToNumericValue(b);
-                        state = 0;
-                        byteq.enqueue((byte)((msd << 4) | low));
-                        break;
-                    } else {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; expected "
-                                     + "[0-9A-Z], got " + b);
-                        }
-                        state = 0;
-                        byteq.enqueue((byte)'=');
-                        byteq.enqueue(msdChar);
-                        byteq.enqueue(b);
-                        break;
+                    state = 0;
+                    decoded.put((byte)'=');
+                    decoded.put((byte)'\r');
+                    decoded.put(b);
+                    break;
+                }
+            case 3:  // encountered =<digit> so far; expecting another <digit> to complete the octet
+                if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f')) {
+                    byte msd = asciiCharToNumericValue(msdChar);
+                    byte low = asciiCharToNumericValue(b);
+                    state = 0;
+                    decoded.put((byte)((msd << 4) | low));
+                    break;
+                } else {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; expected "
+                                 + "[0-9A-Z], got " + b);
                     }
-                default:  // should never happen
-                    log.error("Illegal state: " + state);
                     state = 0;
-                    byteq.enqueue(b);
+                    decoded.put((byte)'=');
+                    decoded.put(msdChar);
+                    decoded.put(b);
                     break;
-            }
+                }
+            default:  // should never happen
+                log.error("Illegal state: " + state);
+                state = 0;
+                decoded.put(b);
+                break;
         }
     }
 
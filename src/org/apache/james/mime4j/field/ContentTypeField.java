@@ -209,6 +209,19 @@ public class ContentTypeField extends Field {
         private static Log log = LogFactory.getLog(Parser.class);
 
         public Field parse(final String name, final String body, final String raw) {
+            // ANDROID: most values are simple enough to parse without the grammar
+            Field field = SimpleContentTypeParser.parse(name, body, raw);
+            if (field != null) {
+                return field;
+            }
+            return parseWithGrammar(name, body, raw);
+        }
+
+        /**
+         * ANDROID: Parses the field with the JavaCC grammar only, as
+         * {@link #parse(String, String, String)} did before it had a fast path.
+         */
+        public Field parseWithGrammar(final String name, final String body, final String raw) {
             ParseException parseException = null;
             String mimeType = "";
             Map<String, String> parameters = null;
@@ -87,7 +87,9 @@ public abstract class Field {
         /*
          * Unfold the field.
          */
-        final String unfolded = raw.replaceAll("\r|\n", "");
+        // ANDROID: most fields are on one line, and need no regex to unfold
+        final String unfolded = raw.indexOf('\r') < 0 && raw.indexOf('\n') < 0
+                ? raw : raw.replaceAll("\r|\n", "");
         
         /*
          * Split into name and value.
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ANDROID: A hand-written parser for Content-Type values of the usual form, such as
+ * <code>multipart/alternative; boundary="b1"; charset=utf-8</code>, so that they need not go
+ * through the generated {@link
+ * org.apache.james.mime4j.field.contenttype.parser.ContentTypeParser}.
+ * <p>
+ * It takes a type and subtype followed by parameters whose values are tokens or quoted
+ * strings, and it builds the same field as {@link ContentTypeField.Parser} does. Anything else,
+ * such as comments, non-ASCII tokens, tokens of only digits, which the grammar reads as another
+ * kind of token, or a trailing ';', makes it give up, so that the value is parsed by the grammar
+ * instead, which also reports the error.
+ */
+public class SimpleContentTypeParser {
+    private final String mBody;
+    private int mPosition;
+
+    private SimpleContentTypeParser(String body) {
+        mBody = body;
+    }
+
+    /**
+     * Parses an unfolded Content-Type field.
+     *
+     * @return the field, or null if its value is not of a simple form
+     */
+    public static ContentTypeField parse(String name, String body, String raw) {
+        return new SimpleContentTypeParser(body).parseField(name, raw);
+    }
+
+    private ContentTypeField parseField(String name, String raw) {
+        skipWhitespace();
+        final String type = parseToken();
+        skipWhitespace();
+        if (type == null || !consume('/')) {
+            return null;
+        }
+        skipWhitespace();
+        final String subType = parseToken();
+        if (subType == null) {
+            return null;
+        }
+        skipWhitespace();
+
+        Map<String, String> parameters = null;
+        while (consume(';')) {
+            skipWhitespace();
+            final String attribute = parseToken();
+            skipWhitespace();
+            if (attribute == null || !consume('=')) {
+                return null;
+            }
+            skipWhitespace();
+            final String value = mPosition < mBody.length() && mBody.charAt(mPosition) == '"'
+                    ? parseQuotedString() : parseToken();
+            if (value == null) {
+                return null;
+            }
+            skipWhitespace();
+            if (parameters == null) {
+                parameters = new HashMap<String, String>();
+            }
+            parameters.put(attribute.toLowerCase(), value);
+        }
+        if (mPosition != mBody.length()) {
+            return null;
+        }
+        final String mimeType = (type + "/" + subType).toLowerCase();
+        return new ContentTypeField(name, mBody, raw, mimeType, parameters, null);
+    }
+
+    /**
+     * Parses a token of RFC 2045.
+     *
+     * @return the token, or null if there is none here or it is only digits
+     */
+    private String parseToken() {
+        final int length = mBody.length();
+        final int start = mPosition;
+        boolean digits = true;
+        while (mPosition < length) {
+            final char c = mBody.charAt(mPosition);
+            if (!isTokenChar(c)) {
+                break;
+            }
+            digits &= c >= '0' && c <= '9';
+            mPosition++;
+        }
+        return mPosition > start && !digits ? mBody.substring(start, mPosition) : null;
+    }
+
+    /**
+     * Parses a quoted string, without its quotes and escapes.
+     *
+     * @return the text, or null if the string does not end
+     */
+    private String parseQuotedString() {
+        final int length = mBody.length();
+        final int start = ++mPosition;
+        StringBuilder sb = null;
+        while (mPosition < length) {
+            final char c = mBody.charAt(mPosition++);
+            if (c == '"') {
+                return sb == null
+                        ? mBody.substring(start, mPosition - 1) : sb.toString();
+            } else if (c == '\\') {
+                if (mPosition == length) {
+                    return null;
+                }
+                if (sb == null) {
+                    sb = new StringBuilder().append(mBody, start, mPosition - 1);
+                }
+                sb.append(mBody.charAt(mPosition++));
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return null;
+    }
+
+    private boolean consume(char c) {
+        if (mPosition < mBody.length() && mBody.charAt(mPosition) == c) {
+            mPosition++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        final int length = mBody.length();
+        while (mPosition < length
+                && (mBody.charAt(mPosition) == ' ' || mBody.charAt(mPosition) == '\t')) {
+            mPosition++;
+        }
+    }
+
+    private static boolean isTokenChar(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        switch (c) {
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+            case '-': case '.': case '^': case '_': case '`': case '{': case '|': case '}':
+            case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -109,6 +109,19 @@ public class AddressList {
 	 * The string MUST be unfolded already.
 	 */
 	public static AddressList parse(String rawAddressList) throws ParseException {
+		// ANDROID: most lists are simple enough to parse without the grammar
+		AddressList list = SimpleAddressListParser.parse(rawAddressList);
+		if (list != null) {
+			return list;
+		}
+		return parseWithGrammar(rawAddressList);
+	}
+
+	/**
+	 * ANDROID: Parse the address list string with the JavaCC grammar only,
+	 * as {@link #parse(String)} did before it had a fast path.
+	 */
+	public static AddressList parseWithGrammar(String rawAddressList) throws ParseException {
 		AddressListParser parser = new AddressListParser(new StringReader(rawAddressList));
 		return Builder.getInstance().buildAddressList(parser.parse());
 	}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field.address;
+
+import org.apache.james.mime4j.decoder.DecoderUtil;
+
+import java.util.ArrayList;
+
+/**
+ * ANDROID: A hand-written parser for the address lists that nearly all messages have, so that
+ * they need not go through the generated {@link
+ * org.apache.james.mime4j.field.address.parser.AddressListParser}, which makes a token and a
+ * tree node for every word.
+ * <p>
+ * It takes comma-separated entries of the forms <code>local@domain</code>,
+ * <code>&lt;local@domain&gt;</code> and <code>phrase &lt;local@domain&gt;</code>, where the
+ * local part and domain are dot-atoms and the phrase is dot-atoms and quoted strings; and it
+ * builds the same addresses as the grammar does, dropping simple comments after them. Anything
+ * else, such as groups, other comments, routes, quoted local parts, domain literals, folding or
+ * non-ASCII text outside quotes, makes it give up, so that the list is parsed by the grammar
+ * instead.
+ */
+public class SimpleAddressListParser {
+	private SimpleAddressListParser() {
+	}
+
+	/**
+	 * Parses an unfolded address list.
+	 *
+	 * @return the addresses, or null if the list is not of a simple form
+	 */
+	public static AddressList parse(String list) {
+		final int length = list.length();
+		final ArrayList<Address> addresses = new ArrayList<Address>();
+		int i = skipWhitespace(list, 0);
+		while (i < length) {
+			if (list.charAt(i) == ',') {
+				// Empty entries are allowed
+				i = skipWhitespace(list, i + 1);
+				continue;
+			}
+			i = parseAddress(list, i, addresses);
+			if (i < 0) {
+				return null;
+			}
+			i = skipComments(list, i);
+			if (i < 0) {
+				return null;
+			}
+			if (i < length) {
+				if (list.charAt(i) != ',') {
+					return null;
+				}
+				i = skipWhitespace(list, i + 1);
+			}
+		}
+		return new AddressList(addresses, true);
+	}
+
+	/**
+	 * Parses the address that starts at the given index into the list of addresses.
+	 *
+	 * @return the index after the address, or -1 if it is not of a simple form
+	 */
+	private static int parseAddress(String list, int start, ArrayList<Address> addresses) {
+		final int length = list.length();
+		if (list.charAt(start) == '<') {
+			return parseAngleAddress(list, start, null, addresses);
+		}
+
+		// A bare address, or the first word of a name
+		final int wordEnd = endOfDotAtom(list, start);
+		if (wordEnd > start) {
+			final int next = skipWhitespace(list, wordEnd);
+			if (next < length && list.charAt(next) == '@') {
+				final int domainStart = skipWhitespace(list, next + 1);
+				final int domainEnd = endOfDotAtom(list, domainStart);
+				if (domainEnd == domainStart) {
+					return -1;
+				}
+				addresses.add(new Mailbox(list.substring(start, wordEnd),
+						list.substring(domainStart, domainEnd)));
+				return domainEnd;
+			}
+		}
+
+		// A name: words and quoted strings, with the whitespace between them as it is
+		final StringBuilder name = new StringBuilder();
+		int i = start;
+		while (true) {
+			final int end;
+			if (list.charAt(i) == '"') {
+				end = appendQuotedString(list, i, name);
+			} else {
+				end = endOfDotAtom(list, i);
+				if (end == i) {
+					return -1;
+				}
+				name.append(list, i, end);
+			}
+			if (end < 0) {
+				return -1;
+			}
+			i = skipWhitespace(list, end);
+			if (i == length) {
+				return -1;
+			}
+			final char c = list.charAt(i);
+			if (c == '<') {
+				return parseAngleAddress(list, i,
+						DecoderUtil.decodeEncodedWords(name.toString()), addresses);
+			} else if (c != '"' && !isAtomChar(c)) {
+				// A group, or a word followed by '@', which the grammar tells apart
+				return -1;
+			}
+			name.append(list, end, i);
+		}
+	}
+
+	/**
+	 * Parses an address in angle brackets into the list of addresses, named if a name is given.
+	 *
+	 * @return the index after the address, or -1 if it is not of a simple form
+	 */
+	private static int parseAngleAddress(String list, int start, String name,
+			ArrayList<Address> addresses) {
+		final int length = list.length();
+		final int localStart = skipWhitespace(list, start + 1);
+		final int localEnd = endOfDotAtom(list, localStart);
+		if (localEnd == localStart) {
+			// Empty, a route or a quoted local part
+			return -1;
+		}
+		int i = skipWhitespace(list, localEnd);
+		if (i == length || list.charAt(i) != '@') {
+			return -1;
+		}
+		final int domainStart = skipWhitespace(list, i + 1);
+		final int domainEnd = endOfDotAtom(list, domainStart);
+		if (domainEnd == domainStart) {
+			return -1;
+		}
+		i = skipWhitespace(list, domainEnd);
+		if (i == length || list.charAt(i) != '>') {
+			return -1;
+		}
+		final String localPart = list.substring(localStart, localEnd);
+		final String domain = list.substring(domainStart, domainEnd);
+		addresses.add(name != null
+				? new NamedMailbox(name, localPart, domain)
+				: new Mailbox(localPart, domain));
+		return i + 1;
+	}
+
+	/**
+	 * Appends the text of the quoted string that starts at the given index, without its quotes
+	 * and escapes.
+	 *
+	 * @return the index after the closing quote, or -1 if there is none
+	 */
+	private static int appendQuotedString(String list, int start, StringBuilder out) {
+		final int length = list.length();
+		int i = start + 1;
+		while (i < length) {
+			final char c = list.charAt(i++);
+			if (c == '"') {
+				return i;
+			} else if (c == '\\') {
+				if (i == length) {
+					return -1;
+				}
+				out.append(list.charAt(i++));
+			} else {
+				out.append(c);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index after the dot-atom that starts at the given index, which is the same
+	 * index if there is none there.
+	 */
+	private static int endOfDotAtom(String list, int start) {
+		final int length = list.length();
+		if (start == length || !isAtomChar(list.charAt(start))) {
+			return start;
+		}
+		int i = start + 1;
+		while (i < length) {
+			final char c = list.charAt(i);
+			if (!isAtomChar(c) && c != '.') {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Skips whitespace and comments, such as the names that follow some addresses, which the
+	 * grammar drops.
+	 *
+	 * @return the index after them, or -1 if a comment does not end, or nests or escapes
+	 *         characters
+	 */
+	private static int skipComments(String list, int start) {
+		final int length = list.length();
+		int i = skipWhitespace(list, start);
+		while (i < length && list.charAt(i) == '(') {
+			i++;
+			while (true) {
+				if (i == length) {
+					return -1;
+				}
+				final char c = list.charAt(i++);
+				if (c == ')') {
+					break;
+				} else if (c == '(' || c == '\\') {
+					return -1;
+				}
+			}
+			i = skipWhitespace(list, i);
+		}
+		return i;
+	}
+
+	private static int skipWhitespace(String list, int start) {
+		final int length = list.length();
+		int i = start;
+		while (i < length && (list.charAt(i) == ' ' || list.charAt(i) == '\t')) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns whether a character is atext of RFC 2822.
+	 */
+	private static boolean isAtomChar(char c) {
+		if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+			return true;
+		}
+		switch (c) {
+			case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+			case '-': case '/': case '=': case '?': case '^': case '_': case '`': case '{':
+			case '|': case '}': case '~':
+				return true;
+			default:
+				return false;
+		}
+	}
+}
@@ -117,6 +117,19 @@ public class DateTime {
 
 
     public static DateTime parse(String dateString) throws ParseException {
+        // ANDROID: most dates are simple enough to parse without the grammar
+        DateTime dateTime = SimpleDateTimeParser.parse(dateString);
+        if (dateTime != null) {
+            return dateTime;
+        }
+        return parseWithGrammar(dateString);
+    }
+
+    /**
+     * ANDROID: Parses the date with the JavaCC grammar only, as {@link #parse(String)} did
+     * before it had a fast path.
+     */
+    public static DateTime parseWithGrammar(String dateString) throws ParseException {
         try {
             return new DateTimeParser(new StringReader(dateString)).parseAll();
         }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field.datetime;
+
+/**
+ * ANDROID: A hand-written parser for dates of the usual RFC 5322 form, such as
+ * <code>Tue, 4 Mar 2014 09:15:02 -0800 (PST)</code>, so that they need not go through the
+ * generated {@link org.apache.james.mime4j.field.datetime.parser.DateTimeParser}.
+ * <p>
+ * It takes an optional day of the week, a day, month and year, a time with or without
+ * seconds, and a zone that is either a four-digit offset or one of the named zones, followed by
+ * at most one comment; and it builds the same {@link DateTime} as the grammar does. Anything
+ * else, including military zones, nested comments and unusual numbers of digits, makes it give
+ * up, so that the date is parsed by the grammar instead.
+ */
+public class SimpleDateTimeParser {
+    private static final String[] DAYS = {
+        "Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"
+    };
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final String[] ZONES = {
+        "UT", "GMT", "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT"
+    };
+    /** The offsets of {@link #ZONES}, in hours */
+    private static final int[] ZONE_OFFSETS = {
+        0, 0, -5, -4, -6, -5, -7, -6, -8, -7
+    };
+
+    private final String mText;
+    private int mPosition;
+
+    private SimpleDateTimeParser(String text) {
+        mText = text;
+    }
+
+    /**
+     * Parses an unfolded date.
+     *
+     * @return the date, or null if it is not of a simple form
+     */
+    public static DateTime parse(String text) {
+        return new SimpleDateTimeParser(text).parseDateTime();
+    }
+
+    private DateTime parseDateTime() {
+        skipWhitespace();
+        if (indexOfWord(DAYS) >= 0) {
+            skipWhitespace();
+            if (!consume(',')) {
+                return null;
+            }
+            skipWhitespace();
+        }
+
+        final int day = parseNumber(1, 2);
+        skipWhitespace();
+        final int month = indexOfWord(MONTHS) + 1;
+        skipWhitespace();
+        final int yearStart = mPosition;
+        final int year = parseNumber(2, 4);
+        final int yearLength = mPosition - yearStart;
+        if (day < 0 || month == 0 || year < 0 || yearLength == 3) {
+            return null;
+        }
+        final String yearString = mText.substring(yearStart, mPosition);
+
+        skipWhitespace();
+        final int hour = parseNumber(1, 2);
+        if (hour < 0 || !consume(':')) {
+            return null;
+        }
+        final int minute = parseNumber(1, 2);
+        if (minute < 0) {
+            return null;
+        }
+        int second = 0;
+        if (consume(':')) {
+            second = parseNumber(1, 2);
+            if (second < 0) {
+                return null;
+            }
+        }
+
+        skipWhitespace();
+        final int zone;
+        if (mPosition == mText.length()) {
+            return null;
+        }
+        final char c = mText.charAt(mPosition);
+        if (c == '+' || c == '-') {
+            mPosition++;
+            final int offset = parseNumber(4, 4);
+            if (offset < 0) {
+                return null;
+            }
+            zone = c == '-' ? -offset : offset;
+        } else {
+            final int index = indexOfWord(ZONES);
+            if (index < 0) {
+                return null;
+            }
+            zone = ZONE_OFFSETS[index] * 100;
+        }
+
+        skipWhitespace();
+        if (consume('(')) {
+            if (!skipComment()) {
+                return null;
+            }
+            skipWhitespace();
+        }
+        if (mPosition != mText.length()) {
+            return null;
+        }
+        return new DateTime(yearString, month, day, hour, minute, second, zone);
+    }
+
+    /**
+     * Parses a number of between the given numbers of digits.
+     *
+     * @return the number, or -1 if there is none or it has too few or too many digits
+     */
+    private int parseNumber(int minDigits, int maxDigits) {
+        final int length = mText.length();
+        final int start = mPosition;
+        int value = 0;
+        while (mPosition < length) {
+            final char c = mText.charAt(mPosition);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            mPosition++;
+        }
+        final int digits = mPosition - start;
+        return digits >= minDigits && digits <= maxDigits ? value : -1;
+    }
+
+    /**
+     * Consumes one of the given words, unless it is followed by a letter, which the grammar
+     * would read as another word.
+     *
+     * @return the index of the word that was consumed, or -1 if there is none of them here
+     */
+    private int indexOfWord(String[] words) {
+        final int length = mText.length();
+        for (int i = 0; i < words.length; i++) {
+            final String word = words[i];
+            final int end = mPosition + word.length();
+            if (mText.startsWith(word, mPosition)
+                    && (end == length || !isLetter(mText.charAt(end)))) {
+                mPosition = end;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the rest of a comment whose '(' has been consumed.
+     *
+     * @return false if the comment does not end, or nests or escapes characters
+     */
+    private boolean skipComment() {
+        final int length = mText.length();
+        while (mPosition < length) {
+            final char c = mText.charAt(mPosition++);
+            if (c == ')') {
+                return true;
+            } else if (c == '(' || c == '\\') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean consume(char c) {
+        if (mPosition < mText.length() && mText.charAt(mPosition) == c) {
+            mPosition++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        final int length = mText.length();
+        while (mPosition < length
+                && (mText.charAt(mPosition) == ' ' || mText.charAt(mPosition) == '\t')) {
+            mPosition++;
+        }
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
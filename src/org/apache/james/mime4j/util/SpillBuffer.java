@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * ANDROID: Holds the bytes of a body as it is parsed, in memory while it is small and in a
+ * temp file once it is not, so that small parts need no file and large ones do not fill the
+ * heap.
+ * <p>
+ * Bytes are kept in chunks taken from a shared pool, until the body would grow past the
+ * threshold given to the constructor, or the chunks held by all buffers would grow past the
+ * memory budget that they share across concurrent parses. The buffer then spills: what it holds
+ * is written to a temp file, its chunks go back to the pool, and the rest is written to the
+ * file. Call {@link #close()} when all of the body has been written, and {@link #release()} when
+ * it is no longer needed; a buffer that is garbage collected without being released gives its
+ * share of the budget back and has its file deleted the next time a chunk is taken.
+ */
+public class SpillBuffer extends OutputStream {
+    /** Bodies up to this size are kept in memory, if the budget allows */
+    public static final int DEFAULT_THRESHOLD = 256 * 1024;
+    /** The memory that all buffers may hold at once, unless it is set otherwise */
+    public static final long DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    /** Chunks kept in the pool when no buffer holds them */
+    private static final int MAX_FREE_CHUNKS = 32;
+
+    private static long sMemoryBudget = DEFAULT_MEMORY_BUDGET;
+    /** Bytes of chunks held by buffers that have not been released or collected */
+    private static long sReservedBytes;
+    private static final ArrayList<byte[]> sFreeChunks = new ArrayList<byte[]>();
+    private static final ReferenceQueue<SpillBuffer> sCollected =
+            new ReferenceQueue<SpillBuffer>();
+    /** Keeps the reservations of live buffers reachable until they are enqueued */
+    private static final HashSet<Reservation> sReservations = new HashSet<Reservation>();
+
+    /**
+     * What a buffer holds, which is given back when it is released or garbage collected.
+     */
+    private static class Reservation extends PhantomReference<SpillBuffer> {
+        int mChunks;
+        File mFile;
+
+        Reservation(SpillBuffer buffer) {
+            super(buffer, sCollected);
+        }
+    }
+
+    private final File mDirectory;
+    private final int mThreshold;
+    private final ArrayList<byte[]> mChunks = new ArrayList<byte[]>();
+    private long mSize;
+    private Reservation mReservation;
+    private File mFile;
+    private OutputStream mFileOut;
+    private final byte[] mSingle = new byte[1];
+    private boolean mClosed;
+    private boolean mReleased;
+
+    /**
+     * @param directory where to create the temp file if the buffer spills, or null for the
+     * default temporary-file directory
+     * @param threshold the most bytes to keep in memory
+     */
+    public SpillBuffer(File directory, int threshold) {
+        mDirectory = directory;
+        mThreshold = threshold;
+    }
+
+    /**
+     * Sets the memory that all buffers may hold at once. Buffers that hold more than a smaller
+     * budget keep what they hold, but no more chunks are taken until they give it back.
+     */
+    public static synchronized void setMemoryBudget(long bytes) {
+        sMemoryBudget = bytes;
+    }
+
+    /** Returns the bytes of chunks that buffers hold now, for tests. */
+    static synchronized long getReservedBytes() {
+        reclaimCollected();
+        return sReservedBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mSingle[0] = (byte) b;
+        write(mSingle, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mClosed) {
+            throw new IOException("Buffer is closed");
+        }
+        if (mFileOut == null && mSize + len > mThreshold) {
+            spill();
+        }
+        while (mFileOut == null && len > 0) {
+            if (mSize == (long) mChunks.size() * CHUNK_SIZE) {
+                final byte[] chunk = takeChunk();
+                if (chunk == null) {
+                    spill();
+                    break;
+                }
+                mChunks.add(chunk);
+            }
+            final int offset = (int) (mSize % CHUNK_SIZE);
+            final int count = Math.min(len, CHUNK_SIZE - offset);
+            System.arraycopy(b, off, mChunks.get(mChunks.size() - 1), offset, count);
+            mSize += count;
+            off += count;
+            len -= count;
+        }
+        if (len > 0) {
+            mFileOut.write(b, off, len);
+            mSize += len;
+        }
+    }
+
+    private byte[] takeChunk() {
+        synchronized (SpillBuffer.class) {
+            reclaimCollected();
+            if (sReservedBytes + CHUNK_SIZE > sMemoryBudget) {
+                return null;
+            }
+            if (mReservation == null) {
+                mReservation = new Reservation(this);
+                sReservations.add(mReservation);
+            }
+            sReservedBytes += CHUNK_SIZE;
+            mReservation.mChunks++;
+            final int free = sFreeChunks.size();
+            return free > 0 ? sFreeChunks.remove(free - 1) : new byte[CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Moves what the buffer holds to a temp file, which the rest of the body is written to.
+     */
+    private void spill() throws IOException {
+        mFile = File.createTempFile("body", null, mDirectory);
+        synchronized (SpillBuffer.class) {
+            if (mReservation == null) {
+                mReservation = new Reservation(this);
+                sReservations.add(mReservation);
+            }
+            mReservation.mFile = mFile;
+        }
+        mFileOut = new BufferedOutputStream(new FileOutputStream(mFile), CHUNK_SIZE);
+        long remaining = mSize;
+        for (byte[] chunk : mChunks) {
+            final int count = (int) Math.min(remaining, CHUNK_SIZE);
+            mFileOut.write(chunk, 0, count);
+            remaining -= count;
+        }
+        giveBackChunks();
+    }
+
+    /**
+     * Finishes writing the body, which can be read after this.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (mFileOut != null) {
+            mFileOut.close();
+        }
+    }
+
+    /** Returns the number of bytes written. */
+    public long size() {
+        return mSize;
+    }
+
+    /** Returns whether the body is held in memory, rather than in a temp file. */
+    public boolean isInMemory() {
+        return mFile == null;
+    }
+
+    /**
+     * Returns a stream that reads the body, which can be done any number of times until the
+     * buffer is released.
+     *
+     * @throws IllegalStateException if the buffer is not closed yet, or has been released
+     */
+    public InputStream getInputStream() throws IOException {
+        if (!mClosed || mReleased) {
+            throw new IllegalStateException(mReleased ? "Buffer is released" : "Buffer is open");
+        }
+        if (mFile != null) {
+            return new FileInputStream(mFile);
+        }
+        return new ChunkInputStream();
+    }
+
+    /**
+     * Gives the memory or temp file that the buffer holds back. Nothing can be read after this.
+     */
+    public void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        mClosed = true;
+        if (mFileOut != null) {
+            try {
+                mFileOut.close();
+            } catch (IOException e) {
+                // Nothing more is written to it
+            }
+        }
+        giveBackChunks();
+        synchronized (SpillBuffer.class) {
+            if (mReservation != null) {
+                sReservations.remove(mReservation);
+                mReservation.clear();
+                mReservation = null;
+            }
+        }
+        if (mFile != null) {
+            mFile.delete();
+        }
+    }
+
+    private void giveBackChunks() {
+        synchronized (SpillBuffer.class) {
+            if (mReservation != null) {
+                sReservedBytes -= (long) mReservation.mChunks * CHUNK_SIZE;
+                mReservation.mChunks = 0;
+            }
+            for (byte[] chunk : mChunks) {
+                if (sFreeChunks.size() == MAX_FREE_CHUNKS) {
+                    break;
+                }
+                sFreeChunks.add(chunk);
+            }
+        }
+        mChunks.clear();
+    }
+
+    /**
+     * Gives back what buffers that were garbage collected without being released held.
+     */
+    private static void reclaimCollected() {
+        Reference<? extends SpillBuffer> reference;
+        while ((reference = sCollected.poll()) != null) {
+            final Reservation reservation = (Reservation) reference;
+            sReservations.remove(reservation);
+            sReservedBytes -= (long) reservation.mChunks * CHUNK_SIZE;
+            if (reservation.mFile != null) {
+                reservation.mFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the chunks of a buffer held in memory.
+     */
+    private class ChunkInputStream extends InputStream {
+        private long mPosition;
+
+        @Override
+        public int read() throws IOException {
+            if (mReleased) {
+                throw new IOException("Buffer is released");
+            }
+            if (mPosition >= mSize) {
+                return -1;
+            }
+            final byte b = mChunks.get((int) (mPosition / CHUNK_SIZE))[
+                    (int) (mPosition % CHUNK_SIZE)];
+            mPosition++;
+            return b & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (mReleased) {
+                throw new IOException("Buffer is released");
+            }
+            if (mPosition >= mSize) {
+                return -1;
+            }
+            final int offset = (int) (mPosition % CHUNK_SIZE);
+            final int count = (int) Math.min(Math.min(len, CHUNK_SIZE - offset),
+                    mSize - mPosition);
+            System.arraycopy(mChunks.get((int) (mPosition / CHUNK_SIZE)), offset, b, off, count);
+            mPosition += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mSize - mPosition);
+        }
+    }
+}
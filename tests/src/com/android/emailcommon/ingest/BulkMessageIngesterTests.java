@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.ingest;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+@MediumTest
+public class BulkMessageIngesterTests extends AndroidTestCase {
+    /** How long a test waits for the ingester to get somewhere */
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    private File mRoot;
+    private File mSource;
+    private File mTempRoot;
+    private File mAttachments;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRoot = new File(getContext().getCacheDir(), "BulkMessageIngesterTests");
+        deleteRecursively(mRoot);
+        mSource = new File(mRoot, "source");
+        mTempRoot = new File(mRoot, "temp");
+        mAttachments = new File(mRoot, "attachments");
+        mSource.mkdirs();
+        mTempRoot.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(mRoot);
+        super.tearDown();
+    }
+
+    public void testEmlDirectory() throws Exception {
+        writeFile(new File(mSource, "a.eml"), message("one", "alice@example.com", null));
+        writeFile(new File(mSource, "b.eml"), message("two", "bob@example.com", "report.txt"));
+        writeFile(new File(mSource, "c.eml"), message("three", "carol@example.com", null));
+        // Not an eml file, so not ingested
+        writeFile(new File(mSource, "notes.txt"), "Subject: four\r\n\r\nBody\r\n");
+
+        final BulkMessageIngester ingester = newIngester(mSource, 2, 2);
+        ingester.start();
+        final ArrayList<IngestedMessage> messages = takeAll(ingester);
+
+        assertEquals(3, messages.size());
+        assertEquals(3, ingester.getMessageCount());
+        assertEquals(0, ingester.getFailureCount());
+        final IngestedMessage one = messages.get(0);
+        assertEquals(0, one.index);
+        assertEquals(new File(mSource, "a.eml").getPath(), one.source);
+        assertNull(one.error);
+        assertEquals("one", one.subject);
+        assertTrue(one.from.contains("alice@example.com"));
+        assertTrue(one.bodyText.contains("Body of one"));
+        assertEquals(0, one.attachments.size());
+
+        final IngestedMessage two = messages.get(1);
+        assertEquals("two", two.subject);
+        assertEquals(1, two.attachments.size());
+        final IngestedAttachment attachment = two.attachments.get(0);
+        assertEquals("report.txt", attachment.name);
+        assertEquals("text/plain", attachment.contentType);
+        assertEquals("Attached text\r\n", readFile(new File(attachment.location)));
+        assertEquals(attachment.size, new File(attachment.location).length());
+
+        assertEquals("three", messages.get(2).subject);
+    }
+
+    public void testMbox() throws Exception {
+        final File mbox = new File(mSource, "inbox.mbox");
+        writeFile(mbox, "From alice@example.com Mon Oct 13 10:00:00 2014\n"
+                + message("one", "alice@example.com", null).replace("\r\n", "\n")
+                + "\n"
+                + "From bob@example.com Mon Oct 13 10:01:00 2014\n"
+                + message("two", "bob@example.com", "report.txt").replace("\r\n", "\n"));
+
+        final BulkMessageIngester ingester = newIngester(mbox, 2, 4);
+        ingester.start();
+        final ArrayList<IngestedMessage> messages = takeAll(ingester);
+
+        assertEquals(2, messages.size());
+        assertEquals(0, ingester.getFailureCount());
+        assertEquals("one", messages.get(0).subject);
+        assertEquals(1413194400000L, messages.get(0).dateReceivedMs);
+        assertTrue(messages.get(0).source.startsWith(mbox.getPath() + "@"));
+        assertEquals("two", messages.get(1).subject);
+        assertEquals(1413194460000L, messages.get(1).dateReceivedMs);
+        assertEquals(1, messages.get(1).attachments.size());
+    }
+
+    /**
+     * No more messages are parsed than can wait in the results, until they are taken.
+     */
+    public void testBackpressure() throws Exception {
+        final int messageCount = 10;
+        final int capacity = 2;
+        for (int i = 0; i < messageCount; i++) {
+            writeFile(new File(mSource, i + ".eml"), message("m" + i, "alice@example.com", null));
+        }
+
+        final BulkMessageIngester ingester = newIngester(mSource, 4, capacity);
+        ingester.start();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (ingester.getMessageCount() < capacity && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Give the workers the time to run ahead, if they could
+        Thread.sleep(200);
+        assertEquals(capacity, ingester.getMessageCount());
+
+        final ArrayList<IngestedMessage> messages = takeAll(ingester);
+        assertEquals(messageCount, messages.size());
+        assertEquals(messageCount, ingester.getMessageCount());
+    }
+
+    public void testCancel() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            writeFile(new File(mSource, i + ".eml"), message("m" + i, "alice@example.com", null));
+        }
+
+        final BulkMessageIngester ingester = newIngester(mSource, 2, 1);
+        ingester.start();
+        assertNotNull(ingester.take());
+        ingester.cancel();
+        // What was parsed already may still be handed out, and then nothing more
+        int taken = 1;
+        while (ingester.take() != null) {
+            taken++;
+        }
+        assertTrue(taken < 50);
+        assertNull(ingester.take());
+        assertTrue(ingester.getMessageCount() < 50);
+        assertWorkerDirectoriesDeleted();
+    }
+
+    /**
+     * The workers' temp directories are deleted when the ingestion finishes, and nothing else
+     * under the temp root is touched, including a directory named like one of theirs.
+     */
+    public void testTempDirectories() throws Exception {
+        final File keep = new File(mTempRoot, "keep.txt");
+        writeFile(keep, "keep");
+        final File existing = new File(mTempRoot, "worker-0");
+        existing.mkdirs();
+        final File existingFile = new File(existing, "body123.tmp");
+        writeFile(existingFile, "keep");
+        for (int i = 0; i < 4; i++) {
+            writeFile(new File(mSource, i + ".eml"), message("m" + i, "alice@example.com",
+                    "a.txt"));
+        }
+
+        final BulkMessageIngester ingester = newIngester(mSource, 2, 2);
+        ingester.start();
+        assertEquals(4, takeAll(ingester).size());
+
+        assertTrue(keep.exists());
+        assertTrue(existingFile.exists());
+        final String[] names = mTempRoot.list();
+        Arrays.sort(names);
+        assertEquals(Arrays.asList("keep.txt", "worker-0"), Arrays.asList(names));
+    }
+
+    public void testFailures() throws Exception {
+        writeFile(new File(mSource, "a.eml"), message("one", "alice@example.com", "a.txt"));
+        writeFile(new File(mSource, "b.eml"), message("two", "bob@example.com", null));
+
+        // The attachment of the first message cannot be stored
+        final AttachmentStore store = new AttachmentStore() {
+            @Override
+            public String store(int message, String partId, String name, InputStream in)
+                    throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        final BulkMessageIngester ingester =
+                new BulkMessageIngester(mSource, mTempRoot, store, 2, 2);
+        ingester.start();
+        final ArrayList<IngestedMessage> messages = takeAll(ingester);
+
+        assertEquals(2, messages.size());
+        assertEquals(2, ingester.getMessageCount());
+        assertEquals(1, ingester.getFailureCount());
+        assertTrue(messages.get(0).error instanceof IOException);
+        assertNull(messages.get(1).error);
+        assertEquals("two", messages.get(1).subject);
+        assertWorkerDirectoriesDeleted();
+    }
+
+    public void testSourceFailure() throws Exception {
+        final File notMbox = new File(mSource, "inbox.mbox");
+        writeFile(notMbox, "Subject: one\n\nBody\n");
+
+        final BulkMessageIngester ingester = newIngester(notMbox, 1, 1);
+        ingester.start();
+        final ArrayList<IngestedMessage> messages = takeAll(ingester);
+
+        assertEquals(1, messages.size());
+        assertEquals(notMbox.getPath(), messages.get(0).source);
+        assertTrue(messages.get(0).error instanceof IOException);
+        assertEquals(1, ingester.getFailureCount());
+        assertEquals(0, ingester.getMessageCount());
+    }
+
+    private BulkMessageIngester newIngester(File source, int threads, int capacity) {
+        return new BulkMessageIngester(source, mTempRoot, new FileAttachmentStore(mAttachments),
+                threads, capacity);
+    }
+
+    /**
+     * Takes every message, and returns them in the order of the source.
+     */
+    private static ArrayList<IngestedMessage> takeAll(BulkMessageIngester ingester)
+            throws InterruptedException {
+        final ArrayList<IngestedMessage> messages = new ArrayList<IngestedMessage>();
+        IngestedMessage message;
+        while ((message = ingester.take()) != null) {
+            messages.add(message);
+        }
+        Collections.sort(messages, new Comparator<IngestedMessage>() {
+            @Override
+            public int compare(IngestedMessage lhs, IngestedMessage rhs) {
+                return lhs.index - rhs.index;
+            }
+        });
+        return messages;
+    }
+
+    private void assertWorkerDirectoriesDeleted() {
+        final String[] names = mTempRoot.list();
+        assertNotNull(names);
+        assertEquals(0, names.length);
+    }
+
+    private static String message(String subject, String from, String attachmentName) {
+        final StringBuilder sb = new StringBuilder()
+                .append("From: ").append(from).append("\r\n")
+                .append("To: dave@example.com\r\n")
+                .append("Subject: ").append(subject).append("\r\n")
+                .append("Date: Mon, 13 Oct 2014 10:00:00 +0000\r\n")
+                .append("Message-ID: <").append(subject).append("@example.com>\r\n")
+                .append("MIME-Version: 1.0\r\n");
+        if (attachmentName == null) {
+            return sb.append("Content-Type: text/plain; charset=us-ascii\r\n")
+                    .append("\r\n")
+                    .append("Body of ").append(subject).append("\r\n")
+                    .toString();
+        }
+        return sb.append("Content-Type: multipart/mixed; boundary=\"b\"\r\n")
+                .append("\r\n")
+                .append("--b\r\n")
+                .append("Content-Type: text/plain; charset=us-ascii\r\n")
+                .append("\r\n")
+                .append("Body of ").append(subject).append("\r\n")
+                .append("--b\r\n")
+                .append("Content-Type: text/plain; name=\"").append(attachmentName)
+                .append("\"\r\n")
+                .append("Content-Disposition: attachment; filename=\"").append(attachmentName)
+                .append("\"\r\n")
+                .append("Content-Transfer-Encoding: base64\r\n")
+                .append("\r\n")
+                // "Attached text\r\n"
+                .append("QXR0YWNoZWQgdGV4dA0K\r\n")
+                .append("--b--\r\n")
+                .toString();
+    }
+
+    private static void writeFile(File file, String contents) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                final int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return new String(bytes, 0, read, "US-ASCII");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
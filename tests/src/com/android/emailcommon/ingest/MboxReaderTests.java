@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.ingest;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+@SmallTest
+public class MboxReaderTests extends AndroidTestCase {
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "MboxReaderTests.mbox");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testMessages() throws IOException {
+        writeFile("From alice@example.com Mon Oct 13 10:00:00 2014\n"
+                + "Subject: one\n"
+                + "\n"
+                + "Body\n"
+                + "From the start of a line, not after an empty line\n"
+                + "\n"
+                + "From bob@example.com Mon Oct 13 10:01:00 2014\n"
+                + "Subject: two\n"
+                + "\n"
+                + "Body\n");
+        final ArrayList<String> messages = readMessages();
+        assertEquals(2, messages.size());
+        assertEquals("Subject: one\n\nBody\nFrom the start of a line, not after an empty line\n",
+                messages.get(0));
+        assertEquals("Subject: two\n\nBody\n", messages.get(1));
+    }
+
+    public void testFromLineDates() throws IOException {
+        writeFile("From alice@example.com Mon Oct 13 10:00:00 2014\n"
+                + "Subject: one\n"
+                + "\n"
+                + "From MAILER-DAEMON Wed Jul  8 12:08:34 2009\r\n"
+                + "Subject: two\n"
+                + "\n"
+                + "From bob@example.com\n"
+                + "Subject: three\n");
+        final ArrayList<Long> dates = new ArrayList<Long>();
+        final MboxReader reader = new MboxReader(mFile);
+        try {
+            MboxReader.Region region;
+            while ((region = reader.next()) != null) {
+                dates.add(region.dateMs);
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(3, dates.size());
+        assertEquals(1413194400000L, dates.get(0).longValue());
+        assertEquals(1247054914000L, dates.get(1).longValue());
+        assertEquals(0L, dates.get(2).longValue());
+    }
+
+    public void testCrlf() throws IOException {
+        writeFile("From alice@example.com\r\nSubject: one\r\n\r\nBody\r\n\r\n"
+                + "From bob@example.com\r\nSubject: two\r\n\r\nBody\r\n\r\n");
+        final ArrayList<String> messages = readMessages();
+        assertEquals(2, messages.size());
+        assertEquals("Subject: one\r\n\r\nBody\r\n", messages.get(0));
+        assertEquals("Subject: two\r\n\r\nBody\r\n", messages.get(1));
+    }
+
+    public void testEscapedFromLines() throws IOException {
+        writeFile("From alice@example.com\n"
+                + "\n"
+                + ">From here\n"
+                + ">>From there\n"
+                + ">Fro\n"
+                + "> From\n"
+                + "x>From\n");
+        final ArrayList<String> messages = readMessages();
+        assertEquals(1, messages.size());
+        assertEquals("\nFrom here\n>From there\n>Fro\n> From\nx>From\n", messages.get(0));
+    }
+
+    public void testEmpty() throws IOException {
+        writeFile("");
+        assertEquals(0, readMessages().size());
+    }
+
+    public void testNotMbox() throws IOException {
+        writeFile("Subject: one\n\nBody\n");
+        try {
+            readMessages();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private void writeFile(String contents) throws IOException {
+        final OutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(contents.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private ArrayList<String> readMessages() throws IOException {
+        final ArrayList<String> messages = new ArrayList<String>();
+        final MboxReader reader = new MboxReader(mFile);
+        try {
+            MboxReader.Region region;
+            while ((region = reader.next()) != null) {
+                final InputStream in = MboxReader.open(mFile, region);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    // Small reads, to cross the escaped lines in pieces
+                    final byte[] buffer = new byte[3];
+                    int count;
+                    while ((count = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+                messages.add(out.toString("US-ASCII"));
+            }
+        } finally {
+            reader.close();
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayOutputStream;
+
+@SmallTest
+public class MimeHeaderTests extends AndroidTestCase {
+
+    public void testCaseInsensitiveLookup() throws Exception {
+        final MimeHeader header = new MimeHeader();
+        header.addHeader("Received", "from a");
+        header.addHeader("Content-Type", "text/plain");
+        header.addHeader("RECEIVED", "from b");
+        header.addHeader("received", "from c");
+
+        assertEquals("text/plain", header.getFirstHeader("content-type"));
+        assertEquals("from a", header.getFirstHeader("Received"));
+        final String[] received = header.getHeader("ReCeIvEd");
+        assertEquals(3, received.length);
+        assertEquals("from a", received[0]);
+        assertEquals("from b", received[1]);
+        assertEquals("from c", received[2]);
+        assertNull(header.getHeader("Subject"));
+        assertNull(header.getFirstHeader("Subject"));
+        assertNull(header.getFirstHeader(null));
+    }
+
+    public void testSetAndRemove() throws Exception {
+        final MimeHeader header = new MimeHeader();
+        header.addHeader("To", "a@example.com");
+        header.addHeader("Subject", "one");
+        header.addHeader("to", "b@example.com");
+        header.addHeader("Date", "today");
+
+        header.setHeader("TO", "c@example.com");
+        assertEquals(1, header.getHeader("To").length);
+        assertEquals("c@example.com", header.getFirstHeader("to"));
+        // The replacement goes last, and the other fields keep their order
+        assertEquals("Subject: one\r\nDate: today\r\nTO: c@example.com\r\n",
+                header.writeToString());
+
+        header.removeHeader("subject");
+        assertNull(header.getFirstHeader("Subject"));
+        header.addHeader("Subject", "two");
+        assertEquals("two", header.getFirstHeader("subject"));
+        assertEquals("Date: today\r\nTO: c@example.com\r\nSubject: two\r\n",
+                header.writeToString());
+
+        header.clear();
+        assertNull(header.getFirstHeader("Date"));
+        assertNull(header.writeToString());
+    }
+
+    public void testWriteTo() throws Exception {
+        final MimeHeader header = new MimeHeader();
+        header.addHeader("Content-Type", "text/plain");
+        header.addHeader(MimeHeader.HEADER_ANDROID_ATTACHMENT_STORE_DATA, "1.2");
+        header.addHeader("Content-Transfer-Encoding", "base64");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.writeTo(out);
+        assertEquals("Content-Type: text/plain\r\nContent-Transfer-Encoding: base64\r\n",
+                out.toString("US-ASCII"));
+        assertEquals("1.2",
+                header.getFirstHeader(MimeHeader.HEADER_ANDROID_ATTACHMENT_STORE_DATA));
+    }
+}
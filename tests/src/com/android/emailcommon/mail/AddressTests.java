@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.mail;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Iterator;
+
+@SmallTest
+public class AddressTests extends AndroidTestCase {
+
+    private static void assertAddress(String address, String personal, Address actual) {
+        assertEquals(address, actual.getAddress());
+        assertEquals(personal, actual.getPersonal());
+    }
+
+    public void testParseForms() {
+        final Address[] addresses = Address.parse("\"Smith, Bob\" <bob@example.org>, "
+                + "carol@example.net (Carol), Dave  O'Neil <dave@example.com>,"
+                + " =?ISO-8859-1?Q?Fran=E7ois?= <francois@example.fr>, \"a \\\"b\\\"\" <ab@x.org>");
+        assertEquals(5, addresses.length);
+        assertAddress("bob@example.org", "Smith, Bob", addresses[0]);
+        // Comments are not names
+        assertAddress("carol@example.net", null, addresses[1]);
+        assertAddress("dave@example.com", "Dave O'Neil", addresses[2]);
+        assertAddress("francois@example.fr", "François", addresses[3]);
+        assertAddress("ab@x.org", "a \"b\"", addresses[4]);
+    }
+
+    public void testParseFolded() {
+        final Address[] addresses = Address.parse("Alice\r\n\tJohnson <alice@example.com>,\r\n"
+                + " bob@example.org");
+        assertEquals(2, addresses.length);
+        assertAddress("alice@example.com", "Alice Johnson", addresses[0]);
+        assertAddress("bob@example.org", null, addresses[1]);
+    }
+
+    public void testParseGroups() {
+        final Address[] addresses = Address.parse("Team: Alice <alice@example.com>, "
+                + "bob@example.org;, Undisclosed recipients:;, carol@example.net");
+        assertEquals(3, addresses.length);
+        assertAddress("alice@example.com", "Alice", addresses[0]);
+        assertAddress("bob@example.org", null, addresses[1]);
+        assertAddress("carol@example.net", null, addresses[2]);
+        assertTrue(Address.isAllValid("Undisclosed recipients:;"));
+    }
+
+    public void testParseInvalid() {
+        assertEquals(0, Address.parse(null).length);
+        assertEquals(0, Address.parse("").length);
+        assertEquals(0, Address.parse(" , ;").length);
+        final Address[] addresses = Address.parse("bob, <bob@localhost>, Bob <bob@example.org>");
+        assertEquals(1, addresses.length);
+        assertAddress("bob@example.org", "Bob", addresses[0]);
+        assertFalse(Address.isAllValid("bob@example.org, bob"));
+    }
+
+    public void testIsValidAddress() {
+        assertTrue(Address.isValidAddress("name@domain.com"));
+        assertTrue(Address.isValidAddress("first.last+tag@mail-1.example.co.uk"));
+        assertFalse(Address.isValidAddress("@domain.com"));
+        assertFalse(Address.isValidAddress("name@domain"));
+        assertFalse(Address.isValidAddress("name@domain..com"));
+        assertFalse(Address.isValidAddress("name@domain.com."));
+        assertFalse(Address.isValidAddress("name@do@main.com"));
+        assertFalse(Address.isValidAddress("name@domain.com "));
+    }
+
+    public void testIsValidInternationalizedDomain() {
+        assertTrue(Address.isValidAddress("name@b\u00fccher.example"));
+        assertTrue(Address.isValidAddress("name@\u4f8b\u3048.\u30c6\u30b9\u30c8"));
+        assertTrue(Address.isValidAddress("name@\u0909\u0926\u093e\u0939\u0930\u0923.in"));
+        assertFalse(Address.isValidAddress("name@domain\u00a0.com"));
+        final Address[] addresses = Address.parse("M\u00fcller <m@b\u00fccher.example>");
+        assertEquals(1, addresses.length);
+        assertEquals("m@b\u00fccher.example", addresses[0].getAddress());
+    }
+
+    public void testIterate() {
+        final Iterator<Address> iterator =
+                Address.iterate("bob, Alice <alice@example.com>, carol@example.net").iterator();
+        assertTrue(iterator.hasNext());
+        assertAddress("alice@example.com", "Alice", iterator.next());
+        assertAddress("carol@example.net", null, iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    public void testStreamedConversions() {
+        final String list = "\"Smith, Bob\" <bob@example.org>, carol@example.net";
+        final Address[] parsed = Address.parse(list);
+        assertEquals(Address.toString(parsed), Address.unpackToString(list));
+        assertEquals(Address.toFriendly(parsed), Address.unpackToFriendly(list));
+        assertEquals(Address.pack(parsed), Address.parseAndPack(list));
+        assertNull(Address.unpackToString(""));
+        assertNull(Address.parseAndPack("bob"));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.mail;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Map;
+
+@SmallTest
+public class PackedStringTests extends AndroidTestCase {
+    /** A string in the delimited format: two tagged values and a positional one */
+    private static final String DELIMITED = "INBOX\2mailbox\1first\1\\Seen\2flags";
+
+    public void testRoundTrip() {
+        final PackedString.Builder builder = new PackedString.Builder();
+        builder.put("mailbox", "INBOX");
+        builder.put("flags", "\\Seen \\Answered");
+        builder.put("raw", "a\1b\2c\3d");
+        builder.put("empty", "");
+        final PackedString packed = new PackedString(builder.toString());
+        assertEquals("INBOX", packed.get("mailbox"));
+        assertEquals("\\Seen \\Answered", packed.get("flags"));
+        assertEquals("a\1b\2c\3d", packed.get("raw"));
+        assertEquals("", packed.get("empty"));
+        assertNull(packed.get("missing"));
+        assertNull(packed.get("mail"));
+
+        final Map<String, String> map = packed.unpack();
+        assertEquals(4, map.size());
+        assertEquals("a\1b\2c\3d", map.get("raw"));
+    }
+
+    public void testBuilderEdits() {
+        final PackedString.Builder builder = new PackedString.Builder();
+        builder.put("a", "1");
+        builder.put("b", "2");
+        builder.put("a", "3");
+        builder.put("b", null);
+        assertEquals("3", builder.get("a"));
+        assertNull(builder.get("b"));
+
+        final PackedString.Builder edit = new PackedString.Builder(builder.toString());
+        edit.put("c", "4");
+        final PackedString packed = new PackedString(edit.toString());
+        assertEquals("3", packed.get("a"));
+        assertNull(packed.get("b"));
+        assertEquals("4", packed.get("c"));
+
+        // The builder can be reused after it is cleared
+        builder.clear();
+        assertEquals("", builder.toString());
+        builder.put("d", "5");
+        assertEquals("5", new PackedString(builder.toString()).get("d"));
+        assertNull(new PackedString(builder.toString()).get("a"));
+    }
+
+    public void testDelimitedFormat() {
+        final PackedString packed = new PackedString(DELIMITED);
+        assertEquals("INBOX", packed.get("mailbox"));
+        assertEquals("first", packed.get("1"));
+        assertEquals("\\Seen", packed.get("flags"));
+
+        // Editing a delimited string packs it in the indexed format
+        final PackedString.Builder builder = new PackedString.Builder(DELIMITED);
+        builder.put("uid", "7");
+        final PackedString edited = new PackedString(builder.toString());
+        assertEquals("INBOX", edited.get("mailbox"));
+        assertEquals("first", edited.get("1"));
+        assertEquals(7, edited.getInt("uid", -1));
+    }
+
+    public void testNumbers() {
+        final PackedString.Builder builder = new PackedString.Builder();
+        builder.put("size", 30307);
+        builder.put("max", Long.MAX_VALUE);
+        builder.put("min", Long.MIN_VALUE);
+        builder.put("big", "9223372036854775808");
+        builder.put("text", "12a");
+        builder.put("minus", "-");
+        final PackedString packed = new PackedString(builder.toString());
+        assertEquals(30307, packed.getInt("size", -1));
+        assertEquals(30307L, packed.getLong("size", -1));
+        assertEquals(Long.MAX_VALUE, packed.getLong("max", -1));
+        assertEquals(Long.MIN_VALUE, packed.getLong("min", -1));
+        assertEquals(-1, packed.getInt("max", -1));
+        assertEquals(-1, packed.getLong("big", -1));
+        assertEquals(-1, packed.getLong("text", -1));
+        assertEquals(-1, packed.getLong("minus", -1));
+        assertEquals(-1, packed.getLong("missing", -1));
+
+        assertEquals(-1, new PackedString(DELIMITED).getLong("mailbox", -1));
+        assertEquals(5, new PackedString("5\2n").getInt("n", -1));
+    }
+
+    public void testMalformed() {
+        assertNull(new PackedString(null).get("a"));
+        assertNull(new PackedString("").get("a"));
+        assertNull(new PackedString("\3a\2").get("a"));
+        assertNull(new PackedString("\3a\0025\3abc").get("a"));
+        assertNull(new PackedString("\3a\2x\3abc").get("a"));
+        assertNull(new PackedString("\3a\0029999999999\3abc").get("a"));
+        assertEquals("ab", new PackedString("\3a\0022\3abc").get("a"));
+    }
+}
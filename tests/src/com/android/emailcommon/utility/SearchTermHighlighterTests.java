@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchTermHighlighterTests extends AndroidTestCase {
+    private static final String START = "<span style=\"background-color: "
+            + TextUtilities.HIGHLIGHT_COLOR_STRING + "\">";
+    private static final String END = "</span>";
+
+    @SmallTest
+    public void testHighlightHtml() {
+        final SearchTermHighlighter highlighter = SearchTermHighlighter.compile("hello amp");
+        assertEquals("<p>" + START + "Hello" + END + " &amp; " + START + "amp" + END + "</p>",
+                highlighter.highlightHtml("<p>Hello &amp; amp</p>"));
+        // Tag attributes and the content of style tags are never highlighted
+        assertEquals("<a href=\"hello\">" + START + "hello" + END + "</a>",
+                highlighter.highlightHtml("<a href=\"hello\">hello</a>"));
+        assertEquals("<style>hello</style>", highlighter.highlightHtml("<style>hello</style>"));
+    }
+
+    @SmallTest
+    public void testOverlappingTermsAreMerged() {
+        final SearchTermHighlighter highlighter = SearchTermHighlighter.compile("b abc ab");
+        assertEquals(START + "abc" + END + " a" + START + "ab" + END,
+                highlighter.highlightHtml("abc aab"));
+    }
+
+    @SmallTest
+    public void testCaseFolding() {
+        final SearchTermHighlighter highlighter = SearchTermHighlighter.compile("\u00e4pfel");
+        assertEquals(START + "\u00c4PFEL" + END, highlighter.highlightHtml("\u00c4PFEL"));
+    }
+
+    @SmallTest
+    public void testEmptyQuery() {
+        final SearchTermHighlighter highlighter = SearchTermHighlighter.compile("  ");
+        assertTrue(highlighter.isEmpty());
+        assertEquals("<b>text</b>", highlighter.highlightHtml("<b>text</b>"));
+        assertEquals("", highlighter.highlightHtml(null));
+    }
+
+    /**
+     * Checks that the same text is highlighted as by {@link TextUtilities#highlightTerms}, over
+     * messages and queries where the two agree by design: queries with no overlapping terms and
+     * no terms inside character entities. highlightTerms drops characters of partial matches
+     * from the text around the highlights, so only the highlights themselves are compared, and
+     * the highlighter's output with the highlights removed must be the unchanged message.
+     */
+    @SmallTest
+    public void testConformsToHighlightTerms() throws Exception {
+        final StringBuilder newsletter = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            newsletter.append("<p style=\"color: #333\">Dear customer, your <b>monthly</b>")
+                    .append(" statement for account ").append(i)
+                    .append(" is ready &amp; waiting.</p>\n");
+        }
+        final String[] messages = {
+                "<p style=\"color: #333\">Dear customer, your <b>monthly</b> statement for"
+                        + " account 12 is ready &amp; waiting.</p>",
+                "<html><head><title>Statement</title><style>p { color: red }</style></head>"
+                        + "<body>Your Statement is READY</body></html>",
+                "<div>Meeting moved to Thursday.<br/>See the agenda: "
+                        + "<a href=\"http://example.com/agenda\">agenda</a></div>",
+                "<!-- statement --><p>No match here at all.</p>",
+                "<p>Re: Re: Fwd: quarterly report &lt;draft&gt; for review</p>",
+                "plain text with statement and Account and more text",
+                "<table><tr><td>Invoice</td><td>Total: 42.00</td></tr></table>"
+                        + "<script>var statement = 1;</script>",
+                "<p>Caf\u00e9 menu: cr\u00e8me br\u00fbl\u00e9e</p>",
+                newsletter.toString(),
+        };
+        final String[] queries = {
+                "statement",
+                "account ready",
+                "agenda meeting",
+                "report review draft",
+                "invoice total",
+                "statement account ready customer monthly waiting",
+                "caf\u00e9 menu",
+                "",
+                "zzz",
+        };
+        for (String query : queries) {
+            final SearchTermHighlighter highlighter = SearchTermHighlighter.compile(query);
+            for (String message : messages) {
+                final String expected =
+                        TextUtilities.highlightTerms(message, query, true).toString();
+                final String actual = highlighter.highlightHtml(message);
+                assertEquals(query, getHighlights(expected), getHighlights(actual));
+                assertEquals(query, message, actual.replace(START, "").replace(END, ""));
+            }
+        }
+    }
+
+    private static List<String> getHighlights(String html) {
+        final List<String> highlights = new ArrayList<String>();
+        int start = html.indexOf(START);
+        while (start >= 0) {
+            final int end = html.indexOf(END, start);
+            highlights.add(html.substring(start + START.length(), end));
+            start = html.indexOf(START, end);
+        }
+        return highlights;
+    }
+}
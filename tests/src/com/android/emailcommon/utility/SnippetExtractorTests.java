@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.emailtests.R;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Random;
+
+/**
+ * Checks that {@link SnippetExtractor} makes the same snippets as the original implementation of
+ * {@link TextUtilities#makeSnippetFromText}, which is kept here as {@link #legacySnippet}.
+ */
+public class SnippetExtractorTests extends InstrumentationTestCase {
+    /** Pieces of random documents, chosen to hit the corners of tag and entity handling */
+    private static final String[] PIECES = {
+        "<style>", "</style>", "<STYLE type=\"text/css\">", "</STYLE>", "<Style", "/style", "/>",
+        "<style/>", "<script src=\"/script.js\">", "</script>", "<head>", "</head>", "<header>",
+        "<title>", "</title>", "<applet", "<p>", "</p>", "<", ">", "< ", "<!-- c -->", "<-",
+        "<1", "&", "&amp;", "&nbsp;", "&#65;", "&#x41;", "&#x;", "&#;", "&#-5;", "&#xZZ;",
+        "&bogus;", "&lt", "&thinsp;", "&euro;", "&#1234567;", ";", " ", "  ", "\n", "\t",
+        " ", "-", "--", "=", "==", "a", "word", "hello world", "/", "/s", "/sty", "/scri",
+        "/head", "/title", "é", "&Dagger;", "&dagger;",
+    };
+
+    private void assertConforms(String text) throws IOException {
+        for (boolean html : new boolean[] { true, false }) {
+            final String expected = legacySnippet(text, html);
+            assertEquals(text, expected, SnippetExtractor.extract(text, html));
+            assertEquals(text, expected,
+                    SnippetExtractor.extract(new StringBuilder(text), html));
+            assertEquals(text, expected, SnippetExtractor.extract(new TrickleReader(text), html));
+        }
+    }
+
+    @SmallTest
+    public void testSnippets() throws IOException {
+        assertEquals("", SnippetExtractor.extract((String) null, true));
+        assertEquals("hello & world", SnippetExtractor.extract(
+                "<html><head><style>p { }</style></head><body>hello &amp;  world</body>", true));
+        assertEquals("<b>a</b> - =", SnippetExtractor.extract(" <b>a</b>\n----- ===== ", false));
+        assertEquals("A B ?", SnippetExtractor.extract("&#65; &#x42; &#xZZ;", true));
+    }
+
+    @SmallTest
+    public void testEdgeCases() throws IOException {
+        final String[] texts = {
+            "", " ", "<", "&", "a<", "a&", "<style>", "<style>text",
+            "<style>no end tag, so nothing more", "<style/>after", "<STYLE>x</style>y</STYLE>z",
+            "<script src=\"/script.js\">x</script>y", "<header>x</header>y", "<title>t</title>b",
+            "<p>a</p><p>b</p>", "a <!-- comment --> b", "1 < 2 > 0", "a&nbsp;&nbsp;b",
+            "&#-5;&#+7;&#x;&#;&amp&amp;", "&lt;p&gt;", "----====", "x - - y",
+        };
+        for (String text : texts) {
+            assertConforms(text);
+        }
+    }
+
+    @MediumTest
+    public void testRandomDocuments() throws IOException {
+        final Random random = new Random(2014);
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder text = new StringBuilder();
+            final int pieces = random.nextInt(i % 10 == 0 ? 400 : 40);
+            for (int j = 0; j < pieces; j++) {
+                text.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertConforms(text.toString());
+        }
+    }
+
+    @MediumTest
+    public void testCorpus() throws IOException {
+        for (int id : new int[] { R.raw.benchmark_newsletter, R.raw.benchmark_multipart }) {
+            final String text = new String(readRaw(id), "UTF-8");
+            for (int start = 0; start < text.length(); start += 97) {
+                assertConforms(text.substring(start));
+            }
+        }
+    }
+
+    @SmallTest
+    public void testReadsOnlyWhatItNeeds() throws IOException {
+        final StringBuilder body = new StringBuilder();
+        while (body.length() < 100000) {
+            body.append("<p>The quick brown fox jumps over the lazy dog.</p>\n");
+        }
+        final TrickleReader reader = new TrickleReader(body.toString());
+        assertEquals(legacySnippet(body.toString(), true), SnippetExtractor.extract(reader, true));
+        assertTrue(reader.mPos < 1000);
+    }
+
+    private byte[] readRaw(int id) throws IOException {
+        final InputStream in = getInstrumentation().getContext().getResources()
+                .openRawResource(id);
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A reader that returns a few characters at a time, to move lookaheads across refills.
+     */
+    private static class TrickleReader extends Reader {
+        private final String mText;
+        private int mPos;
+        private int mReads;
+
+        TrickleReader(String text) {
+            mText = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (mPos >= mText.length()) {
+                return -1;
+            }
+            final int count = Math.min(Math.min(length, ++mReads % 7 + 1), mText.length() - mPos);
+            mText.getChars(mPos, mPos + count, buffer, offset);
+            mPos += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // The original implementation, from TextUtilities
+
+    private static final int LEGACY_MAX_SNIPPET_LENGTH = 200;
+
+    private static int legacyFindTagEnd(String htmlText, String tag, int startPos) {
+        if (tag.endsWith(" ")) {
+            tag = tag.substring(0, tag.length() - 1);
+        }
+        int length = htmlText.length();
+        char prevChar = 0;
+        for (int i = startPos; i < length; i++) {
+            char c = htmlText.charAt(i);
+            if (c == '>') {
+               if (prevChar == '/') {
+                   return i - 1;
+               }
+               break;
+            }
+            prevChar = c;
+        }
+        // We didn't find /> at the end of the tag so find </tag>
+        return htmlText.indexOf("/" + tag, startPos);
+    }
+
+    private static String legacySnippet(String text, boolean stripHtml) {
+        // Handle null and empty string
+        if (text == null || text.length() == 0) return "";
+
+        final int length = text.length();
+        char[] buffer = new char[LEGACY_MAX_SNIPPET_LENGTH];
+        int[] skipCount = new int[1];
+        int bufferCount = 0;
+        // Start with space as last character to avoid leading whitespace
+        char last = ' ';
+        // Indicates whether we're in the middle of an HTML tag
+        boolean inTag = false;
+
+        // Walk through the text until we're done with the input OR we've got a large enough snippet
+        for (int i = 0; i < length && bufferCount < LEGACY_MAX_SNIPPET_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (stripHtml && !inTag && (c == '<')) {
+                // Find tags to strip; they will begin with <! or !- or </ or <letter
+                if (i < (length - 1)) {
+                    char peek = text.charAt(i + 1);
+                    if (peek == '!' || peek == '-' || peek == '/' || Character.isLetter(peek)) {
+                        inTag = true;
+                        // Strip content of title, script, style and applet tags
+                        if (i < (length - (TextUtilities.MAX_STRIP_TAG_LENGTH + 2))) {
+                            String tag = text.substring(i + 1,
+                                    i + TextUtilities.MAX_STRIP_TAG_LENGTH + 1);
+                            String tagLowerCase = tag.toLowerCase();
+                            boolean stripContent = false;
+                            for (String stripTag: TextUtilities.STRIP_TAGS) {
+                                if (tagLowerCase.startsWith(stripTag)) {
+                                    stripContent = true;
+                                    tag = tag.substring(0, stripTag.length());
+                                    break;
+                                }
+                            }
+                            if (stripContent) {
+                                // Look for the end of this tag
+                                int endTagPosition = legacyFindTagEnd(text, tag, i);
+                                if (endTagPosition < 0) {
+                                    break;
+                                } else {
+                                    i = endTagPosition;
+                                }
+                            }
+                        }
+                    }
+                }
+            } else if (stripHtml && inTag && (c == '>')) {
+                // Terminate stripping here
+                inTag = false;
+                continue;
+            }
+
+            if (inTag) {
+                // We just skip by everything while we're in a tag
+                continue;
+            } else if (stripHtml && (c == '&')) {
+                // Handle a possible HTML entity here
+                c = legacyStripHtmlEntity(text, i, skipCount);
+                i += skipCount[0];
+            }
+
+            if (Character.isWhitespace(c) || (c == TextUtilities.NON_BREAKING_SPACE_CHARACTER)) {
+                if (last == ' ') {
+                    continue;
+                } else {
+                    c = ' ';
+                }
+            } else if ((c == '-' || c == '=') && (last == c)) {
+                continue;
+            }
+
+            buffer[bufferCount++] = c;
+            last = c;
+        }
+
+        // Lose trailing space and return our snippet
+        if ((bufferCount > 0) && (last == ' ')) {
+            bufferCount--;
+        }
+        return new String(buffer, 0, bufferCount);
+    }
+
+    private static char legacyStripHtmlEntity(String text, int pos, int[] skipCount) {
+        int length = text.length();
+        skipCount[0] = 0;
+        // All entities are <= 8 characters long, so that's how far we'll look for one (+ & and ;)
+        int end = pos + 10;
+        String entity = null;
+        // Isolate the entity
+        for (int i = pos; (i < length) && (i < end); i++) {
+            if (text.charAt(i) == ';') {
+                entity = text.substring(pos, i);
+                break;
+            }
+        }
+        if (entity == null) {
+            // This wasn't really an HTML entity
+            return '&';
+        } else {
+            // Skip count is the length of the entity
+            Character mapping = TextUtilities.ESCAPE_STRINGS.get(entity);
+            int entityLength = entity.length();
+            if (mapping != null) {
+                skipCount[0] = entityLength;
+                return mapping;
+            } else if ((entityLength > 2) && (entity.charAt(1) == '#')) {
+                // &#nn; means ascii nn (decimal) and &#xnn means ascii nn (hex)
+                char c = '?';
+                try {
+                    int i;
+                    if ((entity.charAt(2) == 'x') && (entityLength > 3)) {
+                        i = Integer.parseInt(entity.substring(3), 16);
+                    } else {
+                        i = Integer.parseInt(entity.substring(2));
+                    }
+                    c = (char)i;
+                } catch (NumberFormatException e) {
+                    // We'll just return the ? in this case
+                }
+                skipCount[0] = entityLength;
+                return c;
+            }
+        }
+        // Worst case, we return the original start character, ampersand
+        return '&';
+    }
+}
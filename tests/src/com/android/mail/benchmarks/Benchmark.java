@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.benchmarks;
+
+import android.os.Debug;
+
+import com.android.mail.utils.LogUtils;
+
+/**
+ * A minimal benchmark harness: runs an operation until its timing settles, then measures its
+ * throughput and what it allocates on the calling thread.
+ * <p>
+ * Each result is logged as a single line under the {@value #LOG_TAG} tag, so that runs can be
+ * compared over time:
+ * <pre>
+ * name: opsPerSecond ops/s, nanosPerOp ns/op, bytesPerOp B/op, allocsPerOp allocs/op
+ * </pre>
+ */
+public class Benchmark {
+    public static final String LOG_TAG = "MailBenchmark";
+
+    private static final long WARMUP_NANOS = 500L * 1000 * 1000;
+    private static final long MEASURE_NANOS = 2000L * 1000 * 1000;
+    /** Operations per timing check, to keep System.nanoTime() out of the measurement. */
+    private static final int BATCH = 16;
+
+    /**
+     * An operation to measure. It should return something derived from its work, so that the
+     * work cannot be optimized away.
+     */
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final long ops;
+        public final double nanosPerOp;
+        public final double bytesPerOp;
+        public final double allocsPerOp;
+
+        Result(String name, long ops, double nanosPerOp, double bytesPerOp, double allocsPerOp) {
+            this.name = name;
+            this.ops = ops;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.allocsPerOp = allocsPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.0f ops/s, %.0f ns/op, %.0f B/op, %.1f allocs/op", name,
+                    1e9 / nanosPerOp, nanosPerOp, bytesPerOp, allocsPerOp);
+        }
+    }
+
+    private static int sSink;
+
+    public static Result run(String name, Operation operation) throws Exception {
+        // Warm up, so that the measurement runs compiled code with its caches populated
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) {
+            consume(operation.run());
+        }
+
+        long ops = 0;
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                consume(operation.run());
+            }
+            ops += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        Debug.stopAllocCounting();
+
+        final Result result = new Result(name, ops, (double) elapsed / ops,
+                (double) Debug.getThreadAllocSize() / ops,
+                (double) Debug.getThreadAllocCount() / ops);
+        LogUtils.i(LOG_TAG, "%s", result);
+        return result;
+    }
+
+    private static void consume(Object value) {
+        sSink += System.identityHashCode(value);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.benchmarks;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.mail.emailtests.R;
+import com.google.common.io.ByteStreams;
+
+import org.apache.james.mime4j.codec.Base64OutputStream;
+import org.apache.james.mime4j.codec.QuotedPrintableOutputStream;
+import org.apache.james.mime4j.decoder.Base64InputStream;
+import org.apache.james.mime4j.decoder.ByteRingBuffer;
+import org.apache.james.mime4j.decoder.QuotedPrintableInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Per-byte cost of the mime4j body decoders, read a byte at a time and in bulk, over the
+ * newsletter encoded as quoted-printable and a 256K attachment encoded as base64; and of the
+ * ring buffer between them and their readers. Results are logged by {@link Benchmark}.
+ */
+@LargeTest
+public class DecoderBenchmarks extends InstrumentationTestCase {
+    private static final int ATTACHMENT_SIZE = 256 * 1024;
+
+    private byte[] mQuotedPrintable;
+    private byte[] mBase64;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final InputStream in = getInstrumentation().getContext().getResources()
+                .openRawResource(R.raw.benchmark_newsletter);
+        final byte[] newsletter;
+        try {
+            newsletter = ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final QuotedPrintableOutputStream qpOut = new QuotedPrintableOutputStream(out);
+        qpOut.write(newsletter);
+        qpOut.finish();
+        mQuotedPrintable = out.toByteArray();
+
+        final byte[] attachment = new byte[ATTACHMENT_SIZE];
+        new Random(2045).nextBytes(attachment);
+        out = new ByteArrayOutputStream();
+        final Base64OutputStream base64Out = new Base64OutputStream(out);
+        base64Out.write(attachment);
+        base64Out.finish();
+        mBase64 = out.toByteArray();
+    }
+
+    private static int readBytes(InputStream in) throws IOException {
+        int count = 0;
+        while (in.read() >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int readBulk(InputStream in) throws IOException {
+        final byte[] buffer = new byte[4096];
+        int count = 0;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            count += read;
+        }
+        return count;
+    }
+
+    public void testQuotedPrintableRead() throws Exception {
+        Benchmark.run("QuotedPrintableInputStream.read", new Benchmark.Operation() {
+            @Override
+            public Object run() throws IOException {
+                return readBytes(new QuotedPrintableInputStream(
+                        new ByteArrayInputStream(mQuotedPrintable)));
+            }
+        });
+    }
+
+    public void testQuotedPrintableReadBulk() throws Exception {
+        Benchmark.run("QuotedPrintableInputStream.readBulk", new Benchmark.Operation() {
+            @Override
+            public Object run() throws IOException {
+                return readBulk(new QuotedPrintableInputStream(
+                        new ByteArrayInputStream(mQuotedPrintable)));
+            }
+        });
+    }
+
+    public void testBase64Read() throws Exception {
+        Benchmark.run("Base64InputStream.read", new Benchmark.Operation() {
+            @Override
+            public Object run() throws IOException {
+                return readBytes(new Base64InputStream(new ByteArrayInputStream(mBase64)));
+            }
+        });
+    }
+
+    public void testBase64ReadBulk() throws Exception {
+        Benchmark.run("Base64InputStream.readBulk", new Benchmark.Operation() {
+            @Override
+            public Object run() throws IOException {
+                return readBulk(new Base64InputStream(new ByteArrayInputStream(mBase64)));
+            }
+        });
+    }
+
+    public void testRingBufferPerByte() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(4096);
+        Benchmark.run("ByteRingBuffer.perByte", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int sum = 0;
+                for (int i = 0; i < mBase64.length; i++) {
+                    buffer.put(mBase64[i]);
+                    sum += buffer.get();
+                }
+                return sum;
+            }
+        });
+    }
+
+    public void testRingBufferBulk() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(4096);
+        final byte[] out = new byte[4096];
+        Benchmark.run("ByteRingBuffer.bulk", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int count = 0;
+                for (int i = 0; i < mBase64.length; i += out.length) {
+                    buffer.put(mBase64, i, Math.min(out.length, mBase64.length - i));
+                    count += buffer.drainTo(out, 0, out.length);
+                }
+                return count;
+            }
+        });
+    }
+}
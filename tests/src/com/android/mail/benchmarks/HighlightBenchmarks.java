@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.benchmarks;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.emailcommon.utility.SearchTermHighlighter;
+import com.android.emailcommon.utility.TextUtilities;
+
+/**
+ * Highlighting a six term query in a result set of 50 messages, with the per-character
+ * {@link TextUtilities#highlightTerms} and with a {@link SearchTermHighlighter} compiled once
+ * for the whole set. Results are logged by {@link Benchmark}.
+ */
+@LargeTest
+public class HighlightBenchmarks extends InstrumentationTestCase {
+    private static final String QUERY = "statement account ready customer monthly waiting";
+    private static final int MESSAGES = 50;
+
+    private String mHtml;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            body.append("<p style=\"color: #333\">Dear customer, your <b>monthly</b> statement")
+                    .append(" for account ").append(i).append(" is ready &amp; waiting.</p>\n");
+        }
+        mHtml = body.toString();
+    }
+
+    public void testHighlightTerms() throws Exception {
+        Benchmark.run("TextUtilities.highlightTerms", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                int length = 0;
+                for (int i = 0; i < MESSAGES; i++) {
+                    length += TextUtilities.highlightTerms(mHtml, QUERY, true).length();
+                }
+                return length;
+            }
+        });
+    }
+
+    public void testSearchTermHighlighter() throws Exception {
+        Benchmark.run("SearchTermHighlighter.highlightHtml", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final SearchTermHighlighter highlighter = SearchTermHighlighter.compile(QUERY);
+                int length = 0;
+                for (int i = 0; i < MESSAGES; i++) {
+                    length += highlighter.highlightHtml(mHtml).length();
+                }
+                return length;
+            }
+        });
+    }
+}
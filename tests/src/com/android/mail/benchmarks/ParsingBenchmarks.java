@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.benchmarks;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.emailcommon.internet.MimeUtility;
+import com.android.emailcommon.mail.Address;
+import com.android.emailcommon.mail.PackedString;
+import com.android.emailcommon.utility.TextUtilities;
+import com.android.mail.emailtests.R;
+import com.android.mail.lib.base.CharEscapers;
+import com.android.mail.lib.base.CharMatcher;
+import com.android.mail.lib.html.parser.HtmlDocument;
+import com.android.mail.lib.html.parser.HtmlParser;
+import com.android.mail.lib.html.parser.HtmlTreeBuilder;
+import com.google.common.io.ByteStreams;
+
+import org.apache.james.mime4j.AbstractContentHandler;
+import org.apache.james.mime4j.BodyDescriptor;
+import org.apache.james.mime4j.MimeStreamParser;
+import org.apache.james.mime4j.decoder.DecoderUtil;
+import org.apache.james.mime4j.field.Field;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Baseline throughput and allocation of the parsing and text code that every message goes
+ * through, over the corpora in res/raw: a marketing newsletter, a multipart message with encoded
+ * headers, quoted-printable and base64 parts, a list of address headers, and a set of folded
+ * header fields with encoded words in the common charsets.
+ * <p>
+ * These take a while, so they are large tests; results are logged by {@link Benchmark}.
+ */
+@LargeTest
+public class ParsingBenchmarks extends InstrumentationTestCase {
+    private static final String SEARCH_QUERY = "inbox meeting";
+
+    private String mNewsletter;
+    private byte[] mMultipart;
+    private String[] mAddressLists;
+    private String[] mEncodedHeaders;
+    private String[] mHeaderValues;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mNewsletter = new String(readRaw(R.raw.benchmark_newsletter), "UTF-8");
+        mMultipart = readRaw(R.raw.benchmark_multipart);
+        mAddressLists = new String(readRaw(R.raw.benchmark_addresses), "UTF-8").split("\n");
+
+        // Collect the headers of the multipart message, for the encoded-word decoder
+        final ArrayList<String> headers = new ArrayList<String>();
+        final MimeStreamParser parser = new MimeStreamParser();
+        parser.setContentHandler(new AbstractContentHandler() {
+            @Override
+            public void field(String fieldData) {
+                headers.add(fieldData);
+            }
+        });
+        parser.parse(new ByteArrayInputStream(mMultipart));
+        mEncodedHeaders = headers.toArray(new String[headers.size()]);
+
+        mHeaderValues = readHeaderValues(getInstrumentation().getContext().getResources()
+                .openRawResource(R.raw.benchmark_headers));
+    }
+
+    /**
+     * Reads the raw values of the header fields in a stream, still folded, as they would be
+     * given to {@link MimeUtility#unfoldAndDecode}.
+     */
+    static String[] readHeaderValues(InputStream in) throws IOException {
+        final String text;
+        try {
+            text = new String(ByteStreams.toByteArray(in), "US-ASCII");
+        } finally {
+            in.close();
+        }
+        final ArrayList<String> values = new ArrayList<String>();
+        StringBuilder value = null;
+        for (String line : text.split("\n")) {
+            if (line.length() > 0 && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                // A continuation of the field before
+                if (value != null) {
+                    value.append("\r\n").append(line);
+                }
+                continue;
+            }
+            if (value != null) {
+                values.add(value.toString());
+                value = null;
+            }
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                value = new StringBuilder(line.substring(colon + 1).trim());
+            }
+        }
+        if (value != null) {
+            values.add(value.toString());
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
+    private byte[] readRaw(int id) throws IOException {
+        final InputStream in = getInstrumentation().getContext().getResources()
+                .openRawResource(id);
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testHtmlParse() throws Exception {
+        Benchmark.run("HtmlParser.parse", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                return new HtmlParser().parse(mNewsletter);
+            }
+        });
+    }
+
+    public void testHtmlTreePlainText() throws Exception {
+        final HtmlDocument document = new HtmlParser().parse(mNewsletter);
+        Benchmark.run("HtmlTree.getPlainText", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final HtmlTreeBuilder builder = new HtmlTreeBuilder();
+                document.accept(builder);
+                return builder.getTree().getPlainText();
+            }
+        });
+    }
+
+    public void testCharEscapers() throws Exception {
+        Benchmark.run("CharEscapers.htmlEscaper", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                return CharEscapers.htmlEscaper().escape(mNewsletter);
+            }
+        });
+    }
+
+    public void testCharMatcher() throws Exception {
+        Benchmark.run("CharMatcher.WHITESPACE.trimAndCollapseFrom", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                return CharMatcher.WHITESPACE.trimAndCollapseFrom(mNewsletter, ' ');
+            }
+        });
+    }
+
+    public void testMimeStreamParser() throws Exception {
+        Benchmark.run("MimeStreamParser.parse", new Benchmark.Operation() {
+            @Override
+            public Object run() throws IOException {
+                final int[] bytes = new int[1];
+                final MimeStreamParser parser = new MimeStreamParser();
+                parser.setContentHandler(new AbstractContentHandler() {
+                    private final byte[] mBuffer = new byte[4096];
+
+                    @Override
+                    public void body(BodyDescriptor bd, InputStream is) throws IOException {
+                        int count;
+                        while ((count = is.read(mBuffer)) > 0) {
+                            bytes[0] += count;
+                        }
+                    }
+                });
+                parser.parse(new ByteArrayInputStream(mMultipart));
+                return bytes[0];
+            }
+        });
+    }
+
+    public void testDecodeEncodedWords() throws Exception {
+        Benchmark.run("DecoderUtil.decodeEncodedWords", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int length = 0;
+                for (String header : mEncodedHeaders) {
+                    length += DecoderUtil.decodeEncodedWords(header).length();
+                }
+                return length;
+            }
+        });
+    }
+
+    public void testUnfoldAndDecodeHeaders() throws Exception {
+        Benchmark.run("MimeUtility.unfoldAndDecode", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int length = 0;
+                for (String value : mHeaderValues) {
+                    length += MimeUtility.unfoldAndDecode(value).length();
+                }
+                return length;
+            }
+        });
+    }
+
+    public void testFieldParse() throws Exception {
+        // The structured fields of a mailbox export: dates, content types and address lists
+        final ArrayList<String> fields = new ArrayList<String>();
+        for (String header : mEncodedHeaders) {
+            fields.add(header);
+        }
+        for (String list : mAddressLists) {
+            fields.add("To: " + list);
+        }
+        Benchmark.run("Field.parse", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int count = 0;
+                for (String field : fields) {
+                    count += Field.parse(field).getBody().length();
+                }
+                return count;
+            }
+        });
+    }
+
+    public void testAddressParse() throws Exception {
+        Benchmark.run("Address.parse", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int count = 0;
+                for (String list : mAddressLists) {
+                    count += Address.parse(list).length;
+                }
+                return count;
+            }
+        });
+    }
+
+    public void testAddressParseLongList() throws Exception {
+        // A mailing list message with hundreds of recipients in one header
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            for (String list : mAddressLists) {
+                if (sb.length() > 0) {
+                    sb.append(",\r\n ");
+                }
+                sb.append(list);
+            }
+        }
+        final String longList = sb.toString();
+        Benchmark.run("Address.parse.longList", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                return Address.parse(longList).length;
+            }
+        });
+    }
+
+    public void testAddressPack() throws Exception {
+        final Address[][] parsed = new Address[mAddressLists.length][];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = Address.parse(mAddressLists[i]);
+        }
+        Benchmark.run("Address.pack", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int length = 0;
+                for (Address[] addresses : parsed) {
+                    length += Address.pack(addresses).length();
+                }
+                return length;
+            }
+        });
+    }
+
+    public void testAddressUnpack() throws Exception {
+        final String[] packed = new String[mAddressLists.length];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = Address.pack(Address.parse(mAddressLists[i]));
+        }
+        Benchmark.run("Address.unpack", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int count = 0;
+                for (String list : packed) {
+                    count += Address.unpack(list).length;
+                }
+                return count;
+            }
+        });
+    }
+
+    public void testAddressUnpackFirst() throws Exception {
+        final String[] packed = new String[mAddressLists.length];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = Address.pack(Address.parse(mAddressLists[i]));
+        }
+        Benchmark.run("Address.unpackFirst", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                int length = 0;
+                for (String list : packed) {
+                    final Address first = Address.unpackFirst(list);
+                    length += first != null ? first.getAddress().length() : 0;
+                }
+                return length;
+            }
+        });
+    }
+
+    public void testMakeSnippetFromHtmlText() throws Exception {
+        Benchmark.run("TextUtilities.makeSnippetFromHtmlText", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                return TextUtilities.makeSnippetFromHtmlText(mNewsletter);
+            }
+        });
+    }
+
+    public void testHighlightTermsInHtml() throws Exception {
+        Benchmark.run("TextUtilities.highlightTermsInHtml", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                return TextUtilities.highlightTermsInHtml(mNewsletter, SEARCH_QUERY);
+            }
+        });
+    }
+
+    public void testPackedString() throws Exception {
+        final PackedString.Builder builder = new PackedString.Builder();
+        builder.put("mailbox", "INBOX");
+        builder.put("uid", "84213");
+        builder.put("flags", "\\Seen \\Answered");
+        builder.put("size", "30307");
+        builder.put("from", Address.pack(Address.parse(mAddressLists[0])));
+        final String packed = builder.toString();
+        Benchmark.run("PackedString.get", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final PackedString string = new PackedString(packed);
+                return string.get("uid").length() + string.get("size").length()
+                        + string.get("from").length();
+            }
+        });
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.benchmarks;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.mail.providers.Conversation;
+import com.android.mail.ui.ConversationSelectionSet;
+import com.android.mail.utils.LongHashMap;
+import com.google.common.collect.Sets;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selecting every conversation of a 10k folder and validating the selection against the
+ * folder's cursor, with the boxed {@link HashMap} the selection used to be kept in and with the
+ * {@link LongHashMap} it is kept in now. Results are logged by {@link Benchmark}.
+ */
+@LargeTest
+public class SelectionBenchmarks extends InstrumentationTestCase {
+    private static final int FOLDER_SIZE = 10000;
+    /** Conversations toggled off and on again after select-all, as by sync churn */
+    private static final int CHURN = 500;
+
+    private Conversation[] mConversations;
+    /** The ids in the cursor after sync: every other conversation is gone */
+    private Set<Long> mCursorIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mConversations = new Conversation[FOLDER_SIZE];
+        mCursorIds = Sets.newHashSetWithExpectedSize(FOLDER_SIZE / 2);
+        for (int i = 0; i < FOLDER_SIZE; i++) {
+            final Conversation conversation = new Conversation();
+            conversation.id = i;
+            conversation.uri = Uri.parse("content://test/" + i);
+            mConversations[i] = conversation;
+            if (i % 2 == 0) {
+                mCursorIds.add((long) i);
+            }
+        }
+    }
+
+    public void testSelectAllHashMap() throws Exception {
+        Benchmark.run("selectAll.HashMap", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final HashMap<Long, Conversation> map = new HashMap<Long, Conversation>();
+                for (Conversation conversation : mConversations) {
+                    map.put(conversation.id, conversation);
+                }
+                for (int i = 0; i < CHURN; i++) {
+                    final Conversation conversation = mConversations[i];
+                    map.remove(conversation.id);
+                    map.put(conversation.id, conversation);
+                }
+                return map;
+            }
+        });
+    }
+
+    public void testSelectAllLongHashMap() throws Exception {
+        Benchmark.run("selectAll.LongHashMap", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final LongHashMap<Conversation> map = new LongHashMap<Conversation>();
+                for (Conversation conversation : mConversations) {
+                    map.put(conversation.id, conversation);
+                }
+                for (int i = 0; i < CHURN; i++) {
+                    final Conversation conversation = mConversations[i];
+                    map.remove(conversation.id);
+                    map.put(conversation.id, conversation);
+                }
+                return map;
+            }
+        });
+    }
+
+    public void testSelectAllConversationSelectionSet() throws Exception {
+        Benchmark.run("selectAll.ConversationSelectionSet", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final ConversationSelectionSet set = new ConversationSelectionSet();
+                for (Conversation conversation : mConversations) {
+                    set.toggle(conversation);
+                }
+                for (int i = 0; i < CHURN; i++) {
+                    set.toggle(mConversations[i]);
+                    set.toggle(mConversations[i]);
+                }
+                return set;
+            }
+        });
+    }
+
+    /**
+     * What validateAgainstCursor() used to do: copy the selected ids into a boxed set and remove
+     * every id of the cursor from it.
+     */
+    public void testValidateHashMap() throws Exception {
+        final HashMap<Long, Conversation> map = new HashMap<Long, Conversation>();
+        for (Conversation conversation : mConversations) {
+            map.put(conversation.id, conversation);
+        }
+        Benchmark.run("validate.HashMap", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final HashSet<Long> missing = new HashSet<Long>(map.keySet());
+                missing.removeAll(mCursorIds);
+                return missing;
+            }
+        });
+    }
+
+    /**
+     * What validateAgainstCursor() does now: probe the cursor's ids once per selected id.
+     */
+    public void testValidateLongHashMap() throws Exception {
+        final LongHashMap<Conversation> map = new LongHashMap<Conversation>();
+        for (Conversation conversation : mConversations) {
+            map.put(conversation.id, conversation);
+        }
+        Benchmark.run("validate.LongHashMap", new Benchmark.Operation() {
+            @Override
+            public Object run() {
+                final long[] ids = map.keys();
+                int missing = 0;
+                for (long id : ids) {
+                    if (!mCursorIds.contains(id)) {
+                        ids[missing++] = id;
+                    }
+                }
+                return missing;
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.benchmarks;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Base64;
+
+import com.android.emailcommon.internet.MimeBodyPart;
+import com.android.emailcommon.internet.MimeHeader;
+import com.android.emailcommon.internet.MimeMessage;
+import com.android.emailcommon.internet.MimeMultipart;
+import com.android.emailcommon.internet.TextBody;
+import com.android.emailcommon.mail.Address;
+import com.android.mail.emailtests.R;
+import com.google.common.io.ByteStreams;
+
+import org.apache.james.mime4j.codec.Base64OutputStream;
+import org.apache.james.mime4j.codec.QuotedPrintableOutputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Throughput and allocation of writing outgoing messages, next to the way their bodies were
+ * encoded before: a base64 attachment, and a message whose text and HTML parts are written as
+ * base64 and quoted-printable. Results are logged by {@link Benchmark}.
+ */
+@LargeTest
+public class SerializationBenchmarks extends InstrumentationTestCase {
+    private static final int ATTACHMENT_SIZE = 1024 * 1024;
+
+    private byte[] mAttachment;
+    private String mNewsletter;
+
+    /** Counts what is written to it, as a socket would take it */
+    private static class CountingOutputStream extends OutputStream {
+        long mCount;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAttachment = new byte[ATTACHMENT_SIZE];
+        new Random(2045).nextBytes(mAttachment);
+        final InputStream in = getInstrumentation().getContext().getResources()
+                .openRawResource(R.raw.benchmark_newsletter);
+        try {
+            mNewsletter = new String(ByteStreams.toByteArray(in), "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testBase64Baseline() throws Exception {
+        // As attachments were written before, through android.util.Base64OutputStream
+        Benchmark.run("Base64.attachment.baseline", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                final CountingOutputStream out = new CountingOutputStream();
+                final android.util.Base64OutputStream base64Out =
+                        new android.util.Base64OutputStream(out, Base64.CRLF | Base64.NO_CLOSE);
+                for (int i = 0; i < ATTACHMENT_SIZE; i += 4096) {
+                    base64Out.write(mAttachment, i, 4096);
+                }
+                base64Out.close();
+                return out.mCount;
+            }
+        });
+    }
+
+    public void testBase64OutputStream() throws Exception {
+        Benchmark.run("Base64OutputStream.attachment", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                final CountingOutputStream out = new CountingOutputStream();
+                final Base64OutputStream base64Out = new Base64OutputStream(out);
+                for (int i = 0; i < ATTACHMENT_SIZE; i += 4096) {
+                    base64Out.write(mAttachment, i, 4096);
+                }
+                base64Out.finish();
+                return out.mCount;
+            }
+        });
+    }
+
+    public void testTextBodyBaseline() throws Exception {
+        // As TextBody was written before: all of it as bytes, then all of it as base64
+        Benchmark.run("TextBody.writeTo.baseline", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                final CountingOutputStream out = new CountingOutputStream();
+                out.write(Base64.encode(mNewsletter.getBytes("UTF-8"), Base64.CRLF));
+                return out.mCount;
+            }
+        });
+    }
+
+    public void testTextBody() throws Exception {
+        final TextBody body = new TextBody(mNewsletter);
+        Benchmark.run("TextBody.writeTo", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                final CountingOutputStream out = new CountingOutputStream();
+                body.writeTo(out);
+                return out.mCount;
+            }
+        });
+    }
+
+    public void testQuotedPrintable() throws Exception {
+        final byte[] html = mNewsletter.getBytes("UTF-8");
+        Benchmark.run("QuotedPrintableOutputStream.html", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                final CountingOutputStream out = new CountingOutputStream();
+                final QuotedPrintableOutputStream qpOut = new QuotedPrintableOutputStream(out);
+                qpOut.write(html);
+                qpOut.finish();
+                return out.mCount;
+            }
+        });
+    }
+
+    public void testMessageWriteTo() throws Exception {
+        final MimeMessage message = new MimeMessage();
+        message.setMessageId("<benchmark@example.com>");
+        message.setSubject("Newsletter");
+        message.setFrom(new Address("news@example.com", "News"));
+        message.setRecipients(MimeMessage.RecipientType.TO,
+                Address.parse("Alice <alice@example.com>, bob@example.org"));
+        final MimeMultipart multipart = new MimeMultipart();
+        multipart.setSubType("alternative");
+        multipart.addBodyPart(new MimeBodyPart(new TextBody(mNewsletter), "text/plain"));
+        final MimeBodyPart html = new MimeBodyPart(new TextBody(mNewsletter), "text/html");
+        html.setHeader(MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING, "quoted-printable");
+        multipart.addBodyPart(html);
+        message.setBody(multipart);
+        Benchmark.run("MimeMessage.writeTo", new Benchmark.Operation() {
+            @Override
+            public Object run() throws Exception {
+                final CountingOutputStream out = new CountingOutputStream();
+                message.writeTo(out);
+                return out.mCount;
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2014, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.compose;
+
+import android.content.ContentValues;
+import android.graphics.Typeface;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.Html;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+import com.android.mail.providers.UIProvider.MessageColumns;
+import com.android.mail.utils.Utils;
+
+@SmallTest
+public class DraftBodyTest extends AndroidTestCase {
+    private static final String ATTRIBUTION_END = "<br type='attribution'>";
+    private static final String QUOTE = "<div class=\"quote\">On Oct 1, 2014, Alice"
+            + " &lt;alice@example.com&gt; wrote:" + ATTRIBUTION_END
+            + "<blockquote class=\"quote\" style=\"margin:0 0 0 .8ex;border-left:1px #ccc solid;"
+            + "padding-left:1ex\">Hi Bob,<br><br>Lunch?<div>Alice</div></blockquote></div>";
+
+    private static Spanned[] getBodies() {
+        final SpannableString styled = new SpannableString("Line one\nLine two\n\nbold");
+        styled.setSpan(new StyleSpan(Typeface.BOLD), styled.length() - 4, styled.length(),
+                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return new Spanned[] {
+                new SpannableString(""),
+                new SpannableString("Sounds good"),
+                new SpannableString("Thanks\n"),
+                new SpannableString("a & b <c>"),
+                styled,
+        };
+    }
+
+    private static ContentValues putInto(Spanned body, DraftBody.Quote quote) {
+        final ContentValues values = new ContentValues();
+        new DraftBody(body, quote, false /* forward */, true /* putHtml */, true /* putText */)
+                .putInto(values);
+        return values;
+    }
+
+    /**
+     * The body and the quote are converted to plain text as one, as they were before the
+     * conversion moved to the send/save thread.
+     */
+    public void testPlainTextOfBodyAndQuote() {
+        final DraftBody.Quote quote = new DraftBody.Quote(QUOTE,
+                QUOTE.indexOf(ATTRIBUTION_END) + ATTRIBUTION_END.length());
+        for (Spanned body : getBodies()) {
+            final ContentValues values = putInto(body, quote);
+            final String html = Html.toHtml(body) + QUOTE;
+            assertEquals(html, values.getAsString(MessageColumns.BODY_HTML));
+            assertEquals(Utils.convertHtmlToPlainText(html),
+                    values.getAsString(MessageColumns.BODY_TEXT));
+            assertEquals(Html.toHtml(body).length() + quote.mQuoteOffset,
+                    (int) values.getAsInteger(MessageColumns.QUOTE_START_POS));
+        }
+    }
+
+    public void testPlainTextOfBody() {
+        for (Spanned body : getBodies()) {
+            final ContentValues values = putInto(body, null);
+            final String html = Html.toHtml(body);
+            assertEquals(html, values.getAsString(MessageColumns.BODY_HTML));
+            assertEquals(Utils.convertHtmlToPlainText(html),
+                    values.getAsString(MessageColumns.BODY_TEXT));
+            assertFalse(values.containsKey(MessageColumns.QUOTE_START_POS));
+        }
+    }
+
+    public void testExtraValuesArePreserved() {
+        final ContentValues values = new ContentValues();
+        values.put(MessageColumns.BODY_TEXT, "from the extras");
+        new DraftBody(new SpannableString("composed"), null, false, true, true).putInto(values);
+        assertEquals("from the extras", values.getAsString(MessageColumns.BODY_TEXT));
+        assertEquals(Html.toHtml(new SpannableString("composed")),
+                values.getAsString(MessageColumns.BODY_HTML));
+    }
+}
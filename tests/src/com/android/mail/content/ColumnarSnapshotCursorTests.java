@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.content;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.utils.LogTag;
+import com.android.mail.utils.LogUtils;
+
+import java.util.concurrent.CountDownLatch;
+
+public class ColumnarSnapshotCursorTests extends AndroidTestCase {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    private static final String[] COLUMNS = { "_id", "uri", "subject", "dateReceivedMs",
+            "conversationInfo", "accountUri" };
+    private static final int ROWS = 1500;
+    private static final int THREADS = 4;
+    private static final int PASSES = 20;
+
+    private static MatrixCursor createCursor() {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[] { (long) i, "content://test/conversation/" + i,
+                    i % 10 == 0 ? null : "Subject " + i, 1400000000000L + i,
+                    new byte[] { (byte) i, 1, 2, 3 }, "content://test/account" });
+        }
+        return cursor;
+    }
+
+    @SmallTest
+    public void testCopiesAllValues() {
+        final MatrixCursor source = createCursor();
+        final ColumnarSnapshotCursor snapshot = new ColumnarSnapshotCursor(source);
+        assertEquals(ROWS, snapshot.getCount());
+        assertEquals(-1, snapshot.getPosition());
+
+        int row = 0;
+        while (snapshot.moveToNext()) {
+            assertEquals(row, snapshot.getLong(0));
+            assertEquals("content://test/conversation/" + row, snapshot.getString(1));
+            if (row % 10 == 0) {
+                assertTrue(snapshot.isNull(2));
+                assertNull(snapshot.getString(2));
+            } else {
+                assertEquals(Cursor.FIELD_TYPE_STRING, snapshot.getType(2));
+                assertEquals("Subject " + row, snapshot.getString(2));
+            }
+            assertEquals(String.valueOf(1400000000000L + row), snapshot.getString(3));
+            assertEquals((byte) row, snapshot.getBlob(4)[0]);
+            row++;
+        }
+        assertEquals(ROWS, row);
+        assertTrue(snapshot.isAfterLast());
+        // The account uri is shared by every row
+        assertEquals(ROWS + (ROWS - ROWS / 10) + 1, snapshot.getDistinctStringCount());
+        assertTrue(snapshot.getMemoryFootprint() > 0);
+    }
+
+    @SmallTest
+    public void testPositionIsPerThread() throws InterruptedException {
+        final ColumnarSnapshotCursor snapshot = new ColumnarSnapshotCursor(createCursor());
+        snapshot.moveToPosition(5);
+        final int[] otherPosition = new int[1];
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                otherPosition[0] = snapshot.getPosition();
+                snapshot.moveToLast();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(-1, otherPosition[0]);
+        assertEquals(5, snapshot.getPosition());
+    }
+
+    /**
+     * Measures several threads reading every row at once, through the locking
+     * {@link ThreadSafeCursorWrapper} and through the snapshot.
+     */
+    @LargeTest
+    public void testContentionBenchmark() throws InterruptedException {
+        final ThreadSafeCursorWrapper locking = new ThreadSafeCursorWrapper(createCursor());
+        final ColumnarSnapshotCursor snapshot = new ColumnarSnapshotCursor(createCursor());
+
+        // Warm up
+        readConcurrently(locking);
+        readConcurrently(snapshot);
+
+        final long lockingNs = readConcurrently(locking);
+        final long snapshotNs = readConcurrently(snapshot);
+
+        LogUtils.i(LOG_TAG, "%d threads x %d passes over %d rows: ThreadSafeCursorWrapper %dus,"
+                + " ColumnarSnapshotCursor %dus (%d bytes)", THREADS, PASSES, ROWS,
+                lockingNs / 1000, snapshotNs / 1000, snapshot.getMemoryFootprint());
+    }
+
+    private static long readConcurrently(final Cursor cursor) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long sum = 0;
+                    for (int pass = 0; pass < PASSES; pass++) {
+                        cursor.moveToPosition(-1);
+                        while (cursor.moveToNext()) {
+                            sum += cursor.getLong(0) + cursor.getLong(3);
+                            sum += cursor.getString(1).length();
+                            final String subject = cursor.getString(2);
+                            sum += subject != null ? subject.length() : 0;
+                        }
+                    }
+                    if (sum == 0) {
+                        LogUtils.w(LOG_TAG, "No rows read");
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+}
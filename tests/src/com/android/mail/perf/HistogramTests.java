@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.perf;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+public class HistogramTests extends AndroidTestCase {
+    private boolean mWasEnabled;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mWasEnabled = Metrics.isEnabled();
+        Metrics.setEnabled(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Metrics.setEnabled(mWasEnabled);
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testBucketBounds() {
+        for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+            final long lower = Histogram.bucketLowerBound(i);
+            assertEquals(i, Histogram.bucketIndex(lower));
+            if (i < Histogram.BUCKET_COUNT - 1) {
+                assertEquals(i, Histogram.bucketIndex(Histogram.bucketUpperBound(i)));
+            }
+        }
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @SmallTest
+    public void testPercentiles() {
+        final Histogram histogram = new Histogram("test");
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertEquals(500500000, histogram.getSumNanos());
+        final long median = histogram.getPercentileNanos(0.5);
+        assertTrue(median >= 500000 && median <= 500000 * 9 / 8);
+        assertEquals(1000000, histogram.getPercentileNanos(1.0));
+    }
+
+    @SmallTest
+    public void testNestedSpans() {
+        final Histogram outer = new Histogram("outer");
+        final Histogram inner = new Histogram("inner");
+        outer.begin();
+        inner.begin();
+        inner.end();
+        outer.end();
+        // Ending a span that is not open does nothing
+        inner.end();
+        assertEquals(1, outer.getCount());
+        assertEquals(1, inner.getCount());
+        assertSame(outer, inner.getParent());
+        assertNull(outer.getParent());
+    }
+
+    @SmallTest
+    public void testDisabled() {
+        final Histogram histogram = new Histogram("disabled");
+        Metrics.setEnabled(false);
+        histogram.begin();
+        histogram.record(5);
+        histogram.recordSince(Metrics.now());
+        Metrics.setEnabled(true);
+        histogram.end();
+        assertEquals(0, histogram.getCount());
+    }
+}
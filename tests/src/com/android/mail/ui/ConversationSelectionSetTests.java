@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.ui;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.providers.Conversation;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+public class ConversationSelectionSetTests extends AndroidTestCase {
+    private static final int FOLDER_SIZE = 10000;
+
+    private static Conversation makeConversation(long id) {
+        final Conversation conversation = new Conversation();
+        conversation.id = id;
+        conversation.uri = Uri.parse("content://test/" + id);
+        return conversation;
+    }
+
+    /**
+     * After select-all on a large folder, validation keeps exactly the selected conversations
+     * that are still in the cursor and not pending deletion.
+     */
+    @SmallTest
+    public void testValidateAgainstCursor() {
+        final ConversationSelectionSet set = new ConversationSelectionSet();
+        for (int i = 0; i < FOLDER_SIZE; i++) {
+            set.toggle(makeConversation(i));
+        }
+        assertEquals(FOLDER_SIZE, set.size());
+
+        // Every other conversation is gone from the cursor, and one remaining one is deleted
+        final Set<Long> cursorIds = Sets.newHashSet();
+        for (long id = 0; id < FOLDER_SIZE; id += 2) {
+            cursorIds.add(id);
+        }
+        final Set<String> deleted = ImmutableSet.of(makeConversation(0).uri.toString());
+        set.validateAgainst(deleted, cursorIds);
+
+        assertEquals(FOLDER_SIZE / 2 - 1, set.size());
+        assertFalse(set.contains(makeConversation(0)));
+        assertFalse(set.contains(makeConversation(1)));
+        assertTrue(set.contains(makeConversation(2)));
+        for (long id : set.keySet()) {
+            assertTrue(id != 0 && id % 2 == 0);
+        }
+    }
+
+    /**
+     * Before the cursor has loaded, only the conversations known to be deleted are removed.
+     */
+    @SmallTest
+    public void testValidateAgainstUnloadedCursor() {
+        final ConversationSelectionSet set = new ConversationSelectionSet();
+        set.toggle(makeConversation(1));
+        set.toggle(makeConversation(2));
+
+        final Set<String> deleted = ImmutableSet.of(makeConversation(2).uri.toString());
+        set.validateAgainst(deleted, null);
+
+        assertEquals(1, set.size());
+        assertTrue(set.contains(makeConversation(1)));
+    }
+
+    @SmallTest
+    public void testValidateAgainstNullCursor() {
+        final ConversationSelectionSet set = new ConversationSelectionSet();
+        set.toggle(makeConversation(1));
+        set.validateAgainstCursor(null);
+        assertTrue(set.isEmpty());
+    }
+}
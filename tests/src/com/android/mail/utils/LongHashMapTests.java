@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ * Licensed to The Android Open Source Project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashMap;
+import java.util.Random;
+
+public class LongHashMapTests extends AndroidTestCase {
+    /**
+     * Random puts and removes give the same results as a {@link HashMap}.
+     */
+    @SmallTest
+    public void testMatchesHashMap() {
+        final Random random = new Random(42);
+        final LongHashMap<Long> map = new LongHashMap<Long>();
+        final HashMap<Long, Long> expected = new HashMap<Long, Long>();
+
+        for (int i = 0; i < 20000; i++) {
+            final long key = random.nextInt(500);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, key + 1), map.put(key, key + 1));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+
+        for (long key : map.keys()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(expected.size(), map.values().size());
+    }
+
+    @SmallTest
+    public void testClear() {
+        final LongHashMap<String> map = new LongHashMap<String>();
+        map.put(1, "one");
+        map.put(-1, "minus one");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertFalse(map.values().iterator().hasNext());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.codec;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link Base64OutputStream} against {@link Base64#encode(byte[], int)}, which bodies were
+ * encoded with before.
+ */
+@SmallTest
+public class Base64OutputStreamTests extends AndroidTestCase {
+
+    public void testLines() throws Exception {
+        assertEquals("", encode(new byte[0]));
+        assertEquals("YQ==\r\n", encode("a".getBytes("US-ASCII")));
+        assertEquals("YWI=\r\n", encode("ab".getBytes("US-ASCII")));
+        assertEquals("YWJj\r\n", encode("abc".getBytes("US-ASCII")));
+        // A full line ends once
+        final byte[] line = new byte[57];
+        Arrays.fill(line, (byte) 0xff);
+        final String encoded = encode(line);
+        assertEquals(78, encoded.length());
+        assertTrue(encoded.endsWith("//\r\n"));
+    }
+
+    public void testSameAsBase64() throws Exception {
+        final Random random = new Random(2045);
+        for (int length = 0; length < 2000; length += 1 + length / 8) {
+            final byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            final String expected = new String(Base64.encode(bytes, Base64.CRLF), "US-ASCII");
+
+            // In one write, a byte at a time, and in writes of random sizes
+            assertEquals(expected, encode(bytes));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final Base64OutputStream base64Out = new Base64OutputStream(out);
+            for (byte b : bytes) {
+                base64Out.write(b);
+            }
+            base64Out.finish();
+            assertEquals(expected, out.toString("US-ASCII"));
+            out.reset();
+            final Base64OutputStream chunkedOut = new Base64OutputStream(out);
+            int offset = 0;
+            while (offset < length) {
+                final int count = Math.min(length - offset, random.nextInt(200));
+                chunkedOut.write(bytes, offset, count);
+                offset += count;
+            }
+            chunkedOut.finish();
+            assertEquals(expected, out.toString("US-ASCII"));
+        }
+    }
+
+    public void testFinish() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Base64OutputStream base64Out = new Base64OutputStream(out);
+        base64Out.write(new byte[] { 1, 2, 3, 4 });
+        base64Out.finish();
+        base64Out.finish();
+        assertEquals("AQIDBA==\r\n", out.toString("US-ASCII"));
+        try {
+            base64Out.write(5);
+            fail();
+        } catch (IOException e) {
+            // Nothing can be written after finishing
+        }
+    }
+
+    private static String encode(byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Base64OutputStream base64Out = new Base64OutputStream(out);
+        base64Out.write(bytes);
+        base64Out.finish();
+        return out.toString("US-ASCII");
+    }
+}
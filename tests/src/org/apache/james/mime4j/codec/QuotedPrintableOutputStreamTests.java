@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.codec;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.common.io.ByteStreams;
+
+import org.apache.james.mime4j.decoder.QuotedPrintableInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+@SmallTest
+public class QuotedPrintableOutputStreamTests extends AndroidTestCase {
+    private static final byte[] PIECES;
+    static {
+        try {
+            PIECES = "a Z=\t\r\n.é".getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public void testEncode() throws Exception {
+        assertEquals("", encode(""));
+        assertEquals("Caf=C3=A9 =3D ok", encode("Café = ok"));
+        // Whitespace is encoded only at the end of a line
+        assertEquals("a b=20\r\nc=09", encode("a b \r\nc\t"));
+        // CRLF is a line break, but a lone CR or LF is not
+        assertEquals("a\r\nb=0Dc=0Ad=0D", encode("a\r\nb\rc\nd\r"));
+        assertEquals("a=0D\r\n", encode("a\r\r\n"));
+    }
+
+    public void testSoftLineBreaks() throws Exception {
+        final char[] text = new char[200];
+        Arrays.fill(text, 'x');
+        final String encoded = encode(new String(text));
+        assertEquals(new String(text, 0, 75) + "=\r\n" + new String(text, 0, 75) + "=\r\n"
+                + new String(text, 0, 50), encoded);
+        // An encoded byte is not split
+        Arrays.fill(text, '=');
+        for (String line : encode(new String(text)).split("\r\n")) {
+            assertTrue(line, line.length() <= 76);
+            assertTrue(line, line.length() % 3 == 1 || !line.endsWith("="));
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        final Random random = new Random(2045);
+        for (int i = 0; i < 500; i++) {
+            final byte[] bytes = new byte[random.nextInt(400)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = random.nextInt(4) == 0 ? (byte) random.nextInt(256)
+                        : PIECES[random.nextInt(PIECES.length)];
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final QuotedPrintableOutputStream qpOut = new QuotedPrintableOutputStream(out);
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int count = Math.min(bytes.length - offset, random.nextInt(50));
+                qpOut.write(bytes, offset, count);
+                offset += count;
+            }
+            qpOut.finish();
+
+            final byte[] encoded = out.toByteArray();
+            for (String line : new String(encoded, "US-ASCII").split("\r\n")) {
+                assertTrue(line, line.length() <= 76);
+            }
+            for (byte b : encoded) {
+                assertTrue(b == '\r' || b == '\n' || b == '\t' || (b >= 32 && b < 127));
+            }
+            final byte[] decoded = ByteStreams.toByteArray(
+                    new QuotedPrintableInputStream(new ByteArrayInputStream(encoded)));
+            assertTrue(Arrays.equals(bytes, decoded));
+        }
+    }
+
+    private static String encode(String text) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final QuotedPrintableOutputStream qpOut = new QuotedPrintableOutputStream(out);
+        qpOut.write(text.getBytes("UTF-8"));
+        qpOut.finish();
+        return out.toString("US-ASCII");
+    }
+}
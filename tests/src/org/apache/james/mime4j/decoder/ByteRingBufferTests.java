@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+@SmallTest
+public class ByteRingBufferTests extends AndroidTestCase {
+
+    public void testPutAndGet() {
+        final ByteRingBuffer buffer = new ByteRingBuffer(4);
+        assertTrue(buffer.isEmpty());
+        assertEquals(4, buffer.remaining());
+        buffer.put((byte) 1);
+        buffer.put(new byte[] { 2, 3, 4 }, 0, 3);
+        assertEquals(4, buffer.count());
+        assertEquals(0, buffer.remaining());
+        try {
+            buffer.put((byte) 5);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, buffer.get());
+        assertEquals(2, buffer.get());
+
+        // Wraps around the end of the array
+        buffer.put(new byte[] { 5, 6 }, 0, 2);
+        final byte[] out = new byte[6];
+        assertEquals(4, buffer.drainTo(out, 1, 5));
+        assertEquals(3, out[1]);
+        assertEquals(4, out[2]);
+        assertEquals(5, out[3]);
+        assertEquals(6, out[4]);
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainTo(out, 0, 6));
+        try {
+            buffer.get();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    public void testAgainstQueue() {
+        final Random random = new Random(48);
+        final ByteRingBuffer buffer = new ByteRingBuffer(37);
+        final byte[] chunk = new byte[40];
+        byte next = 0;
+        byte expected = 0;
+        for (int i = 0; i < 10000; i++) {
+            final int put = random.nextInt(buffer.remaining() + 1);
+            if (random.nextBoolean() && put > 0) {
+                buffer.put(next++);
+            } else {
+                for (int j = 0; j < put; j++) {
+                    chunk[j] = next++;
+                }
+                buffer.put(chunk, 0, put);
+            }
+            if (random.nextBoolean() && !buffer.isEmpty()) {
+                assertEquals(expected++, buffer.get());
+            } else {
+                final int count = buffer.drainTo(chunk, 0, random.nextInt(chunk.length));
+                for (int j = 0; j < count; j++) {
+                    assertEquals(expected++, chunk[j]);
+                }
+            }
+            assertEquals((byte) (next - expected), (byte) buffer.count());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Base64;
+
+import com.android.mail.emailtests.R;
+import com.google.common.io.ByteStreams;
+
+import org.apache.james.mime4j.util.CharsetUtil;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Checks {@link DecoderUtil#decodeEncodedWords} against the string-based decoder it replaced,
+ * which is kept here as {@link #decodeEncodedWordsReference}.
+ */
+@SmallTest
+public class DecoderUtilTests extends AndroidTestCase {
+    private static final String[] CHARSETS = {
+        "utf-8", "UTF-8", "iso-8859-1", "ISO-8859-15", "windows-1252", "us-ascii", "Shift_JIS",
+        "iso-2022-jp", "koi8-r", "gb2312", "big5", "bogus", "", "utf8"
+    };
+    private static final String[] PIECES = {
+        "=?", "?=", "?", "=", "_", " ", "\t", "\r", "\n", "\r\n", "a", "Z", "0", "+", "/", "==",
+        "=4", "=41", "=C3=A9", "=c3=a9", "=G", "=\r\n", "é", "😀", "\ud83d", "x y",
+        "?Q?", "?B?", "?q?", "?b?", "QUJD", "w6k=", "w6", "!"
+    };
+
+    public void testPlainText() {
+        final String plain = "Re: Lunch on Thursday?";
+        assertSame(plain, DecoderUtil.decodeEncodedWords(plain));
+        assertEquals("a = b ?= c", DecoderUtil.decodeEncodedWords("a = b ?= c"));
+    }
+
+    public void testEncodedWords() {
+        assertEquals("Alice Müller <alice@example.com>", DecoderUtil.decodeEncodedWords(
+                "=?UTF-8?B?QWxpY2UgTcO8bGxlcg==?= <alice@example.com>"));
+        assertEquals("François Dupont",
+                DecoderUtil.decodeEncodedWords("=?ISO-8859-1?Q?Fran=E7ois_Dupont?="));
+        // Whitespace between adjacent encoded words is dropped, but not around plain text
+        assertEquals("café and notes", DecoderUtil.decodeEncodedWords(
+                "=?utf-8?q?caf=C3=A9?= \r\n =?UTF-8?B?IGFuZCBub3Rlcw==?="));
+        assertEquals("Re: café (fwd)",
+                DecoderUtil.decodeEncodedWords("Re: =?utf-8?q?caf=C3=A9?= (fwd)"));
+        // Encoded text that starts with '='
+        assertEquals("été", DecoderUtil.decodeEncodedWords("=?utf-8?Q?=C3=A9t=C3=A9?="));
+    }
+
+    public void testMalformedWords() {
+        // Unknown charsets and encodings, and empty text, are left as they are
+        assertEquals("=?bogus?Q?abc?=", DecoderUtil.decodeEncodedWords("=?bogus?Q?abc?="));
+        assertEquals("=?utf-8?X?abc?=", DecoderUtil.decodeEncodedWords("=?utf-8?X?abc?="));
+        assertEquals("=?utf-8?Q??=", DecoderUtil.decodeEncodedWords("=?utf-8?Q??="));
+        // The reference threw StringIndexOutOfBoundsException on these
+        assertEquals("B0?q?=?", DecoderUtil.decodeEncodedWords("B0?q?=?"));
+        assertEquals("x =?=?", DecoderUtil.decodeEncodedWords("x =?=?"));
+    }
+
+    public void testHeaderCorpus() throws Exception {
+        final InputStream in = getContext().getResources().openRawResource(
+                R.raw.benchmark_headers);
+        final String corpus;
+        try {
+            corpus = new String(ByteStreams.toByteArray(in), "US-ASCII");
+        } finally {
+            in.close();
+        }
+        for (String line : corpus.split("\n")) {
+            assertEquals(line, decodeEncodedWordsReference(line),
+                    DecoderUtil.decodeEncodedWords(line));
+        }
+    }
+
+    @MediumTest
+    public void testRandomText() {
+        final Random random = new Random(2047);
+        for (int i = 0; i < 20000; i++) {
+            final String text = randomText(random);
+            final String expected;
+            try {
+                expected = decodeEncodedWordsReference(text);
+            } catch (StringIndexOutOfBoundsException e) {
+                // The reference could not decode this, but it must not throw now
+                DecoderUtil.decodeEncodedWords(text);
+                continue;
+            }
+            assertEquals(text, expected, DecoderUtil.decodeEncodedWords(text));
+        }
+    }
+
+    /**
+     * Makes a string of encoded words, some malformed, among text and separators.
+     */
+    private static String randomText(Random random) {
+        final StringBuilder sb = new StringBuilder();
+        final int parts = random.nextInt(12);
+        for (int i = 0; i < parts; i++) {
+            if (random.nextInt(10) >= 4) {
+                sb.append(PIECES[random.nextInt(PIECES.length)]);
+                continue;
+            }
+            sb.append("=?").append(CHARSETS[random.nextInt(CHARSETS.length)]).append('?');
+            final boolean q = random.nextBoolean();
+            sb.append(q ? (random.nextBoolean() ? 'Q' : 'q') : (random.nextBoolean() ? 'B' : 'b'));
+            sb.append('?');
+            if (q || random.nextInt(3) == 0) {
+                final int count = random.nextInt(8);
+                for (int j = 0; j < count; j++) {
+                    sb.append(PIECES[random.nextInt(PIECES.length)].replace("?=", "")
+                            .replace("=?", ""));
+                }
+            } else {
+                final byte[] bytes = new byte[random.nextInt(12)];
+                random.nextBytes(bytes);
+                String encoded = Base64.encodeToString(bytes, Base64.NO_WRAP);
+                if (random.nextInt(4) == 0 && encoded.length() > 0) {
+                    encoded = encoded.substring(0, random.nextInt(encoded.length()));
+                }
+                if (random.nextInt(5) == 0) {
+                    encoded = encoded.replace("=", "") + "!QQ";
+                }
+                sb.append(encoded);
+            }
+            sb.append("?=");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The decoder before it was made to decode in one pass, less its logging.
+     */
+    private static String decodeEncodedWordsReference(String body) {
+        if (body.indexOf("=?") == -1) {
+            return body;
+        }
+
+        int previousEnd = 0;
+        boolean previousWasEncoded = false;
+
+        StringBuilder sb = new StringBuilder();
+
+        while (true) {
+            int begin = body.indexOf("=?", previousEnd);
+
+            int endScan = begin + 2;
+            if (begin != -1) {
+                int qm1 = body.indexOf('?', endScan + 2);
+                int qm2 = body.indexOf('?', qm1 + 1);
+                if (qm2 != -1) {
+                    endScan = qm2 + 1;
+                }
+            }
+
+            int end = begin == -1 ? -1 : body.indexOf("?=", endScan);
+            if (end == -1) {
+                if (previousEnd == 0)
+                    return body;
+
+                sb.append(body.substring(previousEnd));
+                return sb.toString();
+            }
+            end += 2;
+
+            String sep = body.substring(previousEnd, begin);
+
+            String decoded = decodeEncodedWordReference(body, begin, end);
+            if (decoded == null) {
+                sb.append(sep);
+                sb.append(body.substring(begin, end));
+            } else {
+                if (!previousWasEncoded || !CharsetUtil.isWhitespace(sep)) {
+                    sb.append(sep);
+                }
+                sb.append(decoded);
+            }
+
+            previousEnd = end;
+            previousWasEncoded = decoded != null;
+        }
+    }
+
+    private static String decodeEncodedWordReference(String body, int begin, int end) {
+        int qm1 = body.indexOf('?', begin + 2);
+        if (qm1 == end - 2)
+            return null;
+
+        int qm2 = body.indexOf('?', qm1 + 1);
+        if (qm2 == end - 2)
+            return null;
+
+        String mimeCharset = body.substring(begin + 2, qm1);
+        String encoding = body.substring(qm1 + 1, qm2);
+        String encodedText = body.substring(qm2 + 1, end - 2);
+
+        String charset = CharsetUtil.toJavaCharset(mimeCharset);
+        if (charset == null || !CharsetUtil.isDecodingSupported(charset)
+                || encodedText.length() == 0) {
+            return null;
+        }
+
+        try {
+            if (encoding.equalsIgnoreCase("Q")) {
+                return DecoderUtil.decodeQ(encodedText, charset);
+            } else if (encoding.equalsIgnoreCase("B")) {
+                return DecoderUtil.decodeB(encodedText, charset);
+            } else {
+                return null;
+            }
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
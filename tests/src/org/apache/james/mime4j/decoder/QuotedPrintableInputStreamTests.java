@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+@SmallTest
+public class QuotedPrintableInputStreamTests extends AndroidTestCase {
+
+    public void testDecode() throws IOException {
+        assertDecodes("caf\u00c3\u00a9", "caf=C3=A9");
+        assertDecodes("softbreak", "soft=\r\nbreak");
+        assertDecodes("xy", "x= \r\ny");
+
+        // Transport padding before a line break or the end is dropped
+        assertDecodes("padded\r\nline", "padded \t \r\nline \t");
+        assertDecodes("a b\tc", "a b\tc");
+
+        // Malformed escapes are kept as they are
+        assertDecodes("a=A", "a==41");
+        assertDecodes("=ZZ", "=ZZ=4");
+        assertDecodes("=\rx", "=\rx");
+        assertDecodes("tail", "tail=");
+    }
+
+    public void testLongWhitespace() throws IOException {
+        // Longer than the input buffer, so that the stream cannot tell at first whether a line
+        // break follows it
+        final char[] spaces = new char[10000];
+        Arrays.fill(spaces, ' ');
+        final String run = new String(spaces);
+        assertDecodes(run + "x", run + "x");
+        assertDecodes("a\r\nb", "a" + run + "\r\nb");
+        assertDecodes("a", "a" + run);
+    }
+
+    public void testReadSizes() throws IOException {
+        final Random random = new Random(2045);
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < 20000) {
+            sb.append("Caf=C3=A9 =3D \t").append(random.nextInt()).append(" =\r\n  \r\n");
+        }
+        final byte[] encoded = sb.toString().getBytes("US-ASCII");
+        final byte[] expected = readAll(encoded, 0, random);
+        assertTrue(Arrays.equals(expected, readAll(encoded, 1, random)));
+        assertTrue(Arrays.equals(expected, readAll(encoded, 4096, random)));
+        assertTrue(Arrays.equals(expected, readAll(encoded, -1, random)));
+    }
+
+    private static void assertDecodes(String expected, String encoded) throws IOException {
+        final byte[] bytes = encoded.getBytes("ISO-8859-1");
+        assertEquals(expected, new String(readAll(bytes, 0, null), "ISO-8859-1"));
+        assertEquals(expected, new String(readAll(bytes, 4096, null), "ISO-8859-1"));
+    }
+
+    /**
+     * Decodes bytes with reads of the given length, single bytes if it is 0, or random lengths
+     * if it is -1.
+     */
+    private static byte[] readAll(byte[] encoded, int length, Random random) throws IOException {
+        final InputStream in = new QuotedPrintableInputStream(new ByteArrayInputStream(encoded));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        while (true) {
+            if (length == 0) {
+                final int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                out.write(b);
+            } else {
+                final int count = in.read(buffer, 0,
+                        length > 0 ? length : 1 + random.nextInt(buffer.length));
+                if (count < 0) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+            }
+        }
+        return out.toByteArray();
+    }
+}
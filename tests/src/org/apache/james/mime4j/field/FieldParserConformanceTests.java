@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.emailtests.R;
+import com.google.common.io.ByteStreams;
+
+import org.apache.james.mime4j.field.address.Address;
+import org.apache.james.mime4j.field.address.AddressList;
+import org.apache.james.mime4j.field.address.Group;
+import org.apache.james.mime4j.field.address.Mailbox;
+import org.apache.james.mime4j.field.address.NamedMailbox;
+import org.apache.james.mime4j.field.address.SimpleAddressListParser;
+import org.apache.james.mime4j.field.datetime.DateTime;
+import org.apache.james.mime4j.field.datetime.SimpleDateTimeParser;
+
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Checks that the hand-written parsers in front of the JavaCC grammars give the same results
+ * as the grammars for everything that they accept.
+ */
+@SmallTest
+public class FieldParserConformanceTests extends AndroidTestCase {
+    /** The parts of the fields to make, in order, each with some choices that are not valid */
+    private static final String[][] ADDRESS_SLOTS = {
+        { "", "Bob", "Bob  Smith", "\"Smith, Bob\"", "\"a \\\"b\\\"\"", "=?utf-8?q?Fr=C3=A9d?=",
+                "O'Neil", "Team:", "é", "(comment)", "\"" },
+        { "", "<", "<@route:", "\"" },
+        { "bob", "a.b", "x-y", "123", "\"bob\"", "", "." },
+        { "@", "", " @", ":" },
+        { "example.com", "example.org.", "[1.2.3.4]", "", "a..b" },
+        { "", ">", ";", ">;", "(Bob)", "(é) (x)", "(a (b))", "(a\\)" },
+        { ",", ", ", "", " ,,", ";" }
+    };
+    private static final String[][] DATE_SLOTS = {
+        { "", "Tue,", "Mon ,", "Sun", "Foo,", "Thursday," },
+        { "4", "04", "31", "123", "" },
+        { "Mar", "Dec", "Foo", "mar", "" },
+        { "2014", "14", "114", "99", "1999", "20140" },
+        { "09:15", "9:05:02", "23:59:60", "1:2", "12:", "123:00", "12:00:" },
+        { "+0000", "-0800", "+01", "+12345", "- 0800", "GMT", "UT", "UTC", "PST", "EDT", "Z",
+                "A", "" },
+        { "", "", "(PST)", "(a (b))", "(", "(a\\)b)", "x" }
+    };
+    private static final String[][] CONTENT_TYPE_SLOTS = {
+        { "text", "Multipart", "123", "é", "" },
+        { "/", "", "/ " },
+        { "plain", "Mixed", "1a", "", "x+y" },
+        { "", ";", ";;", "(comment);" },
+        { "charset", "CHARSET", "Boundary", "name", "123", "" },
+        { "=", "", " = " },
+        { "utf-8", "\"utf-8\"", "\"b1 ; b2\"", "\"a\\\"b\\\"\"", "\"\"", "123", "a.b",
+                "\"résumé.pdf\"", "\"", "" },
+        { "", "", ";", "; charset=us-ascii", "; name=\"x\"; NAME=y", "?" }
+    };
+    private static final String[] SEPARATORS = { " ", " ", "", "\t", "  " };
+
+    public void testSimpleShapes() {
+        // The common shapes take the fast paths...
+        assertNotNull(SimpleAddressListParser.parse("bob@example.com (Bob Smith)"));
+        assertNotNull(SimpleAddressListParser.parse(
+                "\"Smith, Bob\" <bob@example.com>, Carol O'Neil <carol@example.org>,"));
+        assertNotNull(SimpleDateTimeParser.parse("Tue, 4 Mar 2014 09:15:02 -0800 (PST)"));
+        assertNotNull(SimpleDateTimeParser.parse("4 Mar 14 09:15 GMT"));
+        assertNotNull(SimpleContentTypeParser.parse("Content-Type",
+                "multipart/alternative; boundary=\"b1_0f\"; charset=UTF-8", null));
+        assertNotNull(SimpleContentTypeParser.parse("Content-Type", "text/plain", null));
+
+        // ... and anything unusual falls back to the grammar
+        assertNull(SimpleAddressListParser.parse("Team: bob@example.com;"));
+        assertNull(SimpleAddressListParser.parse("Bob (Smith) <bob@example.com>"));
+        assertNull(SimpleAddressListParser.parse("<@route:bob@example.com>"));
+        assertNull(SimpleDateTimeParser.parse("Tue, 4 Mar 2014 09:15:02 UTC"));
+        assertNull(SimpleDateTimeParser.parse("Tue, 4 Mar 2014 09:15:02 Z"));
+        assertNull(SimpleContentTypeParser.parse("Content-Type", "text/plain;", null));
+        assertNull(SimpleContentTypeParser.parse("Content-Type", "text/plain; a=1", null));
+
+        assertConforms("Bob  Smith <bob@example.com>, =?utf-8?q?Fr=C3=A9d?= <fred@example.com>");
+        assertDateConforms("Tue, 4 Mar 2014 09:15:02 -0800 (PST)");
+        assertDateConforms("Sun, 31 Dec 99 23:59 EDT");
+        assertContentTypeConforms("Multipart/Mixed; BOUNDARY=\"a\\\"b\"; charset=utf-8");
+    }
+
+    public void testAddressCorpus() throws Exception {
+        for (String line : readRaw(R.raw.benchmark_addresses).split("\n")) {
+            assertConforms(line);
+        }
+    }
+
+    public void testHeaderCorpus() throws Exception {
+        checkHeaders(readRaw(R.raw.benchmark_headers));
+        checkHeaders(readRaw(R.raw.benchmark_multipart));
+    }
+
+    @MediumTest
+    public void testRandomFields() {
+        final Random random = new Random(5322);
+        for (int i = 0; i < 20000; i++) {
+            // Lists of up to three addresses
+            final int count = 1 + random.nextInt(3);
+            final StringBuilder list = new StringBuilder();
+            for (int j = 0; j < count; j++) {
+                list.append(randomField(random, ADDRESS_SLOTS));
+            }
+            assertConforms(list.toString());
+            assertDateConforms(randomField(random, DATE_SLOTS));
+            assertContentTypeConforms(randomField(random, CONTENT_TYPE_SLOTS));
+        }
+    }
+
+    /**
+     * Makes a field of one choice from each slot, with random whitespace between them.
+     */
+    private static String randomField(Random random, String[][] slots) {
+        final StringBuilder sb = new StringBuilder();
+        for (String[] choices : slots) {
+            sb.append(choices[random.nextInt(choices.length)]);
+            sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks the address, date and content type fields of a header against both paths.
+     */
+    private static void checkHeaders(String text) {
+        // Unfold, and split into fields
+        for (String field : text.replace("\r\n", "\n").replace("\n ", " ").replace("\n\t", "\t")
+                .split("\n")) {
+            final int colon = field.indexOf(':');
+            if (colon <= 0 || field.startsWith("-")) {
+                continue;
+            }
+            final String name = field.substring(0, colon).toLowerCase();
+            final String body = field.substring(colon + 1).trim();
+            if (name.equals("from") || name.equals("to") || name.equals("cc")
+                    || name.equals("reply-to")) {
+                assertConforms(body);
+            } else if (name.equals("date")) {
+                assertDateConforms(body);
+            } else if (name.equals("content-type")) {
+                assertContentTypeConforms(body);
+            }
+        }
+    }
+
+    private static void assertConforms(String list) {
+        final AddressList simple = SimpleAddressListParser.parse(list);
+        if (simple == null) {
+            return;
+        }
+        try {
+            assertEquals(list, describe(AddressList.parseWithGrammar(list)), describe(simple));
+        } catch (org.apache.james.mime4j.field.address.parser.ParseException e) {
+            fail(list + ": " + e);
+        }
+    }
+
+    private static void assertDateConforms(String date) {
+        final DateTime simple = SimpleDateTimeParser.parse(date);
+        if (simple == null) {
+            return;
+        }
+        try {
+            assertEquals(date, describe(DateTime.parseWithGrammar(date)), describe(simple));
+        } catch (org.apache.james.mime4j.field.datetime.parser.ParseException e) {
+            fail(date + ": " + e);
+        }
+    }
+
+    private static void assertContentTypeConforms(String body) {
+        final ContentTypeField simple = SimpleContentTypeParser.parse("Content-Type", body, null);
+        if (simple == null) {
+            return;
+        }
+        final ContentTypeField grammar = (ContentTypeField) new ContentTypeField.Parser()
+                .parseWithGrammar("Content-Type", body, null);
+        assertNull(body, grammar.getParseException());
+        assertNull(simple.getParseException());
+        assertEquals(body, grammar.getMimeType(), simple.getMimeType());
+        assertEquals(body, grammar.getParameters(), simple.getParameters());
+        assertEquals(body, simple.getBody());
+    }
+
+    private static String describe(AddressList list) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < list.size(); i++) {
+            describe(sb, list.get(i));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void describe(StringBuilder sb, Address address) {
+        sb.append(address.getClass().getSimpleName()).append('[');
+        if (address instanceof Group) {
+            final Group group = (Group) address;
+            sb.append(group.getName());
+            for (int i = 0; i < group.getMailboxes().size(); i++) {
+                sb.append('|');
+                describe(sb, group.getMailboxes().get(i));
+            }
+        } else {
+            final Mailbox mailbox = (Mailbox) address;
+            if (mailbox instanceof NamedMailbox) {
+                sb.append(((NamedMailbox) mailbox).getName()).append('|');
+            }
+            sb.append(mailbox.getRoute() != null ? mailbox.getRoute().toRouteString() : null)
+                    .append('|').append(mailbox.getLocalPart())
+                    .append('|').append(mailbox.getDomain());
+        }
+        sb.append(']');
+    }
+
+    private static String describe(DateTime dateTime) {
+        return dateTime.getDate().getTime() + " " + dateTime.getYear() + " "
+                + dateTime.getMonth() + " " + dateTime.getDay() + " " + dateTime.getHour() + " "
+                + dateTime.getMinute() + " " + dateTime.getSecond() + " "
+                + dateTime.getTimeZone();
+    }
+
+    private String readRaw(int id) throws Exception {
+        final InputStream in = getContext().getResources().openRawResource(id);
+        try {
+            return new String(ByteStreams.toByteArray(in), "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+@SmallTest
+public class SpillBufferTests extends AndroidTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        SpillBuffer.setMemoryBudget(SpillBuffer.DEFAULT_MEMORY_BUDGET);
+        super.tearDown();
+    }
+
+    public void testInMemory() throws IOException {
+        final long reserved = SpillBuffer.getReservedBytes();
+        final byte[] data = randomBytes(20000);
+        final SpillBuffer buffer = write(data, 32 * 1024);
+        assertTrue(buffer.isInMemory());
+        assertEquals(data.length, buffer.size());
+        assertTrue(SpillBuffer.getReservedBytes() > reserved);
+        assertTrue(Arrays.equals(data, readAll(buffer)));
+        // It can be read any number of times until it is released
+        assertTrue(Arrays.equals(data, readAll(buffer)));
+
+        buffer.release();
+        assertEquals(reserved, SpillBuffer.getReservedBytes());
+        try {
+            buffer.getInputStream();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testSpillsPastThreshold() throws IOException {
+        final long reserved = SpillBuffer.getReservedBytes();
+        final byte[] data = randomBytes(100000);
+        final SpillBuffer buffer = write(data, 32 * 1024);
+        assertFalse(buffer.isInMemory());
+        assertEquals(data.length, buffer.size());
+        // What was in memory has been given back
+        assertEquals(reserved, SpillBuffer.getReservedBytes());
+        assertTrue(Arrays.equals(data, readAll(buffer)));
+        buffer.release();
+    }
+
+    public void testSpillsPastBudget() throws IOException {
+        SpillBuffer.setMemoryBudget(SpillBuffer.getReservedBytes() + 16 * 1024);
+        final byte[] data = randomBytes(16 * 1024);
+        final SpillBuffer first = write(data, 32 * 1024);
+        assertTrue(first.isInMemory());
+
+        final SpillBuffer second = write(data, 32 * 1024);
+        assertFalse(second.isInMemory());
+        assertTrue(Arrays.equals(data, readAll(second)));
+        second.release();
+
+        first.release();
+        final SpillBuffer third = write(data, 32 * 1024);
+        assertTrue(third.isInMemory());
+        assertTrue(Arrays.equals(data, readAll(third)));
+        third.release();
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Writes data into a new buffer in pieces of random lengths, and closes it.
+     */
+    private SpillBuffer write(byte[] data, int threshold) throws IOException {
+        final SpillBuffer buffer = new SpillBuffer(getContext().getCacheDir(), threshold);
+        final Random random = new Random(data.length);
+        int offset = 0;
+        while (offset < data.length) {
+            if (random.nextInt(10) == 0) {
+                buffer.write(data[offset++]);
+            } else {
+                final int length = Math.min(data.length - offset, random.nextInt(5000));
+                buffer.write(data, offset, length);
+                offset += length;
+            }
+        }
+        buffer.close();
+        return buffer;
+    }
+
+    private static byte[] readAll(SpillBuffer buffer) throws IOException {
+        final InputStream in = buffer.getInputStream();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[3000];
+        int count;
+        try {
+            while ((count = in.read(chunk)) > 0) {
+                out.write(chunk, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}